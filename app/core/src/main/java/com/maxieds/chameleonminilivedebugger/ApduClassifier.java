@@ -0,0 +1,143 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>APDU Classifier</h1>
+ * Matches the logged payload bytes against the APDU instruction and status code tables
+ * (the CSV files in res/raw). The tables are passed in already parsed, so the matching does not
+ * depend on the Android resources and can be run on a plain JVM.
+ *
+ * @ref ApduUtils
+ * @ref https://www.dropbox.com/s/bqrd6jzemwo4ux0/isoiec7816-4%7Bed2.0%7Den.pdf?dl=0
+ */
+public class ApduClassifier {
+
+    /**
+     * Constants for the respective indices of the CLS and INS entries in a standard APDU command.
+     */
+    public static final int CLSIDX = 0;
+    public static final int INSIDX = 1;
+
+    /**
+     * Recognizes (CLA, INS) instruction pairs in the payload bytes (e.g., the Desfire instructions).
+     * @param dataBytes
+     * @param csvLines table rows of the form CLA,INS,LABEL
+     * @return List<String> of recognized instructions
+     * @see res/raw/desfire_ins
+     */
+    public static List<String> matchInstructionPairs(byte[] dataBytes, List<String[]> csvLines) {
+        List<String> insList = new ArrayList<String>();
+        for(int i = 0; i < csvLines.size(); i++) {
+            String[] csvLine = csvLines.get(i);
+            byte cls = ByteUtils.hexString2Byte(csvLine[0]);
+            byte ins = ByteUtils.hexString2Byte(csvLine[1]);
+            String apduLabel = csvLine[2];
+            if(dataBytes.length >= 2 && dataBytes[CLSIDX] == cls && dataBytes[INSIDX] == ins)
+                insList.add(apduLabel);
+        }
+        return insList;
+    }
+
+    /**
+     * Recognizes the (SW1, SW2) status words at the end of the payload bytes.
+     * @param dataBytes
+     * @param csvLines table rows of the form SW1,SW2,LABEL
+     * @return List<String> of recognized status codes
+     * @see res/raw/desfire_status
+     * @see res/raw/response_codes_status
+     */
+    public static List<String> matchStatusWords(byte[] dataBytes, List<String[]> csvLines) {
+        List<String> insList = new ArrayList<String>();
+        for(int i = 0; i < csvLines.size(); i++) {
+            String[] csvLine = csvLines.get(i);
+            byte sw1 = ByteUtils.hexString2Byte(csvLine[0]);
+            byte sw2 = ByteUtils.hexString2Byte(csvLine[1]);
+            String apduLabel = csvLine[2];
+            int SW1 = dataBytes.length - 2;
+            int SW2 = dataBytes.length - 1;
+            if(dataBytes.length >= 2 && dataBytes[SW1] == sw1 && dataBytes[SW2] == sw2)
+                insList.add(apduLabel);
+        }
+        return insList;
+    }
+
+    /**
+     * Recognizes common (mostly ISO) instruction bytes in the payload bytes.
+     * @param dataBytes
+     * @param csvLines table rows of the form INS,LABEL
+     * @return List<String> of recognized instructions
+     * @see res/raw/common_ins
+     */
+    public static List<String> matchCommonInstructions(byte[] dataBytes, List<String[]> csvLines) {
+        List<String> insList = new ArrayList<String>();
+        for(int i = 0; i < csvLines.size(); i++) {
+            String[] csvLine = csvLines.get(i);
+            byte ins = ByteUtils.hexString2Byte(csvLine[0]);
+            String apduLabel = csvLine[1];
+            if(dataBytes.length >= 2 && dataBytes[INSIDX] == ins || ((dataBytes.length == 1 || dataBytes.length == 2) && dataBytes[CLSIDX] == ins))
+                insList.add(apduLabel);
+        }
+        return insList;
+    }
+
+    /**
+     * Recognizes byte prefix patterns (where "xx" matches any byte) in the payload bytes.
+     * @param dataBytes
+     * @param csvLines table rows of the form B0,B1,...,LABEL
+     * @return List<String> of recognized instructions
+     * @see res/raw/detailed_common_ins
+     */
+    public static List<String> matchDetailedInstructions(byte[] dataBytes, List<String[]> csvLines) {
+        List<String> insList = new ArrayList<String>();
+        for(int i = 0; i < csvLines.size(); i++) {
+            String[] csvLine = csvLines.get(i);
+            int checkNumBytes = csvLine.length - 1;
+            String apduLabel = csvLine[checkNumBytes];
+            if(dataBytes.length < checkNumBytes) {
+                continue;
+            }
+            boolean tagApplies = true;
+            for(int b = 0; b < checkNumBytes; b++) {
+                if(!csvLine[b].equals("xx") && dataBytes[b] != ByteUtils.hexString2Byte(csvLine[b])) {
+                    tagApplies = false;
+                    break;
+                }
+            }
+            if(tagApplies)
+                insList.add(apduLabel);
+        }
+        return insList;
+    }
+
+    /**
+     * Classifies the payload bytes against all of the tables (in the order used by the log display).
+     * @param dataBytes
+     * @param desfireIns
+     * @param desfireStatus
+     * @param commonIns
+     * @param statusCodes
+     * @param detailedIns
+     * @return String comma separated list of recognized APDU commands (or "NONE")
+     */
+    public static String classifyApdu(byte[] dataBytes, List<String[]> desfireIns, List<String[]> desfireStatus,
+                                      List<String[]> commonIns, List<String[]> statusCodes, List<String[]> detailedIns) {
+        List<String> apduClassifications = matchInstructionPairs(dataBytes, desfireIns);
+        apduClassifications.addAll(matchStatusWords(dataBytes, desfireStatus));
+        apduClassifications.addAll(matchCommonInstructions(dataBytes, commonIns));
+        apduClassifications.addAll(matchStatusWords(dataBytes, statusCodes));
+        apduClassifications.addAll(matchDetailedInstructions(dataBytes, detailedIns));
+        StringBuilder sbApduList = new StringBuilder();
+        for(String apdu : apduClassifications){
+            sbApduList.append(apdu);
+            sbApduList.append(", ");
+        }
+        String apduList = sbApduList.toString();
+        if(apduList.length() >= 2)
+            return apduList.substring(0, apduList.length() - 2);
+        else
+            return "NONE";
+    }
+
+}
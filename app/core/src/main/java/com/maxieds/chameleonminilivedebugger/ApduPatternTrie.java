@@ -0,0 +1,265 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <h1>APDU Pattern Trie</h1>
+ * Matches the payload bytes against a table of byte prefix patterns (rows of the form
+ * B0,B1,...,LABEL where "xx" matches any byte, e.g., the detailed_common_ins table). The rows
+ * are compiled once into a trie over the pattern bytes, where each node has its children on the
+ * pattern bytes (a 256-entry table for the nodes with many of them, sorted edges otherwise), a
+ * separate child for the wildcard and the rows whose patterns end there. Matching reads each
+ * payload byte once, following the frontier of the trie nodes consistent with the bytes read so
+ * far (a single node unless the patterns have wildcards), and stops as soon as no pattern can
+ * match any more. So the cost depends on the length of the longest matching prefix rather than
+ * on the number of rows, and the compiled rules take memory linear in the size of the table
+ * (a fully determinized automaton blows up with the wildcards in large vendor catalogs).
+ *
+ * The labels are returned in the table order (the same as testing every row against the
+ * payload, see ApduClassifier.matchDetailedInstructions).
+ *
+ * @ref ApduTableClassifier
+ * @ref ApduClassifier.matchDetailedInstructions
+ * @see res/raw/detailed_common_ins
+ */
+public class ApduPatternTrie {
+
+    public static final String WILDCARD_BYTE = "xx";
+
+    /**
+     * Nodes with more pattern byte children than this get a full 256-entry child table.
+     */
+    public static final int DENSE_NODE_EDGES = 24;
+
+    private static final int ROOT_NODE = 0;
+    private static final int NO_NODE = -1;
+    private static final int[] NO_ROWS = new int[0];
+    public static final long NO_PATH_KEY = -1;
+
+    /**
+     * Trie node (only used while the rules are compiled).
+     */
+    private static class TrieNode {
+        final int nodeId;
+        final Map<Integer, TrieNode> byteChildren = new TreeMap<Integer, TrieNode>();
+        TrieNode wildcardChild = null;
+        final List<Integer> patternRows = new ArrayList<Integer>(0);
+        TrieNode(int id) {
+            nodeId = id;
+        }
+    }
+
+    private final String[] rowLabels;
+    private final int[] wildcardChildren;
+    private final int[][] denseChildren;
+    private final byte[][] edgeBytes;
+    private final int[][] edgeTargets;
+    private final int[][] nodeRows;
+    private final int pathNodeBits;
+    private int numDenseNodes = 0;
+
+    /**
+     * Constructor.
+     * @param csvLines table rows of the form B0,B1,...,LABEL
+     */
+    public ApduPatternTrie(List<String[]> csvLines) {
+        rowLabels = new String[csvLines.size()];
+        List<TrieNode> trieNodes = new ArrayList<TrieNode>();
+        TrieNode root = new TrieNode(ROOT_NODE);
+        trieNodes.add(root);
+        for(int row = 0; row < csvLines.size(); row++) {
+            String[] csvLine = csvLines.get(row);
+            int checkNumBytes = csvLine.length - 1;
+            rowLabels[row] = csvLine[checkNumBytes];
+            TrieNode node = root;
+            for(int b = 0; b < checkNumBytes; b++) {
+                TrieNode nextNode;
+                if(csvLine[b].equals(WILDCARD_BYTE)) {
+                    if(node.wildcardChild == null) {
+                        node.wildcardChild = new TrieNode(trieNodes.size());
+                        trieNodes.add(node.wildcardChild);
+                    }
+                    nextNode = node.wildcardChild;
+                }
+                else {
+                    Integer patternByte = Integer.valueOf(ByteUtils.hexString2Byte(csvLine[b]) & 0xff);
+                    nextNode = node.byteChildren.get(patternByte);
+                    if(nextNode == null) {
+                        nextNode = new TrieNode(trieNodes.size());
+                        trieNodes.add(nextNode);
+                        node.byteChildren.put(patternByte, nextNode);
+                    }
+                }
+                node = nextNode;
+            }
+            node.patternRows.add(row);
+        }
+
+        int numNodes = trieNodes.size();
+        pathNodeBits = Integer.SIZE - Integer.numberOfLeadingZeros(numNodes);
+        wildcardChildren = new int[numNodes];
+        denseChildren = new int[numNodes][];
+        edgeBytes = new byte[numNodes][];
+        edgeTargets = new int[numNodes][];
+        nodeRows = new int[numNodes][];
+        for(TrieNode node : trieNodes) {
+            int nodeId = node.nodeId;
+            wildcardChildren[nodeId] = node.wildcardChild == null ? NO_NODE : node.wildcardChild.nodeId;
+            edgeBytes[nodeId] = new byte[node.byteChildren.size()];
+            edgeTargets[nodeId] = new int[node.byteChildren.size()];
+            int edge = 0;
+            for(Map.Entry<Integer, TrieNode> byteChild : node.byteChildren.entrySet()) {
+                edgeBytes[nodeId][edge] = (byte) byteChild.getKey().intValue();
+                edgeTargets[nodeId][edge++] = byteChild.getValue().nodeId;
+            }
+            if(edge > DENSE_NODE_EDGES) {
+                denseChildren[nodeId] = new int[256];
+                Arrays.fill(denseChildren[nodeId], NO_NODE);
+                for(edge = 0; edge < edgeBytes[nodeId].length; edge++)
+                    denseChildren[nodeId][edgeBytes[nodeId][edge] & 0xff] = edgeTargets[nodeId][edge];
+                numDenseNodes++;
+            }
+            nodeRows[nodeId] = NO_ROWS;
+            if(!node.patternRows.isEmpty()) {
+                nodeRows[nodeId] = new int[node.patternRows.size()];
+                for(int r = 0; r < nodeRows[nodeId].length; r++)
+                    nodeRows[nodeId][r] = node.patternRows.get(r);
+            }
+        }
+    }
+
+    /**
+     * Finds the child of the node on the payload byte (the edge bytes are sorted as unsigned
+     * values).
+     */
+    private int byteChild(int node, byte dataByte) {
+        int[] denseTable = denseChildren[node];
+        if(denseTable != null)
+            return denseTable[dataByte & 0xff];
+        byte[] nodeEdgeBytes = edgeBytes[node];
+        int key = dataByte & 0xff, lo = 0, hi = nodeEdgeBytes.length - 1;
+        while(lo <= hi) {
+            int mid = (lo + hi) >>> 1, midKey = nodeEdgeBytes[mid] & 0xff;
+            if(midKey < key)
+                lo = mid + 1;
+            else if(midKey > key)
+                hi = mid - 1;
+            else
+                return edgeTargets[node][mid];
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * Finds the rows whose patterns match the payload bytes (in the table order).
+     * @param dataBytes
+     * @return int[] matching row indices
+     */
+    public int[] findMatchingRows(byte[] dataBytes) {
+        int[] frontier = new int[4], nextFrontier = new int[4];
+        int frontierSize = 1, numMatches = 0, numMatchingNodes = 0;
+        int[] matchingRows = NO_ROWS;
+        frontier[0] = ROOT_NODE;
+        for(int b = 0; frontierSize > 0; b++) {
+            int nextSize = 0;
+            for(int f = 0; f < frontierSize; f++) {
+                int node = frontier[f];
+                int[] rows = nodeRows[node];
+                if(rows.length > 0) {
+                    if(numMatchingNodes++ == 0) {
+                        matchingRows = rows;
+                    }
+                    else {
+                        if(numMatchingNodes == 2 || numMatches + rows.length > matchingRows.length)
+                            matchingRows = Arrays.copyOf(matchingRows, Math.max(2 * matchingRows.length, numMatches + rows.length));
+                        System.arraycopy(rows, 0, matchingRows, numMatches, rows.length);
+                    }
+                    numMatches += rows.length;
+                }
+                if(b >= dataBytes.length)
+                    continue;
+                if(nextSize + 2 > nextFrontier.length)
+                    nextFrontier = Arrays.copyOf(nextFrontier, 2 * nextFrontier.length);
+                int child = byteChild(node, dataBytes[b]);
+                if(child != NO_NODE)
+                    nextFrontier[nextSize++] = child;
+                if(wildcardChildren[node] != NO_NODE)
+                    nextFrontier[nextSize++] = wildcardChildren[node];
+            }
+            int[] swapFrontier = frontier;
+            frontier = nextFrontier;
+            nextFrontier = swapFrontier;
+            frontierSize = nextSize;
+        }
+        if(numMatchingNodes <= 1)
+            return matchingRows;
+        // the rows of the different nodes are put back into the table order:
+        matchingRows = Arrays.copyOf(matchingRows, numMatches);
+        Arrays.sort(matchingRows);
+        return matchingRows;
+    }
+
+    /**
+     * Packs the nodes where the walk of the payload bytes down the trie ends (one per branch
+     * forked on a wildcard) into a key of pathNodeBits wide fields. Each of these nodes stands
+     * for the path to it, and the rows matching the payload are exactly the rows of the nodes on
+     * these paths, so the payloads with the same key have the same detailed matches (the key is
+     * part of the classification cache key of the ApduTableClassifier).
+     * @param dataBytes
+     * @param keyBits maximum number of bits of the key
+     * @return long nonzero key, or NO_PATH_KEY if the end nodes do not fit in keyBits
+     */
+    public long findPathKey(byte[] dataBytes, int keyBits) {
+        return packPathEnds(dataBytes, ROOT_NODE, 0, 0, keyBits);
+    }
+
+    private long packPathEnds(byte[] dataBytes, int node, int b, long pathKey, int keyBits) {
+        for(; b < dataBytes.length; b++) {
+            int child = byteChild(node, dataBytes[b]), wildcardChild = wildcardChildren[node];
+            if(child != NO_NODE && wildcardChild != NO_NODE) {
+                pathKey = packPathEnds(dataBytes, child, b + 1, pathKey, keyBits);
+                if(pathKey == NO_PATH_KEY)
+                    return NO_PATH_KEY;
+                node = wildcardChild;
+            }
+            else if(child != NO_NODE)
+                node = child;
+            else if(wildcardChild != NO_NODE)
+                node = wildcardChild;
+            else
+                break;
+        }
+        int numEnds = (Long.SIZE - Long.numberOfLeadingZeros(pathKey) + pathNodeBits - 1) / pathNodeBits;
+        if((numEnds + 1) * pathNodeBits > keyBits)
+            return NO_PATH_KEY;
+        return pathKey | (long) (node + 1) << (numEnds * pathNodeBits);
+    }
+
+    /**
+     * @param dataBytes
+     * @return List<String> labels of the matching rows (in the table order)
+     */
+    public List<String> findMatchingLabels(byte[] dataBytes) {
+        int[] matchingRows = findMatchingRows(dataBytes);
+        List<String> labels = new ArrayList<String>(matchingRows.length);
+        for(int row : matchingRows)
+            labels.add(rowLabels[row]);
+        return labels;
+    }
+
+    public String getLabel(int row) {
+        return rowLabels[row];
+    }
+
+    /**
+     * Size of the compiled rule set.
+     */
+    public int getRuleCount() { return rowLabels.length; }
+    public int getTrieNodeCount() { return nodeRows.length; }
+    public int getDenseNodeCount() { return numDenseNodes; }
+
+}
@@ -0,0 +1,357 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>APDU Rule Pack</h1>
+ * Binary form of the APDU instruction and status code tables, compiled from the human-edited
+ * CSV files in res/raw by the compileApduRulePack task of the app build (see main), and loaded
+ * by the app in one read instead of parsing the CSV files at runtime. The tables are validated
+ * when they are compiled, so a malformed row fails the build rather than being skipped (or
+ * silently matched as byte zero) on the device:
+ * <ul>
+ *     <li>desfire_ins, desfire_status, response_codes_status: B0,B1,LABEL</li>
+ *     <li>common_ins: INS,LABEL</li>
+ *     <li>detailed_common_ins: B0,B1,...,LABEL where "xx" matches any byte</li>
+ * </ul>
+ * The byte columns are two hex digits; in the status code tables, an "X" low nibble (e.g.,
+ * 63,CX) stands for all sixteen status words, which are expanded into rows when compiling.
+ * The labels of the two-byte and common tables are the rest of the line (they may contain
+ * commas). Blank lines are ignored.
+ *
+ * Pack layout (big endian): magic, version, number of tables, then for each table its name,
+ * number of rows and the rows (number of byte columns, one byte per column with the
+ * wildcard flag in a separate mask, and the UTF-8 label), followed by the CRC32 of all of the
+ * preceding bytes.
+ *
+ * @ref ApduUtils.getApduRulePack
+ * @ref ApduTableClassifier
+ * @see res/raw/desfire_ins
+ * @see res/raw/desfire_status
+ * @see res/raw/common_ins
+ * @see res/raw/response_codes_status
+ * @see res/raw/detailed_common_ins
+ */
+public class ApduRulePack {
+
+    public static final int PACK_MAGIC = 0x434d5250; // "CMRP"
+    public static final int PACK_VERSION = 1;
+    public static final String PACK_ASSET_NAME = "apdu_rules.pack";
+
+    public static final String DESFIRE_INS = "desfire_ins";
+    public static final String DESFIRE_STATUS = "desfire_status";
+    public static final String COMMON_INS = "common_ins";
+    public static final String STATUS_CODES = "response_codes_status";
+    public static final String DETAILED_INS = "detailed_common_ins";
+    public static final String[] TABLE_NAMES = { DESFIRE_INS, DESFIRE_STATUS, COMMON_INS, STATUS_CODES, DETAILED_INS };
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int MAX_PATTERN_BYTES = 255;
+    private static final String[] HEX_BYTES = new String[256];
+    static {
+        for(int b = 0; b < 256; b++)
+            HEX_BYTES[b] = String.format(Locale.ENGLISH, "%02X", b);
+    }
+
+    private final Map<String, List<String[]>> ruleTables;
+
+    private ApduRulePack(Map<String, List<String[]>> tables) {
+        ruleTables = tables;
+    }
+
+    /**
+     * @param tableName one of TABLE_NAMES
+     * @return List<String[]> rows in the CSV form (B0,...,LABEL) used by the classifiers
+     */
+    public List<String[]> getTable(String tableName) {
+        List<String[]> tableRows = ruleTables.get(tableName);
+        return tableRows == null ? new ArrayList<String[]>() : tableRows;
+    }
+
+    public ApduTableClassifier newClassifier() {
+        return new ApduTableClassifier(getTable(DESFIRE_INS), getTable(DESFIRE_STATUS), getTable(COMMON_INS),
+                                       getTable(STATUS_CODES), getTable(DETAILED_INS));
+    }
+
+    private static int getNumByteColumns(String tableName) {
+        if(tableName.equals(COMMON_INS))
+            return 1;
+        else if(tableName.equals(DETAILED_INS))
+            return -1;
+        return 2;
+    }
+
+    private static boolean isStatusTable(String tableName) {
+        return tableName.equals(DESFIRE_STATUS) || tableName.equals(STATUS_CODES);
+    }
+
+    private static boolean isHexByte(String byteStr) {
+        return byteStr.length() == 2 && Character.digit(byteStr.charAt(0), 16) >= 0 && Character.digit(byteStr.charAt(1), 16) >= 0;
+    }
+
+    /**
+     * Validates and compiles the rows of a CSV table.
+     * @param tableName one of TABLE_NAMES
+     * @param csvStream (closed when done)
+     * @param errors the messages for the malformed rows are added here ("table:line: message")
+     * @return List<String[]> compiled rows
+     * @throws IOException
+     */
+    public static List<String[]> compileTable(String tableName, InputStream csvStream, List<String> errors) throws IOException {
+        List<String[]> tableRows = new ArrayList<String[]>();
+        int numByteColumns = getNumByteColumns(tableName);
+        BufferedReader br = new BufferedReader(new InputStreamReader(csvStream, UTF8));
+        try {
+            String csvLine;
+            for(int lineNumber = 1; (csvLine = br.readLine()) != null; lineNumber++) {
+                if(csvLine.trim().length() == 0)
+                    continue;
+                String errorPrefix = String.format(Locale.ENGLISH, "%s:%d: ", tableName, lineNumber);
+                String[] cells = csvLine.split(",");
+                int rowByteColumns = numByteColumns < 0 ? cells.length - 1 : numByteColumns;
+                if(rowByteColumns < 1 || cells.length <= rowByteColumns) {
+                    errors.add(errorPrefix + "expected " + (numByteColumns < 0 ? "at least one byte column" : numByteColumns + " byte column(s)") +
+                               " and a label: " + csvLine);
+                    continue;
+                }
+                else if(rowByteColumns > MAX_PATTERN_BYTES) {
+                    errors.add(errorPrefix + "too many byte columns: " + csvLine);
+                    continue;
+                }
+                String label = numByteColumns < 0 ? cells[cells.length - 1] : joinCells(cells, rowByteColumns);
+                if(label.trim().length() == 0) {
+                    errors.add(errorPrefix + "empty label: " + csvLine);
+                    continue;
+                }
+                int nibbleWildcard = -1;
+                boolean rowValid = true;
+                for(int b = 0; b < rowByteColumns && rowValid; b++) {
+                    String byteStr = cells[b];
+                    if(isHexByte(byteStr))
+                        continue;
+                    else if(numByteColumns < 0 && byteStr.equals(ApduPatternTrie.WILDCARD_BYTE))
+                        continue;
+                    else if(isStatusTable(tableName) && b == 1 && byteStr.length() == 2 &&
+                            Character.digit(byteStr.charAt(0), 16) >= 0 && Character.toUpperCase(byteStr.charAt(1)) == 'X')
+                        nibbleWildcard = b;
+                    else {
+                        errors.add(errorPrefix + "invalid byte column \"" + byteStr + "\": " + csvLine);
+                        rowValid = false;
+                    }
+                }
+                if(!rowValid)
+                    continue;
+                String[] tableRow = new String[rowByteColumns + 1];
+                for(int b = 0; b < rowByteColumns; b++)
+                    tableRow[b] = cells[b];
+                tableRow[rowByteColumns] = label;
+                if(nibbleWildcard < 0) {
+                    tableRows.add(tableRow);
+                    continue;
+                }
+                for(int nibble = 0; nibble < 16; nibble++) {
+                    String[] expandedRow = tableRow.clone();
+                    expandedRow[nibbleWildcard] = String.format(Locale.ENGLISH, "%c%X", tableRow[nibbleWildcard].charAt(0), nibble);
+                    tableRows.add(expandedRow);
+                }
+            }
+        } finally {
+            csvStream.close();
+        }
+        return tableRows;
+    }
+
+    private static String joinCells(String[] cells, int firstCell) {
+        StringBuilder sbJoined = new StringBuilder(cells[firstCell]);
+        for(int c = firstCell + 1; c < cells.length; c++) {
+            sbJoined.append(',');
+            sbJoined.append(cells[c]);
+        }
+        return sbJoined.toString();
+    }
+
+    /**
+     * Writes the compiled tables as a rule pack.
+     * @param fout
+     * @param tables table name -> compiled rows
+     * @throws IOException
+     */
+    public static void writePack(OutputStream fout, Map<String, List<String[]>> tables) throws IOException {
+        ByteArrayOutputStream packBuf = new ByteArrayOutputStream(32 * 1024);
+        DataOutputStream dout = new DataOutputStream(packBuf);
+        dout.writeInt(PACK_MAGIC);
+        dout.writeInt(PACK_VERSION);
+        dout.writeShort(tables.size());
+        for(Map.Entry<String, List<String[]>> table : tables.entrySet()) {
+            dout.writeUTF(table.getKey());
+            dout.writeInt(table.getValue().size());
+            for(String[] tableRow : table.getValue()) {
+                int numByteColumns = tableRow.length - 1;
+                dout.writeByte(numByteColumns);
+                for(int b = 0; b < numByteColumns; b++)
+                    dout.writeByte(tableRow[b].equals(ApduPatternTrie.WILDCARD_BYTE) ? 0 : ByteUtils.hexString2Byte(tableRow[b]));
+                for(int b = 0; b < numByteColumns; b++)
+                    dout.writeByte(tableRow[b].equals(ApduPatternTrie.WILDCARD_BYTE) ? 1 : 0);
+                byte[] labelBytes = tableRow[numByteColumns].getBytes(UTF8);
+                if(numByteColumns > MAX_PATTERN_BYTES || labelBytes.length > 0xffff)
+                    throw new IOException("APDU rule too large for the rule pack: " + tableRow[numByteColumns]);
+                dout.writeShort(labelBytes.length);
+                dout.write(labelBytes);
+            }
+        }
+        dout.flush();
+        CRC32 crc = new CRC32();
+        crc.update(packBuf.toByteArray());
+        dout.writeInt((int) crc.getValue());
+        dout.flush();
+        packBuf.writeTo(fout);
+        fout.flush();
+    }
+
+    /**
+     * Compiles the CSV tables without going through a pack file (the app falls back to this when
+     * the pack asset cannot be loaded), with the same validation as the build.
+     * @param csvStreams one stream per table in the order of TABLE_NAMES (all closed when done)
+     * @return ApduRulePack
+     * @throws IOException if a table cannot be read or has malformed rows (listed in the message)
+     */
+    public static ApduRulePack compileTables(InputStream[] csvStreams) throws IOException {
+        if(csvStreams.length != TABLE_NAMES.length)
+            throw new IllegalArgumentException("Expected " + TABLE_NAMES.length + " APDU tables.");
+        Map<String, List<String[]>> tables = new LinkedHashMap<String, List<String[]>>();
+        List<String> errors = new ArrayList<String>();
+        try {
+            for(int t = 0; t < TABLE_NAMES.length; t++)
+                tables.put(TABLE_NAMES[t], compileTable(TABLE_NAMES[t], csvStreams[t], errors));
+        } finally {
+            for(InputStream csvStream : csvStreams)
+                csvStream.close();
+        }
+        if(!errors.isEmpty()) {
+            StringBuilder errorMsg = new StringBuilder();
+            errorMsg.append(errors.size()).append(" malformed row(s) in the APDU tables:");
+            for(String error : errors)
+                errorMsg.append('\n').append(error);
+            throw new IOException(errorMsg.toString());
+        }
+        return new ApduRulePack(tables);
+    }
+
+    /**
+     * Loads a rule pack (in one read of the stream, which is closed).
+     * @param packStream
+     * @return ApduRulePack
+     * @throws IOException if the pack is corrupted or of another version
+     */
+    public static ApduRulePack readPack(InputStream packStream) throws IOException {
+        byte[] packBytes;
+        try {
+            ByteArrayOutputStream packBuf = new ByteArrayOutputStream(Math.max(packStream.available(), 4096));
+            byte[] readBuf = new byte[Math.max(packStream.available(), 4096)];
+            int numRead;
+            while((numRead = packStream.read(readBuf)) > 0)
+                packBuf.write(readBuf, 0, numRead);
+            packBytes = packBuf.toByteArray();
+        } finally {
+            packStream.close();
+        }
+        return readPack(packBytes);
+    }
+
+    public static ApduRulePack readPack(byte[] packBytes) throws IOException {
+        if(packBytes.length < 14)
+            throw new IOException("Truncated APDU rule pack.");
+        CRC32 crc = new CRC32();
+        crc.update(packBytes, 0, packBytes.length - 4);
+        ByteBuffer packBuf = ByteBuffer.wrap(packBytes);
+        if(packBuf.getInt(packBytes.length - 4) != (int) crc.getValue())
+            throw new IOException("The APDU rule pack is corrupted (checksum mismatch).");
+        else if(packBuf.getInt() != PACK_MAGIC || packBuf.getInt() != PACK_VERSION)
+            throw new IOException("Unsupported APDU rule pack format.");
+        Map<String, List<String[]>> tables = new LinkedHashMap<String, List<String[]>>();
+        try {
+            int numTables = packBuf.getShort() & 0xffff;
+            for(int t = 0; t < numTables; t++) {
+                String tableName = readString(packBuf, packBuf.getShort() & 0xffff);
+                int numRows = packBuf.getInt();
+                List<String[]> tableRows = new ArrayList<String[]>(numRows);
+                for(int row = 0; row < numRows; row++) {
+                    int numByteColumns = packBuf.get() & 0xff;
+                    String[] tableRow = new String[numByteColumns + 1];
+                    byte[] patternBytes = new byte[numByteColumns];
+                    packBuf.get(patternBytes);
+                    for(int b = 0; b < numByteColumns; b++)
+                        tableRow[b] = packBuf.get() != 0 ? ApduPatternTrie.WILDCARD_BYTE : HEX_BYTES[patternBytes[b] & 0xff];
+                    tableRow[numByteColumns] = readString(packBuf, packBuf.getShort() & 0xffff);
+                    tableRows.add(tableRow);
+                }
+                tables.put(tableName, tableRows);
+            }
+        } catch(BufferUnderflowException bue) {
+            throw new IOException("Truncated APDU rule pack.");
+        }
+        return new ApduRulePack(tables);
+    }
+
+    private static String readString(ByteBuffer packBuf, int numBytes) {
+        String str = new String(packBuf.array(), packBuf.position(), numBytes, UTF8);
+        packBuf.position(packBuf.position() + numBytes);
+        return str;
+    }
+
+    /**
+     * Compiles the tables in a directory (the app build runs this as the compileApduRulePack
+     * task) and exits with status 1 listing the malformed rows if there are any.
+     * @param args res/raw directory, output pack file
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length != 2) {
+            System.err.println("Usage: ApduRulePack <res/raw directory> <output pack file>");
+            System.exit(2);
+        }
+        Map<String, List<String[]>> tables = new LinkedHashMap<String, List<String[]>>();
+        List<String> errors = new ArrayList<String>();
+        for(String tableName : TABLE_NAMES)
+            tables.put(tableName, compileTable(tableName, new FileInputStream(new File(args[0], tableName)), errors));
+        if(!errors.isEmpty()) {
+            for(String error : errors)
+                System.err.println(error);
+            System.err.println(errors.size() + " malformed row(s) in the APDU tables.");
+            System.exit(1);
+        }
+        File packFile = new File(args[1]);
+        if(packFile.getParentFile() != null)
+            packFile.getParentFile().mkdirs();
+        FileOutputStream fout = new FileOutputStream(packFile);
+        try {
+            writePack(fout, tables);
+        } finally {
+            fout.close();
+        }
+        int numRows = 0;
+        for(List<String[]> tableRows : tables.values())
+            numRows += tableRows.size();
+        System.out.println(String.format(Locale.ENGLISH, "Compiled %d APDU rules from %s into %s (%d bytes).",
+                                         numRows, Arrays.toString(TABLE_NAMES), packFile.getPath(), packFile.length()));
+    }
+
+}
@@ -0,0 +1,381 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <h1>APDU Table Classifier</h1>
+ * Classifies the payload bytes against the APDU instruction and status code tables, which are
+ * parsed and compiled once when the classifier is created into byte-indexed lookup tables:
+ * a 256x256 (CLA, INS) table, a 256x256 (SW1, SW2) table shared by the two status code tables,
+ * the rows of the common instructions by their INS byte, and the detailed byte patterns into a
+ * wildcard-aware trie (ApduPatternTrie). Classifying a frame then takes a few array reads plus
+ * one pass over the leading payload bytes, and gives the same labels in the same order as
+ * matching the payload against every table row (ApduClassifier).
+ *
+ * The classification strings are cached in a fixed-size, open-addressed table keyed by what
+ * the labels depend on: the length bucket (0, 1, 2 or more bytes), the CLA / INS bytes, the
+ * SW1 / SW2 status word entry and the trie paths followed by the detailed patterns. So a frame
+ * seen before (e.g., the repeated polling and anticollision frames) costs the key lookups and
+ * no longer rebuilds its label string. The few payloads whose trie walk forks into more paths
+ * than fit in the key are classified uncached. The cache is not thread safe: the log entries
+ * are classified on the UI thread.
+ *
+ * @ref ApduClassifier
+ * @ref ApduPatternTrie
+ * @see res/raw/desfire_ins
+ * @see res/raw/desfire_status
+ * @see res/raw/common_ins
+ * @see res/raw/response_codes_status
+ * @see res/raw/detailed_common_ins
+ */
+public class ApduTableClassifier implements PayloadClassifier {
+
+    private static final int BYTE_PAIR_KEYS = 256 * 256;
+    private static final String[] NO_LABELS = new String[0];
+    private static final int[] NO_ROWS = new int[0];
+
+    /**
+     * (CLA, INS) and (SW1, SW2) tables: the entry for a byte pair is one plus the index of its
+     * labels (0 if nothing is recognized).
+     */
+    private final char[] claInsEntries = new char[BYTE_PAIR_KEYS];
+    private final String[][] claInsLabels;
+    private final char[] statusWordEntries = new char[BYTE_PAIR_KEYS];
+    private final String[][] desfireStatusLabels, statusCodeLabels;
+
+    private final int[][] commonInsRows = new int[256][];
+    private final String[] commonInsLabels;
+
+    private final ApduPatternTrie detailedInsTrie;
+
+    /**
+     * Classification cache: CLASSIFICATION_CACHE_SIZE slots (a power of two) of packed keys and
+     * the classification strings, with linear probing over CACHE_PROBES slots (the first of
+     * them is overwritten when all are taken). A zero key marks an empty slot.
+     */
+    public static final int CLASSIFICATION_CACHE_BITS = 12;
+    public static final int CLASSIFICATION_CACHE_SIZE = 1 << CLASSIFICATION_CACHE_BITS;
+    private static final int CACHE_MASK = CLASSIFICATION_CACHE_SIZE - 1;
+    private static final int CACHE_PROBES = 4;
+    private static final int PATH_KEY_SHIFT = 34;
+
+    private final long[] cacheKeys = new long[CLASSIFICATION_CACHE_SIZE];
+    private final String[] cacheLabels = new String[CLASSIFICATION_CACHE_SIZE];
+    private int numCacheEntries = 0;
+    private long cacheHits = 0, cacheMisses = 0;
+
+    /**
+     * Constructor.
+     * @param desfireInsTable
+     * @param desfireStatusTable
+     * @param commonInsTable
+     * @param statusCodesTable
+     * @param detailedInsTable
+     */
+    public ApduTableClassifier(List<String[]> desfireInsTable, List<String[]> desfireStatusTable, List<String[]> commonInsTable,
+                               List<String[]> statusCodesTable, List<String[]> detailedInsTable) {
+
+        Map<Integer, List<String>> claInsGroups = groupByBytePair(desfireInsTable);
+        claInsLabels = new String[claInsGroups.size()][];
+        int labelsIndex = 0;
+        for(Map.Entry<Integer, List<String>> claIns : claInsGroups.entrySet()) {
+            claInsLabels[labelsIndex] = claIns.getValue().toArray(NO_LABELS);
+            claInsEntries[claIns.getKey()] = (char) ++labelsIndex;
+        }
+
+        Map<Integer, List<String>> desfireStatusGroups = groupByBytePair(desfireStatusTable);
+        Map<Integer, List<String>> statusCodeGroups = groupByBytePair(statusCodesTable);
+        List<Integer> statusWords = new ArrayList<Integer>(desfireStatusGroups.keySet());
+        for(Integer statusWord : statusCodeGroups.keySet()) {
+            if(!desfireStatusGroups.containsKey(statusWord))
+                statusWords.add(statusWord);
+        }
+        desfireStatusLabels = new String[statusWords.size()][];
+        statusCodeLabels = new String[statusWords.size()][];
+        for(int sw = 0; sw < statusWords.size(); sw++) {
+            Integer statusWord = statusWords.get(sw);
+            List<String> desfireLabels = desfireStatusGroups.get(statusWord), codeLabels = statusCodeGroups.get(statusWord);
+            desfireStatusLabels[sw] = desfireLabels == null ? NO_LABELS : desfireLabels.toArray(NO_LABELS);
+            statusCodeLabels[sw] = codeLabels == null ? NO_LABELS : codeLabels.toArray(NO_LABELS);
+            statusWordEntries[statusWord] = (char) (sw + 1);
+        }
+
+        List<List<Integer>> commonInsGroups = newBuckets(256);
+        commonInsLabels = new String[commonInsTable.size()];
+        for(int row = 0; row < commonInsTable.size(); row++) {
+            String[] csvLine = commonInsTable.get(row);
+            if(csvLine.length < 2)
+                continue;
+            commonInsLabels[row] = csvLine[1];
+            commonInsGroups.get(ByteUtils.hexString2Byte(csvLine[0]) & 0xff).add(row);
+        }
+        for(int ins = 0; ins < 256; ins++)
+            commonInsRows[ins] = toRowArray(commonInsGroups.get(ins));
+
+        detailedInsTrie = new ApduPatternTrie(detailedInsTable);
+    }
+
+    /**
+     * Groups the labels of the table rows by their two leading hex bytes (in the table order).
+     */
+    private static Map<Integer, List<String>> groupByBytePair(List<String[]> csvLines) {
+        Map<Integer, List<String>> labelsByPair = new LinkedHashMap<Integer, List<String>>();
+        for(String[] csvLine : csvLines) {
+            if(csvLine.length < 3)
+                continue;
+            Integer pairKey = Integer.valueOf(bytePairKey(ByteUtils.hexString2Byte(csvLine[0]), ByteUtils.hexString2Byte(csvLine[1])));
+            List<String> labels = labelsByPair.get(pairKey);
+            if(labels == null) {
+                labels = new ArrayList<String>(1);
+                labelsByPair.put(pairKey, labels);
+            }
+            labels.add(csvLine[2]);
+        }
+        return labelsByPair;
+    }
+
+    private static List<List<Integer>> newBuckets(int numBuckets) {
+        List<List<Integer>> buckets = new ArrayList<List<Integer>>(numBuckets);
+        for(int bucket = 0; bucket < numBuckets; bucket++)
+            buckets.add(new ArrayList<Integer>(0));
+        return buckets;
+    }
+
+    private static int[] toRowArray(List<Integer> rows) {
+        if(rows.isEmpty())
+            return NO_ROWS;
+        int[] rowArray = new int[rows.size()];
+        for(int r = 0; r < rowArray.length; r++)
+            rowArray[r] = rows.get(r);
+        return rowArray;
+    }
+
+    private static int bytePairKey(byte b0, byte b1) {
+        return ((b0 & 0xff) << 8) | (b1 & 0xff);
+    }
+
+    /**
+     * Parses the tables from the CSV streams (the streams are closed) with the rule pack
+     * compiler, so the classifier gives the same labels as the one loaded from the pack.
+     * @param desfireInsStream
+     * @param desfireStatusStream
+     * @param commonInsStream
+     * @param statusCodesStream
+     * @param detailedInsStream
+     * @return ApduTableClassifier
+     * @throws IOException if a table cannot be read or has malformed rows
+     * @ref ApduRulePack.compileTables
+     */
+    public static ApduTableClassifier loadFromStreams(InputStream desfireInsStream, InputStream desfireStatusStream,
+                                                      InputStream commonInsStream, InputStream statusCodesStream,
+                                                      InputStream detailedInsStream) throws IOException {
+        return ApduRulePack.compileTables(new InputStream[] { desfireInsStream, desfireStatusStream, commonInsStream,
+                                                              statusCodesStream, detailedInsStream }).newClassifier();
+    }
+
+    /**
+     * A classifier without any tables (which never recognizes anything).
+     * @return ApduTableClassifier
+     */
+    public static ApduTableClassifier newEmptyClassifier() {
+        List<String[]> emptyTable = new ArrayList<String[]>();
+        return new ApduTableClassifier(emptyTable, emptyTable, emptyTable, emptyTable, emptyTable);
+    }
+
+    /**
+     * Adds the label to the list of matches (when one is given) or to the comma separated
+     * classification string.
+     */
+    private static void addLabel(String label, StringBuilder sbApduList, List<String> matches) {
+        if(matches != null) {
+            matches.add(label);
+            return;
+        }
+        sbApduList.append(label);
+        sbApduList.append(", ");
+    }
+
+    private static void addLabels(String[] labels, StringBuilder sbApduList, List<String> matches) {
+        for(String label : labels)
+            addLabel(label, sbApduList, matches);
+    }
+
+    private void matchInstructionPair(byte[] dataBytes, StringBuilder sbApduList, List<String> matches) {
+        if(dataBytes.length < 2)
+            return;
+        int claIns = claInsEntries[bytePairKey(dataBytes[ApduClassifier.CLSIDX], dataBytes[ApduClassifier.INSIDX])];
+        if(claIns != 0)
+            addLabels(claInsLabels[claIns - 1], sbApduList, matches);
+    }
+
+    private int getStatusWordEntry(byte[] dataBytes) {
+        if(dataBytes.length < 2)
+            return 0;
+        return statusWordEntries[bytePairKey(dataBytes[dataBytes.length - 2], dataBytes[dataBytes.length - 1])];
+    }
+
+    /**
+     * Matches the INS byte (or the first byte of a one or two byte frame) against the common
+     * instructions, keeping the table order when both bytes of a two byte frame match rows.
+     */
+    private void matchCommonInstructions(byte[] dataBytes, StringBuilder sbApduList, List<String> matches) {
+        int[] insRows = dataBytes.length >= 2 ? commonInsRows[dataBytes[ApduClassifier.INSIDX] & 0xff] : NO_ROWS;
+        int[] clsRows = dataBytes.length == 1 || dataBytes.length == 2 ? commonInsRows[dataBytes[ApduClassifier.CLSIDX] & 0xff] : NO_ROWS;
+        if(insRows == clsRows)
+            clsRows = NO_ROWS;
+        int nextIns = 0, nextCls = 0;
+        while(nextIns < insRows.length || nextCls < clsRows.length) {
+            int row = nextCls >= clsRows.length || nextIns < insRows.length && insRows[nextIns] < clsRows[nextCls] ?
+                      insRows[nextIns++] : clsRows[nextCls++];
+            addLabel(commonInsLabels[row], sbApduList, matches);
+        }
+    }
+
+    private void matchDetailedInstructions(byte[] dataBytes, StringBuilder sbApduList, List<String> matches) {
+        for(int row : detailedInsTrie.findMatchingRows(dataBytes))
+            addLabel(detailedInsTrie.getLabel(row), sbApduList, matches);
+    }
+
+    /**
+     * Collects the labels recognized in the payload bytes (in the same order as the
+     * classification string) into the list.
+     */
+    private void matchAll(byte[] dataBytes, StringBuilder sbApduList, List<String> matches) {
+        int statusWord = getStatusWordEntry(dataBytes);
+        matchInstructionPair(dataBytes, sbApduList, matches);
+        if(statusWord != 0)
+            addLabels(desfireStatusLabels[statusWord - 1], sbApduList, matches);
+        matchCommonInstructions(dataBytes, sbApduList, matches);
+        if(statusWord != 0)
+            addLabels(statusCodeLabels[statusWord - 1], sbApduList, matches);
+        matchDetailedInstructions(dataBytes, sbApduList, matches);
+    }
+
+    /**
+     * Lookups of the individual tables (e.g., for the APDU tab).
+     * @param dataBytes
+     * @return List<String> of recognized instructions / status codes
+     */
+    public List<String> matchDesfireInstructions(byte[] dataBytes) {
+        List<String> matches = new ArrayList<String>();
+        matchInstructionPair(dataBytes, null, matches);
+        return matches;
+    }
+
+    public List<String> matchDesfireStatusCodes(byte[] dataBytes) {
+        int statusWord = getStatusWordEntry(dataBytes);
+        List<String> matches = new ArrayList<String>();
+        if(statusWord != 0)
+            addLabels(desfireStatusLabels[statusWord - 1], null, matches);
+        return matches;
+    }
+
+    public List<String> matchCommonInstructions(byte[] dataBytes) {
+        List<String> matches = new ArrayList<String>();
+        matchCommonInstructions(dataBytes, null, matches);
+        return matches;
+    }
+
+    public List<String> matchStatusCodes(byte[] dataBytes) {
+        int statusWord = getStatusWordEntry(dataBytes);
+        List<String> matches = new ArrayList<String>();
+        if(statusWord != 0)
+            addLabels(statusCodeLabels[statusWord - 1], null, matches);
+        return matches;
+    }
+
+    public List<String> matchDetailedInstructions(byte[] dataBytes) {
+        List<String> matches = new ArrayList<String>();
+        matchDetailedInstructions(dataBytes, null, matches);
+        return matches;
+    }
+
+    /**
+     * Packs everything the classification of the payload depends on into a nonzero key: the
+     * length bucket, the CLA / INS bytes (or the single byte), the status word entry and the
+     * end nodes of the trie paths of the detailed patterns.
+     * @return long key, or 0 when the payload cannot be cached (too many trie paths)
+     */
+    private long classificationKey(byte[] dataBytes) {
+        long pathKey = detailedInsTrie.findPathKey(dataBytes, Long.SIZE - PATH_KEY_SHIFT);
+        if(pathKey == ApduPatternTrie.NO_PATH_KEY)
+            return 0;
+        int length = dataBytes.length;
+        long key = Math.min(length, 3);
+        if(length >= 1)
+            key |= (dataBytes[ApduClassifier.CLSIDX] & 0xff) << 2;
+        if(length >= 2)
+            key |= (dataBytes[ApduClassifier.INSIDX] & 0xff) << 10;
+        key |= (long) getStatusWordEntry(dataBytes) << 18;
+        return key | pathKey << PATH_KEY_SHIFT;
+    }
+
+    @Override
+    public String classifyPayload(byte[] payloadBytes) {
+        long key = classificationKey(payloadBytes);
+        if(key == 0) {
+            cacheMisses++;
+            return classifyPayloadUncached(payloadBytes);
+        }
+        int homeSlot = (int) (key ^ key >>> 32) * 0x9e3779b9 >>> (32 - CLASSIFICATION_CACHE_BITS);
+        int storeSlot = homeSlot;
+        for(int probe = 0; probe < CACHE_PROBES; probe++) {
+            int slot = (homeSlot + probe) & CACHE_MASK;
+            if(cacheKeys[slot] == key) {
+                cacheHits++;
+                return cacheLabels[slot];
+            }
+            else if(cacheKeys[slot] == 0) {
+                storeSlot = slot;
+                numCacheEntries++;
+                break;
+            }
+        }
+        cacheMisses++;
+        String apduDesc = classifyPayloadUncached(payloadBytes);
+        cacheKeys[storeSlot] = key;
+        cacheLabels[storeSlot] = apduDesc;
+        return apduDesc;
+    }
+
+    /**
+     * Builds the classification string without going through the cache.
+     * @param payloadBytes
+     * @return String comma separated labels, or NONE_RECOGNIZED
+     */
+    public String classifyPayloadUncached(byte[] payloadBytes) {
+        StringBuilder sbApduList = new StringBuilder();
+        matchAll(payloadBytes, sbApduList, null);
+        if(sbApduList.length() >= 2)
+            return sbApduList.substring(0, sbApduList.length() - 2);
+        return NONE_RECOGNIZED;
+    }
+
+    /**
+     * Drops the cached classifications (the hit / miss counters are kept).
+     */
+    public void clearClassificationCache() {
+        Arrays.fill(cacheKeys, 0);
+        Arrays.fill(cacheLabels, null);
+        numCacheEntries = 0;
+    }
+
+    public long getCacheHits() { return cacheHits; }
+    public long getCacheMisses() { return cacheMisses; }
+    public int getCacheEntries() { return numCacheEntries; }
+
+    public String getCacheStatsSummary() {
+        long numLookups = cacheHits + cacheMisses;
+        return String.format(Locale.ENGLISH, "APDU classification cache: %d / %d entries, hits: %d, misses: %d (%.1f%% hits)",
+                             numCacheEntries, CLASSIFICATION_CACHE_SIZE, cacheHits, cacheMisses,
+                             numLookups == 0 ? 0.0 : 100.0 * cacheHits / numLookups);
+    }
+
+}
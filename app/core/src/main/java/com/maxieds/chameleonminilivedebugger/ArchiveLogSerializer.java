@@ -0,0 +1,288 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <h1>Archive Log Serializer</h1>
+ * Writes the block-compressed, seekable capture archive format (see CaptureArchive for the
+ * layout). The records are encoded into the current block as they are written; once the block
+ * is full, it is handed to a background thread which computes its checksum, compresses it and
+ * appends it to the file (in order), so the export loop only pays for the encoding. The block
+ * index and the trailer are written with the footer, which waits for the pending blocks. An
+ * export that fails before the footer has to abort() the serializer to stop the compressor
+ * thread and release the Deflater.
+ *
+ * @ref CaptureArchive
+ * @ref ExportTools.writeArchiveLogFile
+ */
+public class ArchiveLogSerializer implements LogSerializer {
+
+    public static final int DEFAULT_BLOCK_RECORDS = 4096;
+    public static final int DEFAULT_BLOCK_BYTES = 64 * 1024;
+
+    /**
+     * Number of full blocks that may wait for the compressor thread before the export loop
+     * blocks (bounds the memory used when the compression falls behind).
+     */
+    public static final int MAX_PENDING_BLOCKS = 4;
+
+    private final int maxBlockRecords;
+    private final int maxBlockBytes;
+    private final int compressionLevel;
+
+    private ExecutorService compressorThread = null;
+    private final Deque<Future<?>> pendingBlocks = new ArrayDeque<Future<?>>();
+    private ByteArrayOutputStream rawBlock;
+    private DataOutputStream rawOut;
+    private CaptureArchive.BlockHeader blockHeader;
+    private int lastRecordId = 0;
+    private long logTimeMillis = 0;
+
+    /**
+     * State of the archive file (only used by the compressor thread).
+     */
+    private Deflater deflater = null;
+    private long fileOffset = 0;
+    private final List<CaptureArchive.BlockHeader> blockIndex = new ArrayList<CaptureArchive.BlockHeader>();
+    private long numRawBytes = 0, numCompressedBytes = 0;
+
+    /**
+     * Constructor.
+     * @param blockRecords maximum number of records in a block
+     * @param blockBytes maximum size of the uncompressed records in a block
+     * @param level Deflater compression level
+     */
+    public ArchiveLogSerializer(int blockRecords, int blockBytes, int level) {
+        maxBlockRecords = Math.max(1, blockRecords);
+        maxBlockBytes = Math.max(1, blockBytes);
+        compressionLevel = level;
+    }
+
+    public ArchiveLogSerializer() {
+        this(DEFAULT_BLOCK_RECORDS, DEFAULT_BLOCK_BYTES, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    private void startBlock() {
+        rawBlock = new ByteArrayOutputStream(Math.min(maxBlockBytes, DEFAULT_BLOCK_BYTES) + 512);
+        rawOut = new DataOutputStream(rawBlock);
+        blockHeader = new CaptureArchive.BlockHeader();
+    }
+
+    @Override
+    public void writeHeader(OutputStream fout) throws IOException {
+        DataOutputStream dout = new DataOutputStream(fout);
+        dout.writeInt(CaptureArchive.ARCHIVE_MAGIC);
+        dout.writeInt(CaptureArchive.ARCHIVE_VERSION);
+        dout.flush();
+        fileOffset = CaptureArchive.FILE_HEADER_SIZE;
+        blockIndex.clear();
+        lastRecordId = 0;
+        logTimeMillis = 0;
+        deflater = new Deflater(compressionLevel);
+        compressorThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ArchiveLogSerializer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        startBlock();
+    }
+
+    @Override
+    public void writeLogRecord(OutputStream fout, int recordID, DecodedLogFrame logFrame) throws IOException {
+        byte[] payload = logFrame.getPayloadData();
+        logTimeMillis += logFrame.getDiffTimeMillis();
+        rawOut.writeByte(CaptureArchive.RECORD_LOG_FRAME);
+        rawOut.writeInt(recordID);
+        rawOut.writeByte(logFrame.getLogCode());
+        rawOut.writeByte(logFrame.getDataDirection());
+        rawOut.writeInt(logFrame.getDiffTimeMillis());
+        rawOut.writeLong(logTimeMillis);
+        rawOut.writeChar(payload.length);
+        rawOut.write(payload);
+        blockHeader.addRecord(recordID, logFrame.getLogCode(), logTimeMillis, true);
+        lastRecordId = recordID;
+        if(blockHeader.numRecords >= maxBlockRecords || rawOut.size() >= maxBlockBytes)
+            submitBlock(fout);
+    }
+
+    @Override
+    public void writeMetadataRecord(OutputStream fout, String metadataDesc) throws IOException {
+        byte[] descBytes = metadataDesc.getBytes(CaptureArchive.UTF8);
+        rawOut.writeByte(CaptureArchive.RECORD_METADATA);
+        rawOut.writeInt(lastRecordId);
+        rawOut.writeByte(0);
+        rawOut.writeByte(LogUtils.DATADIR_BIDIRECTIONAL);
+        rawOut.writeInt(0);
+        rawOut.writeLong(logTimeMillis);
+        rawOut.writeInt(descBytes.length);
+        rawOut.write(descBytes);
+        blockHeader.addRecord(lastRecordId, 0, logTimeMillis, false);
+        if(blockHeader.numRecords >= maxBlockRecords || rawOut.size() >= maxBlockBytes)
+            submitBlock(fout);
+    }
+
+    /**
+     * Hands the current block to the compressor thread (waiting for the oldest pending block
+     * when too many are queued) and starts the next one.
+     */
+    private void submitBlock(final OutputStream fout) throws IOException {
+        if(blockHeader.numRecords == 0)
+            return;
+        rawOut.flush();
+        final byte[] rawBytes = rawBlock.toByteArray();
+        final CaptureArchive.BlockHeader header = blockHeader;
+        startBlock();
+        while(pendingBlocks.size() >= MAX_PENDING_BLOCKS)
+            waitForBlock(pendingBlocks.removeFirst());
+        pendingBlocks.addLast(compressorThread.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    writeBlock(fout, header, rawBytes);
+                } catch(IOException ioe) {
+                    throw new IllegalStateException(ioe.getMessage(), ioe);
+                }
+            }
+        }));
+    }
+
+    private static void waitForBlock(Future<?> pendingBlock) throws IOException {
+        try {
+            pendingBlock.get();
+        } catch(ExecutionException ee) {
+            Throwable cause = ee.getCause() != null && ee.getCause().getCause() != null ? ee.getCause().getCause() : ee.getCause();
+            if(cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException("Unable to write the capture archive: " + ee.getMessage());
+        } catch(InterruptedException ie) {
+            throw new IOException("Interrupted while writing the capture archive.");
+        }
+    }
+
+    /**
+     * Compresses the block and appends it to the archive (on the compressor thread).
+     */
+    private void writeBlock(OutputStream fout, CaptureArchive.BlockHeader header, byte[] rawBytes) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(rawBytes, 0, rawBytes.length);
+        deflater.reset();
+        deflater.setInput(rawBytes);
+        deflater.finish();
+        ByteArrayOutputStream compressedBlock = new ByteArrayOutputStream(rawBytes.length / 2 + 64);
+        byte[] deflateBuf = new byte[8192];
+        while(!deflater.finished()) {
+            int numDeflated = deflater.deflate(deflateBuf);
+            compressedBlock.write(deflateBuf, 0, numDeflated);
+        }
+        header.rawLength = rawBytes.length;
+        header.compressedLength = compressedBlock.size();
+        header.rawCrc = (int) crc.getValue();
+        header.blockOffset = fileOffset;
+        DataOutputStream dout = new DataOutputStream(fout);
+        header.writeTo(dout);
+        compressedBlock.writeTo(dout);
+        dout.flush();
+        fileOffset += CaptureArchive.BLOCK_HEADER_SIZE + header.compressedLength;
+        numRawBytes += header.rawLength;
+        numCompressedBytes += header.compressedLength;
+        blockIndex.add(header);
+    }
+
+    /**
+     * Writes the block index and the trailer (on the compressor thread).
+     */
+    private void writeBlockIndex(OutputStream fout) throws IOException {
+        ByteArrayOutputStream indexBuf = new ByteArrayOutputStream(8 + blockIndex.size() * (8 + CaptureArchive.BLOCK_HEADER_SIZE));
+        DataOutputStream indexOut = new DataOutputStream(indexBuf);
+        indexOut.writeInt(CaptureArchive.INDEX_MAGIC);
+        indexOut.writeInt(blockIndex.size());
+        for(CaptureArchive.BlockHeader header : blockIndex) {
+            indexOut.writeLong(header.blockOffset);
+            header.writeTo(indexOut);
+        }
+        indexOut.flush();
+        byte[] indexBytes = indexBuf.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(indexBytes, 0, indexBytes.length);
+        DataOutputStream dout = new DataOutputStream(fout);
+        dout.write(indexBytes);
+        dout.writeLong(fileOffset);
+        dout.writeInt(indexBytes.length);
+        dout.writeInt((int) crc.getValue());
+        dout.writeInt(CaptureArchive.TRAILER_MAGIC);
+        dout.flush();
+        fileOffset += indexBytes.length + CaptureArchive.TRAILER_SIZE;
+    }
+
+    @Override
+    public void writeFooter(final OutputStream fout) throws IOException {
+        try {
+            submitBlock(fout);
+            pendingBlocks.addLast(compressorThread.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeBlockIndex(fout);
+                    } catch(IOException ioe) {
+                        throw new IllegalStateException(ioe.getMessage(), ioe);
+                    }
+                }
+            }));
+            while(!pendingBlocks.isEmpty())
+                waitForBlock(pendingBlocks.removeFirst());
+        } finally {
+            releaseCompressor();
+        }
+    }
+
+    /**
+     * Drops the pending blocks of a failed export, stops the compressor thread and releases the
+     * Deflater (nothing to do once the footer was written).
+     */
+    public void abort() {
+        releaseCompressor();
+    }
+
+    private void releaseCompressor() {
+        if(compressorThread == null)
+            return;
+        for(Future<?> pendingBlock : pendingBlocks)
+            pendingBlock.cancel(false);
+        pendingBlocks.clear();
+        final Deflater compressorDeflater = deflater;
+        compressorThread.submit(new Runnable() {
+            @Override
+            public void run() {
+                compressorDeflater.end(); // after the block being compressed, if any
+            }
+        });
+        compressorThread.shutdown();
+        compressorThread = null;
+    }
+
+    /**
+     * The sizes below are complete once the footer was written.
+     */
+    public int getBlockCount() { return blockIndex.size(); }
+    public long getRawBytes() { return numRawBytes; }
+    public long getCompressedBytes() { return numCompressedBytes; }
+    public long getArchiveLength() { return fileOffset; }
+
+}
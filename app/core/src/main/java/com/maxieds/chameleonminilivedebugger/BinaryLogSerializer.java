@@ -0,0 +1,36 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <h1>Binary Log Serializer</h1>
+ * Writes the native binary log format returned by the LOGDOWNLOAD command. The record
+ * timestamps are the running offsets of the entries from the start of the log; metadata records
+ * have no representation in this format and are skipped.
+ *
+ * @ref ExportTools.writeBinaryLogFile
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+ */
+public class BinaryLogSerializer implements LogSerializer {
+
+    private short localTicks = 0;
+
+    @Override
+    public void writeHeader(OutputStream fout) throws IOException {
+        localTicks = 0;
+    }
+
+    @Override
+    public void writeLogRecord(OutputStream fout, int recordID, DecodedLogFrame logFrame) throws IOException {
+        fout.write(LogExportFormatter.packageBinaryLogData(logFrame.getLogCode(), logFrame.getPayloadData(), localTicks));
+        localTicks = LogExportFormatter.getNextOffsetTime(localTicks, logFrame.getDiffTimeMillis());
+    }
+
+    @Override
+    public void writeMetadataRecord(OutputStream fout, String metadataDesc) throws IOException {}
+
+    @Override
+    public void writeFooter(OutputStream fout) throws IOException {}
+
+}
@@ -0,0 +1,136 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * <h1>Byte Utils</h1>
+ * The byte / string codecs used to decode and display the log payloads. These only depend on
+ * the Java standard library (no Android logging or resources), so they can be run and
+ * benchmarked on a plain JVM.
+ *
+ * @ref Utils
+ */
+public class ByteUtils {
+
+    /**
+     * Converts a string representation of a two-digit byte into a corresponding byte type.
+     * @param byteStr
+     * @return byte representation of the String (0x00 if the string is not two digits)
+     */
+    public static byte hexString2Byte(String byteStr) {
+        if (byteStr.length() != 2) {
+            return 0x00;
+        }
+        int lsb = Character.digit(byteStr.charAt(1), 16);
+        int msb = Character.digit(byteStr.charAt(0), 16);
+        return (byte) (lsb | msb << 4);
+    }
+
+    /**
+     * Returns an ascii print character (or '.' representation for non-print characters) of the input byte.
+     * @param b
+     * @return char print character (or '.')
+     */
+    public static char byte2Ascii(byte b) {
+        if (b >= 32 && b <= 127) {
+            char ch = (char) b;
+            return ch;
+        }
+        else
+            return '.';
+    }
+
+    /**
+     * Returns an ascii string representing the byte array.
+     * @param bytes
+     * @return String ascii representation of the byte array
+     */
+    public static String bytes2Ascii(byte[] bytes) {
+        StringBuilder byteStr = new StringBuilder();
+        for(int b = 0; b < bytes.length; b++)
+            byteStr.append(String.valueOf(byte2Ascii(bytes[b])));
+        return byteStr.toString();
+    }
+
+    /**
+     * Returns a space-separated string of the input bytes in their two-digit
+     * hexadecimal format.
+     * @param bytes
+     * @return String hex string representation
+     */
+    public static String bytes2Hex(byte[] bytes) {
+        if(bytes == null)
+            return "<NULL>";
+        else if(bytes.length == 0)
+            return "";
+        StringBuilder hstr = new StringBuilder();
+        hstr.append(String.format(Locale.ENGLISH, "%02x", bytes[0]));
+        for(int b = 1; b < bytes.length; b++)
+            hstr.append(" " + String.format(Locale.ENGLISH, "%02x", bytes[b]));
+        return hstr.toString();
+    }
+
+    /**
+     * Finds the first occurrence of the pattern bytes in the input bytes.
+     * @param bytes
+     * @param pattern
+     * @return int index of the first match, or -1
+     */
+    public static int indexOf(byte[] bytes, byte[] pattern) {
+        for(int b = 0; b <= bytes.length - pattern.length; b++) {
+            int p = 0;
+            while(p < pattern.length && bytes[b + p] == pattern[p])
+                p++;
+            if(p == pattern.length)
+                return b;
+        }
+        return -1;
+    }
+
+    /**
+     * Computes a measure of entropy (i.e., how likely the payload data is to be encrypted) by
+     * compressing the input byte array and comparing the resulting size (in bytes) to the
+     * original array.
+     * @param inputBytes
+     * @return entropy rating
+     */
+    public static double computeByteArrayEntropy(byte[] inputBytes) {
+        Deflater cmpr = new Deflater();
+        cmpr.setLevel(Deflater.BEST_COMPRESSION);
+        cmpr.setInput(inputBytes);
+        cmpr.finish();
+        int cmprByteCount = 0;
+        while(!cmpr.finished()) {
+            cmprByteCount += cmpr.deflate(new byte[1024]);
+        }
+        return (double) cmprByteCount / inputBytes.length;
+    }
+
+    /**
+     * Parses a CSV (comma delimited) file.
+     * @param fdStream
+     * @return List of String[] separated line entries
+     * @throws IOException
+     * @see ApduClassifier
+     * @see res/raw/*
+     */
+    public static List<String[]> readCSVFile(InputStream fdStream) throws IOException {
+        List<String[]> csvLines = new ArrayList<String[]>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(fdStream));
+        String csvLine;
+        while((csvLine = br.readLine()) != null) {
+            String[] parsedRow = csvLine.split(",");
+            csvLines.add(parsedRow);
+        }
+        fdStream.close();
+        return csvLines;
+    }
+
+}
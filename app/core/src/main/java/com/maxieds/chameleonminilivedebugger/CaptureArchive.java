@@ -0,0 +1,458 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <h1>Capture Archive</h1>
+ * Reader of the block-compressed capture archive written by the ArchiveLogSerializer. The
+ * records are stored in independently Deflate-compressed blocks, each of which starts with an
+ * uncompressed header holding the record id and log time ranges of the block, a bitmap of the
+ * log codes in it and the CRC32 of its uncompressed records. A copy of the block headers (with
+ * the file offsets of the blocks) is written as an index at the end of the file, so the archive
+ * is opened by reading only the trailer and the index:
+ * <pre>
+ *     int ARCHIVE_MAGIC, int ARCHIVE_VERSION
+ *     blocks: header, compressed records
+ *     index: int INDEX_MAGIC, int numBlocks, (long blockOffset, header)...
+ *     trailer: long indexOffset, int indexLength, int indexCrc, int TRAILER_MAGIC
+ * </pre>
+ * The random access by record id, the range exports and the searches only read and inflate the
+ * blocks whose header can match (the most recently inflated block is kept).
+ *
+ * @ref ArchiveLogSerializer
+ * @ref ExportTools.writeArchiveLogFile
+ */
+public class CaptureArchive {
+
+    public static final int ARCHIVE_MAGIC = 0x434d4c41;  // "CMLA"
+    public static final int ARCHIVE_VERSION = 1;
+    public static final int BLOCK_MAGIC = 0x424c4b31;    // "BLK1"
+    public static final int INDEX_MAGIC = 0x49445831;    // "IDX1"
+    public static final int TRAILER_MAGIC = 0x454e4431;  // "END1"
+    public static final int FILE_HEADER_SIZE = 8;
+    public static final int TRAILER_SIZE = 8 + 4 + 4 + 4;
+    public static final int LOG_CODE_BITMAP_SIZE = 256 / 8;
+    public static final int BLOCK_HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 4 + LOG_CODE_BITMAP_SIZE + 4 + 4 + 4;
+
+    /**
+     * Kinds of the archived records.
+     */
+    public static final byte RECORD_LOG_FRAME = LogRecordStore.RECORD_LOG_FRAME;
+    public static final byte RECORD_METADATA = LogRecordStore.RECORD_METADATA;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * <h1>Block Header</h1>
+     * Summary of the records in one compressed block of the archive.
+     */
+    public static class BlockHeader {
+
+        long blockOffset = -1;
+        int firstRecordId = -1, lastRecordId = -1;
+        long minLogTimeMillis = Long.MAX_VALUE, maxLogTimeMillis = Long.MIN_VALUE;
+        int numRecords = 0;
+        final byte[] logCodeBitmap = new byte[LOG_CODE_BITMAP_SIZE];
+        int rawLength, compressedLength, rawCrc;
+
+        void addRecord(int recordId, int logCode, long logTimeMillis, boolean logFrame) {
+            if(numRecords++ == 0)
+                firstRecordId = recordId;
+            lastRecordId = recordId;
+            minLogTimeMillis = Math.min(minLogTimeMillis, logTimeMillis);
+            maxLogTimeMillis = Math.max(maxLogTimeMillis, logTimeMillis);
+            if(logFrame)
+                logCodeBitmap[(logCode & 0xff) >>> 3] |= (byte) (1 << (logCode & 0x07));
+        }
+
+        void writeTo(DataOutputStream dout) throws IOException {
+            dout.writeInt(BLOCK_MAGIC);
+            dout.writeInt(firstRecordId);
+            dout.writeInt(lastRecordId);
+            dout.writeLong(minLogTimeMillis);
+            dout.writeLong(maxLogTimeMillis);
+            dout.writeInt(numRecords);
+            dout.write(logCodeBitmap);
+            dout.writeInt(rawLength);
+            dout.writeInt(compressedLength);
+            dout.writeInt(rawCrc);
+        }
+
+        static BlockHeader readFrom(ByteBuffer buf) throws IOException {
+            if(buf.getInt() != BLOCK_MAGIC)
+                throw new IOException("Invalid block header in the capture archive.");
+            BlockHeader header = new BlockHeader();
+            header.firstRecordId = buf.getInt();
+            header.lastRecordId = buf.getInt();
+            header.minLogTimeMillis = buf.getLong();
+            header.maxLogTimeMillis = buf.getLong();
+            header.numRecords = buf.getInt();
+            buf.get(header.logCodeBitmap);
+            header.rawLength = buf.getInt();
+            header.compressedLength = buf.getInt();
+            header.rawCrc = buf.getInt();
+            if(header.rawLength < 0 || header.compressedLength < 0 || header.numRecords < 0)
+                throw new IOException("Invalid block header in the capture archive.");
+            return header;
+        }
+
+        public long getBlockOffset() { return blockOffset; }
+        public int getFirstRecordId() { return firstRecordId; }
+        public int getLastRecordId() { return lastRecordId; }
+        public long getMinLogTimeMillis() { return minLogTimeMillis; }
+        public long getMaxLogTimeMillis() { return maxLogTimeMillis; }
+        public int getRecordCount() { return numRecords; }
+        public int getRawLength() { return rawLength; }
+        public int getCompressedLength() { return compressedLength; }
+
+        public boolean hasLogCode(int logCode) {
+            return (logCodeBitmap[(logCode & 0xff) >>> 3] & (1 << (logCode & 0x07))) != 0;
+        }
+
+        public boolean overlapsRecordIds(int fromRecordId, int toRecordId) {
+            return numRecords > 0 && firstRecordId <= toRecordId && lastRecordId >= fromRecordId;
+        }
+
+        public boolean overlapsLogTime(long fromMillis, long toMillis) {
+            return numRecords > 0 && minLogTimeMillis <= toMillis && maxLogTimeMillis >= fromMillis;
+        }
+
+    }
+
+    /**
+     * <h1>Archive Record</h1>
+     * A LIVE log frame or metadata record read back from the archive.
+     */
+    public static class ArchiveRecord {
+
+        final byte recordKind;
+        final int recordId, logCode, dataDirection, diffTimeMillis;
+        final long logTimeMillis;
+        final byte[] payload;
+        final String metadataDesc;
+
+        ArchiveRecord(byte kind, int recordId, int logCode, int dataDir, int diffTimeMs, long logTimeMillis, byte[] payload, String metadataDesc) {
+            this.recordKind = kind;
+            this.recordId = recordId;
+            this.logCode = logCode;
+            this.dataDirection = dataDir;
+            this.diffTimeMillis = diffTimeMs;
+            this.logTimeMillis = logTimeMillis;
+            this.payload = payload;
+            this.metadataDesc = metadataDesc;
+        }
+
+        public boolean isLogFrame() { return recordKind == RECORD_LOG_FRAME; }
+        public int getRecordId() { return recordId; }
+        public int getLogCode() { return logCode; }
+        public int getDataDirection() { return dataDirection; }
+        public int getDiffTimeMillis() { return diffTimeMillis; }
+        public long getLogTimeMillis() { return logTimeMillis; }
+        public byte[] getPayload() { return payload; }
+        public String getMetadataDesc() { return metadataDesc; }
+
+        /**
+         * Decodes the record as a LIVE log frame.
+         * @param logDecoder
+         * @return DecodedLogFrame
+         */
+        public DecodedLogFrame decodeLogFrame(LogDecoder logDecoder) {
+            return logDecoder.decodePayload(logCode, diffTimeMillis, payload);
+        }
+
+    }
+
+    private final File archiveFile;
+    private final RandomAccessFile raFile;
+    private final List<BlockHeader> blockIndex;
+    private final Inflater inflater = new Inflater();
+    private int cachedBlock = -1;
+    private List<ArchiveRecord> cachedRecords = null;
+    private long numBlocksRead = 0, numBytesRead = 0;
+
+    /**
+     * Opens the archive and reads its block index.
+     * @param fd
+     * @throws IOException when the file is not a complete capture archive
+     */
+    public CaptureArchive(File fd) throws IOException {
+        archiveFile = fd;
+        raFile = new RandomAccessFile(fd, "r");
+        try {
+            blockIndex = readBlockIndex();
+        } catch(IOException ioe) {
+            raFile.close();
+            throw ioe;
+        }
+    }
+
+    private byte[] readFully(long offset, int length) throws IOException {
+        byte[] data = new byte[length];
+        raFile.seek(offset);
+        raFile.readFully(data);
+        numBytesRead += length;
+        return data;
+    }
+
+    private static boolean checkCrc(byte[] data, int expectedCrc) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue() == expectedCrc;
+    }
+
+    private List<BlockHeader> readBlockIndex() throws IOException {
+        long fileLength = raFile.length();
+        if(fileLength < FILE_HEADER_SIZE + TRAILER_SIZE)
+            throw new IOException("The capture archive " + archiveFile.getName() + " is truncated.");
+        ByteBuffer fileHeader = ByteBuffer.wrap(readFully(0, FILE_HEADER_SIZE));
+        if(fileHeader.getInt() != ARCHIVE_MAGIC || fileHeader.getInt() != ARCHIVE_VERSION)
+            throw new IOException("The file " + archiveFile.getName() + " is not a supported capture archive.");
+        ByteBuffer trailer = ByteBuffer.wrap(readFully(fileLength - TRAILER_SIZE, TRAILER_SIZE));
+        long indexOffset = trailer.getLong();
+        int indexLength = trailer.getInt();
+        int indexCrc = trailer.getInt();
+        if(trailer.getInt() != TRAILER_MAGIC || indexOffset < FILE_HEADER_SIZE || indexLength < 8 ||
+           indexOffset + indexLength != fileLength - TRAILER_SIZE)
+            throw new IOException("The capture archive " + archiveFile.getName() + " has no valid block index (the export did not finish).");
+        byte[] indexBytes = readFully(indexOffset, indexLength);
+        if(!checkCrc(indexBytes, indexCrc))
+            throw new IOException("The block index of the capture archive " + archiveFile.getName() + " is corrupted.");
+        try {
+            ByteBuffer indexBuf = ByteBuffer.wrap(indexBytes);
+            if(indexBuf.getInt() != INDEX_MAGIC)
+                throw new IOException("The block index of the capture archive " + archiveFile.getName() + " is corrupted.");
+            int numBlocks = indexBuf.getInt();
+            List<BlockHeader> headers = new ArrayList<BlockHeader>(numBlocks);
+            for(int block = 0; block < numBlocks; block++) {
+                long blockOffset = indexBuf.getLong();
+                BlockHeader header = BlockHeader.readFrom(indexBuf);
+                if(blockOffset < FILE_HEADER_SIZE || blockOffset + BLOCK_HEADER_SIZE + header.compressedLength > indexOffset)
+                    throw new IOException("The block index of the capture archive " + archiveFile.getName() + " is corrupted.");
+                header.blockOffset = blockOffset;
+                headers.add(header);
+            }
+            return Collections.unmodifiableList(headers);
+        } catch(BufferUnderflowException bue) {
+            throw new IOException("The block index of the capture archive " + archiveFile.getName() + " is truncated.");
+        }
+    }
+
+    public File getArchiveFile() { return archiveFile; }
+    public int getBlockCount() { return blockIndex.size(); }
+    public BlockHeader getBlockHeader(int block) { return blockIndex.get(block); }
+    public long getBlocksRead() { return numBlocksRead; }
+    public long getBytesRead() { return numBytesRead; }
+
+    public int getRecordCount() {
+        int numRecords = 0;
+        for(BlockHeader header : blockIndex)
+            numRecords += header.numRecords;
+        return numRecords;
+    }
+
+    /**
+     * Reads, verifies and decodes the records of the block.
+     * @param block
+     * @return List<ArchiveRecord> records of the block (in order)
+     * @throws IOException when the block fails its checksum
+     */
+    public List<ArchiveRecord> readBlock(int block) throws IOException {
+        if(block == cachedBlock)
+            return cachedRecords;
+        BlockHeader header = blockIndex.get(block);
+        byte[] blockBytes = readFully(header.blockOffset, BLOCK_HEADER_SIZE + header.compressedLength);
+        BlockHeader fileHeader = BlockHeader.readFrom(ByteBuffer.wrap(blockBytes, 0, BLOCK_HEADER_SIZE));
+        if(fileHeader.rawCrc != header.rawCrc || fileHeader.compressedLength != header.compressedLength)
+            throw new IOException("Block " + block + " of the capture archive does not match its index entry.");
+        byte[] rawBytes = new byte[header.rawLength];
+        inflater.reset();
+        inflater.setInput(blockBytes, BLOCK_HEADER_SIZE, header.compressedLength);
+        try {
+            int rawPos = 0;
+            while(rawPos < rawBytes.length && !inflater.finished()) {
+                int numInflated = inflater.inflate(rawBytes, rawPos, rawBytes.length - rawPos);
+                if(numInflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    break;
+                rawPos += numInflated;
+            }
+            if(rawPos != rawBytes.length)
+                throw new IOException("Block " + block + " of the capture archive is truncated.");
+        } catch(DataFormatException dfe) {
+            throw new IOException("Block " + block + " of the capture archive is corrupted: " + dfe.getMessage());
+        }
+        if(!checkCrc(rawBytes, header.rawCrc))
+            throw new IOException("Block " + block + " of the capture archive fails its checksum.");
+        List<ArchiveRecord> records = decodeRecords(rawBytes, header);
+        numBlocksRead++;
+        cachedBlock = block;
+        cachedRecords = records;
+        return records;
+    }
+
+    /**
+     * Decodes the records of a block (the encoding is written by ArchiveLogSerializer):
+     * <pre>
+     *     byte kind, int recordId, byte logCode, byte dataDir, int diffTimeMs, long logTimeMillis,
+     *     then char payloadLength, payload (LIVE log frames) or int length, UTF-8 description
+     * </pre>
+     */
+    private static List<ArchiveRecord> decodeRecords(byte[] rawBytes, BlockHeader header) throws IOException {
+        List<ArchiveRecord> records = new ArrayList<ArchiveRecord>(header.numRecords);
+        ByteBuffer rawBuf = ByteBuffer.wrap(rawBytes);
+        try {
+            for(int r = 0; r < header.numRecords; r++) {
+                byte kind = rawBuf.get();
+                int recordId = rawBuf.getInt();
+                int logCode = rawBuf.get() & 0xff;
+                int dataDir = rawBuf.get();
+                int diffTimeMs = rawBuf.getInt();
+                long logTimeMillis = rawBuf.getLong();
+                if(kind == RECORD_LOG_FRAME) {
+                    byte[] payload = new byte[rawBuf.getChar()];
+                    rawBuf.get(payload);
+                    records.add(new ArchiveRecord(kind, recordId, logCode, dataDir, diffTimeMs, logTimeMillis, payload, null));
+                }
+                else {
+                    int descLength = rawBuf.getInt();
+                    String metadataDesc = new String(rawBytes, rawBuf.position(), descLength, UTF8);
+                    rawBuf.position(rawBuf.position() + descLength);
+                    records.add(new ArchiveRecord(kind, recordId, logCode, dataDir, diffTimeMs, logTimeMillis, new byte[0], metadataDesc));
+                }
+            }
+        } catch(BufferUnderflowException bue) {
+            throw new IOException("The records of a capture archive block are truncated.");
+        } catch(IndexOutOfBoundsException ioobe) {
+            throw new IOException("The records of a capture archive block are corrupted.");
+        }
+        return records;
+    }
+
+    /**
+     * Finds the first block which can hold the record id (binary search over the index).
+     * @param recordId
+     * @return int block, or -1 if the record id is past the end of the archive
+     */
+    public int findBlock(int recordId) {
+        int lo = 0, hi = blockIndex.size();
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(blockIndex.get(mid).lastRecordId < recordId)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo < blockIndex.size() ? lo : -1;
+    }
+
+    /**
+     * Random access to the LIVE log frame with the record id (reads at most the blocks sharing
+     * the record id).
+     * @param recordId
+     * @return ArchiveRecord or null if there is no such frame
+     * @throws IOException
+     */
+    public ArchiveRecord getRecord(int recordId) throws IOException {
+        int firstBlock = findBlock(recordId);
+        for(int block = Math.max(0, firstBlock); firstBlock >= 0 && block < blockIndex.size() && blockIndex.get(block).firstRecordId <= recordId; block++) {
+            for(ArchiveRecord record : readBlock(block)) {
+                if(record.recordId == recordId && record.isLogFrame())
+                    return record;
+                else if(record.recordId > recordId)
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Exports the records with ids in the range with the serializer, reading only the blocks
+     * which overlap the range.
+     * @param fromRecordId
+     * @param toRecordId
+     * @param logSerializer
+     * @param fout
+     * @param logDecoder
+     * @return int number of records written
+     * @throws IOException
+     */
+    public int exportRange(int fromRecordId, int toRecordId, LogSerializer logSerializer, OutputStream fout, LogDecoder logDecoder) throws IOException {
+        int numWritten = 0;
+        logSerializer.writeHeader(fout);
+        int firstBlock = findBlock(fromRecordId);
+        for(int block = Math.max(0, firstBlock); firstBlock >= 0 && block < blockIndex.size() && blockIndex.get(block).firstRecordId <= toRecordId; block++) {
+            for(ArchiveRecord record : readBlock(block)) {
+                if(record.recordId < fromRecordId || record.recordId > toRecordId)
+                    continue;
+                if(record.isLogFrame())
+                    logSerializer.writeLogRecord(fout, record.recordId, record.decodeLogFrame(logDecoder));
+                else
+                    logSerializer.writeMetadataRecord(fout, record.metadataDesc);
+                numWritten++;
+            }
+        }
+        logSerializer.writeFooter(fout);
+        return numWritten;
+    }
+
+    /**
+     * Searches the LIVE log frames by log code and / or payload bytes. The blocks whose log code
+     * bitmap does not have the log code are skipped without being read.
+     * @param logCode log code to match, or -1 for any
+     * @param payloadPattern bytes which must occur in the payload, or null
+     * @param maxResults
+     * @return List<ArchiveRecord> matching frames (in order)
+     * @throws IOException
+     */
+    public List<ArchiveRecord> findRecords(int logCode, byte[] payloadPattern, int maxResults) throws IOException {
+        List<ArchiveRecord> matches = new ArrayList<ArchiveRecord>();
+        for(int block = 0; block < blockIndex.size() && matches.size() < maxResults; block++) {
+            if(logCode >= 0 && !blockIndex.get(block).hasLogCode(logCode))
+                continue;
+            for(ArchiveRecord record : readBlock(block)) {
+                if(!record.isLogFrame() || logCode >= 0 && record.logCode != logCode)
+                    continue;
+                if(payloadPattern != null && ByteUtils.indexOf(record.payload, payloadPattern) < 0)
+                    continue;
+                matches.add(record);
+                if(matches.size() >= maxResults)
+                    break;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Summary of the archive layout (e.g., for the export status message).
+     * @return String
+     */
+    public String getSummary() {
+        long rawBytes = 0, compressedBytes = 0;
+        for(BlockHeader header : blockIndex) {
+            rawBytes += header.rawLength;
+            compressedBytes += header.compressedLength;
+        }
+        return String.format(Locale.ENGLISH, "%s: %d records in %d blocks, %d KB compressed from %d KB (%.1f%%)",
+                             archiveFile.getName(), getRecordCount(), blockIndex.size(), compressedBytes / 1024, rawBytes / 1024,
+                             rawBytes == 0 ? 0.0 : 100.0 * compressedBytes / rawBytes);
+    }
+
+    public void close() throws IOException {
+        inflater.end();
+        raFile.close();
+    }
+
+}
@@ -0,0 +1,321 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * <h1>Capture Journal</h1>
+ * Memory-mapped, append-only journal of the LIVE log frames captured in the session. Every
+ * frame is appended in the native binary log format (the same bytes written by
+ * ExportTools.writeBinaryLogFile, i.e., a 4-byte header with the log code, payload length and
+ * running offset time followed by the payload), so exporting the binary log is a plain copy of
+ * the journal file. A sidecar index file holds one entry per frame (the end offset of the frame
+ * in the journal and its exact diff time) for the random access to the frames by their index.
+ *
+ * Both files are mapped in fixed size segments as they grow: the writes are memory copies and
+ * the OS pages the data out to disk, so the frames survive the process dying and older
+ * payloads can be dropped from the heap and read back from the mapping on demand. The index
+ * end offsets are never zero for a written frame, which marks where the index ends after an
+ * unclean shutdown (the mapped files are only trimmed to their real length on close).
+ *
+ * The journal is not thread safe: it is only written and read from the UI thread.
+ *
+ * @ref LogRecordStore.attachJournal
+ * @ref ExportTools.writeBinaryLogFile
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+ */
+public class CaptureJournal {
+
+    public static final int SEGMENT_BITS = 20;
+    public static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    public static final String INDEX_FILE_EXT = ".idx";
+    public static final int INDEX_ENTRY_SIZE = 8;
+
+    /**
+     * The payload length is a single byte in the native binary log format.
+     */
+    public static final int MAX_PAYLOAD_SIZE = 0xff;
+
+    /**
+     * The index stores the frame end offsets as unsigned 32-bit values.
+     */
+    public static final long MAX_JOURNAL_LENGTH = 0xffffffffL;
+
+    /**
+     * Segmented read / write mapping of a file that grows as it is written.
+     */
+    private static class MappedFile {
+
+        private final File mappedFile;
+        private final RandomAccessFile raFile;
+        private final FileChannel fileChannel;
+        private MappedByteBuffer[] segments = new MappedByteBuffer[8];
+
+        MappedFile(File fd) throws IOException {
+            mappedFile = fd;
+            raFile = new RandomAccessFile(fd, "rw");
+            raFile.setLength(0);
+            fileChannel = raFile.getChannel();
+        }
+
+        private MappedByteBuffer getSegment(int segment) throws IOException {
+            if(segment >= segments.length) {
+                MappedByteBuffer[] newSegments = new MappedByteBuffer[Math.max(2 * segments.length, segment + 1)];
+                System.arraycopy(segments, 0, newSegments, 0, segments.length);
+                segments = newSegments;
+            }
+            if(segments[segment] == null)
+                segments[segment] = fileChannel.map(FileChannel.MapMode.READ_WRITE, (long) segment << SEGMENT_BITS, SEGMENT_SIZE);
+            return segments[segment];
+        }
+
+        void write(long pos, byte[] src, int srcOffset, int length) throws IOException {
+            while(length > 0) {
+                MappedByteBuffer segBuf = getSegment((int) (pos >>> SEGMENT_BITS));
+                int segPos = (int) (pos & SEGMENT_MASK);
+                int chunkLength = Math.min(length, SEGMENT_SIZE - segPos);
+                segBuf.position(segPos);
+                segBuf.put(src, srcOffset, chunkLength);
+                pos += chunkLength;
+                srcOffset += chunkLength;
+                length -= chunkLength;
+            }
+        }
+
+        void read(long pos, byte[] dest, int destOffset, int length) throws IOException {
+            while(length > 0) {
+                MappedByteBuffer segBuf = getSegment((int) (pos >>> SEGMENT_BITS));
+                int segPos = (int) (pos & SEGMENT_MASK);
+                int chunkLength = Math.min(length, SEGMENT_SIZE - segPos);
+                segBuf.position(segPos);
+                segBuf.get(dest, destOffset, chunkLength);
+                pos += chunkLength;
+                destOffset += chunkLength;
+                length -= chunkLength;
+            }
+        }
+
+        int readByte(long pos) throws IOException {
+            return getSegment((int) (pos >>> SEGMENT_BITS)).get((int) (pos & SEGMENT_MASK)) & 0xff;
+        }
+
+        void putInt(long pos, int value) throws IOException {
+            getSegment((int) (pos >>> SEGMENT_BITS)).putInt((int) (pos & SEGMENT_MASK), value);
+        }
+
+        int getInt(long pos) throws IOException {
+            return getSegment((int) (pos >>> SEGMENT_BITS)).getInt((int) (pos & SEGMENT_MASK));
+        }
+
+        void force() {
+            for(MappedByteBuffer segBuf : segments) {
+                if(segBuf != null)
+                    segBuf.force();
+            }
+        }
+
+        void release() {
+            segments = new MappedByteBuffer[8];
+        }
+
+        void truncate(long length) throws IOException {
+            force();
+            release();
+            fileChannel.truncate(length);
+        }
+
+        void close(long length) throws IOException {
+            try {
+                truncate(length);
+            } finally {
+                raFile.close();
+            }
+        }
+
+    }
+
+    private final MappedFile journalData;
+    private final MappedFile journalIndex;
+    private int numFrames = 0;
+    private long journalLength = 0;
+    private short localTicks = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Creates the journal (and its sidecar index) at the path, replacing any existing file.
+     * @param journalFile
+     * @throws IOException
+     */
+    public CaptureJournal(File journalFile) throws IOException {
+        journalData = new MappedFile(journalFile);
+        journalIndex = new MappedFile(new File(journalFile.getPath() + INDEX_FILE_EXT));
+    }
+
+    private void checkOpen() throws IOException {
+        if(isClosed)
+            throw new IOException("The capture journal " + journalData.mappedFile.getName() + " is closed.");
+    }
+
+    /**
+     * Appends a LIVE log frame to the journal.
+     * @param logCode
+     * @param diffTimeMs
+     * @param payload
+     * @return int index of the frame in the journal
+     * @throws IOException
+     */
+    public int appendFrame(int logCode, int diffTimeMs, byte[] payload) throws IOException {
+        checkOpen();
+        if(payload.length > MAX_PAYLOAD_SIZE)
+            throw new IllegalArgumentException("Payload exceeds " + MAX_PAYLOAD_SIZE + " bytes.");
+        byte[] frameBytes = LogExportFormatter.packageBinaryLogData(logCode, payload, localTicks);
+        if(journalLength + frameBytes.length > MAX_JOURNAL_LENGTH)
+            throw new IOException("The capture journal " + getJournalFile().getName() + " is full.");
+        journalData.write(journalLength, frameBytes, 0, frameBytes.length);
+        journalLength += frameBytes.length;
+        long indexPos = (long) numFrames * INDEX_ENTRY_SIZE;
+        journalIndex.putInt(indexPos, (int) journalLength);
+        journalIndex.putInt(indexPos + 4, diffTimeMs);
+        localTicks = LogExportFormatter.getNextOffsetTime(localTicks, diffTimeMs);
+        return numFrames++;
+    }
+
+    private void checkFrame(int frame) {
+        if(frame < 0 || frame >= numFrames)
+            throw new IndexOutOfBoundsException("Frame " + frame + " of " + numFrames);
+    }
+
+    private long getFrameOffset(int frame) throws IOException {
+        return frame == 0 ? 0 : (journalIndex.getInt((long) (frame - 1) * INDEX_ENTRY_SIZE) & 0xffffffffL);
+    }
+
+    public int getLogCode(int frame) throws IOException {
+        checkFrame(frame);
+        return journalData.readByte(getFrameOffset(frame));
+    }
+
+    public int getPayloadLength(int frame) throws IOException {
+        checkFrame(frame);
+        return journalData.readByte(getFrameOffset(frame) + 1);
+    }
+
+    public int getDiffTimeMillis(int frame) throws IOException {
+        checkFrame(frame);
+        return journalIndex.getInt((long) frame * INDEX_ENTRY_SIZE + 4);
+    }
+
+    /**
+     * Reads the payload bytes of the frame back from the mapping.
+     * @param frame
+     * @param dest
+     * @param destOffset
+     * @return int number of bytes copied
+     * @throws IOException
+     */
+    public int readPayload(int frame, byte[] dest, int destOffset) throws IOException {
+        checkOpen();
+        checkFrame(frame);
+        long frameOffset = getFrameOffset(frame);
+        int payloadLength = journalData.readByte(frameOffset + 1);
+        journalData.read(frameOffset + LogFrameDecoder.LOG_HEADER_SIZE, dest, destOffset, payloadLength);
+        return payloadLength;
+    }
+
+    /**
+     * Returns the raw frame (header and payload) in the native binary log format.
+     * @param frame
+     * @return byte[]
+     * @throws IOException
+     */
+    public byte[] readRawFrame(int frame) throws IOException {
+        checkOpen();
+        checkFrame(frame);
+        long frameOffset = getFrameOffset(frame);
+        byte[] rawFrame = new byte[LogFrameDecoder.LOG_HEADER_SIZE + journalData.readByte(frameOffset + 1)];
+        journalData.read(frameOffset, rawFrame, 0, rawFrame.length);
+        return rawFrame;
+    }
+
+    /**
+     * Writes the journal to the file as a native binary log (copied by the file channel
+     * without passing the frames through the heap).
+     * @param fd
+     * @return long number of bytes written
+     * @throws IOException
+     */
+    public long copyTo(File fd) throws IOException {
+        checkOpen();
+        journalData.force();
+        FileOutputStream fout = new FileOutputStream(fd);
+        try {
+            FileChannel destChannel = fout.getChannel();
+            long bytesCopied = 0;
+            while(bytesCopied < journalLength)
+                bytesCopied += journalData.fileChannel.transferTo(bytesCopied, journalLength - bytesCopied, destChannel);
+            return bytesCopied;
+        } finally {
+            fout.close();
+        }
+    }
+
+    /**
+     * Drops all of the frames (the journal files are truncated and mapped again as they grow).
+     * @throws IOException
+     */
+    public void reset() throws IOException {
+        checkOpen();
+        journalData.truncate(0);
+        journalIndex.truncate(0);
+        numFrames = 0;
+        journalLength = 0;
+        localTicks = 0;
+    }
+
+    /**
+     * Writes the dirty pages of the mappings to disk.
+     */
+    public void flush() {
+        if(!isClosed) {
+            journalData.force();
+            journalIndex.force();
+        }
+    }
+
+    /**
+     * Trims the journal files to their written length and closes them.
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        if(isClosed)
+            return;
+        isClosed = true;
+        try {
+            journalData.close(journalLength);
+        } finally {
+            journalIndex.close((long) numFrames * INDEX_ENTRY_SIZE);
+        }
+    }
+
+    public File getJournalFile() { return journalData.mappedFile; }
+    public int getFrameCount() { return numFrames; }
+    public long getJournalLength() { return journalLength; }
+    public boolean isClosed() { return isClosed; }
+
+    /**
+     * Summary of the journal size for the capture statistics.
+     * @return String
+     */
+    public String getStatsSummary() {
+        return String.format(Locale.ENGLISH, "Capture journal: %s, %d frames (%d KB, index %d KB)%s",
+                             getJournalFile().getName(), numFrames, journalLength / 1024,
+                             (long) numFrames * INDEX_ENTRY_SIZE / 1024, isClosed ? " [CLOSED]" : "");
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Chameleon Command Result</h1>
+ * Stores the pending (and eventually completed) response to a single command issued to the
+ * Chameleon Mini. Each command sent through ChameleonIO.sendCommand gets its own result object, which is
+ * completed by the USB reader callback as soon as the device's response arrives.
+ *
+ * @ref ChameleonIO.sendCommand
+ * @ref LiveLoggerActivity.usbReaderCallback
+ */
+public class ChameleonCommandResult {
+
+    /**
+     * Callback interface for asynchronous consumers of the command response.
+     */
+    public interface OnResultListener {
+        void onCommandResult(ChameleonCommandResult result);
+    }
+
+    /**
+     * Data about the issued command.
+     */
+    private final String command;
+    private final long sequenceNumber;
+    private final boolean expectBinaryData;
+    private final OnResultListener resultListener;
+    private final CountDownLatch responseLatch = new CountDownLatch(1);
+
+    /**
+     * Response data filled in by the reader callback.
+     */
+    private volatile boolean completed = false;
+    private String responseCode;
+    private String[] responseData;
+    private byte[] responseBinary;
+
+    /**
+     * Constructor.
+     * @param cmd
+     * @param expectBinary whether the response carries trailing binary data (e.g., DUMP_MFU)
+     * @param listener (may be null)
+     */
+    public ChameleonCommandResult(String cmd, boolean expectBinary, OnResultListener listener) {
+        this(cmd, 0, expectBinary, listener);
+    }
+
+    /**
+     * Constructor.
+     * @param cmd
+     * @param seqNum position of the command among all commands written to the device (the
+     *               device answers in order, so the response with the same number belongs to it)
+     * @param expectBinary whether the response carries trailing binary data (e.g., DUMP_MFU)
+     * @param listener (may be null)
+     */
+    public ChameleonCommandResult(String cmd, long seqNum, boolean expectBinary, OnResultListener listener) {
+        command = cmd;
+        sequenceNumber = seqNum;
+        expectBinaryData = expectBinary;
+        resultListener = listener;
+    }
+
+    /**
+     * Creates a result for a command which could not be sent to the device (no waiting occurs).
+     * @param cmd
+     * @param expectBinary
+     * @return ChameleonCommandResult already released result without a response
+     */
+    public static ChameleonCommandResult newCancelledResult(String cmd, boolean expectBinary) {
+        ChameleonCommandResult cmdResult = new ChameleonCommandResult(cmd, expectBinary, null);
+        cmdResult.cancel();
+        return cmdResult;
+    }
+
+    /**
+     * Fills in the response from the raw serial data returned by the device and wakes up
+     * any threads waiting on the result.
+     * @param respData
+     */
+    public void complete(byte[] respData) {
+        if(completed)
+            return;
+        String[] respLines = (new String(respData)).split("[\n\r]+");
+        responseCode = respLines[0];
+        if(respLines.length >= 2)
+            responseData = Arrays.copyOfRange(respLines, 1, respLines.length);
+        else
+            responseData = new String[] { respLines[0] };
+        if(expectBinaryData) {
+            int binaryBufSize = Math.max(0, respData.length - responseCode.length() - 2);
+            responseBinary = new byte[binaryBufSize];
+            System.arraycopy(respData, respData.length - binaryBufSize, responseBinary, 0, binaryBufSize);
+        }
+        completed = true;
+        responseLatch.countDown();
+        if(resultListener != null)
+            resultListener.onCommandResult(this);
+    }
+
+    /**
+     * Releases any waiting threads without a response (device disconnected, port paused, etc.).
+     */
+    public void cancel() {
+        responseLatch.countDown();
+    }
+
+    /**
+     * Blocks until the device responds, the request is cancelled, or the timeout elapses.
+     * @param timeout milliseconds
+     * @return boolean whether the response was received
+     */
+    public boolean await(int timeout) {
+        try {
+            responseLatch.await(timeout, TimeUnit.MILLISECONDS);
+        } catch(InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return completed;
+    }
+
+    public boolean isComplete() { return completed; }
+    public String getCommand() { return command; }
+    public long getSequenceNumber() { return sequenceNumber; }
+    public boolean isExpectingBinaryData() { return expectBinaryData; }
+    public String getResponseCode() { return responseCode; }
+    public String[] getResponseData() { return responseData; }
+    public byte[] getResponseBinary() { return responseBinary; }
+
+    /**
+     * Returns the first line of the response text (or the status code line if the device
+     * returned no additional text).
+     * @param defaultValue returned if the command has not completed
+     * @return String response
+     */
+    public String getResponse(String defaultValue) {
+        if(!completed)
+            return defaultValue;
+        return responseData[0];
+    }
+
+}
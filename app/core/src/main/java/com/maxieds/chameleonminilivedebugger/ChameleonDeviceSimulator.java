@@ -0,0 +1,616 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>Chameleon Device Simulator</h1>
+ * A stand-in Chameleon Mini (RevG command set) behind the same ChameleonSerialPort contract
+ * as the USB device, so the command pipeline, LIVE log ingestion and XModem transfers can be
+ * load and latency tested on a plain JVM without the hardware attached.
+ *
+ * The simulator answers the status queries and setting commands (CONFIG?, UID?, LOGMODE=, ...),
+ * SEND / SEND_RAW, and the XModem UPLOAD / DOWNLOAD transfers. While LOGMODE=LIVE it emits
+ * scripted or randomized LIVE log frames at a configurable rate and burst size. All of the
+ * device output runs on a single device thread (like the USB reader thread), and the output can
+ * be split into USB-packet sized reads to exercise the frame reassembly.
+ *
+ * @ref ChameleonSerialPort
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_CommandLine.html
+ */
+public class ChameleonDeviceSimulator implements ChameleonSerialPort {
+
+    /**
+     * Default simulation parameters.
+     */
+    public static final int DEFAULT_RESPONSE_LATENCY_MICROS = 1000;
+    public static final int DEFAULT_LIVE_FRAMES_PER_SECOND = 200;
+    public static final int DEFAULT_LIVE_BURST_SIZE = 1;
+    public static final int DEFAULT_MAX_READ_SIZE = 64;
+    public static final int DEFAULT_MEMORY_SIZE = 4096;
+
+    /**
+     * Response lines sent by the device.
+     */
+    private static final String RESP_OK = "100:OK";
+    private static final String RESP_OK_WITH_TEXT = "101:OK WITH TEXT";
+    private static final String RESP_WAITING_FOR_XMODEM = "110:WAITING FOR XMODEM";
+    private static final String RESP_UNKNOWN_COMMAND = "200:UNKNOWN COMMAND";
+    private static final String RESP_INVALID_USAGE = "201:INVALID COMMAND USAGE";
+    private static final String RESP_INVALID_PARAMETER = "202:INVALID PARAMETER";
+
+    /**
+     * The log codes and typical payload sizes used for the randomized LIVE frames (short frames
+     * such as REQA / ATQA dominate a real sniffing session).
+     */
+    private static final LogUtils.LogCode[] RANDOM_LOG_CODES = {
+            LogUtils.LogCode.LOG_INFO_CODEC_RX_DATA, LogUtils.LogCode.LOG_INFO_CODEC_TX_DATA,
+            LogUtils.LogCode.LOG_INFO_CODEC_RX_DATA, LogUtils.LogCode.LOG_INFO_CODEC_TX_DATA,
+            LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA, LogUtils.LogCode.LOG_INFO_CODEC_SNI_CARD_DATA,
+    };
+    private static final int[] RANDOM_PAYLOAD_SIZES = { 1, 2, 2, 5, 7, 9, 16, 18, 18, 64 };
+
+    /**
+     * XModem transfer states.
+     */
+    private enum XModemState {
+        IDLE,
+        SEND_WAIT_START,
+        SENDING,
+        SENDING_EOT,
+        RECEIVING,
+    }
+
+    /**
+     * Simulation configuration.
+     */
+    private volatile int responseLatencyMicros = DEFAULT_RESPONSE_LATENCY_MICROS;
+    private volatile int liveFramesPerSecond = DEFAULT_LIVE_FRAMES_PER_SECOND;
+    private volatile int liveBurstSize = DEFAULT_LIVE_BURST_SIZE;
+    private volatile int maxReadSize = DEFAULT_MAX_READ_SIZE;
+    private volatile List<byte[]> scriptedFrames = null;
+
+    /**
+     * Device state (only touched on the device thread).
+     */
+    private final Map<String, String> deviceSettings = new LinkedHashMap<>();
+    private final byte[] cardMemory = new byte[DEFAULT_MEMORY_SIZE];
+    private final ByteArrayOutputStream logMemory = new ByteArrayOutputStream();
+    private final StringBuilder commandLine = new StringBuilder();
+    private final Random random;
+    private final long startTimeNanos = System.nanoTime();
+    private XModemState xmodemState = XModemState.IDLE;
+    private byte[] xmodemSource;
+    private int xmodemOffset;
+    private byte xmodemFrameNumber;
+    private final ByteArrayOutputStream xmodemReceiveBuffer = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream xmodemReceivedData = new ByteArrayOutputStream();
+    private int scriptedFrameIndex = 0;
+    private ScheduledFuture<?> liveFrameTask;
+
+    private final ScheduledExecutorService deviceThread;
+    private volatile ReadCallback readCallback;
+    private volatile boolean isOpen = false;
+
+    /**
+     * Statistics about the simulated session.
+     */
+    private final AtomicLong numCommands = new AtomicLong(0);
+    private final AtomicLong numLiveFrames = new AtomicLong(0);
+    private final AtomicLong numBytesSent = new AtomicLong(0);
+    private final AtomicLong numBytesReceived = new AtomicLong(0);
+    private final AtomicLong numXModemBlocksSent = new AtomicLong(0);
+    private final AtomicLong numXModemBlocksReceived = new AtomicLong(0);
+
+    /**
+     * Constructor.
+     */
+    public ChameleonDeviceSimulator() {
+        this(System.nanoTime());
+    }
+
+    /**
+     * Constructor.
+     * @param randomSeed seed for the randomized LIVE frames and card data (for repeatable runs)
+     */
+    public ChameleonDeviceSimulator(long randomSeed) {
+        random = new Random(randomSeed);
+        random.nextBytes(cardMemory);
+        deviceThread = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ChameleonDeviceSimulator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        resetSettings();
+    }
+
+    /**
+     * Restores the factory default settings of the device.
+     */
+    private void resetSettings() {
+        deviceSettings.clear();
+        deviceSettings.put("VERSION", "ChameleonMini RevG (simulated device)");
+        deviceSettings.put("CONFIG", "ISO14443A_SNIFF");
+        deviceSettings.put("UID", "04A1B2C3D4E5F6");
+        deviceSettings.put("UIDSIZE", "7");
+        deviceSettings.put("MEMSIZE", String.valueOf(DEFAULT_MEMORY_SIZE));
+        deviceSettings.put("LOGMODE", "LIVE");
+        deviceSettings.put("LOGMEM", "0");
+        deviceSettings.put("SETTING", "1");
+        deviceSettings.put("READONLY", "0");
+        deviceSettings.put("FIELD", "0");
+        deviceSettings.put("CHARGING", "FALSE");
+        deviceSettings.put("THRESHOLD", "400");
+        deviceSettings.put("TIMEOUT", "10");
+        deviceSettings.put("RSSI", "4200 mV");
+        deviceSettings.put("RBUTTON", "SWITCHCARD");
+        deviceSettings.put("LBUTTON", "RECALL_MEM");
+        deviceSettings.put("LEDGREEN", "FIELD_DETECTED");
+        deviceSettings.put("LEDRED", "MEMORY_STORED");
+    }
+
+    /**
+     * Set methods for the simulation parameters (may be changed while the simulator runs).
+     * @param latencyMicros delay before each command response is sent
+     */
+    public void setResponseLatencyMicros(int latencyMicros) { responseLatencyMicros = Math.max(0, latencyMicros); }
+    public void setLiveFramesPerSecond(int framesPerSecond) {
+        liveFramesPerSecond = Math.max(1, framesPerSecond);
+        rescheduleLiveFrames();
+    }
+    public void setLiveBurstSize(int burstSize) {
+        liveBurstSize = Math.max(1, burstSize);
+        rescheduleLiveFrames();
+    }
+    public void setMaxReadSize(int readSize) { maxReadSize = readSize; }
+
+    /**
+     * Replays the frames (raw LIVE log frames, header included) in a loop instead of randomized
+     * frames. Passing null switches back to the randomized frames.
+     * @param frames
+     */
+    public void setScriptedFrames(List<byte[]> frames) {
+        scriptedFrames = (frames == null) ? null : new ArrayList<>(frames);
+    }
+
+    /**
+     * The card data received by the last XModem UPLOAD (for verifying the transfer).
+     * @return byte[]
+     */
+    public byte[] getUploadedData() {
+        synchronized(xmodemReceivedData) {
+            return xmodemReceivedData.toByteArray();
+        }
+    }
+
+    /**
+     * The card memory sent by the XModem DOWNLOAD command.
+     * @return byte[]
+     */
+    public byte[] getCardMemory() {
+        return cardMemory.clone();
+    }
+
+    @Override
+    public boolean open() {
+        isOpen = true;
+        rescheduleLiveFrames();
+        return true;
+    }
+
+    @Override
+    public void write(byte[] data) {
+        if(!isOpen || data == null || data.length == 0)
+            return;
+        final byte[] inputData = data.clone();
+        numBytesReceived.addAndGet(inputData.length);
+        runOnDeviceThread(new Runnable() {
+            @Override
+            public void run() {
+                processInput(inputData);
+            }
+        }, 0);
+    }
+
+    @Override
+    public void read(ReadCallback callback) {
+        readCallback = callback;
+    }
+
+    @Override
+    public void close() {
+        isOpen = false;
+        deviceThread.shutdownNow();
+    }
+
+    /**
+     * Schedules the task on the device thread (tasks with the same delay run in order).
+     * @param task
+     * @param delayMicros
+     */
+    private void runOnDeviceThread(Runnable task, long delayMicros) {
+        if(deviceThread.isShutdown())
+            return;
+        deviceThread.schedule(task, delayMicros, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Handles the bytes written by the host (on the device thread).
+     * @param inputData
+     */
+    private void processInput(byte[] inputData) {
+        for(int i = 0; i < inputData.length; i++) {
+            if(xmodemState != XModemState.IDLE) {
+                processXModemByte(inputData[i]);
+                continue;
+            }
+            char nextChar = (char) (inputData[i] & 0xff);
+            if(nextChar == '\r' || nextChar == '\n') {
+                if(commandLine.length() > 0) {
+                    String cmd = commandLine.toString().trim();
+                    commandLine.setLength(0);
+                    numCommands.incrementAndGet();
+                    processCommand(cmd);
+                }
+            }
+            else
+                commandLine.append(nextChar);
+        }
+    }
+
+    /**
+     * Answers the command line sent by the host.
+     * @param cmd
+     */
+    private void processCommand(String cmd) {
+        String upperCmd = cmd.toUpperCase(Locale.ENGLISH);
+        if(upperCmd.endsWith("=?")) {
+            String settingName = upperCmd.substring(0, upperCmd.length() - 2);
+            if(settingName.equals("CONFIG"))
+                sendTextResponse("NONE,MF_ULTRALIGHT,MF_CLASSIC_1K,ISO14443A_SNIFF,ISO14443A_READER");
+            else if(settingName.equals("LOGMODE"))
+                sendTextResponse("OFF,MEMORY,LIVE");
+            else if(deviceSettings.containsKey(settingName))
+                sendTextResponse("");
+            else
+                sendResponse(RESP_UNKNOWN_COMMAND);
+        }
+        else if(upperCmd.endsWith("?")) {
+            String settingName = upperCmd.substring(0, upperCmd.length() - 1);
+            if(settingName.equals("SYSTICK"))
+                sendTextResponse(String.format(Locale.ENGLISH, "%04X", getSysTick()));
+            else if(settingName.equals("LOGMEM"))
+                sendTextResponse(String.valueOf(logMemory.size()));
+            else if(deviceSettings.containsKey(settingName))
+                sendTextResponse(deviceSettings.get(settingName));
+            else
+                sendResponse(RESP_UNKNOWN_COMMAND);
+        }
+        else if(upperCmd.contains("=")) {
+            int eqPos = cmd.indexOf('=');
+            String settingName = upperCmd.substring(0, eqPos).trim();
+            String settingValue = cmd.substring(eqPos + 1).trim();
+            if(settingName.equals("SEND") || settingName.equals("SEND_RAW"))
+                processSendCommand(settingValue);
+            else if(!deviceSettings.containsKey(settingName) || settingName.equals("VERSION"))
+                sendResponse(RESP_UNKNOWN_COMMAND);
+            else if(settingValue.isEmpty())
+                sendResponse(RESP_INVALID_PARAMETER);
+            else {
+                deviceSettings.put(settingName, settingValue.toUpperCase(Locale.ENGLISH));
+                if(settingName.equals("LOGMODE"))
+                    rescheduleLiveFrames();
+                sendResponse(RESP_OK);
+            }
+        }
+        else if(upperCmd.startsWith("SEND_RAW ") || upperCmd.startsWith("SEND "))
+            processSendCommand(cmd.substring(cmd.indexOf(' ') + 1).trim());
+        else if(upperCmd.equals("GETUID") || upperCmd.equals("IDENTIFY"))
+            sendTextResponse(deviceSettings.get("UID"));
+        else if(upperCmd.equals("UPLOAD"))
+            startXModemReceive();
+        else if(upperCmd.equals("DOWNLOAD"))
+            startXModemSend(cardMemory);
+        else if(upperCmd.equals("LOGDOWNLOAD") || upperCmd.equals("DOWNLOADLOG"))
+            startXModemSend(logMemory.toByteArray());
+        else if(upperCmd.equals("LOGCLEAR") || upperCmd.equals("CLEARLOG")) {
+            logMemory.reset();
+            sendResponse(RESP_OK);
+        }
+        else if(upperCmd.equals("RESET") || upperCmd.equals("FACTORYRESET")) {
+            resetSettings();
+            rescheduleLiveFrames();
+            sendResponse(RESP_OK);
+        }
+        else if(upperCmd.equals("CLEAR") || upperCmd.equals("STORE") || upperCmd.equals("RECALL") ||
+                upperCmd.equals("LOGSTORE") || upperCmd.equals("AUTOCALIBRATE"))
+            sendResponse(RESP_OK);
+        else if(upperCmd.equals("HELP"))
+            sendTextResponse("VERSION,CONFIG,UID,READONLY,UPLOAD,DOWNLOAD,RESET,MEMSIZE,UIDSIZE," +
+                             "RBUTTON,LBUTTON,LEDGREEN,LEDRED,LOGMODE,LOGMEM,LOGDOWNLOAD,LOGSTORE,LOGCLEAR," +
+                             "SETTING,CLEAR,STORE,RECALL,CHARGING,HELP,RSSI,SYSTICK,SEND_RAW,SEND,GETUID," +
+                             "IDENTIFY,TIMEOUT,THRESHOLD,AUTOCALIBRATE,FIELD"); // only the commands simulated above
+        else
+            sendResponse(RESP_UNKNOWN_COMMAND);
+    }
+
+    /**
+     * Answers the SEND / SEND_RAW commands with a randomized card response.
+     * @param hexBytes the bytes to send to the card
+     */
+    private void processSendCommand(String hexBytes) {
+        if(hexBytes.isEmpty() || !hexBytes.replace(" ", "").matches("[0-9a-fA-F]+")) {
+            sendResponse(RESP_INVALID_USAGE);
+            return;
+        }
+        StringBuilder cardResponse = new StringBuilder();
+        int respLength = 2 + random.nextInt(15);
+        for(int b = 0; b < respLength; b++)
+            cardResponse.append(String.format(Locale.ENGLISH, "%02X", random.nextInt(256)));
+        sendTextResponse(cardResponse.toString());
+    }
+
+    /**
+     * Sends the status line to the host after the configured response latency.
+     * @param respLine
+     */
+    private void sendResponse(String respLine) {
+        sendDelayed((respLine + "\r\n").getBytes());
+    }
+
+    /**
+     * Sends the 101 (OK WITH TEXT) status line and the text line to the host.
+     * @param respText
+     */
+    private void sendTextResponse(String respText) {
+        sendDelayed((RESP_OK_WITH_TEXT + "\r\n" + respText + "\r\n").getBytes());
+    }
+
+    private void sendDelayed(final byte[] outputData) {
+        runOnDeviceThread(new Runnable() {
+            @Override
+            public void run() {
+                emit(outputData);
+            }
+        }, responseLatencyMicros);
+    }
+
+    /**
+     * Delivers the bytes to the host's read callback, split into reads of at most maxReadSize
+     * bytes (a value <= 0 delivers the data in one read).
+     * @param outputData
+     */
+    private void emit(byte[] outputData) {
+        ReadCallback callback = readCallback;
+        if(!isOpen || callback == null)
+            return;
+        numBytesSent.addAndGet(outputData.length);
+        int readSize = maxReadSize;
+        if(readSize <= 0 || outputData.length <= readSize) {
+            callback.onReceivedData(outputData);
+            return;
+        }
+        for(int offset = 0; offset < outputData.length; offset += readSize) {
+            byte[] readData = new byte[Math.min(readSize, outputData.length - offset)];
+            System.arraycopy(outputData, offset, readData, 0, readData.length);
+            callback.onReceivedData(readData);
+        }
+    }
+
+    /**
+     * The 16-bit millisecond tick counter used to timestamp the log frames.
+     * @return int
+     */
+    private int getSysTick() {
+        return (int) ((System.nanoTime() - startTimeNanos) / 1000000L) & 0xffff;
+    }
+
+    /**
+     * Starts, restarts or stops the LIVE log frame generator according to the LOGMODE setting.
+     */
+    private void rescheduleLiveFrames() {
+        runOnDeviceThread(new Runnable() {
+            @Override
+            public void run() {
+                if(liveFrameTask != null) {
+                    liveFrameTask.cancel(false);
+                    liveFrameTask = null;
+                }
+                if(!isOpen || !"LIVE".equals(deviceSettings.get("LOGMODE")))
+                    return;
+                long periodMicros = Math.max(1L, 1000000L * liveBurstSize / liveFramesPerSecond);
+                liveFrameTask = deviceThread.scheduleAtFixedRate(new Runnable() {
+                    @Override
+                    public void run() {
+                        emitLiveFrames();
+                    }
+                }, periodMicros, periodMicros, TimeUnit.MICROSECONDS);
+            }
+        }, 0);
+    }
+
+    /**
+     * Emits the next burst of LIVE log frames as one block of serial data (unless an XModem
+     * transfer has the serial line).
+     */
+    private void emitLiveFrames() {
+        if(xmodemState != XModemState.IDLE)
+            return;
+        ByteArrayOutputStream burstData = new ByteArrayOutputStream();
+        for(int f = 0; f < liveBurstSize; f++) {
+            byte[] frameData = nextLiveFrame();
+            burstData.write(frameData, 0, frameData.length);
+        }
+        numLiveFrames.addAndGet(liveBurstSize);
+        emit(burstData.toByteArray());
+    }
+
+    /**
+     * Builds the next scripted or randomized LIVE log frame.
+     * @return byte[] frame data (header and payload)
+     */
+    private byte[] nextLiveFrame() {
+        List<byte[]> frames = scriptedFrames;
+        if(frames != null && !frames.isEmpty()) {
+            byte[] frameData = frames.get(scriptedFrameIndex++ % frames.size()).clone();
+            if(frameData.length >= LogFrameReassembler.LOG_HEADER_SIZE) {
+                int sysTick = getSysTick();
+                frameData[2] = (byte) (sysTick >> 8);
+                frameData[3] = (byte) sysTick;
+            }
+            return frameData;
+        }
+        int payloadSize = RANDOM_PAYLOAD_SIZES[random.nextInt(RANDOM_PAYLOAD_SIZES.length)];
+        byte[] frameData = new byte[LogFrameReassembler.LOG_HEADER_SIZE + payloadSize];
+        int sysTick = getSysTick();
+        frameData[0] = (byte) RANDOM_LOG_CODES[random.nextInt(RANDOM_LOG_CODES.length)].toInteger();
+        frameData[1] = (byte) payloadSize;
+        frameData[2] = (byte) (sysTick >> 8);
+        frameData[3] = (byte) sysTick;
+        for(int b = LogFrameReassembler.LOG_HEADER_SIZE; b < frameData.length; b++)
+            frameData[b] = (byte) random.nextInt(256);
+        return frameData;
+    }
+
+    /**
+     * Begins an XModem DOWNLOAD: the device waits for the host's NAK before sending the frames.
+     * @param sourceData
+     */
+    private void startXModemSend(byte[] sourceData) {
+        xmodemSource = sourceData;
+        xmodemOffset = 0;
+        xmodemFrameNumber = XModemFraming.FIRST_FRAME_NUMBER;
+        xmodemState = XModemState.SEND_WAIT_START;
+        sendResponse(RESP_WAITING_FOR_XMODEM);
+    }
+
+    /**
+     * Begins an XModem UPLOAD: the device receives the frames sent by the host.
+     */
+    private void startXModemReceive() {
+        synchronized(xmodemReceivedData) {
+            xmodemReceivedData.reset();
+        }
+        xmodemReceiveBuffer.reset();
+        xmodemFrameNumber = XModemFraming.FIRST_FRAME_NUMBER;
+        xmodemState = XModemState.RECEIVING;
+        sendResponse(RESP_WAITING_FOR_XMODEM);
+    }
+
+    /**
+     * Handles a byte written by the host during an XModem transfer.
+     * @param inputByte
+     */
+    private void processXModemByte(byte inputByte) {
+        switch(xmodemState) {
+            case SEND_WAIT_START:
+                if(inputByte == XModemFraming.BYTE_NAK) {
+                    xmodemState = XModemState.SENDING;
+                    sendXModemFrame();
+                }
+                else if(inputByte == XModemFraming.BYTE_CAN)
+                    xmodemState = XModemState.IDLE;
+                break;
+            case SENDING:
+                if(inputByte == XModemFraming.BYTE_ACK) {
+                    xmodemOffset += XModemFraming.XMODEM_BLOCK_SIZE;
+                    xmodemFrameNumber++;
+                    if(xmodemOffset >= xmodemSource.length) {
+                        xmodemState = XModemState.SENDING_EOT;
+                        sendDelayed(new byte[] { XModemFraming.BYTE_EOT });
+                    }
+                    else
+                        sendXModemFrame();
+                }
+                else if(inputByte == XModemFraming.BYTE_NAK)
+                    sendXModemFrame();
+                else if(inputByte == XModemFraming.BYTE_CAN)
+                    xmodemState = XModemState.IDLE;
+                break;
+            case SENDING_EOT:
+                if(inputByte == XModemFraming.BYTE_NAK)
+                    sendDelayed(new byte[] { XModemFraming.BYTE_EOT });
+                else
+                    xmodemState = XModemState.IDLE;
+                break;
+            case RECEIVING:
+                processXModemReceiveByte(inputByte);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Sends the current XModem data frame.
+     */
+    private void sendXModemFrame() {
+        int blockLength = Math.min(XModemFraming.XMODEM_BLOCK_SIZE, xmodemSource.length - xmodemOffset);
+        numXModemBlocksSent.incrementAndGet();
+        sendDelayed(XModemFraming.buildFrame(xmodemFrameNumber, xmodemSource, xmodemOffset, blockLength));
+    }
+
+    /**
+     * Collects the XModem frames written by the host during an UPLOAD.
+     * @param inputByte
+     */
+    private void processXModemReceiveByte(byte inputByte) {
+        if(xmodemReceiveBuffer.size() == 0) {
+            if(inputByte == XModemFraming.BYTE_EOT) {
+                xmodemState = XModemState.IDLE;
+                sendDelayed(new byte[] { XModemFraming.BYTE_ACK });
+                return;
+            }
+            else if(inputByte == XModemFraming.BYTE_CAN) {
+                xmodemState = XModemState.IDLE;
+                return;
+            }
+            else if(inputByte != XModemFraming.BYTE_SOH)
+                return; // e.g., the NAK the host writes to start the transfer
+        }
+        xmodemReceiveBuffer.write(inputByte);
+        if(xmodemReceiveBuffer.size() < XModemFraming.XMODEM_FRAME_SIZE)
+            return;
+        byte[] frameData = xmodemReceiveBuffer.toByteArray();
+        xmodemReceiveBuffer.reset();
+        if(XModemFraming.isValidFrame(frameData, 0, xmodemFrameNumber)) {
+            synchronized(xmodemReceivedData) {
+                xmodemReceivedData.write(frameData, 3, XModemFraming.XMODEM_BLOCK_SIZE);
+            }
+            int memOffset = (xmodemFrameNumber - XModemFraming.FIRST_FRAME_NUMBER & 0xff) * XModemFraming.XMODEM_BLOCK_SIZE;
+            if(memOffset + XModemFraming.XMODEM_BLOCK_SIZE <= cardMemory.length)
+                System.arraycopy(frameData, 3, cardMemory, memOffset, XModemFraming.XMODEM_BLOCK_SIZE);
+            xmodemFrameNumber++;
+            numXModemBlocksReceived.incrementAndGet();
+            sendDelayed(new byte[] { XModemFraming.BYTE_ACK });
+        }
+        else
+            sendDelayed(new byte[] { XModemFraming.BYTE_NAK });
+    }
+
+    /**
+     * Get methods for the session statistics.
+     * @return
+     */
+    public long getCommandCount() { return numCommands.get(); }
+    public long getLiveFrameCount() { return numLiveFrames.get(); }
+    public long getBytesSentCount() { return numBytesSent.get(); }
+    public long getBytesReceivedCount() { return numBytesReceived.get(); }
+    public long getXModemBlocksSentCount() { return numXModemBlocksSent.get(); }
+    public long getXModemBlocksReceivedCount() { return numXModemBlocksReceived.get(); }
+
+}
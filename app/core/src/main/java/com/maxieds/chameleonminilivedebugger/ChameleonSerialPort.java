@@ -0,0 +1,44 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Chameleon Serial Port</h1>
+ * The read-callback / write contract the application uses to talk to the Chameleon Mini.
+ * The live hardware is reached through the USB serial library (UsbSerialPortAdapter), while
+ * ChameleonDeviceSimulator provides a stand-in device for testing without the hardware.
+ *
+ * @ref UsbSerialPortAdapter
+ * @ref ChameleonDeviceSimulator
+ */
+public interface ChameleonSerialPort {
+
+    /**
+     * Receives the data read from the device (called on the port's reader thread).
+     */
+    interface ReadCallback {
+        void onReceivedData(byte[] data);
+    }
+
+    /**
+     * Opens the connection to the device.
+     * @return boolean whether the port is ready for use
+     */
+    boolean open();
+
+    /**
+     * Writes the raw bytes to the device.
+     * @param data
+     */
+    void write(byte[] data);
+
+    /**
+     * Registers the callback invoked with the data sent back by the device.
+     * @param readCallback
+     */
+    void read(ReadCallback readCallback);
+
+    /**
+     * Closes the connection to the device.
+     */
+    void close();
+
+}
@@ -0,0 +1,141 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Decoded Log Frame</h1>
+ * Holds a LIVE log frame after it has been decoded off the UI thread: the parsed header fields
+ * and the derived display data (entropy, hex / ascii strings, APDU classification). The derived
+ * data is expensive and most captured frames are never looked at, so unless it is supplied to
+ * the constructor it is only computed from the raw payload the first time it is requested
+ * (on display, search or export).
+ *
+ * @ref LogEntryUI.decodeLogFrame
+ * @ref LiveLogIngestionThread
+ * @ref DerivedFieldCache
+ */
+public class DecodedLogFrame {
+
+    /**
+     * Approximate heap bytes of the frame object (plus the payload) and of each String.
+     */
+    private static final int FRAME_OVERHEAD_BYTES = 96;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    private static final int APDU_DESC_ESTIMATE_CHARS = 24;
+
+    private final int logCode;
+    private final int dataDirection;
+    private final int diffTimeMillis;
+    private final byte[] payloadData;
+    private final PayloadClassifier payloadClassifier;
+    private boolean haveDerivedFields;
+    private double entropy;
+    private String hexString;
+    private String asciiString;
+    private String apduDesc;
+
+    /**
+     * Constructor.
+     * @param lcode
+     * @param dataDir
+     * @param diffTimeMs
+     * @param payload
+     * @param payloadEntropy
+     * @param payloadHex
+     * @param payloadAscii
+     * @param apduClassification
+     */
+    public DecodedLogFrame(int lcode, int dataDir, int diffTimeMs, byte[] payload, double payloadEntropy,
+                           String payloadHex, String payloadAscii, String apduClassification) {
+        logCode = lcode;
+        dataDirection = dataDir;
+        diffTimeMillis = diffTimeMs;
+        payloadData = payload;
+        payloadClassifier = null;
+        entropy = payloadEntropy;
+        hexString = payloadHex;
+        asciiString = payloadAscii;
+        apduDesc = apduClassification;
+        haveDerivedFields = true;
+    }
+
+    /**
+     * Constructor for a frame whose derived display data is computed on first use.
+     * @param lcode
+     * @param dataDir
+     * @param diffTimeMs
+     * @param payload
+     * @param classifier classifies the payload when the APDU description is first requested
+     */
+    public DecodedLogFrame(int lcode, int dataDir, int diffTimeMs, byte[] payload, PayloadClassifier classifier) {
+        logCode = lcode;
+        dataDirection = dataDir;
+        diffTimeMillis = diffTimeMs;
+        payloadData = payload;
+        payloadClassifier = classifier;
+        haveDerivedFields = false;
+    }
+
+    /**
+     * Computes the derived display data from the raw payload (once, on whichever thread asks first).
+     */
+    private synchronized void computeDerivedFields() {
+        if(haveDerivedFields)
+            return;
+        entropy = ByteUtils.computeByteArrayEntropy(payloadData);
+        hexString = ByteUtils.bytes2Hex(payloadData);
+        asciiString = ByteUtils.bytes2Ascii(payloadData);
+        apduDesc = payloadClassifier.classifyPayload(payloadData);
+        haveDerivedFields = true;
+    }
+
+    public int getLogCode() { return logCode; }
+    public int getDataDirection() { return dataDirection; }
+    public int getDiffTimeMillis() { return diffTimeMillis; }
+    public byte[] getPayloadData() { return payloadData; }
+
+    public synchronized boolean hasDerivedFields() { return haveDerivedFields; }
+
+    public synchronized double getEntropy() {
+        computeDerivedFields();
+        return entropy;
+    }
+
+    public synchronized String getHexString() {
+        computeDerivedFields();
+        return hexString;
+    }
+
+    public synchronized String getAsciiString() {
+        computeDerivedFields();
+        return asciiString;
+    }
+
+    public synchronized String getApduDesc() {
+        computeDerivedFields();
+        return apduDesc;
+    }
+
+    /**
+     * Copy of the frame with another diff time (e.g., one of the repeats of a collapsed repeat
+     * run), sharing the payload and the derived display data.
+     * @param diffTimeMs
+     * @return DecodedLogFrame
+     */
+    public DecodedLogFrame withDiffTime(int diffTimeMs) {
+        if(diffTimeMs == diffTimeMillis)
+            return this;
+        return new DecodedLogFrame(logCode, dataDirection, diffTimeMs, payloadData, getEntropy(),
+                                   getHexString(), getAsciiString(), getApduDesc());
+    }
+
+    /**
+     * Approximate heap footprint of the frame once its derived display data has been computed
+     * (the hex string has three characters per byte and the ascii string one).
+     * @param payloadLength
+     * @return int bytes
+     */
+    public static int estimateDecodedSize(int payloadLength) {
+        return FRAME_OVERHEAD_BYTES + payloadLength + 3 * STRING_OVERHEAD_BYTES +
+               2 * (3 * payloadLength + payloadLength + APDU_DESC_ESTIMATE_CHARS);
+    }
+
+}
@@ -0,0 +1,88 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <h1>Derived Field Cache</h1>
+ * Memory-bounded LRU cache of the decoded log frames (with their lazily computed display data)
+ * for the records in the columnar log store, keyed by record id. Only the raw payloads are kept
+ * for every record; the hex / ascii strings, entropy and APDU classification of the recently
+ * displayed, searched or exported records are kept here and recomputed from the payload after
+ * they are evicted.
+ *
+ * The cache is not thread safe: it is only used from the UI thread.
+ *
+ * @ref LogRecordStore
+ * @ref DecodedLogFrame
+ */
+public class DerivedFieldCache {
+
+    public static final long DEFAULT_MAX_CACHE_BYTES = 2L * 1024 * 1024;
+
+    private final long maxCacheBytes;
+    private long cacheBytes = 0;
+    private long numHits = 0, numMisses = 0, numEvictions = 0;
+    private final LinkedHashMap<Integer, DecodedLogFrame> cachedFrames = new LinkedHashMap<Integer, DecodedLogFrame>(256, 0.75f, true);
+
+    /**
+     * Constructor.
+     * @param maxBytes approximate upper bound on the heap used by the cached frames
+     */
+    public DerivedFieldCache(long maxBytes) {
+        maxCacheBytes = maxBytes;
+    }
+
+    public DerivedFieldCache() {
+        this(DEFAULT_MAX_CACHE_BYTES);
+    }
+
+    /**
+     * Returns the decoded frame for the record, decoding it from the stored payload on a miss.
+     * @param logStore
+     * @param row (must be a LIVE log frame)
+     * @param logDecoder
+     * @return DecodedLogFrame
+     */
+    public DecodedLogFrame getDecodedLogFrame(LogRecordStore logStore, int row, LogDecoder logDecoder) {
+        Integer recordId = Integer.valueOf(logStore.getRecordId(row));
+        DecodedLogFrame decodedFrame = cachedFrames.get(recordId);
+        if(decodedFrame != null) {
+            numHits++;
+            return decodedFrame;
+        }
+        numMisses++;
+        decodedFrame = logStore.decodeLogFrame(row, logDecoder);
+        cachedFrames.put(recordId, decodedFrame);
+        cacheBytes += DecodedLogFrame.estimateDecodedSize(decodedFrame.getPayloadData().length);
+        evictToLimit();
+        return decodedFrame;
+    }
+
+    private void evictToLimit() {
+        Iterator<Map.Entry<Integer, DecodedLogFrame>> lruIter = cachedFrames.entrySet().iterator();
+        while(cacheBytes > maxCacheBytes && cachedFrames.size() > 1 && lruIter.hasNext()) {
+            DecodedLogFrame evictedFrame = lruIter.next().getValue();
+            lruIter.remove();
+            cacheBytes -= DecodedLogFrame.estimateDecodedSize(evictedFrame.getPayloadData().length);
+            numEvictions++;
+        }
+    }
+
+    /**
+     * Drops all of the cached frames (e.g., when the log store is cleared).
+     */
+    public void clear() {
+        cachedFrames.clear();
+        cacheBytes = 0;
+    }
+
+    public int size() { return cachedFrames.size(); }
+    public long getCacheBytes() { return cacheBytes; }
+    public long getMaxCacheBytes() { return maxCacheBytes; }
+    public long getHits() { return numHits; }
+    public long getMisses() { return numMisses; }
+    public long getEvictions() { return numEvictions; }
+
+}
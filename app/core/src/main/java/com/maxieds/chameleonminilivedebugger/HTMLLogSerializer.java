@@ -0,0 +1,48 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>HTML Log Serializer</h1>
+ * Writes the color-coded HTML log format. The background color of the next log data record
+ * can be set before it is written (otherwise the default white background is used).
+ *
+ * @ref ExportTools.writeHTMLLogFile
+ */
+public class HTMLLogSerializer implements LogSerializer {
+
+    private String recordBgColor = LogExportFormatter.HTML_DEFAULT_BGCOLOR;
+
+    /**
+     * Sets the background color of the next log data record.
+     * @param bgColor HTML color string (e.g., "#ffffff")
+     */
+    public void setRecordBackgroundColor(String bgColor) {
+        recordBgColor = bgColor;
+    }
+
+    @Override
+    public void writeHeader(OutputStream fout) throws IOException {
+        fout.write(LogExportFormatter.HTML_HEADER.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void writeLogRecord(OutputStream fout, int recordID, DecodedLogFrame logFrame) throws IOException {
+        String recordDesc = LogExportFormatter.formatLogRecord(recordID, logFrame);
+        fout.write(LogExportFormatter.formatHTMLLine(recordBgColor, recordDesc).getBytes(StandardCharsets.US_ASCII));
+        recordBgColor = LogExportFormatter.HTML_DEFAULT_BGCOLOR;
+    }
+
+    @Override
+    public void writeMetadataRecord(OutputStream fout, String metadataDesc) throws IOException {
+        fout.write(LogExportFormatter.formatHTMLMetadataLine(metadataDesc).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void writeFooter(OutputStream fout) throws IOException {
+        fout.write(LogExportFormatter.HTML_FOOTER.getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
@@ -0,0 +1,568 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Locale;
+
+/**
+ * <h1>ISO 14443 Session Decoder</h1>
+ * Streaming stage after the LogDecoder: consumes the decoded LIVE log frames in capture order,
+ * pairs the reader commands with the card responses (LogUtils.getFrameSource tells the two
+ * apart from the log codes) and emits one TransactionRecord per exchange to its listener.
+ *
+ * The decoder follows the ISO 14443-3 activation of each card (REQA / WUPA, the anticollision
+ * and SELECT cascade levels assembling the UID, HLTA) and the ISO 14443-4 protocol once the card
+ * has answered the RATS: the ISO 7816 APDUs are reassembled from the I-blocks (command and
+ * response chaining, S(WTX) wait time extensions and R-block retransmissions count towards the
+ * exchange they interrupt) and the card is addressed by its CID until the S(DESELECT). The CRC_A
+ * trailing the frames is stripped when it checks out, so the logs with and without it decode
+ * alike. Captures started in the middle of a session pick up the card where they find it.
+ *
+ * Only the summary fields are kept: a session holds its UID and CID and the exchange in progress
+ * a single record, so the memory used is constant per open session (one being activated plus
+ * at most one per CID) whatever the length of the capture. The methods are synchronized since
+ * the frames are fed on the ingestion thread and the statistics are read from the UI.
+ *
+ * @ref TransactionRecord
+ * @ref LiveLogIngestionThread
+ * @url https://www.nxp.com/docs/en/application-note/AN10833.pdf
+ * @url https://www.iso.org/standard/73599.html
+ */
+public class Iso14443SessionDecoder {
+
+    public static final int MAX_CID = 15;
+    public static final int NO_CID = TransactionRecord.NONE;
+    public static final int MAX_UID_LENGTH = 10;
+
+    /**
+     * Receives the transactions as they end (on the thread feeding the frames to the decoder).
+     */
+    public interface TransactionListener {
+        void onTransaction(TransactionRecord transaction);
+    }
+
+    /**
+     * ISO 14443-3 commands.
+     */
+    private static final int CMD_REQA = 0x26, CMD_WUPA = 0x52, CMD_HLTA = 0x50, CMD_RATS = 0xe0, CMD_PPS = 0xd0;
+    private static final int CMD_SEL_CL1 = 0x93, CMD_SEL_CL2 = 0x95, CMD_SEL_CL3 = 0x97;
+    private static final int NVB_SELECT = 0x70;
+    private static final int CASCADE_TAG = 0x88;
+    private static final int SAK_UID_INCOMPLETE = 0x04;
+
+    /**
+     * ISO 14443-4 block control bytes (PCB) and the ATS interface bytes.
+     */
+    private static final int PCB_CHAINING = 0x10, PCB_CID_FOLLOWING = 0x08, PCB_NAD_FOLLOWING = 0x04;
+    private static final int PCB_BLOCK_NUMBER = 0x01, PCB_R_NAK = 0x10;
+    private static final int PCB_S_DESELECT = 0x00, PCB_S_WTX = 0x30, PCB_S_TYPE_MASK = 0x30;
+    private static final int ATS_TA1_PRESENT = 0x10, ATS_TB1_PRESENT = 0x20, ATS_TC1_PRESENT = 0x40, TC1_CID_SUPPORTED = 0x02;
+
+    private static final int BLOCK_INVALID = 0, BLOCK_I = 1, BLOCK_R = 2, BLOCK_S = 3;
+
+    /**
+     * A card from its activation up to the HLTA / S(DESELECT) (or until another card takes its
+     * place).
+     */
+    private static class CardSession {
+        final long sessionId;
+        int cid = NO_CID;
+        boolean isProtocolActive = false;
+        final byte[] uidBytes = new byte[MAX_UID_LENGTH];
+        int uidLength = 0;
+        String uidString = "";
+        CardSession(long id) {
+            sessionId = id;
+        }
+        void setUidPart(int cascadeLevel, byte[] frameData, int offset, int numBytes) {
+            uidLength = Math.min(3 * (cascadeLevel - 1), uidLength);
+            for(int b = 0; b < numBytes && uidLength < MAX_UID_LENGTH; b++)
+                uidBytes[uidLength++] = frameData[offset + b];
+        }
+    }
+
+    private final TransactionListener transactionListener;
+    private final CardSession[] protocolSessions = new CardSession[MAX_CID + 1];
+    private CardSession activatingSession = null;
+    private long nextSessionId = 1;
+    private long timelineMs = 0;
+
+    /**
+     * The exchange in progress and where it stands.
+     */
+    private TransactionRecord pendingTransaction = null;
+    private CardSession pendingSession = null;
+    private boolean commandChaining = false, responseChaining = false;
+    private int lastReaderBlockNumber = -1;
+    private int pendingCascadeLevel = 0, pendingRatsCid = 0;
+    private TransactionRecord.TransactionType lastTransactionType = null;
+    private CardSession lastTransactionSession = null;
+
+    /**
+     * Statistics.
+     */
+    private long numFrames = 0, numSessions = 0, numTransactions = 0, numUnanswered = 0, numUnsolicited = 0;
+    private final long[] transactionCounts = new long[TransactionRecord.TransactionType.values().length];
+    private long latencySumMs = 0, numLatencies = 0, maxLatencyMs = 0, maxDurationMs = 0, numWaitExtensions = 0;
+
+    /**
+     * Constructor.
+     * @param listener
+     */
+    public Iso14443SessionDecoder(TransactionListener listener) {
+        transactionListener = listener;
+    }
+
+    /**
+     * Consumes the next decoded frame of the capture.
+     * @param decodedFrame
+     */
+    public void consumeFrame(DecodedLogFrame decodedFrame) {
+        consumeFrame(decodedFrame.getLogCode(), decodedFrame.getDiffTimeMillis(), decodedFrame.getPayloadData());
+    }
+
+    /**
+     * Consumes the next frame of the capture.
+     * @param logCode
+     * @param diffTimeMs time since the previous frame
+     * @param payloadBytes
+     */
+    public synchronized void consumeFrame(int logCode, int diffTimeMs, byte[] payloadBytes) {
+        numFrames++;
+        timelineMs += Math.max(0, diffTimeMs);
+        int frameSource = LogUtils.getFrameSource(logCode);
+        if(frameSource == LogUtils.FRAME_SOURCE_NONE) {
+            switch(LogUtils.LogCode.lookupByLogCode(logCode)) {
+                case LOG_INFO_RESET_APP:
+                case LOG_INFO_SYSTEM_BOOT:
+                case LOG_INFO_CONFIG_SET:
+                case LOG_INFO_UID_SET:
+                    closeAllSessions();
+                    break;
+                default:
+                    break;
+            }
+            return;
+        }
+        int dataLength = payloadBytes.length;
+        if(dataLength >= 3 && computeCrcA(payloadBytes, 0, dataLength - 2) == ((payloadBytes[dataLength - 2] & 0xff) | ((payloadBytes[dataLength - 1] & 0xff) << 8)))
+            dataLength -= 2;
+        if(dataLength == 0)
+            return;
+        if(frameSource == LogUtils.FRAME_SOURCE_READER)
+            consumeReaderFrame(payloadBytes, dataLength);
+        else
+            consumeCardFrame(payloadBytes, dataLength);
+    }
+
+    /**
+     * Ends the exchange in progress (e.g., at the end of the capture), so it is emitted without
+     * waiting for the next reader command.
+     */
+    public synchronized void flush() {
+        finishPendingTransaction();
+    }
+
+    /**
+     * Ends the exchange in progress and forgets the open sessions (e.g., the field was reset).
+     */
+    public synchronized void closeAllSessions() {
+        finishPendingTransaction();
+        activatingSession = null;
+        for(int cid = 0; cid <= MAX_CID; cid++)
+            protocolSessions[cid] = null;
+        lastTransactionSession = null;
+    }
+
+    private void consumeReaderFrame(byte[] frameData, int dataLength) {
+        int command = frameData[0] & 0xff;
+        if(dataLength == 1 && (command == CMD_REQA || command == CMD_WUPA)) {
+            startTransaction(TransactionRecord.TransactionType.WAKEUP, null, command, dataLength);
+        }
+        else if(dataLength >= 2 && (command == CMD_SEL_CL1 || command == CMD_SEL_CL2 || command == CMD_SEL_CL3)) {
+            if(activatingSession == null)
+                activatingSession = openSession();
+            pendingCascadeLevel = (command - CMD_SEL_CL1) / 2 + 1;
+            if((frameData[1] & 0xff) == NVB_SELECT && dataLength >= 7) {
+                if((frameData[2] & 0xff) == CASCADE_TAG)
+                    activatingSession.setUidPart(pendingCascadeLevel, frameData, 3, 3);
+                else
+                    activatingSession.setUidPart(pendingCascadeLevel, frameData, 2, 4);
+                startTransaction(TransactionRecord.TransactionType.SELECT, activatingSession, command, dataLength);
+            }
+            else {
+                startTransaction(TransactionRecord.TransactionType.ANTICOLLISION, activatingSession, command, dataLength);
+            }
+        }
+        else if(dataLength == 2 && command == CMD_HLTA && frameData[1] == 0x00) {
+            // HLTA addresses the card being activated, or else the one without a CID:
+            CardSession haltedSession = activatingSession;
+            if(haltedSession == null && protocolSessions[0] != null && protocolSessions[0].cid == NO_CID)
+                haltedSession = protocolSessions[0];
+            startTransaction(TransactionRecord.TransactionType.HALT, haltedSession, command, dataLength);
+            completeTransaction();
+            if(haltedSession != null)
+                closeSession(haltedSession);
+        }
+        else if(dataLength == 2 && command == CMD_RATS) {
+            if(activatingSession == null)
+                activatingSession = openSession();
+            pendingRatsCid = frameData[1] & 0x0f;
+            startTransaction(TransactionRecord.TransactionType.RATS, activatingSession, command, dataLength);
+        }
+        else if((command & 0xf0) == CMD_PPS && lastTransactionType == TransactionRecord.TransactionType.RATS &&
+                lastTransactionSession != null && (command & 0x0f) == Math.max(0, lastTransactionSession.cid)) {
+            startTransaction(TransactionRecord.TransactionType.PPS, lastTransactionSession, command, dataLength);
+        }
+        else if(!(hasProtocolSessions() || (activatingSession == null && getBlockType(command) == BLOCK_I)) ||
+                !consumeReaderBlock(frameData, dataLength)) {
+            startTransaction(TransactionRecord.TransactionType.COMMAND, activatingSession, command, dataLength);
+        }
+    }
+
+    /**
+     * Handles an ISO 14443-4 block sent by the reader.
+     * @return boolean false if the frame is not a valid block
+     */
+    private boolean consumeReaderBlock(byte[] frameData, int dataLength) {
+        int pcb = frameData[0] & 0xff;
+        int blockType = getBlockType(pcb);
+        int infOffset = getInfOffset(frameData, dataLength, blockType);
+        if(blockType == BLOCK_INVALID || infOffset < 0)
+            return false;
+        int cid = (pcb & PCB_CID_FOLLOWING) != 0 ? frameData[1] & 0x0f : 0;
+        CardSession session = protocolSessions[cid];
+        if(session == null) { // the capture started after this card was activated
+            session = openSession();
+            session.isProtocolActive = true;
+            session.cid = (pcb & PCB_CID_FOLLOWING) != 0 ? cid : NO_CID;
+            protocolSessions[cid] = session;
+        }
+        boolean continuesExchange = pendingTransaction != null && !pendingTransaction.isComplete && pendingSession == session;
+        if(blockType == BLOCK_I) {
+            if(continuesExchange && pendingTransaction.transactionType == TransactionRecord.TransactionType.APDU &&
+               (commandChaining || (!pendingTransaction.hasResponse() && (pcb & PCB_BLOCK_NUMBER) == lastReaderBlockNumber))) {
+                if(!commandChaining)
+                    pendingTransaction.numRetransmissions++;
+                else
+                    pendingTransaction.commandLength += dataLength - infOffset;
+                pendingTransaction.numReaderFrames++;
+                pendingTransaction.commandEndMs = timelineMs;
+                pendingTransaction.endTimeMs = timelineMs;
+            }
+            else {
+                startTransaction(TransactionRecord.TransactionType.APDU, session, TransactionRecord.NONE, dataLength - infOffset);
+                int numInfBytes = dataLength - infOffset;
+                pendingTransaction.apduCla = numInfBytes > 0 ? frameData[infOffset] & 0xff : TransactionRecord.NONE;
+                pendingTransaction.apduIns = numInfBytes > 1 ? frameData[infOffset + 1] & 0xff : TransactionRecord.NONE;
+                pendingTransaction.apduP1 = numInfBytes > 2 ? frameData[infOffset + 2] & 0xff : TransactionRecord.NONE;
+                pendingTransaction.apduP2 = numInfBytes > 3 ? frameData[infOffset + 3] & 0xff : TransactionRecord.NONE;
+            }
+            commandChaining = (pcb & PCB_CHAINING) != 0;
+            lastReaderBlockNumber = pcb & PCB_BLOCK_NUMBER;
+        }
+        else if(blockType == BLOCK_R) {
+            if(continuesExchange && pendingTransaction.transactionType != TransactionRecord.TransactionType.DESELECT) {
+                // acknowledges a chained response block, otherwise asks for the last block again:
+                if(!responseChaining || (pcb & PCB_R_NAK) != 0)
+                    pendingTransaction.numRetransmissions++;
+                responseChaining = false;
+                pendingTransaction.numReaderFrames++;
+                pendingTransaction.endTimeMs = timelineMs;
+            }
+            else {
+                startTransaction(TransactionRecord.TransactionType.PRESENCE_CHECK, session, pcb, 0);
+            }
+        }
+        else if((pcb & PCB_S_TYPE_MASK) == PCB_S_WTX) {
+            if(continuesExchange) {
+                pendingTransaction.numReaderFrames++;
+                pendingTransaction.endTimeMs = timelineMs;
+            }
+        }
+        else {
+            startTransaction(TransactionRecord.TransactionType.DESELECT, session, pcb, 0);
+        }
+        return true;
+    }
+
+    private void consumeCardFrame(byte[] frameData, int dataLength) {
+        if(pendingTransaction == null || pendingTransaction.isComplete) {
+            TransactionRecord unsolicited = new TransactionRecord(TransactionRecord.TransactionType.UNSOLICITED, timelineMs);
+            unsolicited.numCardFrames = 1;
+            unsolicited.responseStartMs = timelineMs;
+            unsolicited.responseCode = frameData[0] & 0xff;
+            unsolicited.responseLength = dataLength;
+            unsolicited.isComplete = true;
+            numUnsolicited++;
+            emitTransaction(unsolicited, null);
+            return;
+        }
+        TransactionRecord transaction = pendingTransaction;
+        transaction.numCardFrames++;
+        transaction.endTimeMs = timelineMs;
+        switch(transaction.transactionType) {
+            case APDU:
+            case PRESENCE_CHECK:
+            case DESELECT:
+                consumeCardBlock(frameData, dataLength);
+                return;
+            default:
+                break;
+        }
+        markResponse(transaction);
+        transaction.responseCode = frameData[0] & 0xff;
+        transaction.responseLength = dataLength;
+        switch(transaction.transactionType) {
+            case WAKEUP:
+                // a card answered: it is a new session (a card addressed without a CID is gone):
+                if(activatingSession != null)
+                    closeSession(activatingSession);
+                if(protocolSessions[0] != null && protocolSessions[0].cid == NO_CID)
+                    closeSession(protocolSessions[0]);
+                activatingSession = openSession();
+                pendingSession = activatingSession;
+                break;
+            case SELECT:
+                if((frameData[0] & SAK_UID_INCOMPLETE) == 0 && pendingSession != null)
+                    pendingSession.uidString = uidToString(pendingSession);
+                break;
+            case RATS:
+                if(pendingSession != null)
+                    activateProtocol(pendingSession, frameData, dataLength);
+                break;
+            default:
+                break;
+        }
+        completeTransaction();
+    }
+
+    /**
+     * Handles an ISO 14443-4 block sent by the card.
+     */
+    private void consumeCardBlock(byte[] frameData, int dataLength) {
+        TransactionRecord transaction = pendingTransaction;
+        int pcb = frameData[0] & 0xff;
+        int blockType = getBlockType(pcb);
+        int infOffset = getInfOffset(frameData, dataLength, blockType);
+        if(blockType == BLOCK_S && (pcb & PCB_S_TYPE_MASK) == PCB_S_WTX) {
+            markResponse(transaction);
+            transaction.numWaitExtensions++;
+            numWaitExtensions++;
+            return;
+        }
+        if(blockType == BLOCK_R && commandChaining) { // acknowledges a chained command block
+            return;
+        }
+        markResponse(transaction);
+        if(blockType == BLOCK_I && infOffset >= 0 && transaction.transactionType == TransactionRecord.TransactionType.APDU) {
+            transaction.responseLength += dataLength - infOffset;
+            if((pcb & PCB_CHAINING) != 0) {
+                responseChaining = true;
+                return;
+            }
+            if(dataLength - infOffset >= 2)
+                transaction.statusWord = ((frameData[dataLength - 2] & 0xff) << 8) | (frameData[dataLength - 1] & 0xff);
+        }
+        else {
+            transaction.responseCode = pcb;
+            transaction.responseLength = dataLength;
+        }
+        CardSession deselectedSession = pendingSession;
+        boolean isDeselected = transaction.transactionType == TransactionRecord.TransactionType.DESELECT &&
+                               blockType == BLOCK_S && (pcb & PCB_S_TYPE_MASK) == PCB_S_DESELECT;
+        completeTransaction();
+        if(isDeselected && deselectedSession != null)
+            closeSession(deselectedSession);
+    }
+
+    /**
+     * The card has answered the RATS: it is now addressed by its CID (if it supports one) with
+     * ISO 14443-4 blocks.
+     */
+    private void activateProtocol(CardSession session, byte[] atsData, int dataLength) {
+        int formatByte = dataLength > 1 ? atsData[1] & 0xff : 0;
+        int tc1Index = 2 + ((formatByte & ATS_TA1_PRESENT) != 0 ? 1 : 0) + ((formatByte & ATS_TB1_PRESENT) != 0 ? 1 : 0);
+        boolean supportsCid = (formatByte & ATS_TC1_PRESENT) != 0 && tc1Index < dataLength && (atsData[tc1Index] & TC1_CID_SUPPORTED) != 0;
+        int slot = supportsCid ? pendingRatsCid : 0;
+        if(protocolSessions[slot] != null && protocolSessions[slot] != session)
+            closeSession(protocolSessions[slot]);
+        session.cid = supportsCid ? pendingRatsCid : NO_CID;
+        session.isProtocolActive = true;
+        protocolSessions[slot] = session;
+        if(activatingSession == session)
+            activatingSession = null;
+    }
+
+    private static int getBlockType(int pcb) {
+        if((pcb & 0xe2) == 0x02)
+            return BLOCK_I;
+        else if((pcb & 0xe6) == 0xa2)
+            return BLOCK_R;
+        else if((pcb & 0xc7) == 0xc2 && ((pcb & PCB_S_TYPE_MASK) == PCB_S_DESELECT || (pcb & PCB_S_TYPE_MASK) == PCB_S_WTX))
+            return BLOCK_S;
+        return BLOCK_INVALID;
+    }
+
+    /**
+     * @return int offset of the information field of the block (-1 if the block is too short)
+     */
+    private static int getInfOffset(byte[] frameData, int dataLength, int blockType) {
+        int pcb = frameData[0] & 0xff;
+        int infOffset = 1 + ((pcb & PCB_CID_FOLLOWING) != 0 ? 1 : 0) + (blockType == BLOCK_I && (pcb & PCB_NAD_FOLLOWING) != 0 ? 1 : 0);
+        return infOffset > dataLength ? -1 : infOffset;
+    }
+
+    private boolean hasProtocolSessions() {
+        for(CardSession session : protocolSessions) {
+            if(session != null)
+                return true;
+        }
+        return false;
+    }
+
+    private CardSession openSession() {
+        numSessions++;
+        return new CardSession(nextSessionId++);
+    }
+
+    private void closeSession(CardSession session) {
+        if(activatingSession == session)
+            activatingSession = null;
+        for(int cid = 0; cid <= MAX_CID; cid++) {
+            if(protocolSessions[cid] == session)
+                protocolSessions[cid] = null;
+        }
+        if(lastTransactionSession == session)
+            lastTransactionSession = null;
+    }
+
+    private static String uidToString(CardSession session) {
+        StringBuilder uidHex = new StringBuilder(2 * session.uidLength);
+        for(int b = 0; b < session.uidLength; b++)
+            uidHex.append(String.format(Locale.ENGLISH, "%02X", session.uidBytes[b]));
+        return uidHex.toString();
+    }
+
+    /**
+     * Starts a new exchange with a reader command (the one in progress ends unanswered).
+     */
+    private void startTransaction(TransactionRecord.TransactionType transactionType, CardSession session, int commandCode, int commandLength) {
+        finishPendingTransaction();
+        pendingTransaction = new TransactionRecord(transactionType, timelineMs);
+        pendingTransaction.numReaderFrames = 1;
+        pendingTransaction.commandCode = commandCode;
+        pendingTransaction.commandLength = commandLength;
+        pendingSession = session;
+        commandChaining = false;
+        responseChaining = false;
+    }
+
+    private void markResponse(TransactionRecord transaction) {
+        if(transaction.responseStartMs == TransactionRecord.NONE)
+            transaction.responseStartMs = timelineMs;
+    }
+
+    private void completeTransaction() {
+        pendingTransaction.isComplete = true;
+        finishPendingTransaction();
+    }
+
+    private void finishPendingTransaction() {
+        if(pendingTransaction == null)
+            return;
+        TransactionRecord transaction = pendingTransaction;
+        CardSession session = pendingSession;
+        pendingTransaction = null;
+        pendingSession = null;
+        commandChaining = false;
+        responseChaining = false;
+        lastTransactionType = transaction.transactionType;
+        lastTransactionSession = session;
+        emitTransaction(transaction, session);
+    }
+
+    private void emitTransaction(TransactionRecord transaction, CardSession session) {
+        if(session != null) {
+            transaction.sessionId = session.sessionId;
+            transaction.sessionCid = session.cid;
+            transaction.sessionUid = session.uidString;
+        }
+        numTransactions++;
+        transactionCounts[transaction.transactionType.ordinal()]++;
+        if(transaction.hasResponse()) {
+            latencySumMs += transaction.getLatencyMs();
+            numLatencies++;
+            maxLatencyMs = Math.max(maxLatencyMs, transaction.getLatencyMs());
+        }
+        else if(transaction.transactionType != TransactionRecord.TransactionType.HALT) {
+            numUnanswered++;
+        }
+        maxDurationMs = Math.max(maxDurationMs, transaction.getDurationMs());
+        if(transactionListener != null)
+            transactionListener.onTransaction(transaction);
+    }
+
+    /**
+     * ISO 14443-A CRC (CRC_A) of the bytes, the low byte being sent first.
+     * @param dataBytes
+     * @param offset
+     * @param length
+     * @return int 16-bit CRC
+     * @url https://www.iso.org/standard/73598.html
+     */
+    public static int computeCrcA(byte[] dataBytes, int offset, int length) {
+        int crc = 0x6363;
+        for(int b = offset; b < offset + length; b++) {
+            int crcByte = (dataBytes[b] ^ crc) & 0xff;
+            crcByte = (crcByte ^ (crcByte << 4)) & 0xff;
+            crc = ((crc >> 8) ^ (crcByte << 8) ^ (crcByte << 3) ^ (crcByte >> 4)) & 0xffff;
+        }
+        return crc;
+    }
+
+    /**
+     * Get methods for the decoder statistics.
+     * @return
+     */
+    public synchronized long getFramesConsumed() { return numFrames; }
+    public synchronized long getSessions() { return numSessions; }
+    public synchronized long getTransactions() { return numTransactions; }
+    public synchronized long getUnansweredCommands() { return numUnanswered; }
+    public synchronized long getUnsolicitedFrames() { return numUnsolicited; }
+    public synchronized long getMaxLatencyMs() { return maxLatencyMs; }
+    public synchronized long getTimelineMs() { return timelineMs; }
+
+    public synchronized long getTransactions(TransactionRecord.TransactionType transactionType) {
+        return transactionCounts[transactionType.ordinal()];
+    }
+
+    public synchronized double getAverageLatencyMs() {
+        return numLatencies == 0 ? 0.0 : (double) latencySumMs / numLatencies;
+    }
+
+    /**
+     * @return int number of cards currently tracked (the one being activated and those in
+     *             ISO 14443-4)
+     */
+    public synchronized int getOpenSessions() {
+        int numOpen = activatingSession != null ? 1 : 0;
+        for(CardSession session : protocolSessions) {
+            if(session != null)
+                numOpen++;
+        }
+        return numOpen;
+    }
+
+    /**
+     * Summary of the session statistics suitable for display in the log.
+     * @return String
+     */
+    public synchronized String getStatsSummary() {
+        return String.format(Locale.ENGLISH, "ISO 14443 sessions: %d (%d open), transactions: %d (%d APDUs, %d RATS), " +
+                             "unanswered commands: %d, unsolicited card frames: %d\n" +
+                             "Transaction latency: %.2f ms average, %d ms max (longest exchange %d ms, %d WTX)",
+                             numSessions, getOpenSessions(), numTransactions, getTransactions(TransactionRecord.TransactionType.APDU),
+                             getTransactions(TransactionRecord.TransactionType.RATS), numUnanswered, numUnsolicited,
+                             getAverageLatencyMs(), maxLatencyMs, maxDurationMs, numWaitExtensions);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Live Log Decoder</h1>
+ * Decodes the LIVE log frames: parses the header (the offset of each frame from the previous
+ * one is reconstructed by the SystickTimeline of the decoder, across the systick wraparounds).
+ * The derived display data (entropy, hex / ascii strings and the payload classification) is
+ * computed by the DecodedLogFrame on first use.
+ *
+ * @ref LogDecoder
+ * @ref SystickTimeline
+ */
+public class LiveLogDecoder implements LogDecoder {
+
+    private final PayloadClassifier payloadClassifier;
+    private final SystickTimeline systickTimeline = new SystickTimeline();
+
+    /**
+     * Constructor.
+     * @param classifier
+     */
+    public LiveLogDecoder(PayloadClassifier classifier) {
+        payloadClassifier = classifier;
+    }
+
+    public PayloadClassifier getPayloadClassifier() {
+        return payloadClassifier;
+    }
+
+    public SystickTimeline getSystickTimeline() {
+        return systickTimeline;
+    }
+
+    @Override
+    public DecodedLogFrame decodeLogFrame(byte[] rawLogBytes) {
+        if(!LogFrameDecoder.hasValidHeader(rawLogBytes))
+            return null;
+        int logCode = LogFrameDecoder.getLogCode(rawLogBytes);
+        int diffTimeMs = systickTimeline.nextDiffTime(LogFrameDecoder.getTimestamp(rawLogBytes), System.currentTimeMillis());
+        return decodePayload(logCode, diffTimeMs, LogFrameDecoder.extractPayload(rawLogBytes));
+    }
+
+    @Override
+    public DecodedLogFrame decodePayload(int logCode, int diffTimeMs, byte[] payloadBytes) {
+        return new DecodedLogFrame(logCode, LogUtils.getDataDirection(logCode), diffTimeMs, payloadBytes, payloadClassifier);
+    }
+
+}
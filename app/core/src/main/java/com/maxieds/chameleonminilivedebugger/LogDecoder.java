@@ -0,0 +1,28 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Log Decoder</h1>
+ * Decodes the raw LIVE log frames read from the device into the log data model.
+ *
+ * @ref LiveLogDecoder
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+ */
+public interface LogDecoder {
+
+    /**
+     * Decodes the raw frame (header and payload).
+     * @param rawLogBytes
+     * @return DecodedLogFrame decoded frame (or null if the frame is invalid)
+     */
+    DecodedLogFrame decodeLogFrame(byte[] rawLogBytes);
+
+    /**
+     * Decodes the payload of a frame whose header has already been parsed.
+     * @param logCode
+     * @param diffTimeMs
+     * @param payloadBytes
+     * @return DecodedLogFrame decoded frame
+     */
+    DecodedLogFrame decodePayload(int logCode, int diffTimeMs, byte[] payloadBytes);
+
+}
@@ -0,0 +1,139 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Locale;
+
+import static java.lang.Math.abs;
+
+/**
+ * <h1>Log Export Formatter</h1>
+ * Formats the individual log records written by the plaintext, HTML and binary log exporters.
+ * The record formats roughly follow the Python scripts on the Chameleon Mini scripts page.
+ *
+ * @ref ExportTools.writeFormattedLogFile
+ * @ref ExportTools.writeHTMLLogFile
+ * @ref ExportTools.writeBinaryLogFile
+ * @url https://github.com/emsec/ChameleonMini/tree/master/Software
+ */
+public class LogExportFormatter {
+
+    public static final String HTML_HEADER = "<html><head><title>Chameleon Mini Live Debugger -- Logging Output</title></head><body>\n\n";
+    public static final String HTML_FOOTER = "</body></html>";
+    public static final String HTML_DEFAULT_BGCOLOR = "#ffffff";
+    public static final String NO_APDU_RECOGNIZED = "APDU: NONE RECOGNIZED";
+
+    /**
+     * String description of a log data record (as in the plaintext log).
+     * @param recordID
+     * @param logType
+     * @param entryData
+     * @param diffTimeMillis
+     * @param apduDesc
+     * @return String
+     */
+    public static String formatLogRecord(int recordID, int logType, byte[] entryData, int diffTimeMillis, String apduDesc) {
+        LogUtils.LogCode logCode = LogUtils.LogCode.lookupByLogCode(logType);
+        return String.format(Locale.ENGLISH, "%06d -- %-32s [%-3s bytes] (%s%-6s ms) [%s] {%s}", recordID, logCode.name(),
+                String.valueOf(entryData.length), diffTimeMillis >= 0 ? "+" : "~", String.valueOf(abs(diffTimeMillis)),
+                ByteUtils.bytes2Hex(entryData), apduDesc);
+    }
+
+    /**
+     * String description of the decoded log data record (as in the plaintext log).
+     * @param recordID
+     * @param logFrame
+     * @return String
+     */
+    public static String formatLogRecord(int recordID, DecodedLogFrame logFrame) {
+        String apduDesc = logFrame.getApduDesc();
+        if(apduDesc == null || apduDesc.equals(PayloadClassifier.NONE_RECOGNIZED))
+            apduDesc = NO_APDU_RECOGNIZED;
+        return formatLogRecord(recordID, logFrame.getLogCode(), logFrame.getPayloadData(), logFrame.getDiffTimeMillis(), apduDesc);
+    }
+
+    /**
+     * String description of a status / metadata record (as in the plaintext log).
+     * @param title
+     * @param text
+     * @param timestamp
+     * @return String
+     */
+    public static String formatMetadataRecord(String title, String text, String timestamp) {
+        return title + ": " + text + " (@" + timestamp + ")";
+    }
+
+    /**
+     * Line of the plaintext log for a log data record.
+     * @param recordDesc
+     * @return String
+     */
+    public static String formatTextLine(String recordDesc) {
+        return recordDesc + "\n";
+    }
+
+    /**
+     * Line of the plaintext log for a metadata (status / annotation) record.
+     * @param metadataDesc
+     * @return String
+     */
+    public static String formatTextMetadataLine(String metadataDesc) {
+        return "\n## " + metadataDesc + "\n";
+    }
+
+    /**
+     * Line of the HTML log for a log data record.
+     * @param bgColor
+     * @param recordDesc
+     * @return String
+     */
+    public static String formatHTMLLine(String bgColor, String recordDesc) {
+        return "<code bgcolor='" + bgColor + "'>" + recordDesc + "</code><br/>\n";
+    }
+
+    /**
+     * Line of the HTML log for a metadata (status / annotation) record.
+     * @param metadataDesc
+     * @return String
+     */
+    public static String formatHTMLMetadataLine(String metadataDesc) {
+        return "<b><code>" + metadataDesc + "</code></b><br/>\n";
+    }
+
+    /**
+     * Formats the color as an HTML color string.
+     * @param colorValue
+     * @return String
+     */
+    public static String formatHTMLColor(int colorValue) {
+        return String.format(Locale.ENGLISH, "#%06X", (0xFFFFFF & colorValue));
+    }
+
+    /**
+     * Packs the log data record into the native binary log format (as returned by the
+     * LOGDOWNLOAD command).
+     * @param logType
+     * @param entryData
+     * @param offsetTimeMillis
+     * @return byte[] packaged raw binary log data
+     * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+     */
+    public static byte[] packageBinaryLogData(int logType, byte[] entryData, short offsetTimeMillis) {
+        byte[] fullBytes = new byte[entryData.length + LogFrameDecoder.LOG_HEADER_SIZE];
+        fullBytes[0] = (byte) LogUtils.LogCode.lookupByLogCode(logType).toInteger();
+        fullBytes[1] = (byte) entryData.length;
+        fullBytes[2] = (byte) ((offsetTimeMillis & 0x0000ff00) >>> 8);
+        fullBytes[3] = (byte) (offsetTimeMillis & 0x000000ff);
+        System.arraycopy(entryData, 0, fullBytes, LogFrameDecoder.LOG_HEADER_SIZE, entryData.length);
+        return fullBytes;
+    }
+
+    /**
+     * Running offset time of the next record in the binary log.
+     * @param offsetTimeMillis
+     * @param diffTimeMillis
+     * @return short next offset time
+     */
+    public static short getNextOffsetTime(short offsetTimeMillis, int diffTimeMillis) {
+        return (short) (offsetTimeMillis + abs(diffTimeMillis));
+    }
+
+}
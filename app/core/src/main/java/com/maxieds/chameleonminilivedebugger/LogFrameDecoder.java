@@ -0,0 +1,58 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Log Frame Decoder</h1>
+ * Parses the 4-byte header (log code, payload length, 16-bit systick timestamp) of the raw
+ * LIVE log frames (the offsets of the frames from each other are reconstructed from the
+ * timestamps by the SystickTimeline of the decoder).
+ *
+ * @ref LogEntryUI.decodeLogFrame
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+ */
+public class LogFrameDecoder {
+
+    public static final int LOG_HEADER_SIZE = 4;
+
+    /**
+     * Get methods for the header fields of the raw frame.
+     * @param rawLogBytes
+     * @return
+     */
+    public static int getLogCode(byte[] rawLogBytes) { return (int) rawLogBytes[0]; }
+    public static int getPayloadLength(byte[] rawLogBytes) { return rawLogBytes[1] & 0xff; }
+    public static int getTimestamp(byte[] rawLogBytes) {
+        return ((rawLogBytes[2] & 0xff) << 8) | (rawLogBytes[3] & 0xff);
+    }
+
+    /**
+     * Checks that the raw data holds at least a complete frame header.
+     * @param rawLogBytes
+     * @return boolean
+     */
+    public static boolean hasValidHeader(byte[] rawLogBytes) {
+        return rawLogBytes != null && rawLogBytes.length >= LOG_HEADER_SIZE;
+    }
+
+    /**
+     * Checks that the raw data holds all of the payload bytes given in the header.
+     * @param rawLogBytes
+     * @return boolean
+     */
+    public static boolean hasCompletePayload(byte[] rawLogBytes) {
+        return rawLogBytes.length - LOG_HEADER_SIZE >= getPayloadLength(rawLogBytes);
+    }
+
+    /**
+     * Copies the payload bytes out of the raw frame (left zero-filled if the frame is
+     * shorter than the payload length in the header).
+     * @param rawLogBytes
+     * @return byte[] payload bytes
+     */
+    public static byte[] extractPayload(byte[] rawLogBytes) {
+        byte[] payloadBytes = new byte[rawLogBytes.length - LOG_HEADER_SIZE];
+        if(hasCompletePayload(rawLogBytes))
+            System.arraycopy(rawLogBytes, LOG_HEADER_SIZE, payloadBytes, 0, payloadBytes.length);
+        return payloadBytes;
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Log Frame Reassembler</h1>
+ * Buffers the raw byte stream read from the USB serial port and carves it into complete
+ * LIVE log frames and text command responses. The USB reads do not line up with the frame
+ * boundaries under bursty sniffing (several frames are coalesced into one read, or a frame is
+ * split across reads), so the bytes are collected in a ring buffer and only complete frames are
+ * passed on to the listener.
+ *
+ * LIVE log frames have a 4-byte header (log code, payload length, 16-bit systick timestamp)
+ * followed by the payload bytes. Command responses are lines of the form "NNN:TEXT\r\n", where a
+ * 101 (OK WITH TEXT) status line is followed by one more line of text. The ASCII digits are not
+ * valid log codes, so the two can be told apart from the first byte.
+ *
+ * The methods are synchronized, but the class is intended to be fed from the single USB
+ * reader thread.
+ *
+ * @ref LiveLoggerActivity.usbReaderCallback
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+ */
+public class LogFrameReassembler {
+
+    /**
+     * Receives the frames parsed out of the serial data stream.
+     */
+    public interface FrameListener {
+        void onLogFrame(byte[] frameData);
+        void onCommandResponse(byte[] respData);
+    }
+
+    /**
+     * Size constants for the parsed data.
+     */
+    public static final int LOG_HEADER_SIZE = 4;
+    public static final int DEFAULT_BUFFER_SIZE = 16384;
+    public static final int MAX_RESPONSE_LINE_LENGTH = 512;
+    public static final int TEXT_RESPONSE_CODE = 101;
+
+    /**
+     * Lookup table of the valid (leading) log code bytes.
+     */
+    private static final boolean[] VALID_LOG_CODES = new boolean[256];
+    static {
+        for(LogUtils.LogCode logCode : LogUtils.LogCode.values())
+            VALID_LOG_CODES[logCode.toInteger() & 0xff] = true;
+    }
+
+    /**
+     * The ring buffer storage (the capacity is a power of two). The read and write positions
+     * increase monotonically and are masked when indexing into the buffer.
+     */
+    private final byte[] ringBuffer;
+    private final int ringMask;
+    private int readPos = 0, writePos = 0;
+    private final FrameListener frameListener;
+
+    /**
+     * Statistics about the parsed stream.
+     */
+    private long numLogFrames = 0, numResponses = 0;
+    private long numDiscardedBytes = 0, numOverflowBytes = 0;
+
+    /**
+     * Constructor.
+     * @param listener
+     */
+    public LogFrameReassembler(FrameListener listener) {
+        this(DEFAULT_BUFFER_SIZE, listener);
+    }
+
+    /**
+     * Constructor.
+     * @param bufferSize (rounded up to the next power of two)
+     * @param listener
+     */
+    public LogFrameReassembler(int bufferSize, FrameListener listener) {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, 2 * MAX_RESPONSE_LINE_LENGTH) - 1) << 1;
+        ringBuffer = new byte[capacity];
+        ringMask = capacity - 1;
+        frameListener = listener;
+    }
+
+    /**
+     * Appends the data read from the serial port and dispatches all of the complete frames
+     * now available in the buffer.
+     * @param data
+     */
+    public synchronized void append(byte[] data) {
+        append(data, 0, data.length);
+    }
+
+    /**
+     * Appends the data read from the serial port and dispatches all of the complete frames
+     * now available in the buffer. If the buffer fills up the oldest bytes are dropped, and
+     * a single read longer than the whole buffer only has its tail kept (the dropped head of
+     * the read is counted with the discarded bytes).
+     * @param data
+     * @param offset
+     * @param length
+     */
+    public synchronized void append(byte[] data, int offset, int length) {
+        if(length > ringBuffer.length) {
+            int dropped = length - ringBuffer.length;
+            offset += dropped;
+            length = ringBuffer.length;
+            numDiscardedBytes += dropped;
+        }
+        int overflow = (writePos - readPos) + length - ringBuffer.length;
+        if(overflow > 0) {
+            readPos += overflow;
+            numOverflowBytes += overflow;
+        }
+        int startIdx = writePos & ringMask;
+        int firstChunk = Math.min(length, ringBuffer.length - startIdx);
+        System.arraycopy(data, offset, ringBuffer, startIdx, firstChunk);
+        System.arraycopy(data, offset + firstChunk, ringBuffer, 0, length - firstChunk);
+        writePos += length;
+        dispatchFrames();
+    }
+
+    /**
+     * Discards any partially received data (e.g., after the port is closed or an XModem
+     * transfer takes over the serial line).
+     */
+    public synchronized void reset() {
+        readPos = writePos;
+    }
+
+    /**
+     * Parses and dispatches the complete frames at the front of the buffer.
+     */
+    private void dispatchFrames() {
+        while(writePos - readPos > 0) {
+            int available = writePos - readPos;
+            int leadByte = peek(0);
+            if(leadByte == '\r' || leadByte == '\n') { // stray line endings between responses
+                readPos++;
+                continue;
+            }
+            else if(leadByte >= '0' && leadByte <= '9') {
+                int respLength = parseResponseLength(available);
+                if(respLength == 0)
+                    return;
+                else if(respLength > 0) {
+                    numResponses++;
+                    frameListener.onCommandResponse(consume(respLength));
+                    continue;
+                }
+            }
+            else if(leadByte == LogUtils.LogCode.LOG_EMPTY.toInteger()) {
+                readPos++;
+                continue;
+            }
+            else if(VALID_LOG_CODES[leadByte]) {
+                if(available < LOG_HEADER_SIZE)
+                    return;
+                int frameLength = LOG_HEADER_SIZE + peek(1);
+                if(available < frameLength)
+                    return;
+                numLogFrames++;
+                frameListener.onLogFrame(consume(frameLength));
+                continue;
+            }
+            // not the start of a frame we recognize, so skip ahead to resynchronize:
+            readPos++;
+            numDiscardedBytes++;
+        }
+    }
+
+    /**
+     * Determines the length of the text command response at the front of the buffer.
+     * @param available
+     * @return int number of bytes in the response, 0 if more data is needed, or
+     *         -1 if the data is not a response
+     */
+    private int parseResponseLength(int available) {
+        if(available < 4)
+            return 0;
+        int respCode = 0;
+        for(int d = 0; d < 3; d++) {
+            int digit = peek(d) - '0';
+            if(digit < 0 || digit > 9)
+                return -1;
+            respCode = 10 * respCode + digit;
+        }
+        if(peek(3) != ':' || !SerialResponseClassifier.isResponseCode(respCode))
+            return -1;
+        int numLines = (respCode == TEXT_RESPONSE_CODE) ? 2 : 1;
+        int pos = 4;
+        for(int line = 0; line < numLines; line++) {
+            int lineStart = pos;
+            while(pos < available && peek(pos) != '\r' && peek(pos) != '\n') {
+                if(pos - lineStart > MAX_RESPONSE_LINE_LENGTH)
+                    return -1;
+                pos++;
+            }
+            if(pos == available)
+                return 0;
+            // any line ending bytes which arrive late are skipped as stray bytes:
+            while(pos < available && (peek(pos) == '\r' || peek(pos) == '\n'))
+                pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Reads the unsigned byte at the offset from the front of the buffer.
+     * @param offset
+     * @return int byte value
+     */
+    private int peek(int offset) {
+        return ringBuffer[(readPos + offset) & ringMask] & 0xff;
+    }
+
+    /**
+     * Removes the bytes from the front of the buffer.
+     * @param length
+     * @return byte[] copy of the removed bytes
+     */
+    private byte[] consume(int length) {
+        byte[] frameData = new byte[length];
+        int startIdx = readPos & ringMask;
+        int firstChunk = Math.min(length, ringBuffer.length - startIdx);
+        System.arraycopy(ringBuffer, startIdx, frameData, 0, firstChunk);
+        System.arraycopy(ringBuffer, 0, frameData, firstChunk, length - firstChunk);
+        readPos += length;
+        return frameData;
+    }
+
+    /**
+     * Get methods for the stream statistics.
+     * @return
+     */
+    public synchronized int getBufferedByteCount() { return writePos - readPos; }
+    public synchronized long getLogFrameCount() { return numLogFrames; }
+    public synchronized long getResponseCount() { return numResponses; }
+    public synchronized long getDiscardedByteCount() { return numDiscardedBytes; }
+    public synchronized long getOverflowByteCount() { return numOverflowBytes; }
+
+}
@@ -0,0 +1,1247 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <h1>Log Record Store</h1>
+ * Compact columnar storage for the records shown in the Log tab. Instead of one object per
+ * captured frame, each field is kept in its own primitive column (record ids and timestamps
+ * as ints, the log code, data direction, record kind and display flags as bytes) and the
+ * payloads are copied back to back into a shared byte arena addressed by an offset / length
+ * index. The columns and the arena grow in fixed size chunks, so appending never copies the
+ * existing data, and any record can be accessed at random by its row (display position) or by
+ * its record id.
+ * The status / metadata records are rare and keep their strings in a side table.
+ *
+ * When a capture journal is attached, every LIVE log frame is also appended to the
+ * memory-mapped journal, and only the most recent payload arena chunks are kept on the heap:
+ * the payloads of the older (evicted) chunks are read back from the journal when they are
+ * accessed.
+ *
+ * With the run-length collapsing of repeated frames enabled, a LIVE log frame identical to the
+ * previous record (same log code, direction and payload, as when a reader keeps polling) is not
+ * stored as a new record: it extends the repeat run of the previous record instead, which keeps
+ * the repeat count and the timestamps of the last repeat in a sparse side table. The repeated
+ * frames are still written to the capture journal.
+ *
+ * Each appended LIVE log frame is also marked when its payload is the same as the frame that
+ * started the current run of similar frames (a metadata record ends the run), so the
+ * collapse-similar view of the Log tab is a filter on the stored flag rather than a pass over
+ * the log.
+ *
+ * A retention policy bounds the number, total payload size and age of the records: once a
+ * bound is exceeded the store is compacted in place, dropping the oldest records that are not
+ * pinned by the policy (so the store reaches a steady state during long captures).
+ *
+ * The offsets of the LIVE log frames from each other (including the collapsed repeats) add up
+ * to the log time of each record on the timeline reconstructed from the device systick. A sparse
+ * index keeps the log time of every TIME_INDEX_STRIDE-th record (and of each record following
+ * evicted ones), so the log time of a record, the record at a log time and the time spanned by
+ * a range of records are found by a binary search and a short scan of the offsets.
+ *
+ * The whole store can be written to a session snapshot and restored from it in bulk (the rows
+ * are restored with their flags, append times and repeat runs as they were captured).
+ *
+ * The store is not thread safe: it is only modified and read from the UI thread.
+ *
+ * @ref LiveLoggerActivity.logDataEntries
+ * @ref CaptureJournal
+ * @ref LogRetentionPolicy
+ * @ref SessionSnapshot
+ * @ref SystickTimeline
+ */
+public class LogRecordStore {
+
+    /**
+     * Kinds of records in the store.
+     */
+    public static final byte RECORD_LOG_FRAME = 0;
+    public static final byte RECORD_METADATA = 1;
+
+    /**
+     * Display state flags of the records (selected by checkmark, hidden from the Log tab,
+     * highlighted in the Log tab).
+     */
+    public static final int FLAG_SELECTED = 0x01;
+    public static final int FLAG_HIDDEN = 0x02;
+    public static final int FLAG_HIGHLIGHTED = 0x04;
+
+    /**
+     * Set on the LIVE log frames that have repeats collapsed into them.
+     */
+    public static final int FLAG_REPEAT_RUN = 0x08;
+
+    /**
+     * Set on the LIVE log frames whose payload repeats the first frame of the run of similar
+     * frames they belong to (hidden by the collapse-similar view).
+     */
+    public static final int FLAG_SIMILAR = 0x10;
+
+    /**
+     * Rows are grouped into chunks of CHUNK_SIZE entries in every column; the payload arena is
+     * allocated in chunks of ARENA_CHUNK_SIZE bytes (a payload never straddles two chunks).
+     */
+    public static final int CHUNK_BITS = 12;
+    public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    public static final int ARENA_CHUNK_BITS = 16;
+    public static final int ARENA_CHUNK_SIZE = 1 << ARENA_CHUNK_BITS;
+    private static final int ARENA_CHUNK_MASK = ARENA_CHUNK_SIZE - 1;
+    public static final int MAX_PAYLOAD_SIZE = ARENA_CHUNK_SIZE - 1;
+
+    /**
+     * Default heap budget of the payload arena while a capture journal is attached.
+     */
+    public static final long DEFAULT_MAX_RESIDENT_PAYLOAD_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * The age bound of the retention policy is checked at most this often, and an eviction pass
+     * that could not get under the bounds (too many pinned records) is retried after the store
+     * grows by at least MIN_RETENTION_RETRY_RECORDS.
+     */
+    public static final long RETENTION_AGE_CHECK_INTERVAL = 1000;
+    public static final int MIN_RETENTION_RETRY_RECORDS = 256;
+
+    /**
+     * Approximate JVM object overheads used when reporting the memory footprint.
+     */
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+    private static final int REPEAT_RUN_BYTES = 96;
+
+    /**
+     * Fields of the repeat runs in the side table.
+     */
+    private static final int RUN_REPEAT_COUNT = 0;
+    private static final int RUN_LAST_DIFF_TIME = 1;
+    private static final int RUN_SPAN_MILLIS = 2;
+    private static final int RUN_LAST_APPEND_TIME = 3;
+
+    /**
+     * Number of records between the entries of the sparse log time index.
+     */
+    public static final int TIME_INDEX_STRIDE = 64;
+
+    private int[][] recordIds = new int[1][];
+    private int[][] timestamps = new int[1][];
+    private int[][] appendTimes = new int[1][];
+    private int[][] payloadOffsets = new int[1][];
+    private char[][] payloadLengths = new char[1][];
+    private byte[][] logCodes = new byte[1][];
+    private byte[][] dataDirections = new byte[1][];
+    private byte[][] recordKinds = new byte[1][];
+    private byte[][] recordFlags = new byte[1][];
+    private int[][] journalFrames = null;
+    private int numChunks = 0;
+    private int numRecords = 0;
+    private int lastRecordId = 0;
+    private long epochMillis = System.currentTimeMillis();
+    private long payloadBytes = 0;
+
+    private byte[][] payloadArena = new byte[1][];
+    private int numArenaChunks = 0;
+    private int arenaTail = 0;
+    private int firstResidentArenaChunk = 0;
+    private int maxResidentArenaChunks = (int) (DEFAULT_MAX_RESIDENT_PAYLOAD_BYTES / ARENA_CHUNK_SIZE);
+
+    private CaptureJournal captureJournal = null;
+    private String journalError = null;
+
+    private final List<String[]> metadataRecords = new ArrayList<String[]>();
+    private long metadataBytes = 0;
+
+    private boolean collapseRepeatedFrames = false;
+    private final Map<Integer, int[]> repeatRuns = new HashMap<Integer, int[]>();
+    private long numCollapsedFrames = 0;
+    private int similarRunBaseRow = -1;
+    private int numSimilarFrames = 0;
+
+    private LogRetentionPolicy retentionPolicy = LogRetentionPolicy.KEEP_ALL;
+    private long lastAgeCheckMillis = 0;
+    private int nextRetentionCheckSize = 0;
+    private long numRetentionPasses = 0, numEvictedRecords = 0, numEvictedPayloadBytes = 0;
+    private int numPinnedRecords = 0;
+    private long rowGeneration = 0;
+
+    private int[] timeIndexRows = new int[16];
+    private long[] timeIndexMillis = new long[16];
+    private int numTimeIndexEntries = 0;
+    private long timelineMillis = 0;
+
+    /**
+     * Number of records in the store.
+     * @return int
+     */
+    public int size() {
+        return numRecords;
+    }
+
+    /**
+     * Removes all records (the allocated chunks are released as well).
+     */
+    public void clear() {
+        recordIds = new int[1][];
+        timestamps = new int[1][];
+        appendTimes = new int[1][];
+        payloadOffsets = new int[1][];
+        payloadLengths = new char[1][];
+        logCodes = new byte[1][];
+        dataDirections = new byte[1][];
+        recordKinds = new byte[1][];
+        recordFlags = new byte[1][];
+        journalFrames = captureJournal == null ? null : new int[1][];
+        numChunks = 0;
+        numRecords = 0;
+        lastRecordId = 0;
+        epochMillis = System.currentTimeMillis();
+        payloadBytes = 0;
+        nextRetentionCheckSize = 0;
+        payloadArena = new byte[1][];
+        numArenaChunks = 0;
+        arenaTail = 0;
+        firstResidentArenaChunk = 0;
+        metadataRecords.clear();
+        metadataBytes = 0;
+        repeatRuns.clear();
+        similarRunBaseRow = -1;
+        numSimilarFrames = 0;
+        timeIndexRows = new int[16];
+        timeIndexMillis = new long[16];
+        numTimeIndexEntries = 0;
+        timelineMillis = 0;
+        rowGeneration++;
+        if(captureJournal != null) {
+            try {
+                captureJournal.reset();
+                journalError = null;
+            } catch(IOException ioe) {
+                journalError = ioe.getMessage();
+            }
+        }
+    }
+
+    /**
+     * Attaches the capture journal: the LIVE log frames appended from now on are written to it,
+     * and the payloads can be evicted from the heap (the store must be empty).
+     * @param journal
+     * @see CaptureJournal
+     */
+    public void attachJournal(CaptureJournal journal) {
+        if(numRecords > 0)
+            throw new IllegalStateException("The capture journal must be attached to an empty store.");
+        captureJournal = journal;
+        journalError = null;
+        journalFrames = new int[recordIds.length][];
+    }
+
+    /**
+     * Closes the attached capture journal. The store is cleared since the payloads evicted from
+     * the heap can no longer be read back.
+     * @throws IOException
+     */
+    public void closeJournal() throws IOException {
+        if(captureJournal == null)
+            return;
+        CaptureJournal journal = captureJournal;
+        captureJournal = null;
+        clear();
+        journal.close();
+    }
+
+    public CaptureJournal getJournal() {
+        return captureJournal;
+    }
+
+    /**
+     * Whether the attached journal holds every LIVE log frame in the store (so it can stand in
+     * for the store in the binary log export).
+     * @return boolean
+     */
+    public boolean isJournalComplete() {
+        return captureJournal != null && journalError == null;
+    }
+
+    /**
+     * @return String message of the journal write error that stopped the journaling, or null
+     */
+    public String getJournalError() {
+        return journalError;
+    }
+
+    /**
+     * Sets the heap budget of the payload arena while a journal is attached.
+     * @param maxBytes
+     */
+    public void setMaxResidentPayloadBytes(long maxBytes) {
+        maxResidentArenaChunks = (int) Math.max(1, maxBytes / ARENA_CHUNK_SIZE);
+    }
+
+    /**
+     * @return long bytes of the payload arena that were spilled from the heap to the journal
+     */
+    public long getSpilledPayloadBytes() {
+        return (long) firstResidentArenaChunk * ARENA_CHUNK_SIZE;
+    }
+
+    /**
+     * Appends a LIVE log frame to the store.
+     * @param recordId application-local record id (must not decrease between appends)
+     * @param logCode
+     * @param dataDir
+     * @param diffTimeMs
+     * @param payload
+     * @return int row of the new record
+     */
+    public int appendLogFrame(int recordId, int logCode, int dataDir, int diffTimeMs, byte[] payload) {
+        if(recordId < lastRecordId)
+            throw new IllegalArgumentException("Record ids must be appended in increasing order.");
+        int payloadLength = payload == null ? 0 : payload.length;
+        if(payloadLength > MAX_PAYLOAD_SIZE)
+            throw new IllegalArgumentException("Payload exceeds " + MAX_PAYLOAD_SIZE + " bytes.");
+        int lastRow = numRecords - 1;
+        if(collapseRepeatedFrames && lastRow >= 0 && isLogFrame(lastRow) && getLogCode(lastRow) == (logCode & 0xff) &&
+           getDataDirection(lastRow) == (byte) dataDir && payloadEquals(lastRow, payload == null ? new byte[0] : payload)) {
+            lastRecordId = recordId;
+            extendRepeatRun(lastRow, diffTimeMs);
+            if(journalFrames != null)
+                appendToJournal(logCode, diffTimeMs, payload == null ? new byte[0] : payload);
+            return lastRow;
+        }
+        int payloadOffset = allocatePayload(payloadLength);
+        if(payloadLength > 0)
+            System.arraycopy(payload, 0, payloadArena[payloadOffset >>> ARENA_CHUNK_BITS], payloadOffset & ARENA_CHUNK_MASK, payloadLength);
+        lastRecordId = recordId;
+        payloadBytes += payloadLength;
+        int row = appendRow(RECORD_LOG_FRAME, recordId, logCode, dataDir, diffTimeMs, payloadOffset, payloadLength);
+        if(journalFrames != null)
+            journalFrames[row >>> CHUNK_BITS][row & CHUNK_MASK] = appendToJournal(logCode, diffTimeMs, payload == null ? new byte[0] : payload);
+        if(similarRunBaseRow >= 0 && payloadEquals(similarRunBaseRow, row)) {
+            recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK] |= FLAG_SIMILAR;
+            numSimilarFrames++;
+        }
+        else {
+            similarRunBaseRow = row;
+        }
+        return row;
+    }
+
+    private void extendRepeatRun(int row, int diffTimeMs) {
+        Integer runKey = Integer.valueOf(getRecordId(row));
+        int[] repeatRun = repeatRuns.get(runKey);
+        if(repeatRun == null) {
+            repeatRun = new int[] { 1, 0, 0, 0 };
+            repeatRuns.put(runKey, repeatRun);
+            setRecordFlag(row, FLAG_REPEAT_RUN, true);
+        }
+        repeatRun[RUN_REPEAT_COUNT]++;
+        repeatRun[RUN_LAST_DIFF_TIME] = diffTimeMs;
+        repeatRun[RUN_SPAN_MILLIS] += Math.abs(diffTimeMs);
+        timelineMillis += Math.abs(diffTimeMs);
+        repeatRun[RUN_LAST_APPEND_TIME] = (int) ((System.currentTimeMillis() - epochMillis) / 1000);
+        numCollapsedFrames++;
+    }
+
+    /**
+     * @return int number of LIVE log frames marked with FLAG_SIMILAR
+     */
+    public int getSimilarFrames() {
+        return numSimilarFrames;
+    }
+
+    /**
+     * Enables the run-length collapsing of the repeated LIVE log frames appended from now on.
+     * @param enable
+     */
+    public void setCollapseRepeatedFrames(boolean enable) {
+        collapseRepeatedFrames = enable;
+    }
+
+    public boolean isCollapsingRepeatedFrames() {
+        return collapseRepeatedFrames;
+    }
+
+    /**
+     * @return long number of appended frames that were collapsed into a repeat run
+     */
+    public long getCollapsedFrames() {
+        return numCollapsedFrames;
+    }
+
+    private int[] getRepeatRun(int row) {
+        if(!hasRecordFlag(row, FLAG_REPEAT_RUN))
+            return null;
+        return repeatRuns.get(Integer.valueOf(getRecordId(row)));
+    }
+
+    /**
+     * Number of frames the record stands for (1 unless repeats were collapsed into it).
+     * @param row
+     * @return int
+     */
+    public int getRepeatCount(int row) {
+        int[] repeatRun = getRepeatRun(row);
+        return repeatRun == null ? 1 : repeatRun[RUN_REPEAT_COUNT];
+    }
+
+    /**
+     * Time from the first to the last frame of the repeat run (the sum of the diff times of the
+     * repeats).
+     * @param row
+     * @return int milliseconds
+     */
+    public int getRepeatSpanMillis(int row) {
+        int[] repeatRun = getRepeatRun(row);
+        return repeatRun == null ? 0 : repeatRun[RUN_SPAN_MILLIS];
+    }
+
+    /**
+     * Host time when the last frame of the repeat run was appended (to the second).
+     * @param row
+     * @return long milliseconds since the epoch
+     */
+    public long getLastRepeatTimeMillis(int row) {
+        int[] repeatRun = getRepeatRun(row);
+        return repeatRun == null ? getAppendTimeMillis(row) : epochMillis + 1000L * repeatRun[RUN_LAST_APPEND_TIME];
+    }
+
+    /**
+     * Diff time of the repeat in the run: read from the capture journal when it holds the run,
+     * otherwise the first and last diff times are exact and the repeats in between are given
+     * the mean diff time of the run.
+     * @param row
+     * @param repeatIndex 0 for the first frame of the run
+     * @return int milliseconds
+     */
+    public int getRepeatDiffTimeMillis(int row, int repeatIndex) {
+        int[] repeatRun = getRepeatRun(row);
+        if(repeatIndex == 0 || repeatRun == null)
+            return getDiffTimeMillis(row);
+        int journalFrame = journalFrames == null ? -1 : journalFrames[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        if(journalFrame >= 0 && journalError == null && journalFrame + repeatIndex < captureJournal.getFrameCount()) {
+            try {
+                return captureJournal.getDiffTimeMillis(journalFrame + repeatIndex);
+            } catch(IOException ioe) {}
+        }
+        if(repeatIndex == repeatRun[RUN_REPEAT_COUNT] - 1)
+            return repeatRun[RUN_LAST_DIFF_TIME];
+        return repeatRun[RUN_SPAN_MILLIS] / (repeatRun[RUN_REPEAT_COUNT] - 1);
+    }
+
+    /**
+     * Appends the frame to the capture journal. After a write error the journaling stops (and
+     * no more payloads are evicted from the heap), but the frames journaled so far stay readable.
+     * @return int index of the frame in the journal, or -1
+     */
+    private int appendToJournal(int logCode, int diffTimeMs, byte[] payload) {
+        if(journalError != null)
+            return -1;
+        try {
+            return captureJournal.appendFrame(logCode, diffTimeMs, payload);
+        } catch(IOException ioe) {
+            journalError = ioe.getMessage();
+        } catch(IllegalArgumentException iae) {
+            journalError = iae.getMessage();
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a status / metadata record to the store. It shares the record id of the last
+     * log frame, which keeps the id column sorted for the lookups by record id.
+     * @param title
+     * @param text
+     * @param timestamp
+     * @return int row of the new record
+     */
+    public int appendMetadataRecord(String title, String text, String timestamp) {
+        String[] metadataRecord = new String[] { title, text, timestamp };
+        for(String field : metadataRecord)
+            metadataBytes += STRING_OVERHEAD_BYTES + (field == null ? 0 : 2L * field.length());
+        metadataRecords.add(metadataRecord);
+        similarRunBaseRow = -1;
+        int row = appendRow(RECORD_METADATA, lastRecordId, 0, LogUtils.DATADIR_BIDIRECTIONAL, 0, metadataRecords.size() - 1, 0);
+        if(journalFrames != null)
+            journalFrames[row >>> CHUNK_BITS][row & CHUNK_MASK] = -1;
+        return row;
+    }
+
+    private int appendRow(byte kind, int recordId, int logCode, int dataDir, int diffTimeMs, int payloadOffset, int payloadLength) {
+        int row = numRecords;
+        int chunk = row >>> CHUNK_BITS, idx = row & CHUNK_MASK;
+        if(chunk == numChunks)
+            allocateChunk();
+        recordKinds[chunk][idx] = kind;
+        recordIds[chunk][idx] = recordId;
+        logCodes[chunk][idx] = (byte) logCode;
+        dataDirections[chunk][idx] = (byte) dataDir;
+        timestamps[chunk][idx] = diffTimeMs;
+        appendTimes[chunk][idx] = (int) ((System.currentTimeMillis() - epochMillis) / 1000);
+        recordFlags[chunk][idx] = 0;
+        payloadOffsets[chunk][idx] = payloadOffset;
+        payloadLengths[chunk][idx] = (char) payloadLength;
+        long logTimeMillis = timelineMillis + Math.abs(diffTimeMs);
+        if(numTimeIndexEntries == 0 || row - timeIndexRows[numTimeIndexEntries - 1] >= TIME_INDEX_STRIDE)
+            addTimeIndexEntry(row, logTimeMillis);
+        timelineMillis = logTimeMillis;
+        numRecords++;
+        return row;
+    }
+
+    private void addTimeIndexEntry(int row, long logTimeMillis) {
+        if(numTimeIndexEntries == timeIndexRows.length) {
+            timeIndexRows = Arrays.copyOf(timeIndexRows, 2 * numTimeIndexEntries);
+            timeIndexMillis = Arrays.copyOf(timeIndexMillis, 2 * numTimeIndexEntries);
+        }
+        timeIndexRows[numTimeIndexEntries] = row;
+        timeIndexMillis[numTimeIndexEntries] = logTimeMillis;
+        numTimeIndexEntries++;
+    }
+
+    private void allocateChunk() {
+        if(numChunks == recordIds.length) {
+            int newLength = 2 * numChunks;
+            recordIds = copyOf(recordIds, newLength);
+            timestamps = copyOf(timestamps, newLength);
+            appendTimes = copyOf(appendTimes, newLength);
+            payloadOffsets = copyOf(payloadOffsets, newLength);
+            char[][] newPayloadLengths = new char[newLength][];
+            System.arraycopy(payloadLengths, 0, newPayloadLengths, 0, numChunks);
+            payloadLengths = newPayloadLengths;
+            logCodes = copyOf(logCodes, newLength);
+            dataDirections = copyOf(dataDirections, newLength);
+            recordKinds = copyOf(recordKinds, newLength);
+            recordFlags = copyOf(recordFlags, newLength);
+            if(journalFrames != null)
+                journalFrames = copyOf(journalFrames, newLength);
+        }
+        recordIds[numChunks] = new int[CHUNK_SIZE];
+        timestamps[numChunks] = new int[CHUNK_SIZE];
+        appendTimes[numChunks] = new int[CHUNK_SIZE];
+        payloadOffsets[numChunks] = new int[CHUNK_SIZE];
+        payloadLengths[numChunks] = new char[CHUNK_SIZE];
+        logCodes[numChunks] = new byte[CHUNK_SIZE];
+        dataDirections[numChunks] = new byte[CHUNK_SIZE];
+        recordKinds[numChunks] = new byte[CHUNK_SIZE];
+        recordFlags[numChunks] = new byte[CHUNK_SIZE];
+        if(journalFrames != null)
+            journalFrames[numChunks] = new int[CHUNK_SIZE];
+        numChunks++;
+    }
+
+    /**
+     * Reserves space for the payload in the arena (skipping to the next chunk when it does not
+     * fit in the remainder of the current one).
+     * @param payloadLength
+     * @return int arena offset of the payload
+     */
+    private int allocatePayload(int payloadLength) {
+        if(payloadLength == 0)
+            return arenaTail;
+        int arenaChunk = arenaTail >>> ARENA_CHUNK_BITS;
+        if((arenaTail & ARENA_CHUNK_MASK) + payloadLength > ARENA_CHUNK_SIZE) {
+            arenaChunk++;
+            arenaTail = arenaChunk << ARENA_CHUNK_BITS;
+        }
+        if(arenaChunk == numArenaChunks) {
+            if(numArenaChunks == payloadArena.length)
+                payloadArena = copyOf(payloadArena, 2 * numArenaChunks);
+            payloadArena[numArenaChunks++] = new byte[ARENA_CHUNK_SIZE];
+            evictArenaChunks();
+        }
+        int payloadOffset = arenaTail;
+        arenaTail += payloadLength;
+        return payloadOffset;
+    }
+
+    /**
+     * Drops the oldest payload arena chunks from the heap once the arena is over its budget
+     * (only while every payload in them is in the journal).
+     */
+    private void evictArenaChunks() {
+        if(captureJournal == null || journalError != null)
+            return;
+        while(numArenaChunks - firstResidentArenaChunk > maxResidentArenaChunks)
+            payloadArena[firstResidentArenaChunk++] = null;
+    }
+
+    private static int[][] copyOf(int[][] column, int newLength) {
+        int[][] newColumn = new int[newLength][];
+        System.arraycopy(column, 0, newColumn, 0, column.length);
+        return newColumn;
+    }
+
+    private static byte[][] copyOf(byte[][] column, int newLength) {
+        byte[][] newColumn = new byte[newLength][];
+        System.arraycopy(column, 0, newColumn, 0, column.length);
+        return newColumn;
+    }
+
+    private void checkRow(int row) {
+        if(row < 0 || row >= numRecords)
+            throw new IndexOutOfBoundsException("Row " + row + " of " + numRecords);
+    }
+
+    public byte getRecordKind(int row) {
+        checkRow(row);
+        return recordKinds[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public boolean isLogFrame(int row) {
+        return getRecordKind(row) == RECORD_LOG_FRAME;
+    }
+
+    public int getRecordId(int row) {
+        checkRow(row);
+        return recordIds[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public int getLogCode(int row) {
+        checkRow(row);
+        return logCodes[row >>> CHUNK_BITS][row & CHUNK_MASK] & 0xff;
+    }
+
+    public int getDataDirection(int row) {
+        checkRow(row);
+        return dataDirections[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public void setDataDirection(int row, int dataDir) {
+        checkRow(row);
+        if(dataDirections[row >>> CHUNK_BITS][row & CHUNK_MASK] != (byte) dataDir) {
+            dataDirections[row >>> CHUNK_BITS][row & CHUNK_MASK] = (byte) dataDir;
+            rowGeneration++;
+        }
+    }
+
+    public boolean hasRecordFlag(int row, int flag) {
+        checkRow(row);
+        return (recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK] & flag) != 0;
+    }
+
+    public void setRecordFlag(int row, int flag, boolean enabled) {
+        checkRow(row);
+        byte[] flagsChunk = recordFlags[row >>> CHUNK_BITS];
+        if(enabled)
+            flagsChunk[row & CHUNK_MASK] |= flag;
+        else
+            flagsChunk[row & CHUNK_MASK] &= ~flag;
+    }
+
+    /**
+     * Clears the flag on all of the records (e.g., unchecks all selected records).
+     * @param flag
+     */
+    public void clearRecordFlag(int flag) {
+        for(int chunk = 0; chunk < numChunks; chunk++) {
+            byte[] flagsChunk = recordFlags[chunk];
+            for(int idx = 0; idx < CHUNK_SIZE; idx++)
+                flagsChunk[idx] &= ~flag;
+        }
+    }
+
+    public int getDiffTimeMillis(int row) {
+        checkRow(row);
+        return timestamps[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    /**
+     * Host time when the record was appended to the store (to the second).
+     * @param row
+     * @return long milliseconds since the epoch
+     */
+    public long getAppendTimeMillis(int row) {
+        checkRow(row);
+        return epochMillis + 1000L * appendTimes[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    public int getPayloadLength(int row) {
+        checkRow(row);
+        return payloadLengths[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    /**
+     * Returns a copy of the payload bytes of the record (empty for metadata records).
+     * @param row
+     * @return byte[]
+     */
+    public byte[] getPayload(int row) {
+        byte[] payload = new byte[getPayloadLength(row)];
+        copyPayload(row, payload, 0);
+        return payload;
+    }
+
+    /**
+     * Copies the payload bytes of the record into the destination buffer.
+     * @param row
+     * @param dest
+     * @param destOffset
+     * @return int number of bytes copied
+     */
+    public int copyPayload(int row, byte[] dest, int destOffset) {
+        int payloadLength = getPayloadLength(row);
+        if(payloadLength > 0) {
+            int payloadOffset = payloadOffsets[row >>> CHUNK_BITS][row & CHUNK_MASK];
+            byte[] arenaChunk = payloadArena[payloadOffset >>> ARENA_CHUNK_BITS];
+            if(arenaChunk != null)
+                System.arraycopy(arenaChunk, payloadOffset & ARENA_CHUNK_MASK, dest, destOffset, payloadLength);
+            else
+                readJournalPayload(row, dest, destOffset);
+        }
+        return payloadLength;
+    }
+
+    private void readJournalPayload(int row, byte[] dest, int destOffset) {
+        try {
+            captureJournal.readPayload(journalFrames[row >>> CHUNK_BITS][row & CHUNK_MASK], dest, destOffset);
+        } catch(IOException ioe) {
+            throw new IllegalStateException("Unable to read the payload of row " + row + " from the capture journal: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Compares the payload of the record with the bytes in place.
+     * @param row
+     * @param payload
+     * @return boolean whether the payload bytes are identical
+     */
+    public boolean payloadEquals(int row, byte[] payload) {
+        int payloadLength = getPayloadLength(row);
+        if(payloadLength != payload.length)
+            return false;
+        else if(payloadLength == 0)
+            return true;
+        int payloadOffset = payloadOffsets[row >>> CHUNK_BITS][row & CHUNK_MASK];
+        byte[] arenaChunk = payloadArena[payloadOffset >>> ARENA_CHUNK_BITS];
+        if(arenaChunk == null)
+            return Arrays.equals(getPayload(row), payload);
+        payloadOffset &= ARENA_CHUNK_MASK;
+        for(int b = 0; b < payloadLength; b++) {
+            if(arenaChunk[payloadOffset + b] != payload[b])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compares the payloads of two records in place (without copying them out of the arena).
+     * @param rowA
+     * @param rowB
+     * @return boolean whether the payload bytes are identical
+     */
+    public boolean payloadEquals(int rowA, int rowB) {
+        int payloadLength = getPayloadLength(rowA);
+        if(payloadLength != getPayloadLength(rowB))
+            return false;
+        else if(payloadLength == 0)
+            return true;
+        int offsetA = payloadOffsets[rowA >>> CHUNK_BITS][rowA & CHUNK_MASK];
+        int offsetB = payloadOffsets[rowB >>> CHUNK_BITS][rowB & CHUNK_MASK];
+        byte[] arenaA = payloadArena[offsetA >>> ARENA_CHUNK_BITS], arenaB = payloadArena[offsetB >>> ARENA_CHUNK_BITS];
+        if(arenaA == null || arenaB == null)
+            return Arrays.equals(getPayload(rowA), getPayload(rowB));
+        offsetA &= ARENA_CHUNK_MASK;
+        offsetB &= ARENA_CHUNK_MASK;
+        for(int b = 0; b < payloadLength; b++) {
+            if(arenaA[offsetA + b] != arenaB[offsetB + b])
+                return false;
+        }
+        return true;
+    }
+
+    private String[] getMetadataRecord(int row) {
+        if(getRecordKind(row) != RECORD_METADATA)
+            throw new IllegalArgumentException("Row " + row + " is not a metadata record.");
+        return metadataRecords.get(payloadOffsets[row >>> CHUNK_BITS][row & CHUNK_MASK]);
+    }
+
+    public String getMetadataTitle(int row) { return getMetadataRecord(row)[0]; }
+    public String getMetadataText(int row) { return getMetadataRecord(row)[1]; }
+    public String getMetadataTimestamp(int row) { return getMetadataRecord(row)[2]; }
+
+    /**
+     * Finds the LIVE log frame with the record id (binary search over the sorted id column).
+     * @param recordId
+     * @return int row of the record, or -1 if there is no such frame
+     */
+    public int findRowByRecordId(int recordId) {
+        int lo = 0, hi = numRecords;
+        while(lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if(recordIds[mid >>> CHUNK_BITS][mid & CHUNK_MASK] < recordId)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        for(int row = lo; row < numRecords && getRecordId(row) == recordId; row++) {
+            if(isLogFrame(row))
+                return row;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the last entry of the time index at or before the row (binary search).
+     */
+    private int findTimeIndexEntry(int row) {
+        int lo = 0, hi = numTimeIndexEntries - 1;
+        while(lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if(timeIndexRows[mid] <= row)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Log time of the record on the timeline reconstructed from the device systick: the sum of
+     * the offsets of all of the frames (and repeats) logged before it and of its own offset. For
+     * a repeat run, this is the time of its first frame.
+     * @param row
+     * @return long milliseconds
+     */
+    public long getLogTimeMillis(int row) {
+        checkRow(row);
+        int entry = findTimeIndexEntry(row);
+        long logTimeMillis = timeIndexMillis[entry];
+        for(int nextRow = timeIndexRows[entry] + 1; nextRow <= row; nextRow++)
+            logTimeMillis += getRepeatSpanMillis(nextRow - 1) + Math.abs(timestamps[nextRow >>> CHUNK_BITS][nextRow & CHUNK_MASK]);
+        return logTimeMillis;
+    }
+
+    /**
+     * @return long log time of the last frame appended to the store (in milliseconds)
+     */
+    public long getTimelineMillis() {
+        return timelineMillis;
+    }
+
+    /**
+     * Finds the first record logged at or after the log time (e.g., to jump to a time range).
+     * @param logTimeMillis
+     * @return int row, or size() if all of the records were logged before the time
+     */
+    public int findRowAtLogTime(long logTimeMillis) {
+        if(numRecords == 0 || timeIndexMillis[0] >= logTimeMillis)
+            return 0;
+        int lo = 0, hi = numTimeIndexEntries - 1;
+        while(lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if(timeIndexMillis[mid] < logTimeMillis)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        long rowLogTime = timeIndexMillis[lo];
+        int endRow = lo + 1 < numTimeIndexEntries ? timeIndexRows[lo + 1] : numRecords;
+        for(int row = timeIndexRows[lo] + 1; row < endRow; row++) {
+            rowLogTime += getRepeatSpanMillis(row - 1) + Math.abs(timestamps[row >>> CHUNK_BITS][row & CHUNK_MASK]);
+            if(rowLogTime >= logTimeMillis)
+                return row;
+        }
+        return endRow;
+    }
+
+    /**
+     * Log time from the first frame of the record fromRow to the last frame of the record
+     * toRow, i.e., the sum of the gaps between the frames logged in the window.
+     * @param fromRow
+     * @param toRow
+     * @return long milliseconds
+     */
+    public long getLogTimeSpanMillis(int fromRow, int toRow) {
+        return getLogTimeMillis(toRow) + getRepeatSpanMillis(toRow) - getLogTimeMillis(fromRow);
+    }
+
+    /**
+     * Decodes the record as a LIVE log frame (computing the derived display data).
+     * @param row
+     * @param logDecoder
+     * @return DecodedLogFrame
+     */
+    public DecodedLogFrame decodeLogFrame(int row, LogDecoder logDecoder) {
+        return logDecoder.decodePayload(getLogCode(row), getDiffTimeMillis(row), getPayload(row));
+    }
+
+    public void setRetentionPolicy(LogRetentionPolicy policy) {
+        retentionPolicy = policy == null ? LogRetentionPolicy.KEEP_ALL : policy;
+        nextRetentionCheckSize = 0;
+        lastAgeCheckMillis = 0;
+    }
+
+    public LogRetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * Evicts the oldest records that are not pinned when the store exceeds one of the bounds of
+     * the retention policy (the check is O(1) when it does not). The rows of the remaining
+     * records shift down by the number of records evicted before them.
+     * @return int number of records evicted
+     * @ref LogRetentionPolicy
+     */
+    public int applyRetentionPolicy() {
+        return applyRetentionPolicy(System.currentTimeMillis());
+    }
+
+    public int applyRetentionPolicy(long nowMillis) {
+        LogRetentionPolicy policy = retentionPolicy;
+        if(!policy.isBounded() || numRecords == 0 || numRecords < nextRetentionCheckSize)
+            return 0;
+        boolean overBounds = policy.getMaxEntries() != LogRetentionPolicy.UNLIMITED && numRecords > policy.getMaxEntries() ||
+                             policy.getMaxPayloadBytes() != LogRetentionPolicy.UNLIMITED && payloadBytes > policy.getMaxPayloadBytes();
+        if(!overBounds && policy.getMaxAgeMillis() != LogRetentionPolicy.UNLIMITED && nowMillis - lastAgeCheckMillis >= RETENTION_AGE_CHECK_INTERVAL) {
+            lastAgeCheckMillis = nowMillis;
+            int pinnedFlags = policy.getPinnedFlags();
+            for(int row = 0; row < numRecords; row++) {
+                if((recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK] & pinnedFlags) == 0) {
+                    overBounds = nowMillis - getAppendTimeMillis(row) > policy.getMaxAgeMillis();
+                    break;
+                }
+            }
+        }
+        if(!overBounds)
+            return 0;
+        int numEvicted = evictRecords(policy, nowMillis);
+        boolean stillOverBounds = policy.getMaxEntries() != LogRetentionPolicy.UNLIMITED && numRecords > policy.getMaxEntries() ||
+                                  policy.getMaxPayloadBytes() != LogRetentionPolicy.UNLIMITED && payloadBytes > policy.getMaxPayloadBytes();
+        nextRetentionCheckSize = stillOverBounds ? numRecords + Math.max(MIN_RETENTION_RETRY_RECORDS, numRecords / 10) : 0;
+        return numEvicted;
+    }
+
+    /**
+     * Compacts the store in place, dropping the oldest records that are not pinned until it is
+     * under the target bounds of the policy. The payloads of the remaining records are copied
+     * to a new arena (the old arena chunks are released as they are passed).
+     */
+    private int evictRecords(LogRetentionPolicy policy, long nowMillis) {
+        int pinnedFlags = policy.getPinnedFlags();
+        int excessRecords = numRecords - policy.getTargetEntries();
+        long excessBytes = payloadBytes - policy.getTargetPayloadBytes();
+        long ageCutoff = policy.getMaxAgeMillis() == LogRetentionPolicy.UNLIMITED ? Long.MIN_VALUE :
+                         (nowMillis - policy.getTargetAgeMillis() - epochMillis) / 1000;
+        int evictBeforeRow = 0;
+        for(; evictBeforeRow < numRecords; evictBeforeRow++) {
+            int chunk = evictBeforeRow >>> CHUNK_BITS, idx = evictBeforeRow & CHUNK_MASK;
+            if(excessRecords <= 0 && excessBytes <= 0 && appendTimes[chunk][idx] >= ageCutoff)
+                break;
+            if((recordFlags[chunk][idx] & pinnedFlags) == 0) {
+                excessRecords--;
+                excessBytes -= payloadLengths[chunk][idx];
+            }
+        }
+        byte[][] oldArena = payloadArena;
+        int oldNumArenaChunks = numArenaChunks, nextOldArenaChunk = 0;
+        payloadArena = new byte[1][];
+        numArenaChunks = 0;
+        arenaTail = 0;
+        firstResidentArenaChunk = 0;
+        List<String[]> keptMetadataRecords = new ArrayList<String[]>();
+        metadataBytes = 0;
+        payloadBytes = 0;
+        numPinnedRecords = 0;
+        int[] oldTimeIndexRows = timeIndexRows;
+        long[] oldTimeIndexMillis = timeIndexMillis;
+        int oldNumTimeIndexEntries = numTimeIndexEntries, nextOldTimeIndexEntry = 0;
+        timeIndexRows = new int[Math.max(16, oldNumTimeIndexEntries)];
+        timeIndexMillis = new long[timeIndexRows.length];
+        numTimeIndexEntries = 0;
+        long prevLogTimeMillis = 0;
+        int prevRepeatSpan = 0, prevKeptRow = -1;
+        int numEvicted = 0, writeRow = 0;
+        for(int row = 0; row < numRecords; row++) {
+            int chunk = row >>> CHUNK_BITS, idx = row & CHUNK_MASK;
+            int payloadLength = payloadLengths[chunk][idx];
+            long logTimeMillis;
+            if(nextOldTimeIndexEntry < oldNumTimeIndexEntries && oldTimeIndexRows[nextOldTimeIndexEntry] == row)
+                logTimeMillis = oldTimeIndexMillis[nextOldTimeIndexEntry++];
+            else
+                logTimeMillis = prevLogTimeMillis + prevRepeatSpan + Math.abs(timestamps[chunk][idx]);
+            int[] repeatRun = (recordFlags[chunk][idx] & FLAG_REPEAT_RUN) != 0 ? repeatRuns.get(Integer.valueOf(recordIds[chunk][idx])) : null;
+            prevLogTimeMillis = logTimeMillis;
+            prevRepeatSpan = repeatRun == null ? 0 : repeatRun[RUN_SPAN_MILLIS];
+            if(row < evictBeforeRow) {
+                if((recordFlags[chunk][idx] & pinnedFlags) == 0) {
+                    numEvicted++;
+                    numEvictedPayloadBytes += payloadLength;
+                    if((recordFlags[chunk][idx] & FLAG_REPEAT_RUN) != 0)
+                        repeatRuns.remove(Integer.valueOf(recordIds[chunk][idx]));
+                    if((recordFlags[chunk][idx] & FLAG_SIMILAR) != 0)
+                        numSimilarFrames--;
+                    if(row == similarRunBaseRow)
+                        similarRunBaseRow = -1;
+                    continue;
+                }
+                numPinnedRecords++;
+            }
+            int payloadOffset = payloadOffsets[chunk][idx];
+            if(recordKinds[chunk][idx] == RECORD_METADATA) {
+                String[] metadataRecord = metadataRecords.get(payloadOffset);
+                for(String field : metadataRecord)
+                    metadataBytes += STRING_OVERHEAD_BYTES + (field == null ? 0 : 2L * field.length());
+                keptMetadataRecords.add(metadataRecord);
+                payloadOffset = keptMetadataRecords.size() - 1;
+            }
+            else if(payloadLength > 0) {
+                int oldArenaChunk = payloadOffset >>> ARENA_CHUNK_BITS;
+                for(; nextOldArenaChunk < oldArenaChunk; nextOldArenaChunk++)
+                    oldArena[nextOldArenaChunk] = null;
+                int newPayloadOffset = allocatePayload(payloadLength);
+                byte[] newArenaChunk = payloadArena[newPayloadOffset >>> ARENA_CHUNK_BITS];
+                if(oldArena[oldArenaChunk] != null)
+                    System.arraycopy(oldArena[oldArenaChunk], payloadOffset & ARENA_CHUNK_MASK, newArenaChunk, newPayloadOffset & ARENA_CHUNK_MASK, payloadLength);
+                else
+                    readJournalPayload(row, newArenaChunk, newPayloadOffset & ARENA_CHUNK_MASK);
+                payloadOffset = newPayloadOffset;
+                payloadBytes += payloadLength;
+            }
+            else {
+                payloadOffset = arenaTail;
+            }
+            int writeChunk = writeRow >>> CHUNK_BITS, writeIdx = writeRow & CHUNK_MASK;
+            recordIds[writeChunk][writeIdx] = recordIds[chunk][idx];
+            timestamps[writeChunk][writeIdx] = timestamps[chunk][idx];
+            appendTimes[writeChunk][writeIdx] = appendTimes[chunk][idx];
+            payloadOffsets[writeChunk][writeIdx] = payloadOffset;
+            payloadLengths[writeChunk][writeIdx] = (char) payloadLength;
+            logCodes[writeChunk][writeIdx] = logCodes[chunk][idx];
+            dataDirections[writeChunk][writeIdx] = dataDirections[chunk][idx];
+            recordKinds[writeChunk][writeIdx] = recordKinds[chunk][idx];
+            recordFlags[writeChunk][writeIdx] = recordFlags[chunk][idx];
+            if(journalFrames != null)
+                journalFrames[writeChunk][writeIdx] = journalFrames[chunk][idx];
+            if(row == similarRunBaseRow)
+                similarRunBaseRow = writeRow;
+            if(numTimeIndexEntries == 0 || row != prevKeptRow + 1 || writeRow - timeIndexRows[numTimeIndexEntries - 1] >= TIME_INDEX_STRIDE)
+                addTimeIndexEntry(writeRow, logTimeMillis);
+            prevKeptRow = row;
+            writeRow++;
+        }
+        for(; nextOldArenaChunk < oldNumArenaChunks; nextOldArenaChunk++)
+            oldArena[nextOldArenaChunk] = null;
+        metadataRecords.clear();
+        metadataRecords.addAll(keptMetadataRecords);
+        numRecords = writeRow;
+        int usedChunks = (numRecords + CHUNK_MASK) >>> CHUNK_BITS;
+        for(int chunk = usedChunks; chunk < numChunks; chunk++) {
+            recordIds[chunk] = timestamps[chunk] = appendTimes[chunk] = payloadOffsets[chunk] = null;
+            payloadLengths[chunk] = null;
+            logCodes[chunk] = dataDirections[chunk] = recordKinds[chunk] = recordFlags[chunk] = null;
+            if(journalFrames != null)
+                journalFrames[chunk] = null;
+        }
+        numChunks = usedChunks;
+        rowGeneration++;
+        numRetentionPasses++;
+        numEvictedRecords += numEvicted;
+        return numEvicted;
+    }
+
+    /**
+     * Counter of the changes to the existing rows other than their display flags and repeat
+     * runs (clearing the store, evicting records, changing a data direction). The rows are only
+     * appended while it stays the same, so the session snapshot can be updated incrementally.
+     * @return long
+     */
+    public long getRowGeneration() {
+        return rowGeneration;
+    }
+
+    /**
+     * Host time the append times of the records are relative to (reset when the store is cleared).
+     * @return long milliseconds since the epoch
+     */
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    public int getLastRecordId() {
+        return lastRecordId;
+    }
+
+    int getAppendTimeSeconds(int row) {
+        checkRow(row);
+        return appendTimes[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    byte getRecordFlags(int row) {
+        checkRow(row);
+        return recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK];
+    }
+
+    int getSimilarRunBaseRow() {
+        return similarRunBaseRow;
+    }
+
+    /**
+     * @param row
+     * @return int[] copy of the repeat run state of the record, or null
+     */
+    int[] getRepeatRunState(int row) {
+        int[] repeatRun = getRepeatRun(row);
+        return repeatRun == null ? null : repeatRun.clone();
+    }
+
+    /**
+     * Starts restoring a session snapshot into the (empty) store.
+     * @param snapshotEpochMillis host time the append times of the snapshot are relative to
+     * @ref SessionSnapshot.restore
+     */
+    void beginRestore(long snapshotEpochMillis) {
+        if(numRecords > 0)
+            throw new IllegalStateException("A session snapshot must be restored into an empty store.");
+        epochMillis = snapshotEpochMillis;
+    }
+
+    /**
+     * Restores a LIVE log frame with its display state. The frame (and the repeats of its run)
+     * are written to the attached capture journal as well, so the journal stays complete.
+     * @param recordId
+     * @param logCode
+     * @param dataDir
+     * @param diffTimeMs
+     * @param appendSecs append time relative to the snapshot epoch
+     * @param flags
+     * @param payloadBuf buffer holding the payload
+     * @param payloadStart offset of the payload in the buffer
+     * @param payloadLength
+     * @param repeatRun state of the repeat run of the frame, or null
+     * @return int row of the restored record
+     */
+    int restoreLogFrame(int recordId, int logCode, int dataDir, int diffTimeMs, int appendSecs, int flags,
+                        byte[] payloadBuf, int payloadStart, int payloadLength, int[] repeatRun) {
+        if(payloadLength > MAX_PAYLOAD_SIZE)
+            throw new IllegalArgumentException("Payload exceeds " + MAX_PAYLOAD_SIZE + " bytes.");
+        int payloadOffset = allocatePayload(payloadLength);
+        if(payloadLength > 0)
+            System.arraycopy(payloadBuf, payloadStart, payloadArena[payloadOffset >>> ARENA_CHUNK_BITS], payloadOffset & ARENA_CHUNK_MASK, payloadLength);
+        payloadBytes += payloadLength;
+        lastRecordId = recordId;
+        int row = restoreRow(RECORD_LOG_FRAME, recordId, logCode, dataDir, diffTimeMs, payloadOffset, payloadLength, appendSecs, flags);
+        if((flags & FLAG_SIMILAR) != 0)
+            numSimilarFrames++;
+        if(repeatRun != null && (flags & FLAG_REPEAT_RUN) != 0) {
+            repeatRuns.put(Integer.valueOf(recordId), repeatRun.clone());
+            numCollapsedFrames += repeatRun[RUN_REPEAT_COUNT] - 1;
+            timelineMillis += repeatRun[RUN_SPAN_MILLIS];
+        }
+        else if((flags & FLAG_REPEAT_RUN) != 0) {
+            recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK] &= ~FLAG_REPEAT_RUN;
+        }
+        if(journalFrames != null) {
+            byte[] payload = new byte[payloadLength];
+            System.arraycopy(payloadBuf, payloadStart, payload, 0, payloadLength);
+            journalFrames[row >>> CHUNK_BITS][row & CHUNK_MASK] = appendToJournal(logCode, diffTimeMs, payload);
+            for(int repeat = 1; repeat < getRepeatCount(row); repeat++)
+                appendToJournal(logCode, getRepeatDiffTimeMillis(row, repeat), payload);
+        }
+        return row;
+    }
+
+    /**
+     * Restores a status / metadata record with its display state.
+     * @return int row of the restored record
+     */
+    int restoreMetadataRecord(int recordId, String title, String text, String timestamp, int appendSecs, int flags) {
+        lastRecordId = Math.max(lastRecordId, recordId); // the id of the last frame, which may have been collapsed into a run
+        int row = appendMetadataRecord(title, text, timestamp);
+        appendTimes[row >>> CHUNK_BITS][row & CHUNK_MASK] = appendSecs;
+        recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK] = (byte) flags;
+        return row;
+    }
+
+    private int restoreRow(byte kind, int recordId, int logCode, int dataDir, int diffTimeMs, int payloadOffset, int payloadLength,
+                           int appendSecs, int flags) {
+        int row = appendRow(kind, recordId, logCode, dataDir, diffTimeMs, payloadOffset, payloadLength);
+        appendTimes[row >>> CHUNK_BITS][row & CHUNK_MASK] = appendSecs;
+        recordFlags[row >>> CHUNK_BITS][row & CHUNK_MASK] = (byte) flags;
+        return row;
+    }
+
+    /**
+     * Finishes restoring a session snapshot.
+     * @param snapshotLastRecordId
+     * @param snapshotSimilarRunBaseRow
+     */
+    void endRestore(int snapshotLastRecordId, int snapshotSimilarRunBaseRow) {
+        lastRecordId = Math.max(lastRecordId, snapshotLastRecordId);
+        similarRunBaseRow = snapshotSimilarRunBaseRow < numRecords ? snapshotSimilarRunBaseRow : -1;
+    }
+
+    int getTimeIndexSize() {
+        return numTimeIndexEntries;
+    }
+
+    int getTimeIndexRow(int entry) {
+        return timeIndexRows[entry];
+    }
+
+    long getTimeIndexMillis(int entry) {
+        return timeIndexMillis[entry];
+    }
+
+    /**
+     * Replaces the time index rebuilt from the restored offsets with the snapshot index (which
+     * also holds the log times of the records following evicted ones). An index which does not
+     * fit the restored rows is ignored.
+     * @param indexRows
+     * @param indexMillis
+     */
+    void restoreTimeIndex(int[] indexRows, long[] indexMillis) {
+        if(indexRows.length == 0 || indexRows.length != indexMillis.length || indexRows[0] != 0 || numRecords == 0)
+            return;
+        for(int entry = 1; entry < indexRows.length; entry++) {
+            if(indexRows[entry] <= indexRows[entry - 1] || indexRows[entry] >= numRecords || indexMillis[entry] < indexMillis[entry - 1])
+                return;
+        }
+        timeIndexRows = Arrays.copyOf(indexRows, Math.max(16, indexRows.length));
+        timeIndexMillis = Arrays.copyOf(indexMillis, timeIndexRows.length);
+        numTimeIndexEntries = indexRows.length;
+        timelineMillis = getLogTimeMillis(numRecords - 1) + getRepeatSpanMillis(numRecords - 1);
+    }
+
+    public long getRetentionPasses() { return numRetentionPasses; }
+    public long getEvictedRecords() { return numEvictedRecords; }
+    public long getEvictedPayloadBytes() { return numEvictedPayloadBytes; }
+    public long getPayloadBytes() { return payloadBytes; }
+
+    /**
+     * Summary of the retention policy and of the records it evicted, for the capture statistics.
+     * @return String
+     */
+    public String getRetentionSummary() {
+        return String.format(Locale.ENGLISH, "Log retention: %s\nEviction passes: %d, records evicted: %d (%d KB of payloads), pinned: %d",
+                             retentionPolicy.toString(), numRetentionPasses, numEvictedRecords, numEvictedPayloadBytes / 1024, numPinnedRecords);
+    }
+
+    /**
+     * Approximate number of heap bytes used by the store (allocated chunks, the resident part
+     * of the payload arena and the metadata strings).
+     * @return long bytes
+     */
+    public long getMemoryFootprint() {
+        long columnBytes = (long) numChunks * (ARRAY_HEADER_BYTES * 9 + CHUNK_SIZE * (4 + 4 + 4 + 4 + 2 + 1 + 1 + 1 + 1));
+        if(journalFrames != null)
+            columnBytes += (long) numChunks * (ARRAY_HEADER_BYTES + CHUNK_SIZE * 4);
+        long indexBytes = 9L * (ARRAY_HEADER_BYTES + 4 * recordIds.length) + ARRAY_HEADER_BYTES + 4 * payloadArena.length;
+        long arenaBytes = (long) (numArenaChunks - firstResidentArenaChunk) * (ARRAY_HEADER_BYTES + ARENA_CHUNK_SIZE);
+        long timeIndexBytes = 2L * ARRAY_HEADER_BYTES + 12L * timeIndexRows.length;
+        return columnBytes + indexBytes + timeIndexBytes + arenaBytes + metadataBytes + (long) repeatRuns.size() * REPEAT_RUN_BYTES;
+    }
+
+    /**
+     * Average memory footprint per stored record.
+     * @return double bytes / record
+     */
+    public double getBytesPerEntry() {
+        return numRecords == 0 ? 0.0 : (double) getMemoryFootprint() / numRecords;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Locale;
+
+/**
+ * <h1>Log Retention Policy</h1>
+ * Bounds on the records kept in the log store: the number of records, the total payload bytes
+ * and the age of the records (any of which may be unlimited). Once a bound is exceeded the
+ * oldest records are evicted first (FIFO) until the store is a little below the bounds again,
+ * optionally keeping the records that are checked or highlighted in the Log tab.
+ *
+ * @ref LogRecordStore.applyRetentionPolicy
+ */
+public class LogRetentionPolicy {
+
+    public static final int UNLIMITED = 0;
+
+    /**
+     * Fraction of each bound freed by an eviction pass, so that the store is not compacted again
+     * on every append once it reaches steady state.
+     */
+    public static final double EVICTION_SLACK = 0.10;
+
+    /**
+     * <h1>Retention Preset</h1>
+     * The retention bounds that can be selected in the Log Tools tab.
+     */
+    public enum Preset {
+        KEEP_ALL(UNLIMITED, UNLIMITED, UNLIMITED),
+        LAST_10K_ENTRIES(10000, UNLIMITED, UNLIMITED),
+        LAST_100K_ENTRIES(100000, UNLIMITED, UNLIMITED),
+        LAST_16MB_PAYLOAD(UNLIMITED, 16L * 1024 * 1024, UNLIMITED),
+        LAST_HOUR(UNLIMITED, UNLIMITED, 60L * 60 * 1000);
+
+        private final int maxEntries;
+        private final long maxPayloadBytes;
+        private final long maxAgeMillis;
+
+        Preset(int maxEntries, long maxPayloadBytes, long maxAgeMillis) {
+            this.maxEntries = maxEntries;
+            this.maxPayloadBytes = maxPayloadBytes;
+            this.maxAgeMillis = maxAgeMillis;
+        }
+
+        public LogRetentionPolicy newPolicy(boolean pinMarkedRecords) {
+            return new LogRetentionPolicy(maxEntries, maxPayloadBytes, maxAgeMillis, pinMarkedRecords);
+        }
+
+        /**
+         * Looks up the preset by name, falling back to the default.
+         * @param presetName
+         * @return Preset
+         */
+        public static Preset lookupByName(String presetName) {
+            for(Preset preset : values()) {
+                if(preset.name().equals(presetName))
+                    return preset;
+            }
+            return DEFAULT_PRESET;
+        }
+    }
+    public static final Preset DEFAULT_PRESET = Preset.KEEP_ALL;
+
+    public static final LogRetentionPolicy KEEP_ALL = Preset.KEEP_ALL.newPolicy(false);
+
+    private final int maxEntries;
+    private final long maxPayloadBytes;
+    private final long maxAgeMillis;
+    private final boolean pinMarkedRecords;
+
+    /**
+     * Constructor.
+     * @param maxEntries maximum number of records (or UNLIMITED)
+     * @param maxPayloadBytes maximum total payload bytes (or UNLIMITED)
+     * @param maxAgeMillis maximum age of the records (or UNLIMITED)
+     * @param pinMarkedRecords whether the checked and highlighted records are never evicted
+     */
+    public LogRetentionPolicy(int maxEntries, long maxPayloadBytes, long maxAgeMillis, boolean pinMarkedRecords) {
+        this.maxEntries = Math.max(UNLIMITED, maxEntries);
+        this.maxPayloadBytes = Math.max(UNLIMITED, maxPayloadBytes);
+        this.maxAgeMillis = Math.max(UNLIMITED, maxAgeMillis);
+        this.pinMarkedRecords = pinMarkedRecords;
+    }
+
+    public int getMaxEntries() { return maxEntries; }
+    public long getMaxPayloadBytes() { return maxPayloadBytes; }
+    public long getMaxAgeMillis() { return maxAgeMillis; }
+    public boolean isPinningMarkedRecords() { return pinMarkedRecords; }
+
+    public boolean isBounded() {
+        return maxEntries != UNLIMITED || maxPayloadBytes != UNLIMITED || maxAgeMillis != UNLIMITED;
+    }
+
+    /**
+     * Record flags that exempt a record from eviction.
+     * @return int mask of the LogRecordStore flags
+     */
+    public int getPinnedFlags() {
+        return pinMarkedRecords ? LogRecordStore.FLAG_SELECTED | LogRecordStore.FLAG_HIGHLIGHTED : 0;
+    }
+
+    /**
+     * Number of records an eviction pass leaves in the store.
+     * @return int
+     */
+    public int getTargetEntries() {
+        return maxEntries == UNLIMITED ? Integer.MAX_VALUE : (int) (maxEntries * (1.0 - EVICTION_SLACK));
+    }
+
+    /**
+     * Total payload bytes an eviction pass leaves in the store.
+     * @return long
+     */
+    public long getTargetPayloadBytes() {
+        return maxPayloadBytes == UNLIMITED ? Long.MAX_VALUE : (long) (maxPayloadBytes * (1.0 - EVICTION_SLACK));
+    }
+
+    /**
+     * Age of the oldest record an eviction pass leaves in the store.
+     * @return long
+     */
+    public long getTargetAgeMillis() {
+        return maxAgeMillis == UNLIMITED ? Long.MAX_VALUE : (long) (maxAgeMillis * (1.0 - EVICTION_SLACK));
+    }
+
+    @Override
+    public String toString() {
+        if(!isBounded())
+            return "keep all records";
+        StringBuilder policyDesc = new StringBuilder("keep at most");
+        if(maxEntries != UNLIMITED)
+            policyDesc.append(String.format(Locale.ENGLISH, " %d records,", maxEntries));
+        if(maxPayloadBytes != UNLIMITED)
+            policyDesc.append(String.format(Locale.ENGLISH, " %d KB of payloads,", maxPayloadBytes / 1024));
+        if(maxAgeMillis != UNLIMITED)
+            policyDesc.append(String.format(Locale.ENGLISH, " %d minutes of records,", maxAgeMillis / 60000));
+        policyDesc.setLength(policyDesc.length() - 1);
+        if(pinMarkedRecords)
+            policyDesc.append(" (plus the checked and highlighted records)");
+        return policyDesc.toString();
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <h1>Log Serializer</h1>
+ * Writes the log records to one of the export file formats. A log file is written as the
+ * header, the log data and metadata records (in order), and the footer.
+ *
+ * @ref TextLogSerializer
+ * @ref HTMLLogSerializer
+ * @ref BinaryLogSerializer
+ */
+public interface LogSerializer {
+
+    void writeHeader(OutputStream fout) throws IOException;
+
+    /**
+     * Writes a log data record.
+     * @param fout
+     * @param recordID
+     * @param logFrame
+     * @throws IOException
+     */
+    void writeLogRecord(OutputStream fout, int recordID, DecodedLogFrame logFrame) throws IOException;
+
+    /**
+     * Writes a metadata (status / annotation) record.
+     * @param fout
+     * @param metadataDesc
+     * @throws IOException
+     */
+    void writeMetadataRecord(OutputStream fout, String metadataDesc) throws IOException;
+
+    void writeFooter(OutputStream fout) throws IOException;
+
+}
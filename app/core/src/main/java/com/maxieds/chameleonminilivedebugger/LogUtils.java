@@ -22,6 +22,10 @@ public class LogUtils {
     public static final int DATADIR_OUTGOING = 1;
     public static final int DATADIR_BIDIRECTIONAL = 2;
 
+    public static final int FRAME_SOURCE_NONE = 0;
+    public static final int FRAME_SOURCE_READER = 1;
+    public static final int FRAME_SOURCE_CARD = 2;
+
     public enum LogCode {
         /* Generic */
         LOG_INFO_GENERIC(0x10, DATADIR_BIDIRECTIONAL, "Unspecific log entry."),
@@ -35,7 +39,7 @@ public class LogUtils {
         LOG_INFO_CODEC_RX_DATA_W_PARITY(0x42, DATADIR_OUTGOING, "Currently active codec received data."),
         LOG_INFO_CODEC_TX_DATA_W_PARITY(0x43, DATADIR_OUTGOING, "Currently active codec sent data."),
         LOG_INFO_CODEC_SNI_READER_DATA(0x44, DATADIR_INCOMING, "Sniffing codec receive data from reader."),
-        LOG_INFO_CODEC_SNI_READER_DATA_W_PARITY(0x44, DATADIR_INCOMING, "Sniffing codec receive data from reader"),
+        LOG_INFO_CODEC_SNI_READER_DATA_W_PARITY(0x45, DATADIR_INCOMING, "Sniffing codec receive data from reader"),
         LOG_INFO_CODEC_SNI_CARD_DATA(0x46, DATADIR_INCOMING, "Sniffing codec receive data from card."),
         LOG_INFO_CODEC_SNI_CARD_DATA_W_PARITY(0x47, DATADIR_INCOMING, "Sniffing codec receive data from card."),
         /* App */
@@ -145,4 +149,33 @@ public class LogUtils {
         return lc.getDataDirection();
     }
 
-}
\ No newline at end of file
+    /**
+     * Returns which side of the RF link sent the data of a codec log entry: the reader commands
+     * are logged as the data received by the emulated card (RX) or sniffed from the reader, and
+     * the card responses as the data sent by the emulated card (TX) or sniffed from the card.
+     * The other log codes do not carry frame data.
+     * @param lcode
+     * @return int one of the FRAME_SOURCE_* constants
+     * @ref Iso14443SessionDecoder
+     */
+    public static int getFrameSource(int lcode) {
+        if(getDataDirection(lcode) == DATADIR_BIDIRECTIONAL) {
+            return FRAME_SOURCE_NONE;
+        }
+        switch(LogCode.lookupByLogCode(lcode)) {
+            case LOG_INFO_CODEC_RX_DATA:
+            case LOG_INFO_CODEC_RX_DATA_W_PARITY:
+            case LOG_INFO_CODEC_SNI_READER_DATA:
+            case LOG_INFO_CODEC_SNI_READER_DATA_W_PARITY:
+                return FRAME_SOURCE_READER;
+            case LOG_INFO_CODEC_TX_DATA:
+            case LOG_INFO_CODEC_TX_DATA_W_PARITY:
+            case LOG_INFO_CODEC_SNI_CARD_DATA:
+            case LOG_INFO_CODEC_SNI_CARD_DATA_W_PARITY:
+                return FRAME_SOURCE_CARD;
+            default:
+                return FRAME_SOURCE_NONE;
+        }
+    }
+
+}
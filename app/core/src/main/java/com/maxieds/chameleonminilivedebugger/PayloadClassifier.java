@@ -0,0 +1,23 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Payload Classifier</h1>
+ * Recognizes the contents of the logged payload bytes (e.g., APDU instructions and status codes).
+ *
+ * @ref ApduTableClassifier
+ */
+public interface PayloadClassifier {
+
+    /**
+     * Description returned when nothing in the payload is recognized.
+     */
+    String NONE_RECOGNIZED = "NONE";
+
+    /**
+     * Classifies the payload bytes.
+     * @param payloadBytes
+     * @return String comma separated list of the recognized labels (or NONE_RECOGNIZED)
+     */
+    String classifyPayload(byte[] payloadBytes);
+
+}
@@ -0,0 +1,84 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Serial Response Classifier</h1>
+ * Byte-level matching of the command response status codes ("100:OK", "101:OK WITH TEXT", ...)
+ * sent by the device. The classification runs on every USB read, so it works directly on the
+ * raw bytes: no String copies, charset decoding, or regular expressions are involved and
+ * nothing is allocated.
+ *
+ * @ref ChameleonIO.SerialRespCode
+ * @ref ChameleonIO.isCommandResponse
+ */
+public class SerialResponseClassifier {
+
+    /**
+     * Returned when the data does not start with a known status code.
+     */
+    public static final int NOT_A_RESPONSE = -1;
+
+    /**
+     * Determines whether the integer is one of the status codes returned by the device
+     * (this list must be kept in sync with ChameleonIO.SerialRespCode).
+     * @param rcode
+     * @return boolean
+     */
+    public static boolean isResponseCode(int rcode) {
+        switch(rcode) {
+            case 100: // OK
+            case 101: // OK WITH TEXT
+            case 110: // WAITING FOR MODEM
+            case 120: // FALSE
+            case 121: // TRUE
+            case 200: // UNKNOWN COMMAND
+            case 201: // INVALID COMMAND USAGE
+            case 202: // INVALID PARAMETER
+            case 203: // TIMEOUT
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parses the status code prefix "NNN:" located at the offset in the data.
+     * @param data
+     * @param offset
+     * @param length number of valid bytes in data
+     * @return int the known status code, or NOT_A_RESPONSE
+     */
+    public static int parseResponseCode(byte[] data, int offset, int length) {
+        if(offset < 0 || offset + 4 > length || data[offset + 3] != ':')
+            return NOT_A_RESPONSE;
+        int d0 = data[offset] - '0', d1 = data[offset + 1] - '0', d2 = data[offset + 2] - '0';
+        if(d0 < 0 || d0 > 9 || d1 < 0 || d1 > 9 || d2 < 0 || d2 > 9)
+            return NOT_A_RESPONSE;
+        int rcode = 100 * d0 + 10 * d1 + d2;
+        return isResponseCode(rcode) ? rcode : NOT_A_RESPONSE;
+    }
+
+    /**
+     * Classifies the raw serial data as a command response by locating the first ':' in the
+     * buffer and checking the three preceding bytes against the known status codes (any bytes
+     * ahead of the status code are ignored, as in the original string-based matching).
+     * @param data
+     * @return int the status code of the response, or NOT_A_RESPONSE
+     */
+    public static int classifyResponse(byte[] data) {
+        for(int i = 0; i < data.length; i++) {
+            if(data[i] == ':')
+                return parseResponseCode(data, i - 3, data.length);
+        }
+        return NOT_A_RESPONSE;
+    }
+
+    /**
+     * Determines whether the received serial data is a command response sent by the device.
+     * @param data
+     * @return boolean
+     */
+    public static boolean isCommandResponse(byte[] data) {
+        return classifyResponse(data) != NOT_A_RESPONSE;
+    }
+
+}
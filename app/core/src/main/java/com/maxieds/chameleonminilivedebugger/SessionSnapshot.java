@@ -0,0 +1,545 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * <h1>Session Snapshot</h1>
+ * Compact binary snapshot of the logging session, so the Log tab survives the process being
+ * killed in the background and the activity being rebuilt (e.g., when the theme is changed).
+ * It is kept in two files:
+ *
+ * The records file holds the rows of the log store in their columnar form (kind, record id,
+ * log code, data direction, diff time, append time and the payload or metadata strings). It is
+ * append-only: every update appends one block with the rows added since the previous update,
+ * and it is only rewritten from scratch when the existing rows of the store changed (e.g., the
+ * retention policy evicted records). Each block ends with a CRC32, so a block torn by the
+ * process dying mid-write is detected.
+ *
+ * The state file holds the number of rows covered by the snapshot and the state which changes
+ * in place: the display flags of the records (selection, highlighting, hidden and similar
+ * frames), the repeat runs, the sparse log time index, the highlight colors and a table of
+ * session properties (e.g., the cached device status). It is small, and is replaced atomically
+ * (written to a temporary file and renamed) after the records block it refers to was appended.
+ *
+ * The store is only read on the UI thread, where each update encodes the new rows and the state
+ * into memory; the files are written by a background thread. Restoring reads both files in
+ * bulk and rebuilds the store directly from the encoded columns.
+ *
+ * @ref LogRecordStore
+ * @ref LiveLoggerActivity.updateSessionSnapshot
+ */
+public class SessionSnapshot {
+
+    public static final int RECORDS_MAGIC = 0x434d4c52; // "CMLR"
+    public static final int STATE_MAGIC = 0x434d4c53;   // "CMLS"
+    public static final int SNAPSHOT_VERSION = 2; // 2: the state holds the log time index
+    public static final String STATE_FILE_EXT = ".state";
+    private static final String TEMP_FILE_EXT = ".tmp";
+    private static final int RECORDS_HEADER_SIZE = 4 + 4 + 8;
+    private static final int REPEAT_RUN_FIELDS = 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File recordsFile;
+    private final File stateFile;
+    private final ExecutorService writerThread;
+    private Future<?> pendingWrite = null;
+
+    private final Map<String, String> sessionProperties = new LinkedHashMap<String, String>();
+    private int[] highlightRecordIds = new int[0];
+    private int[] highlightColors = new int[0];
+
+    /**
+     * The part of the store covered by the records file (only used on the UI thread).
+     */
+    private long snapshotRowGeneration = -1;
+    private int snapshotRows = 0;
+    private byte[] lastStateBytes = null;
+
+    /**
+     * Counters (written by the background thread).
+     */
+    private volatile boolean rewriteRequired = false;
+    private volatile String writeError = null;
+    private volatile long numUpdates = 0, numFullRewrites = 0, numBytesWritten = 0;
+    private long lastEncodeNanos = 0, lastRestoreMillis = 0;
+
+    /**
+     * Constructor.
+     * @param snapshotFile the records file (the state file is next to it)
+     */
+    public SessionSnapshot(File snapshotFile) {
+        recordsFile = snapshotFile;
+        stateFile = new File(snapshotFile.getPath() + STATE_FILE_EXT);
+        writerThread = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SessionSnapshot");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    public File getRecordsFile() { return recordsFile; }
+    public File getStateFile() { return stateFile; }
+
+    public boolean exists() {
+        return recordsFile.exists() && stateFile.exists();
+    }
+
+    public void setSessionProperty(String key, String value) {
+        if(value == null)
+            sessionProperties.remove(key);
+        else
+            sessionProperties.put(key, value);
+    }
+
+    public String getSessionProperty(String key) {
+        return sessionProperties.get(key);
+    }
+
+    /**
+     * Sets the highlight colors of the records stored with the next update.
+     * @param recordIds
+     * @param colors
+     */
+    public void setHighlightColors(int[] recordIds, int[] colors) {
+        if(recordIds.length != colors.length)
+            throw new IllegalArgumentException("Expected one color per record id.");
+        highlightRecordIds = recordIds.clone();
+        highlightColors = colors.clone();
+    }
+
+    public int[] getHighlightRecordIds() { return highlightRecordIds.clone(); }
+    public int[] getHighlightColors() { return highlightColors.clone(); }
+
+    /**
+     * Takes the snapshot of the store (on the UI thread): the rows appended since the previous
+     * update and the current state are encoded here, and written to the files in the background.
+     * Nothing is written when the store and the state did not change.
+     * @param logStore
+     * @return boolean whether a write was queued
+     */
+    public boolean update(LogRecordStore logStore) {
+        long startTime = System.nanoTime();
+        int numRows = logStore.size();
+        final boolean fullRewrite = rewriteRequired || logStore.getRowGeneration() != snapshotRowGeneration || numRows < snapshotRows;
+        final byte[] recordsBytes;
+        try {
+            recordsBytes = fullRewrite || numRows > snapshotRows ?
+                           encodeRecords(logStore, fullRewrite ? 0 : snapshotRows, numRows, fullRewrite) : null;
+        } catch(IOException ioe) {
+            writeError = ioe.getMessage();
+            return false;
+        }
+        final byte[] stateBytes = encodeState(logStore);
+        if(recordsBytes == null && Arrays.equals(stateBytes, lastStateBytes))
+            return false;
+        if(fullRewrite)
+            rewriteRequired = false;
+        snapshotRowGeneration = logStore.getRowGeneration();
+        snapshotRows = numRows;
+        lastStateBytes = stateBytes;
+        lastEncodeNanos = System.nanoTime() - startTime;
+        pendingWrite = writerThread.submit(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(fullRewrite, recordsBytes, stateBytes);
+            }
+        });
+        return true;
+    }
+
+    private void writeSnapshot(boolean fullRewrite, byte[] recordsBytes, byte[] stateBytes) {
+        try {
+            if(recordsBytes != null) {
+                FileOutputStream recordsOut = new FileOutputStream(recordsFile, !fullRewrite);
+                try {
+                    recordsOut.write(recordsBytes);
+                    recordsOut.getFD().sync();
+                } finally {
+                    recordsOut.close();
+                }
+            }
+            File tempStateFile = new File(stateFile.getPath() + TEMP_FILE_EXT);
+            FileOutputStream stateOut = new FileOutputStream(tempStateFile);
+            try {
+                stateOut.write(stateBytes);
+                stateOut.getFD().sync();
+            } finally {
+                stateOut.close();
+            }
+            if(!tempStateFile.renameTo(stateFile))
+                throw new IOException("Unable to replace " + stateFile.getName());
+            numUpdates++;
+            if(fullRewrite)
+                numFullRewrites++;
+            numBytesWritten += (recordsBytes == null ? 0 : recordsBytes.length) + stateBytes.length;
+            writeError = null;
+        } catch(IOException ioe) {
+            writeError = ioe.getMessage();
+            rewriteRequired = true;
+        }
+    }
+
+    /**
+     * Waits for the queued writes to finish (e.g., before the activity is rebuilt).
+     * @param timeoutMillis
+     * @return boolean whether the writes finished in time
+     */
+    public boolean flush(long timeoutMillis) {
+        Future<?> lastWrite = pendingWrite;
+        if(lastWrite == null)
+            return true;
+        try {
+            lastWrite.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            return true;
+        } catch(Exception ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the snapshot files (e.g., when the session is ended by the user). The next update
+     * writes the full snapshot again.
+     */
+    public void discard() {
+        flush(1000);
+        recordsFile.delete();
+        stateFile.delete();
+        snapshotRowGeneration = -1;
+        snapshotRows = 0;
+        lastStateBytes = null;
+    }
+
+    private static byte[] encodeString(String str) {
+        return str == null ? null : str.getBytes(UTF8);
+    }
+
+    private static void writeString(DataOutputStream dout, String str) throws IOException {
+        byte[] strBytes = encodeString(str);
+        dout.writeInt(strBytes == null ? -1 : strBytes.length);
+        if(strBytes != null)
+            dout.write(strBytes);
+    }
+
+    private static String readString(ByteBuffer buf) {
+        int strLength = buf.getInt();
+        if(strLength < 0)
+            return null;
+        String str = new String(buf.array(), buf.arrayOffset() + buf.position(), strLength, UTF8);
+        buf.position(buf.position() + strLength);
+        return str;
+    }
+
+    /**
+     * Encodes the rows as one records block:
+     * <pre>
+     *     int blockLength, int numRows, rows..., int crc32 (of numRows and the rows)
+     *     row: byte kind, int recordId, byte logCode, byte dataDir, int diffTimeMs, int appendSecs,
+     *          then char payloadLength, payload (LIVE log frames) or the 3 metadata strings
+     * </pre>
+     */
+    private static byte[] encodeRecords(LogRecordStore logStore, int fromRow, int toRow, boolean withHeader) throws IOException {
+        ByteArrayOutputStream recordsBuf = new ByteArrayOutputStream(16 * (toRow - fromRow) + RECORDS_HEADER_SIZE + 12);
+        DataOutputStream dout = new DataOutputStream(recordsBuf);
+        if(withHeader) {
+            dout.writeInt(RECORDS_MAGIC);
+            dout.writeInt(SNAPSHOT_VERSION);
+            dout.writeLong(logStore.getEpochMillis());
+        }
+        int blockStart = dout.size();
+        dout.writeInt(0);
+        dout.writeInt(toRow - fromRow);
+        byte[] payloadBuf = new byte[LogRecordStore.MAX_PAYLOAD_SIZE];
+        for(int row = fromRow; row < toRow; row++) {
+            boolean logFrame = logStore.isLogFrame(row);
+            dout.writeByte(logStore.getRecordKind(row));
+            dout.writeInt(logStore.getRecordId(row));
+            dout.writeByte(logStore.getLogCode(row));
+            dout.writeByte(logStore.getDataDirection(row));
+            dout.writeInt(logStore.getDiffTimeMillis(row));
+            dout.writeInt(logStore.getAppendTimeSeconds(row));
+            if(logFrame) {
+                int payloadLength = logStore.copyPayload(row, payloadBuf, 0);
+                dout.writeChar(payloadLength);
+                dout.write(payloadBuf, 0, payloadLength);
+            }
+            else {
+                writeString(dout, logStore.getMetadataTitle(row));
+                writeString(dout, logStore.getMetadataText(row));
+                writeString(dout, logStore.getMetadataTimestamp(row));
+            }
+        }
+        dout.flush();
+        byte[] recordsBytes = recordsBuf.toByteArray();
+        int blockLength = recordsBytes.length - blockStart + 4;
+        ByteBuffer.wrap(recordsBytes, blockStart, 4).putInt(blockLength);
+        CRC32 crc = new CRC32();
+        crc.update(recordsBytes, blockStart + 4, recordsBytes.length - blockStart - 4);
+        byte[] blockBytes = Arrays.copyOf(recordsBytes, recordsBytes.length + 4);
+        ByteBuffer.wrap(blockBytes, recordsBytes.length, 4).putInt((int) crc.getValue());
+        return blockBytes;
+    }
+
+    /**
+     * Encodes the state file:
+     * <pre>
+     *     int magic, int version, long epochMillis, int numRows, int lastRecordId, int similarRunBaseRow,
+     *     int numFlags, (int row, byte flags)..., int numRuns, (int row, int[4] run)...,
+     *     int numHighlights, (int recordId, int color)..., int numProperties, (string, string)...,
+     *     int numTimeIndexEntries, (int row, long logTimeMillis)..., int crc32 (of everything before it)
+     * </pre>
+     */
+    private byte[] encodeState(LogRecordStore logStore) {
+        int numRows = logStore.size();
+        ByteArrayOutputStream stateBuf = new ByteArrayOutputStream(1024);
+        DataOutputStream dout = new DataOutputStream(stateBuf);
+        try {
+            dout.writeInt(STATE_MAGIC);
+            dout.writeInt(SNAPSHOT_VERSION);
+            dout.writeLong(logStore.getEpochMillis());
+            dout.writeInt(numRows);
+            dout.writeInt(logStore.getLastRecordId());
+            dout.writeInt(logStore.getSimilarRunBaseRow());
+            int numFlags = 0, numRuns = 0;
+            ByteArrayOutputStream flagsBuf = new ByteArrayOutputStream(256);
+            DataOutputStream flagsOut = new DataOutputStream(flagsBuf);
+            ByteArrayOutputStream runsBuf = new ByteArrayOutputStream(256);
+            DataOutputStream runsOut = new DataOutputStream(runsBuf);
+            for(int row = 0; row < numRows; row++) {
+                byte flags = logStore.getRecordFlags(row);
+                if(flags == 0)
+                    continue;
+                flagsOut.writeInt(row);
+                flagsOut.writeByte(flags);
+                numFlags++;
+                int[] repeatRun = (flags & LogRecordStore.FLAG_REPEAT_RUN) != 0 ? logStore.getRepeatRunState(row) : null;
+                if(repeatRun != null) {
+                    runsOut.writeInt(row);
+                    for(int field = 0; field < REPEAT_RUN_FIELDS; field++)
+                        runsOut.writeInt(repeatRun[field]);
+                    numRuns++;
+                }
+            }
+            dout.writeInt(numFlags);
+            flagsOut.flush();
+            flagsBuf.writeTo(dout);
+            dout.writeInt(numRuns);
+            runsOut.flush();
+            runsBuf.writeTo(dout);
+            dout.writeInt(highlightRecordIds.length);
+            for(int hc = 0; hc < highlightRecordIds.length; hc++) {
+                dout.writeInt(highlightRecordIds[hc]);
+                dout.writeInt(highlightColors[hc]);
+            }
+            dout.writeInt(sessionProperties.size());
+            for(Map.Entry<String, String> property : sessionProperties.entrySet()) {
+                writeString(dout, property.getKey());
+                writeString(dout, property.getValue());
+            }
+            dout.writeInt(logStore.getTimeIndexSize());
+            for(int entry = 0; entry < logStore.getTimeIndexSize(); entry++) {
+                dout.writeInt(logStore.getTimeIndexRow(entry));
+                dout.writeLong(logStore.getTimeIndexMillis(entry));
+            }
+            dout.flush();
+        } catch(IOException ioe) {
+            throw new IllegalStateException(ioe.getMessage()); // not thrown by the in-memory streams
+        }
+        byte[] stateBytes = stateBuf.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(stateBytes, 0, stateBytes.length);
+        byte[] checkedBytes = Arrays.copyOf(stateBytes, stateBytes.length + 4);
+        ByteBuffer.wrap(checkedBytes, stateBytes.length, 4).putInt((int) crc.getValue());
+        return checkedBytes;
+    }
+
+    private static byte[] readFile(File fd) throws IOException {
+        long fileLength = fd.length();
+        if(fileLength > Integer.MAX_VALUE)
+            throw new IOException("The snapshot file " + fd.getName() + " is too large.");
+        byte[] fileBytes = new byte[(int) fileLength];
+        FileInputStream fin = new FileInputStream(fd);
+        try {
+            int bytesRead = 0;
+            while(bytesRead < fileBytes.length) {
+                int numRead = fin.read(fileBytes, bytesRead, fileBytes.length - bytesRead);
+                if(numRead < 0)
+                    throw new IOException("Unexpected end of " + fd.getName());
+                bytesRead += numRead;
+            }
+        } finally {
+            fin.close();
+        }
+        return fileBytes;
+    }
+
+    private static boolean checkCrc(byte[] data, int offset, int length, int expectedCrc) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue() == expectedCrc;
+    }
+
+    /**
+     * Restores the snapshot into the (empty) store, along with the highlight colors and the
+     * session properties stored in it. The records past the last complete state are dropped.
+     * @param logStore
+     * @return int number of records restored
+     * @throws IOException when the snapshot is missing or corrupted (the store may then hold a
+     *                     part of the records and should be cleared by the caller)
+     */
+    public int restore(LogRecordStore logStore) throws IOException {
+        long startTime = System.currentTimeMillis();
+        flush(1000);
+        byte[] stateBytes = readFile(stateFile);
+        if(stateBytes.length < 4 || !checkCrc(stateBytes, 0, stateBytes.length - 4, ByteBuffer.wrap(stateBytes, stateBytes.length - 4, 4).getInt()))
+            throw new IOException("The snapshot state " + stateFile.getName() + " is corrupted.");
+        byte[] recordsBytes = readFile(recordsFile);
+        try {
+            ByteBuffer stateBuf = ByteBuffer.wrap(stateBytes, 0, stateBytes.length - 4);
+            if(stateBuf.getInt() != STATE_MAGIC || stateBuf.getInt() != SNAPSHOT_VERSION)
+                throw new IOException("Unsupported snapshot state " + stateFile.getName());
+            long epochMillis = stateBuf.getLong();
+            int numRows = stateBuf.getInt();
+            int lastRecordId = stateBuf.getInt();
+            int similarRunBaseRow = stateBuf.getInt();
+            int numFlags = stateBuf.getInt();
+            int[] flagRows = new int[numFlags];
+            byte[] flagValues = new byte[numFlags];
+            for(int f = 0; f < numFlags; f++) {
+                flagRows[f] = stateBuf.getInt();
+                flagValues[f] = stateBuf.get();
+            }
+            int numRuns = stateBuf.getInt();
+            Map<Integer, int[]> repeatRuns = new HashMap<Integer, int[]>();
+            for(int r = 0; r < numRuns; r++) {
+                Integer runRow = Integer.valueOf(stateBuf.getInt());
+                int[] repeatRun = new int[REPEAT_RUN_FIELDS];
+                for(int field = 0; field < REPEAT_RUN_FIELDS; field++)
+                    repeatRun[field] = stateBuf.getInt();
+                repeatRuns.put(runRow, repeatRun);
+            }
+            int numHighlights = stateBuf.getInt();
+            int[] restoredIds = new int[numHighlights], restoredColors = new int[numHighlights];
+            for(int hc = 0; hc < numHighlights; hc++) {
+                restoredIds[hc] = stateBuf.getInt();
+                restoredColors[hc] = stateBuf.getInt();
+            }
+            int numProperties = stateBuf.getInt();
+            Map<String, String> restoredProperties = new LinkedHashMap<String, String>();
+            for(int p = 0; p < numProperties; p++)
+                restoredProperties.put(readString(stateBuf), readString(stateBuf));
+            int numTimeIndexEntries = stateBuf.getInt();
+            int[] timeIndexRows = new int[numTimeIndexEntries];
+            long[] timeIndexMillis = new long[numTimeIndexEntries];
+            for(int entry = 0; entry < numTimeIndexEntries; entry++) {
+                timeIndexRows[entry] = stateBuf.getInt();
+                timeIndexMillis[entry] = stateBuf.getLong();
+            }
+
+            ByteBuffer recordsBuf = ByteBuffer.wrap(recordsBytes);
+            if(recordsBuf.getInt() != RECORDS_MAGIC || recordsBuf.getInt() != SNAPSHOT_VERSION || recordsBuf.getLong() != epochMillis)
+                throw new IOException("The snapshot records " + recordsFile.getName() + " do not match the snapshot state.");
+            logStore.beginRestore(epochMillis);
+            int row = 0, nextFlag = 0;
+            while(row < numRows) {
+                int blockStart = recordsBuf.position();
+                int blockLength = recordsBuf.getInt();
+                if(blockLength < 12 || blockLength > recordsBytes.length - blockStart ||
+                   !checkCrc(recordsBytes, blockStart + 4, blockLength - 8, ByteBuffer.wrap(recordsBytes, blockStart + blockLength - 4, 4).getInt()))
+                    throw new IOException("The snapshot records " + recordsFile.getName() + " are corrupted.");
+                int blockRows = Math.min(recordsBuf.getInt(), numRows - row);
+                for(int br = 0; br < blockRows; br++, row++) {
+                    byte recordKind = recordsBuf.get();
+                    int recordId = recordsBuf.getInt();
+                    int logCode = recordsBuf.get() & 0xff;
+                    int dataDir = recordsBuf.get();
+                    int diffTimeMs = recordsBuf.getInt();
+                    int appendSecs = recordsBuf.getInt();
+                    int flags = 0;
+                    if(nextFlag < numFlags && flagRows[nextFlag] == row)
+                        flags = flagValues[nextFlag++] & 0xff;
+                    if(recordKind == LogRecordStore.RECORD_LOG_FRAME) {
+                        int payloadLength = recordsBuf.getChar();
+                        int payloadStart = recordsBuf.position();
+                        recordsBuf.position(payloadStart + payloadLength);
+                        logStore.restoreLogFrame(recordId, logCode, dataDir, diffTimeMs, appendSecs, flags,
+                                                 recordsBytes, payloadStart, payloadLength, repeatRuns.get(Integer.valueOf(row)));
+                    }
+                    else {
+                        String title = readString(recordsBuf);
+                        String text = readString(recordsBuf);
+                        String timestamp = readString(recordsBuf);
+                        logStore.restoreMetadataRecord(recordId, title, text, timestamp, appendSecs, flags);
+                    }
+                }
+                recordsBuf.position(blockStart + blockLength);
+            }
+            logStore.restoreTimeIndex(timeIndexRows, timeIndexMillis);
+            logStore.endRestore(lastRecordId, similarRunBaseRow);
+            highlightRecordIds = restoredIds;
+            highlightColors = restoredColors;
+            sessionProperties.clear();
+            sessionProperties.putAll(restoredProperties);
+            // the records file continues from the restored rows only when it holds no extra blocks:
+            snapshotRowGeneration = recordsBuf.position() == recordsBytes.length ? logStore.getRowGeneration() : -1;
+            snapshotRows = numRows;
+            lastStateBytes = stateBytes;
+            lastRestoreMillis = System.currentTimeMillis() - startTime;
+            return numRows;
+        } catch(BufferUnderflowException bue) {
+            throw new IOException("The snapshot " + recordsFile.getName() + " is truncated.");
+        } catch(IndexOutOfBoundsException ioobe) {
+            throw new IOException("The snapshot " + recordsFile.getName() + " is corrupted.");
+        } catch(IllegalArgumentException iae) {
+            throw new IOException("The snapshot " + recordsFile.getName() + " is corrupted: " + iae.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background writer once the queued writes are done.
+     */
+    public void close() {
+        writerThread.shutdown();
+    }
+
+    public String getWriteError() { return writeError; }
+    public long getUpdates() { return numUpdates; }
+    public long getFullRewrites() { return numFullRewrites; }
+    public long getBytesWritten() { return numBytesWritten; }
+    public long getLastRestoreMillis() { return lastRestoreMillis; }
+
+    /**
+     * Summary of the snapshot writes for the capture statistics.
+     * @return String
+     */
+    public String getStatsSummary() {
+        return String.format(Locale.ENGLISH, "Session snapshot: %s, %d rows (%d KB), %d updates (%d full), %d KB written, " +
+                             "last encode %.1f ms, last restore %d ms%s",
+                             recordsFile.getName(), snapshotRows, recordsFile.length() / 1024, numUpdates, numFullRewrites,
+                             numBytesWritten / 1024, lastEncodeNanos / 1.0e6, lastRestoreMillis,
+                             writeError == null ? "" : "\nSnapshot write error: " + writeError);
+    }
+
+}
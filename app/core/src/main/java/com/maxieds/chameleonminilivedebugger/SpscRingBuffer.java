@@ -0,0 +1,104 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1>SPSC Ring Buffer</h1>
+ * Bounded lock-free queue for handing items from exactly one producer thread to exactly one
+ * consumer thread (e.g., from the USB reader callback to the log ingestion thread). Each side
+ * only ever writes its own position counter, so no locks or CAS loops are needed: the
+ * ordered (lazySet) stores publish the slot contents before the new position is visible.
+ *
+ * @ref LiveLogIngestionThread
+ */
+public class SpscRingBuffer<E> {
+
+    private final Object[] ringSlots;
+    private final int ringMask;
+
+    /**
+     * The consumer reads at headPos and the producer writes at tailPos. The positions increase
+     * monotonically and are masked when indexing into the slots. The cached copies of the other
+     * side's position avoid touching the shared cache line on every call.
+     */
+    private final AtomicLong headPos = new AtomicLong(0);
+    private final AtomicLong tailPos = new AtomicLong(0);
+    private long producerHeadCache = 0;
+    private long consumerTailCache = 0;
+
+    /**
+     * Constructor.
+     * @param capacity (rounded up to the next power of two)
+     */
+    public SpscRingBuffer(int capacity) {
+        int ringSize = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        ringSlots = new Object[ringSize];
+        ringMask = ringSize - 1;
+    }
+
+    /**
+     * Inserts the item at the tail of the queue (producer thread only).
+     * @param item
+     * @return boolean false if the queue is full
+     */
+    public boolean offer(E item) {
+        long tail = tailPos.get();
+        if(tail - producerHeadCache >= ringSlots.length) {
+            producerHeadCache = headPos.get();
+            if(tail - producerHeadCache >= ringSlots.length)
+                return false;
+        }
+        ringSlots[(int) tail & ringMask] = item;
+        tailPos.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the item at the head of the queue (consumer thread only).
+     * @return E the next item, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long head = headPos.get();
+        if(head >= consumerTailCache) {
+            consumerTailCache = tailPos.get();
+            if(head >= consumerTailCache)
+                return null;
+        }
+        int slotIdx = (int) head & ringMask;
+        E item = (E) ringSlots[slotIdx];
+        ringSlots[slotIdx] = null;
+        headPos.lazySet(head + 1);
+        return item;
+    }
+
+    /**
+     * Moves up to maxItems from the head of the queue into the list (consumer thread only).
+     * @param destList
+     * @param maxItems
+     * @return int number of items drained
+     */
+    public int drainTo(List<? super E> destList, int maxItems) {
+        int numDrained = 0;
+        E item;
+        while(numDrained < maxItems && (item = poll()) != null) {
+            destList.add(item);
+            numDrained++;
+        }
+        return numDrained;
+    }
+
+    /**
+     * Approximate number of items in the queue (exact when called from either end).
+     * @return int
+     */
+    public int size() {
+        long head = headPos.get();
+        return (int) Math.max(0, tailPos.get() - head);
+    }
+
+    public boolean isEmpty() { return size() == 0; }
+    public int capacity() { return ringSlots.length; }
+
+}
@@ -0,0 +1,81 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>Systick Timeline</h1>
+ * Reconstructs a monotonic 64-bit timeline (in milliseconds) from the 16-bit systick
+ * timestamps in the headers of the LIVE log frames. The systick counter wraps around every
+ * 65.536 seconds, so the offset from the previous frame is taken modulo the wrap period (it is
+ * never negative), and when the host clock says that more time has passed than the systick
+ * offset accounts for (the reader was idle for longer than a wrap period), the missed
+ * wraparounds are added back.
+ *
+ * The timeline is shared by the frames decoded on the ingestion thread and those thrown to the
+ * live log from the device log downloads, so its methods are synchronized.
+ *
+ * @ref LiveLogDecoder
+ * @ref LogRecordStore.getLogTimeMillis
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+ */
+public class SystickTimeline {
+
+    public static final int SYSTICK_BITS = 16;
+    public static final long WRAP_PERIOD_MILLIS = 1L << SYSTICK_BITS;
+    private static final int SYSTICK_MASK = (1 << SYSTICK_BITS) - 1;
+
+    private int lastSystick = -1;
+    private long lastHostMillis = 0;
+    private long timelineMillis = 0;
+    private long numMissedWraps = 0;
+
+    /**
+     * Advances the timeline to the systick timestamp of the next frame.
+     * @param systick 16-bit timestamp from the frame header
+     * @param hostMillis host time the frame was received
+     * @return int offset (in milliseconds) of the frame from the previous one
+     */
+    public synchronized int nextDiffTime(int systick, long hostMillis) {
+        systick &= SYSTICK_MASK;
+        long diffMillis;
+        if(lastSystick < 0) {
+            diffMillis = systick;
+        }
+        else {
+            diffMillis = (systick - lastSystick) & SYSTICK_MASK;
+            long unaccountedMillis = hostMillis - lastHostMillis - diffMillis;
+            if(unaccountedMillis > WRAP_PERIOD_MILLIS / 2) {
+                long missedWraps = (unaccountedMillis + WRAP_PERIOD_MILLIS / 2) / WRAP_PERIOD_MILLIS;
+                diffMillis += missedWraps * WRAP_PERIOD_MILLIS;
+                numMissedWraps += missedWraps;
+            }
+        }
+        lastSystick = systick;
+        lastHostMillis = hostMillis;
+        timelineMillis += diffMillis;
+        return (int) Math.min(diffMillis, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return long time (in milliseconds) of the last frame on the reconstructed timeline
+     */
+    public synchronized long getTimelineMillis() {
+        return timelineMillis;
+    }
+
+    /**
+     * @return long number of wraparounds recovered from the host clock
+     */
+    public synchronized long getMissedWraps() {
+        return numMissedWraps;
+    }
+
+    /**
+     * Restarts the timeline (the next frame is taken relative to systick zero).
+     */
+    public synchronized void reset() {
+        lastSystick = -1;
+        lastHostMillis = 0;
+        timelineMillis = 0;
+        numMissedWraps = 0;
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1>Text Log Serializer</h1>
+ * Writes the plaintext log format (roughly the format of the Python scripts on the
+ * Chameleon Mini scripts page).
+ *
+ * @ref ExportTools.writeFormattedLogFile
+ * @url https://github.com/emsec/ChameleonMini/tree/master/Software
+ */
+public class TextLogSerializer implements LogSerializer {
+
+    @Override
+    public void writeHeader(OutputStream fout) throws IOException {}
+
+    @Override
+    public void writeLogRecord(OutputStream fout, int recordID, DecodedLogFrame logFrame) throws IOException {
+        String recordDesc = LogExportFormatter.formatLogRecord(recordID, logFrame);
+        fout.write(LogExportFormatter.formatTextLine(recordDesc).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void writeMetadataRecord(OutputStream fout, String metadataDesc) throws IOException {
+        fout.write(LogExportFormatter.formatTextMetadataLine(metadataDesc).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void writeFooter(OutputStream fout) throws IOException {}
+
+}
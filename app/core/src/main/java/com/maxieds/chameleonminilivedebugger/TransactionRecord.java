@@ -0,0 +1,177 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Locale;
+
+/**
+ * <h1>Transaction Record</h1>
+ * One command / response exchange reconstructed from the LIVE log frames by the
+ * Iso14443SessionDecoder: the kind of exchange (anticollision, SELECT, RATS, an ISO 7816 APDU
+ * carried in ISO 14443-4 blocks, ...), the card session it belongs to, the number of frames on
+ * each side (chained blocks, wait time extensions and retransmissions included), the APDU header
+ * and status word, and the timing: the latency from the end of the command to the first frame
+ * sent back by the card, and the duration of the whole exchange.
+ *
+ * The times are in milliseconds on the log timeline (the sum of the frame diff times), so a
+ * response sent within the same systick millisecond has zero latency. The record only holds the
+ * summary fields (not the payloads), which are filled in by the decoder as the frames arrive.
+ *
+ * @ref Iso14443SessionDecoder
+ * @url https://www.nxp.com/docs/en/application-note/AN10833.pdf
+ */
+public class TransactionRecord {
+
+    public static final int NONE = -1;
+
+    /**
+     * <h1>Transaction Type</h1>
+     * The kind of exchange, named after the reader command that starts it.
+     */
+    public enum TransactionType {
+        /** REQA / WUPA answered by the ATQA. */
+        WAKEUP,
+        /** ANTICOLLISION at one cascade level, answered by a part of the UID and the BCC. */
+        ANTICOLLISION,
+        /** SELECT at one cascade level, answered by the SAK. */
+        SELECT,
+        /** HLTA (the card does not answer). */
+        HALT,
+        /** Request for answer to select, answered by the ATS (the card enters ISO 14443-4). */
+        RATS,
+        /** Protocol and parameter selection following the ATS. */
+        PPS,
+        /** ISO 7816 command APDU in I-blocks, answered by the response APDU. */
+        APDU,
+        /** R-block sent outside of an exchange (e.g., the reader checking the card is there). */
+        PRESENCE_CHECK,
+        /** S(DESELECT) ending the ISO 14443-4 session. */
+        DESELECT,
+        /** Any other reader command (e.g., the MIFARE commands of an activated card). */
+        COMMAND,
+        /** Card frame which does not answer a command seen in the log. */
+        UNSOLICITED,
+    }
+
+    TransactionType transactionType;
+    long sessionId = NONE;
+    int sessionCid = NONE;
+    String sessionUid = "";
+    long startTimeMs = NONE, commandEndMs = NONE, responseStartMs = NONE, endTimeMs = NONE;
+    int numReaderFrames = 0, numCardFrames = 0;
+    int commandLength = 0, responseLength = 0;
+    int numWaitExtensions = 0, numRetransmissions = 0;
+    int commandCode = NONE, responseCode = NONE;
+    int apduCla = NONE, apduIns = NONE, apduP1 = NONE, apduP2 = NONE;
+    int statusWord = NONE;
+    boolean isComplete = false;
+
+    /**
+     * Constructor (the fields are filled in by the Iso14443SessionDecoder).
+     * @param type
+     * @param startMs
+     */
+    TransactionRecord(TransactionType type, long startMs) {
+        transactionType = type;
+        startTimeMs = startMs;
+        commandEndMs = startMs;
+        endTimeMs = startMs;
+    }
+
+    /**
+     * Get methods for the transaction fields (NONE when not known).
+     * @return
+     */
+    public TransactionType getType() { return transactionType; }
+    public long getSessionId() { return sessionId; }
+    public int getSessionCid() { return sessionCid; }
+    public String getSessionUid() { return sessionUid; }
+    public long getStartTimeMs() { return startTimeMs; }
+    public long getEndTimeMs() { return endTimeMs; }
+    public int getReaderFrames() { return numReaderFrames; }
+    public int getCardFrames() { return numCardFrames; }
+    public int getCommandLength() { return commandLength; }
+    public int getResponseLength() { return responseLength; }
+    public int getWaitExtensions() { return numWaitExtensions; }
+    public int getRetransmissions() { return numRetransmissions; }
+    public int getCommandCode() { return commandCode; }
+    public int getResponseCode() { return responseCode; }
+    public int getApduCla() { return apduCla; }
+    public int getApduIns() { return apduIns; }
+    public int getApduP1() { return apduP1; }
+    public int getApduP2() { return apduP2; }
+    public int getStatusWord() { return statusWord; }
+
+    /**
+     * @return boolean whether the card answered (the exchange ran to its end)
+     */
+    public boolean hasResponse() { return responseStartMs != NONE; }
+
+    /**
+     * @return boolean whether all of the expected frames were seen (e.g., the last block of a
+     *                 chained response, or HLTA which has no answer)
+     */
+    public boolean isComplete() { return isComplete; }
+
+    /**
+     * Time from the last reader frame of the command to the first frame sent by the card.
+     * @return long milliseconds (NONE without a response)
+     */
+    public long getLatencyMs() {
+        return hasResponse() ? responseStartMs - commandEndMs : NONE;
+    }
+
+    /**
+     * Time from the first to the last frame of the exchange.
+     * @return long milliseconds
+     */
+    public long getDurationMs() {
+        return endTimeMs - startTimeMs;
+    }
+
+    /**
+     * One line description of the transaction suitable for display in the log.
+     * @return String
+     */
+    public String getSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(transactionType.name());
+        if(apduCla != NONE) {
+            for(int headerByte : new int[] { apduCla, apduIns, apduP1, apduP2 }) {
+                if(headerByte != NONE)
+                    summary.append(String.format(Locale.ENGLISH, " %02X", headerByte));
+            }
+        }
+        else if(commandCode != NONE)
+            summary.append(String.format(Locale.ENGLISH, " %02X", commandCode));
+        if(statusWord != NONE)
+            summary.append(String.format(Locale.ENGLISH, " -> %04X", statusWord));
+        else if(responseCode != NONE)
+            summary.append(String.format(Locale.ENGLISH, " -> %02X", responseCode));
+        else if(!hasResponse() && transactionType != TransactionType.HALT)
+            summary.append(" (no response)");
+        if(sessionId != NONE) {
+            summary.append(String.format(Locale.ENGLISH, " [session %d", sessionId));
+            if(sessionUid.length() > 0)
+                summary.append(", UID ").append(sessionUid);
+            if(sessionCid != NONE)
+                summary.append(", CID ").append(sessionCid);
+            summary.append("]");
+        }
+        summary.append(String.format(Locale.ENGLISH, ", %d+%d frames (%d+%d bytes)", numReaderFrames, numCardFrames, commandLength, responseLength));
+        if(hasResponse())
+            summary.append(String.format(Locale.ENGLISH, ", latency %d ms", getLatencyMs()));
+        summary.append(String.format(Locale.ENGLISH, ", %d ms total", getDurationMs()));
+        if(numWaitExtensions > 0)
+            summary.append(String.format(Locale.ENGLISH, ", %d WTX", numWaitExtensions));
+        if(numRetransmissions > 0)
+            summary.append(String.format(Locale.ENGLISH, ", %d retransmissions", numRetransmissions));
+        if(!isComplete)
+            summary.append(" (incomplete)");
+        return summary.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+
+}
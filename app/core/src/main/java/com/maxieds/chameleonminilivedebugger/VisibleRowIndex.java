@@ -0,0 +1,190 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.util.Arrays;
+
+/**
+ * <h1>Visible Row Index</h1>
+ * Maps the rows of the log store to the rows shown in the Log tab, skipping the records with any
+ * of the given display flags set (FLAG_HIDDEN, plus FLAG_SIMILAR in the collapse-similar view).
+ * One visibility bit is kept per row in chunks aligned with the store chunks, along with the
+ * number of visible rows in each chunk and the number of visible rows before each chunk (the
+ * latter recomputed lazily from the first chunk that changed). Indexing an appended row or a
+ * changed flag is O(1), and mapping a row to its visible position (or back) is a binary search
+ * over the chunks plus a popcount over at most one chunk of bits.
+ *
+ * The index has to be rebuilt after the store is compacted, cleared or restored, since the rows
+ * shift. Like the store, it is only used from the UI thread.
+ *
+ * @ref LogFeedAdapter
+ * @ref LogRecordStore.FLAG_HIDDEN
+ * @ref LogRecordStore.FLAG_SIMILAR
+ */
+public class VisibleRowIndex {
+
+    private static final int WORD_BITS = 5;
+    private static final int WORD_MASK = (1 << WORD_BITS) - 1;
+    private static final int WORDS_PER_CHUNK = LogRecordStore.CHUNK_SIZE >>> WORD_BITS;
+    private static final int CHUNK_MASK = LogRecordStore.CHUNK_SIZE - 1;
+
+    private final LogRecordStore logStore;
+    private final int excludedFlags;
+
+    private int[][] visibleBits = new int[16][];
+    private int[] chunkCounts = new int[16];
+    private int[] chunkPrefixes = new int[16];
+    private int numChunks = 0;
+    private int numValidPrefixes = 0;
+    private int numIndexedRows = 0;
+    private int numVisibleRows = 0;
+
+    /**
+     * Constructor.
+     * @param store
+     * @param flags the rows with any of these flags are not visible
+     */
+    public VisibleRowIndex(LogRecordStore store, int flags) {
+        logStore = store;
+        excludedFlags = flags;
+        rebuild();
+    }
+
+    /**
+     * Re-indexes all of the rows in the store.
+     */
+    public void rebuild() {
+        numChunks = 0;
+        numValidPrefixes = 0;
+        numIndexedRows = 0;
+        numVisibleRows = 0;
+        onRowsAppended();
+    }
+
+    /**
+     * Indexes the rows appended to the store since the last call.
+     */
+    public void onRowsAppended() {
+        for(int numRows = logStore.size(); numIndexedRows < numRows; numIndexedRows++) {
+            int row = numIndexedRows;
+            if((row & CHUNK_MASK) == 0)
+                appendChunk();
+            if(!logStore.hasRecordFlag(row, excludedFlags))
+                setVisible(row, true);
+        }
+    }
+
+    /**
+     * Updates the visibility of the row after its display flags changed.
+     * @param row
+     * @return boolean whether the visibility of the row changed
+     */
+    public boolean onRowChanged(int row) {
+        if(row >= numIndexedRows) {
+            onRowsAppended();
+            return false;
+        }
+        boolean visible = !logStore.hasRecordFlag(row, excludedFlags);
+        if(visible == isVisible(row))
+            return false;
+        setVisible(row, visible);
+        return true;
+    }
+
+    private void appendChunk() {
+        if(numChunks == chunkCounts.length) {
+            visibleBits = Arrays.copyOf(visibleBits, 2 * numChunks);
+            chunkCounts = Arrays.copyOf(chunkCounts, 2 * numChunks);
+            chunkPrefixes = Arrays.copyOf(chunkPrefixes, 2 * numChunks);
+        }
+        if(visibleBits[numChunks] == null)
+            visibleBits[numChunks] = new int[WORDS_PER_CHUNK];
+        else
+            Arrays.fill(visibleBits[numChunks], 0);
+        chunkCounts[numChunks++] = 0;
+    }
+
+    private void setVisible(int row, boolean visible) {
+        int chunk = row >>> LogRecordStore.CHUNK_BITS, idx = row & CHUNK_MASK;
+        int rowBit = 1 << (idx & WORD_MASK);
+        if(visible)
+            visibleBits[chunk][idx >>> WORD_BITS] |= rowBit;
+        else
+            visibleBits[chunk][idx >>> WORD_BITS] &= ~rowBit;
+        int delta = visible ? 1 : -1;
+        chunkCounts[chunk] += delta;
+        numVisibleRows += delta;
+        numValidPrefixes = Math.min(numValidPrefixes, chunk + 1);
+    }
+
+    private void updatePrefixes() {
+        for(; numValidPrefixes < numChunks; numValidPrefixes++) {
+            int chunk = numValidPrefixes;
+            chunkPrefixes[chunk] = chunk == 0 ? 0 : chunkPrefixes[chunk - 1] + chunkCounts[chunk - 1];
+        }
+    }
+
+    /**
+     * @return int number of visible rows
+     */
+    public int size() {
+        return numVisibleRows;
+    }
+
+    public boolean isVisible(int row) {
+        if(row < 0 || row >= numIndexedRows)
+            return false;
+        int idx = row & CHUNK_MASK;
+        return (visibleBits[row >>> LogRecordStore.CHUNK_BITS][idx >>> WORD_BITS] & (1 << (idx & WORD_MASK))) != 0;
+    }
+
+    /**
+     * Number of visible rows before the row in the store (its visible position when the row is
+     * itself visible).
+     * @param row
+     * @return int visible position
+     */
+    public int getVisiblePosition(int row) {
+        if(row >= numIndexedRows)
+            return numVisibleRows;
+        updatePrefixes();
+        int chunk = row >>> LogRecordStore.CHUNK_BITS, idx = row & CHUNK_MASK;
+        int[] chunkBits = visibleBits[chunk];
+        int visiblePosition = chunkPrefixes[chunk];
+        int lastWord = idx >>> WORD_BITS;
+        for(int w = 0; w < lastWord; w++)
+            visiblePosition += Integer.bitCount(chunkBits[w]);
+        return visiblePosition + Integer.bitCount(chunkBits[lastWord] & ((1 << (idx & WORD_MASK)) - 1));
+    }
+
+    /**
+     * Row in the store shown at the visible position.
+     * @param visiblePosition
+     * @return int row, or -1 when out of range
+     */
+    public int getRow(int visiblePosition) {
+        if(visiblePosition < 0 || visiblePosition >= numVisibleRows)
+            return -1;
+        updatePrefixes();
+        int lo = 0, hi = numChunks - 1;
+        while(lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if(chunkPrefixes[mid] <= visiblePosition)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        int[] chunkBits = visibleBits[lo];
+        int remaining = visiblePosition - chunkPrefixes[lo];
+        for(int w = 0; w < WORDS_PER_CHUNK; w++) {
+            int wordBits = chunkBits[w], wordCount = Integer.bitCount(wordBits);
+            if(remaining >= wordCount) {
+                remaining -= wordCount;
+                continue;
+            }
+            for(; remaining > 0; remaining--)
+                wordBits &= wordBits - 1;
+            return (lo << LogRecordStore.CHUNK_BITS) + (w << WORD_BITS) + Integer.numberOfTrailingZeros(wordBits);
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.maxieds.chameleonminilivedebugger;
+
+/**
+ * <h1>XModem Framing</h1>
+ * The XModem (checksum variant) framing used by the Chameleon Mini for the UPLOAD / DOWNLOAD
+ * commands. A data frame consists of SOH, the block number, its complement, 128 data bytes
+ * (padded with EOF), and the 8-bit sum of the data bytes.
+ *
+ * @ref ExportTools
+ * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/_x_modem_8h_source.html
+ */
+public class XModemFraming {
+
+    /**
+     * Named XModem connection status bytes.
+     */
+    public static final byte BYTE_NAK = (byte) 0x15;
+    public static final byte BYTE_SOH = (byte) 0x01;
+    public static final byte BYTE_ACK = (byte) 0x06;
+    public static final byte BYTE_CAN = (byte) 0x18;
+    public static final byte BYTE_EOF = (byte) 0x1A;
+    public static final byte BYTE_EOT = (byte) 0x04;
+    public static final byte BYTE_ESC = (byte) 0x1B;
+
+    /**
+     * XModem frame layout.
+     */
+    public static final short XMODEM_BLOCK_SIZE = 128;
+    public static final int XMODEM_FRAME_SIZE = XMODEM_BLOCK_SIZE + 4;
+    public static final byte FIRST_FRAME_NUMBER = (byte) 1;
+    public static final byte CHECKSUM_INIT_VALUE = 0;
+
+    /**
+     * Computes the XModem checksum of the data block.
+     * @param buffer
+     * @param offset
+     * @param byteCount
+     * @return byte checksum
+     */
+    public static byte calcChecksum(byte[] buffer, int offset, int byteCount) {
+        byte checksum = CHECKSUM_INIT_VALUE;
+        for(int i = offset; i < offset + byteCount; i++)
+            checksum += buffer[i];
+        return checksum;
+    }
+
+    /**
+     * Builds the data frame for the block, padding a short block with EOF bytes.
+     * @param frameNumber
+     * @param data
+     * @param offset
+     * @param length (at most XMODEM_BLOCK_SIZE)
+     * @return byte[] XMODEM_FRAME_SIZE bytes
+     */
+    public static byte[] buildFrame(byte frameNumber, byte[] data, int offset, int length) {
+        byte[] frameData = new byte[XMODEM_FRAME_SIZE];
+        frameData[0] = BYTE_SOH;
+        frameData[1] = frameNumber;
+        frameData[2] = (byte) (255 - frameNumber);
+        int copyLength = Math.min(length, XMODEM_BLOCK_SIZE);
+        System.arraycopy(data, offset, frameData, 3, copyLength);
+        for(int i = 3 + copyLength; i < 3 + XMODEM_BLOCK_SIZE; i++)
+            frameData[i] = BYTE_EOF;
+        frameData[XMODEM_FRAME_SIZE - 1] = calcChecksum(frameData, 3, XMODEM_BLOCK_SIZE);
+        return frameData;
+    }
+
+    /**
+     * Checks the header and checksum of the frame at the offset.
+     * @param frameData
+     * @param offset
+     * @param frameNumber the expected block number
+     * @return boolean whether the frame is intact
+     */
+    public static boolean isValidFrame(byte[] frameData, int offset, byte frameNumber) {
+        if(frameData.length - offset < XMODEM_FRAME_SIZE)
+            return false;
+        else if(frameData[offset] != BYTE_SOH || frameData[offset + 1] != frameNumber ||
+                frameData[offset + 2] != (byte) (255 - frameNumber))
+            return false;
+        return frameData[offset + XMODEM_FRAME_SIZE - 1] == calcChecksum(frameData, offset + 3, XMODEM_BLOCK_SIZE);
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the detailed pattern trie against testing every row (ApduClassifier.matchDetailedInstructions)
+ * for the detailed_common_ins table and for a synthetic vendor catalog many times its size (with
+ * wildcards and overlapping prefixes). How the cost of both grows with the number of rules is
+ * measured by ApduPatternTrieBenchmark in the benchmarks module.
+ */
+public class ApduPatternTrieTest {
+
+    private static final int NUM_PAYLOADS = 20000;
+
+    /**
+     * Rules of the form CLA,INS[,P1[,P2[,Lc...]]],LABEL over a few vendor CLA bytes, with some
+     * wildcard bytes (also in the leading position) and duplicate patterns.
+     */
+    private static List<String[]> generateCatalog(int numRules, Random rnd) {
+        List<String[]> csvLines = new ArrayList<String[]>(numRules);
+        byte[] vendorClaBytes = { 0x00, (byte) 0x80, (byte) 0x84, (byte) 0x90, (byte) 0xa0, (byte) 0xb0 };
+        for(int rule = 0; rule < numRules; rule++) {
+            if(rule > 0 && rnd.nextInt(50) == 0) {
+                String[] duplicate = csvLines.get(rnd.nextInt(rule)).clone();
+                duplicate[duplicate.length - 1] = "DUPLICATE_" + rule;
+                csvLines.add(duplicate);
+                continue;
+            }
+            String[] csvLine = new String[2 + rnd.nextInt(7)];
+            for(int b = 0; b < csvLine.length - 1; b++) {
+                int patternByte = b == 0 ? vendorClaBytes[rnd.nextInt(vendorClaBytes.length)] & 0xff : rnd.nextInt(b == 1 ? 256 : 16);
+                csvLine[b] = rnd.nextInt(b == 0 ? 200 : 8) == 0 ? ApduPatternTrie.WILDCARD_BYTE : String.format(Locale.ENGLISH, "%02X", patternByte);
+            }
+            csvLine[csvLine.length - 1] = "VENDOR_INS_" + rule;
+            csvLines.add(csvLine);
+        }
+        return csvLines;
+    }
+
+    /**
+     * Payloads starting with (the bytes of) a table row or random bytes.
+     */
+    private static byte[][] generatePayloads(List<String[]> csvLines, int numPayloads, Random rnd) {
+        byte[][] payloads = new byte[numPayloads][];
+        for(int p = 0; p < numPayloads; p++) {
+            byte[] payload = new byte[rnd.nextInt(20)];
+            rnd.nextBytes(payload);
+            if(rnd.nextInt(3) != 0) {
+                String[] csvLine = csvLines.get(rnd.nextInt(csvLines.size()));
+                for(int b = 0; b < csvLine.length - 1 && b < payload.length; b++) {
+                    if(!csvLine[b].equals(ApduPatternTrie.WILDCARD_BYTE))
+                        payload[b] = ByteUtils.hexString2Byte(csvLine[b]);
+                }
+            }
+            payloads[p] = payload;
+        }
+        return payloads;
+    }
+
+    private static void assertMatchesRowScan(List<String[]> csvLines, ApduPatternTrie patternTrie, byte[][] payloads) {
+        int numMatched = 0;
+        for(byte[] payload : payloads) {
+            List<String> expected = ApduClassifier.matchDetailedInstructions(payload, csvLines);
+            assertEquals(expected, patternTrie.findMatchingLabels(payload));
+            if(!expected.isEmpty())
+                numMatched++;
+        }
+        assertTrue(numMatched > payloads.length / 4);
+    }
+
+    @Test
+    public void trie_matchesRowScan() throws Exception {
+        List<String[]> detailedIns = ApduTestTables.loadTable("detailed_common_ins");
+        ApduPatternTrie patternTrie = new ApduPatternTrie(detailedIns);
+        assertEquals(detailedIns.size(), patternTrie.getRuleCount());
+        assertMatchesRowScan(detailedIns, patternTrie, generatePayloads(detailedIns, NUM_PAYLOADS, new Random(4)));
+
+        List<String[]> vendorCatalog = generateCatalog(5000, new Random(6));
+        vendorCatalog.addAll(detailedIns);
+        assertMatchesRowScan(vendorCatalog, new ApduPatternTrie(vendorCatalog), generatePayloads(vendorCatalog, NUM_PAYLOADS, new Random(7)));
+
+        List<String[]> edgeCases = new ArrayList<String[]>();
+        edgeCases.add(new String[] { "ANY_PAYLOAD" });
+        edgeCases.add(new String[] { "xx", "xx", "AT_LEAST_TWO_BYTES" });
+        edgeCases.add(new String[] { "90", "xx", "00", "WILDCARD_IN_THE_MIDDLE" });
+        edgeCases.add(new String[] { "90", "AF", "ADDITIONAL_FRAME" });
+        ApduPatternTrie edgeTrie = new ApduPatternTrie(edgeCases);
+        assertEquals(1, edgeTrie.findMatchingRows(new byte[0]).length);
+        assertArrayEquals(new int[] { 0, 1, 3 }, edgeTrie.findMatchingRows(new byte[] { (byte) 0x90, (byte) 0xaf }));
+        assertArrayEquals(new int[] { 0, 1, 2, 3 }, edgeTrie.findMatchingRows(new byte[] { (byte) 0x90, (byte) 0xaf, 0x00 }));
+    }
+
+}
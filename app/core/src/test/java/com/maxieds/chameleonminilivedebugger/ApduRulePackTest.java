@@ -0,0 +1,129 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The APDU tables shipped in res/raw compile into a rule pack without errors, the pack reads
+ * back as compiled and classifies like matching every row of its tables, the CSV fallback
+ * classifies like the pack, and malformed rows and corrupted packs are rejected.
+ */
+public class ApduRulePackTest {
+
+    private static Map<String, List<String[]>> compileTables(List<String> errors) throws IOException {
+        Map<String, List<String[]>> tables = new LinkedHashMap<String, List<String[]>>();
+        for(String tableName : ApduRulePack.TABLE_NAMES)
+            tables.put(tableName, ApduRulePack.compileTable(tableName, ApduTestTables.openTable(tableName), errors));
+        return tables;
+    }
+
+    private static byte[] writePack(Map<String, List<String[]>> tables) throws IOException {
+        ByteArrayOutputStream packBuf = new ByteArrayOutputStream();
+        ApduRulePack.writePack(packBuf, tables);
+        return packBuf.toByteArray();
+    }
+
+    private static List<String> compileErrors(String tableName, String csvText) throws IOException {
+        List<String> errors = new ArrayList<String>();
+        ApduRulePack.compileTable(tableName, new ByteArrayInputStream(csvText.getBytes("UTF-8")), errors);
+        return errors;
+    }
+
+    @Test
+    public void rulePack_roundTrip() throws Exception {
+        List<String> errors = new ArrayList<String>();
+        Map<String, List<String[]>> tables = compileTables(errors);
+        assertEquals(new ArrayList<String>(), errors);
+        ApduRulePack rulePack = ApduRulePack.readPack(new ByteArrayInputStream(writePack(tables)));
+        for(String tableName : ApduRulePack.TABLE_NAMES) {
+            List<String[]> compiledRows = tables.get(tableName), packRows = rulePack.getTable(tableName);
+            assertEquals(compiledRows.size(), packRows.size());
+            for(int row = 0; row < compiledRows.size(); row++) {
+                assertEquals(compiledRows.get(row).length, packRows.get(row).length);
+                for(int c = 0; c < compiledRows.get(row).length - 1; c++)
+                    assertEquals(compiledRows.get(row)[c].toUpperCase(Locale.ENGLISH), packRows.get(row)[c].toUpperCase(Locale.ENGLISH));
+                assertEquals(compiledRows.get(row)[compiledRows.get(row).length - 1], packRows.get(row)[packRows.get(row).length - 1]);
+            }
+        }
+
+        // the labels keep their commas, and the nibble wildcards are expanded:
+        List<String[]> statusCodes = rulePack.getTable(ApduRulePack.STATUS_CODES);
+        ApduTableClassifier apduClassifier = rulePack.newClassifier();
+        assertTrue(apduClassifier.matchStatusCodes(new byte[] { (byte) 0x90, 0x63, (byte) 0xc1 }).contains("WARNING: Verify fail, 1 try left."));
+        assertEquals(apduClassifier.matchStatusCodes(new byte[] { 0x63, (byte) 0xc7 }),
+                     apduClassifier.matchStatusCodes(new byte[] { 0x63, (byte) 0xcc }));
+        assertFalse(apduClassifier.matchStatusCodes(new byte[] { 0x62, (byte) 0xc3 }).isEmpty());
+
+        Random rnd = new Random(2);
+        for(int p = 0; p < 20000; p++) {
+            byte[] payload = new byte[rnd.nextInt(12)];
+            rnd.nextBytes(payload);
+            if(payload.length >= 2 && rnd.nextBoolean()) {
+                String[] statusRow = statusCodes.get(rnd.nextInt(statusCodes.size()));
+                payload[payload.length - 2] = ByteUtils.hexString2Byte(statusRow[0]);
+                payload[payload.length - 1] = ByteUtils.hexString2Byte(statusRow[1]);
+            }
+            assertEquals(ApduClassifier.classifyApdu(payload, rulePack.getTable(ApduRulePack.DESFIRE_INS), rulePack.getTable(ApduRulePack.DESFIRE_STATUS),
+                                                     rulePack.getTable(ApduRulePack.COMMON_INS), statusCodes, rulePack.getTable(ApduRulePack.DETAILED_INS)),
+                         apduClassifier.classifyPayload(payload));
+        }
+    }
+
+    @Test
+    public void rulePack_malformedRowsAreRejected() throws Exception {
+        assertEquals(0, compileErrors(ApduRulePack.DETAILED_INS, "50,00,MFULC_HALT\n\n80,0C,00,xx,CHECK_FLASH\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.DETAILED_INS, "00,10,00 80,CREATE_TABLE\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.DETAILED_INS, "MFULC_HALT\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.COMMON_INS, "0a\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.COMMON_INS, "xx,ANY_INS\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.DESFIRE_INS, "90,5G,SET_CONFIGURATION (DESFIRE)\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.DESFIRE_INS, "90,CX,NIBBLE_WILDCARD_IN_INS\n").size());
+        assertEquals(1, compileErrors(ApduRulePack.STATUS_CODES, "63,C0, \n").size());
+        List<String> errors = compileErrors(ApduRulePack.STATUS_CODES, "90,00,OK\n6Z,00,BAD\n");
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).startsWith(ApduRulePack.STATUS_CODES + ":2: "));
+
+        byte[] packBytes = writePack(compileTables(new ArrayList<String>()));
+        packBytes[packBytes.length / 2] ^= 0x21;
+        try {
+            ApduRulePack.readPack(packBytes);
+            fail("The corrupted rule pack was not detected.");
+        } catch(IOException ioe) {}
+    }
+
+    @Test
+    public void rulePack_csvFallbackMatchesPack() throws Exception {
+        ApduRulePack rulePack = ApduRulePack.readPack(writePack(compileTables(new ArrayList<String>())));
+        ApduTableClassifier packClassifier = rulePack.newClassifier(), csvClassifier = ApduTestTables.loadClassifier();
+        byte[][] payloads = {
+                { 0x63, (byte) 0xc3 }, { (byte) 0x90, 0x63, (byte) 0xc1 }, { (byte) 0x90, 0x00 }, { 0x50, 0x00 },
+                { (byte) 0x90, 0x60, 0x00, 0x00, 0x00 }, { 0x00, (byte) 0xa4, 0x04, 0x00 },
+        };
+        for(byte[] payload : payloads)
+            assertEquals(packClassifier.classifyPayload(payload), csvClassifier.classifyPayload(payload));
+
+        InputStream[] csvStreams = new InputStream[ApduRulePack.TABLE_NAMES.length];
+        for(int t = 0; t < csvStreams.length; t++)
+            csvStreams[t] = new ByteArrayInputStream(new byte[0]);
+        csvStreams[3] = new ByteArrayInputStream("90,00,OK\n6Z,00,BAD\n".getBytes("UTF-8"));
+        try {
+            ApduRulePack.compileTables(csvStreams);
+            fail("The malformed status code row was not rejected.");
+        } catch(IOException ioe) {
+            assertTrue(ioe.getMessage().contains(ApduRulePack.STATUS_CODES + ":2: "));
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the APDU tables compiled into lookup tables by the ApduTableClassifier give the
+ * same classifications (and per-table matches) as matching the payloads against every row of the
+ * parsed tables (ApduClassifier), for random payloads and payloads built from the table rows.
+ * The per-frame cost of both is compared by ApduClassifierBenchmark in the benchmarks module.
+ */
+public class ApduTableClassifierTest {
+
+    private static final int NUM_PAYLOADS = 50000;
+
+    private final List<String[]> desfireIns, desfireStatus, commonIns, statusCodes, detailedIns;
+
+    public ApduTableClassifierTest() throws IOException {
+        desfireIns = ApduTestTables.loadTable("desfire_ins");
+        desfireStatus = ApduTestTables.loadTable("desfire_status");
+        commonIns = ApduTestTables.loadTable("common_ins");
+        statusCodes = ApduTestTables.loadTable("response_codes_status");
+        detailedIns = ApduTestTables.loadTable("detailed_common_ins");
+    }
+
+    /**
+     * Payloads starting with the bytes of a table row (wildcards filled in randomly) or ending
+     * with a status word from the tables, mixed with random bytes of all the short lengths.
+     */
+    private byte[][] generatePayloads(int numPayloads, Random rnd) {
+        List<List<String[]>> prefixTables = new ArrayList<List<String[]>>();
+        prefixTables.add(desfireIns);
+        prefixTables.add(commonIns);
+        prefixTables.add(detailedIns);
+        byte[][] payloads = new byte[numPayloads][];
+        for(int p = 0; p < numPayloads; p++) {
+            byte[] payload = new byte[rnd.nextInt(p % 5 == 0 ? 4 : 20)];
+            rnd.nextBytes(payload);
+            int kind = rnd.nextInt(4);
+            if(kind == 0) {
+                List<String[]> table = prefixTables.get(rnd.nextInt(prefixTables.size()));
+                String[] csvLine = table.get(rnd.nextInt(table.size()));
+                for(int b = 0; b < csvLine.length - 1 && b < payload.length; b++) {
+                    if(!csvLine[b].equals("xx"))
+                        payload[b] = ByteUtils.hexString2Byte(csvLine[b]);
+                }
+            }
+            else if(kind == 1 && payload.length >= 2) {
+                List<String[]> table = rnd.nextBoolean() ? desfireStatus : statusCodes;
+                String[] csvLine = table.get(rnd.nextInt(table.size()));
+                payload[payload.length - 2] = ByteUtils.hexString2Byte(csvLine[0]);
+                payload[payload.length - 1] = ByteUtils.hexString2Byte(csvLine[1]);
+            }
+            payloads[p] = payload;
+        }
+        return payloads;
+    }
+
+    @Test
+    public void classifier_matchesRowScan() throws Exception {
+        ApduTableClassifier apduClassifier = new ApduTableClassifier(desfireIns, desfireStatus, commonIns, statusCodes, detailedIns);
+        byte[][] payloads = generatePayloads(NUM_PAYLOADS, new Random(21));
+        int numRecognized = 0;
+        for(byte[] payload : payloads) {
+            String expected = ApduClassifier.classifyApdu(payload, desfireIns, desfireStatus, commonIns, statusCodes, detailedIns);
+            assertEquals(expected, apduClassifier.classifyPayload(payload));
+            assertEquals(ApduClassifier.matchInstructionPairs(payload, desfireIns), apduClassifier.matchDesfireInstructions(payload));
+            assertEquals(ApduClassifier.matchStatusWords(payload, desfireStatus), apduClassifier.matchDesfireStatusCodes(payload));
+            assertEquals(ApduClassifier.matchCommonInstructions(payload, commonIns), apduClassifier.matchCommonInstructions(payload));
+            assertEquals(ApduClassifier.matchStatusWords(payload, statusCodes), apduClassifier.matchStatusCodes(payload));
+            assertEquals(ApduClassifier.matchDetailedInstructions(payload, detailedIns), apduClassifier.matchDetailedInstructions(payload));
+            if(!expected.equals(PayloadClassifier.NONE_RECOGNIZED))
+                numRecognized++;
+        }
+        assertTrue(numRecognized > NUM_PAYLOADS / 4);
+        assertEquals(PayloadClassifier.NONE_RECOGNIZED, ApduTableClassifier.newEmptyClassifier().classifyPayload(new byte[] { 0x50, 0x00 }));
+    }
+
+    /**
+     * Repeats a smaller set of payloads (with their middle data bytes changed, which the cache
+     * key leaves out) so that the classifications come from the cache.
+     */
+    @Test
+    public void classifier_cachedLabelsMatchRowScan() throws Exception {
+        ApduTableClassifier apduClassifier = new ApduTableClassifier(desfireIns, desfireStatus, commonIns, statusCodes, detailedIns);
+        Random rnd = new Random(22);
+        byte[][] payloads = generatePayloads(ApduTableClassifier.CLASSIFICATION_CACHE_SIZE / 2, rnd);
+        for(int lookup = 0; lookup < NUM_PAYLOADS; lookup++) {
+            byte[] payload = payloads[rnd.nextInt(payloads.length)].clone();
+            if(payload.length > 8)
+                payload[4 + rnd.nextInt(payload.length - 8)] = (byte) rnd.nextInt(256);
+            String expected = ApduClassifier.classifyApdu(payload, desfireIns, desfireStatus, commonIns, statusCodes, detailedIns);
+            assertEquals(expected, apduClassifier.classifyPayload(payload));
+            assertEquals(expected, apduClassifier.classifyPayloadUncached(payload));
+        }
+        assertEquals(NUM_PAYLOADS, apduClassifier.getCacheHits() + apduClassifier.getCacheMisses());
+        assertTrue(apduClassifier.getCacheHits() > NUM_PAYLOADS / 2);
+        assertTrue(apduClassifier.getCacheEntries() <= ApduTableClassifier.CLASSIFICATION_CACHE_SIZE);
+        apduClassifier.clearClassificationCache();
+        assertEquals(0, apduClassifier.getCacheEntries());
+        long numHits = apduClassifier.getCacheHits();
+        byte[] selectFrame = new byte[] { (byte) 0x93, 0x20 };
+        apduClassifier.classifyPayload(selectFrame);
+        assertEquals(numHits, apduClassifier.getCacheHits());
+        apduClassifier.classifyPayload(selectFrame);
+        assertEquals(numHits + 1, apduClassifier.getCacheHits());
+    }
+
+}
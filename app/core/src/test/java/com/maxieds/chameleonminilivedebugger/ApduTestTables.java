@@ -0,0 +1,47 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Loads the APDU tables for the local unit tests (the app's res/raw directory is on the test
+ * classpath, see app/core/build.gradle).
+ */
+public class ApduTestTables {
+
+    /**
+     * Opens the raw APDU table resource.
+     * @param tableName
+     * @return InputStream
+     * @throws IOException if the resource is not on the classpath
+     */
+    public static InputStream openTable(String tableName) throws IOException {
+        InputStream tableStream = ApduTestTables.class.getResourceAsStream("/" + tableName);
+        if(tableStream == null)
+            throw new IOException("Missing APDU table resource: " + tableName);
+        return tableStream;
+    }
+
+    /**
+     * Loads the parsed APDU table.
+     * @param tableName
+     * @return List<String[]>
+     * @throws IOException
+     */
+    public static List<String[]> loadTable(String tableName) throws IOException {
+        return ByteUtils.readCSVFile(openTable(tableName));
+    }
+
+    /**
+     * Loads the APDU classifier used by the app (with all of the tables).
+     * @return ApduTableClassifier
+     * @throws IOException
+     */
+    public static ApduTableClassifier loadClassifier() throws IOException {
+        return ApduTableClassifier.loadFromStreams(openTable("desfire_ins"), openTable("desfire_status"),
+                                                   openTable("common_ins"), openTable("response_codes_status"),
+                                                   openTable("detailed_common_ins"));
+    }
+
+}
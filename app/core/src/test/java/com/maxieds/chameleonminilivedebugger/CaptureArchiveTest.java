@@ -0,0 +1,241 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the capture archive written by the ArchiveLogSerializer reads back as exported,
+ * that random access, range exports and searches only read the blocks they need, and that
+ * corrupted or truncated archives are detected. The export and lookup costs are measured by
+ * LogExportBenchmark and CaptureArchiveBenchmark in the benchmarks module.
+ */
+public class CaptureArchiveTest {
+
+    private static final int NUM_FRAMES = 20000;
+    private static final int[] SNIFF_PAYLOAD_SIZES = { 1, 2, 2, 5, 7, 9, 16, 18 };
+    private static final byte[][] SNIFF_FRAMES = {
+            { 0x26 }, { 0x04, 0x00 }, { (byte) 0x93, 0x20 }, { 0x50, 0x00, 0x57, (byte) 0xcd },
+            { 0x30, 0x04, 0x26, (byte) 0xee }, { 0x02, (byte) 0x90, 0x00 },
+    };
+
+    private static final LogDecoder LOG_DECODER = new LiveLogDecoder(new PayloadClassifier() {
+        @Override
+        public String classifyPayload(byte[] payloadBytes) {
+            return "";
+        }
+    });
+
+    /**
+     * Collects the records exported from an archive.
+     */
+    private static class CollectingSerializer implements LogSerializer {
+        final List<Integer> recordIds = new ArrayList<Integer>();
+        final List<DecodedLogFrame> logFrames = new ArrayList<DecodedLogFrame>();
+        final List<String> metadataDescs = new ArrayList<String>();
+        public void writeHeader(OutputStream fout) {}
+        public void writeLogRecord(OutputStream fout, int recordID, DecodedLogFrame logFrame) {
+            recordIds.add(recordID);
+            logFrames.add(logFrame);
+        }
+        public void writeMetadataRecord(OutputStream fout, String metadataDesc) {
+            metadataDescs.add(metadataDesc);
+        }
+        public void writeFooter(OutputStream fout) {}
+    }
+
+    private static byte[] nextPayload(Random rnd) {
+        if(rnd.nextInt(4) != 0)
+            return SNIFF_FRAMES[rnd.nextInt(SNIFF_FRAMES.length)].clone();
+        byte[] payload = new byte[SNIFF_PAYLOAD_SIZES[rnd.nextInt(SNIFF_PAYLOAD_SIZES.length)]];
+        rnd.nextBytes(payload);
+        return payload;
+    }
+
+    /**
+     * Frames have the record ids 1..numFrames with the log code 0x40 + (id % 4), except for a
+     * single 0xff frame (record id rareRecordId); a metadata record follows every 1000th frame.
+     */
+    private static List<DecodedLogFrame> writeArchive(File archiveFile, ArchiveLogSerializer serializer,
+                                                      int numFrames, int rareRecordId) throws IOException {
+        Random rnd = new Random(numFrames);
+        List<DecodedLogFrame> logFrames = new ArrayList<DecodedLogFrame>(numFrames);
+        FileOutputStream fout = new FileOutputStream(archiveFile);
+        try {
+            serializer.writeHeader(fout);
+            for(int recordId = 1; recordId <= numFrames; recordId++) {
+                int logCode = recordId == rareRecordId ? 0xff : 0x40 + recordId % 4;
+                DecodedLogFrame logFrame = LOG_DECODER.decodePayload(logCode, recordId % 1000, nextPayload(rnd));
+                logFrames.add(logFrame);
+                serializer.writeLogRecord(fout, recordId, logFrame);
+                if(recordId % 1000 == 0)
+                    serializer.writeMetadataRecord(fout, "STATUS \u00e9 " + recordId);
+            }
+            serializer.writeFooter(fout);
+        } finally {
+            fout.close();
+        }
+        return logFrames;
+    }
+
+    private static File newArchiveFile() throws IOException {
+        File archiveFile = File.createTempFile("capture", ".cmla");
+        archiveFile.deleteOnExit();
+        return archiveFile;
+    }
+
+    @Test
+    public void archive_roundTripAndRandomAccess() throws Exception {
+        File archiveFile = newArchiveFile();
+        List<DecodedLogFrame> logFrames = writeArchive(archiveFile, new ArchiveLogSerializer(256, 64 * 1024, 6), 10000, 5555);
+        CaptureArchive archive = new CaptureArchive(archiveFile);
+        try {
+            assertEquals(10000 + 10, archive.getRecordCount());
+            assertTrue(archive.getBlockCount() > 30);
+
+            CollectingSerializer collector = new CollectingSerializer();
+            assertEquals(10010, archive.exportRange(1, 10000, collector, new ByteArrayOutputStream(), LOG_DECODER));
+            assertEquals(10000, collector.logFrames.size());
+            assertEquals(10, collector.metadataDescs.size());
+            assertEquals("STATUS \u00e9 1000", collector.metadataDescs.get(0));
+            for(int f = 0; f < logFrames.size(); f++) {
+                assertEquals(f + 1, (int) collector.recordIds.get(f));
+                assertEquals(logFrames.get(f).getLogCode(), collector.logFrames.get(f).getLogCode());
+                assertEquals(logFrames.get(f).getDiffTimeMillis(), collector.logFrames.get(f).getDiffTimeMillis());
+                assertArrayEquals(logFrames.get(f).getPayloadData(), collector.logFrames.get(f).getPayloadData());
+            }
+
+            CaptureArchive seekArchive = new CaptureArchive(archiveFile);
+            CaptureArchive.ArchiveRecord record = seekArchive.getRecord(7321);
+            assertEquals(1, seekArchive.getBlocksRead());
+            assertEquals(7321, record.getRecordId());
+            assertArrayEquals(logFrames.get(7320).getPayloadData(), record.getPayload());
+            assertNull(seekArchive.getRecord(10001));
+            seekArchive.close();
+
+            // a range export only reads the blocks overlapping the range:
+            CaptureArchive rangeArchive = new CaptureArchive(archiveFile);
+            collector = new CollectingSerializer();
+            rangeArchive.exportRange(4000, 4300, collector, new ByteArrayOutputStream(), LOG_DECODER);
+            assertEquals(301, collector.logFrames.size());
+            assertEquals(4000, (int) collector.recordIds.get(0));
+            assertEquals(1, collector.metadataDescs.size());
+            assertTrue(rangeArchive.getBlocksRead() <= 3);
+            rangeArchive.close();
+
+            // the search skips the blocks without the log code:
+            CaptureArchive searchArchive = new CaptureArchive(archiveFile);
+            List<CaptureArchive.ArchiveRecord> matches = searchArchive.findRecords(0xff, null, 10);
+            assertEquals(1, matches.size());
+            assertEquals(5555, matches.get(0).getRecordId());
+            assertEquals(1, searchArchive.getBlocksRead());
+            matches = searchArchive.findRecords(0x41, new byte[] { 0x50, 0x00, 0x57 }, 5);
+            assertEquals(5, matches.size());
+            for(CaptureArchive.ArchiveRecord match : matches)
+                assertTrue(match.getRecordId() % 4 == 1 && ByteUtils.indexOf(match.getPayload(), new byte[] { 0x50, 0x00, 0x57 }) == 0);
+            searchArchive.close();
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void archive_corruptionIsDetected() throws Exception {
+        File archiveFile = newArchiveFile();
+        writeArchive(archiveFile, new ArchiveLogSerializer(128, 64 * 1024, 6), 2000, 0);
+        CaptureArchive archive = new CaptureArchive(archiveFile);
+        CaptureArchive.BlockHeader header = archive.getBlockHeader(3);
+        archive.close();
+
+        RandomAccessFile raFile = new RandomAccessFile(archiveFile, "rw");
+        long corruptOffset = header.getBlockOffset() + CaptureArchive.BLOCK_HEADER_SIZE + header.getCompressedLength() / 2;
+        raFile.seek(corruptOffset);
+        int corruptByte = raFile.read();
+        raFile.seek(corruptOffset);
+        raFile.write(corruptByte ^ 0x5a);
+        raFile.close();
+        archive = new CaptureArchive(archiveFile);
+        try {
+            assertNotNull(archive.getRecord(header.getFirstRecordId() - 1));
+            try {
+                archive.readBlock(3);
+                fail("The corrupted block was not detected.");
+            } catch(IOException ioe) {}
+        } finally {
+            archive.close();
+        }
+
+        // an archive without its trailer (e.g., the export was interrupted) is rejected:
+        raFile = new RandomAccessFile(archiveFile, "rw");
+        raFile.setLength(raFile.length() - 3);
+        raFile.close();
+        try {
+            new CaptureArchive(archiveFile);
+            fail("The truncated archive was not detected.");
+        } catch(IOException ioe) {}
+    }
+
+    @Test
+    public void archive_defaultBlocksAreCompressed() throws Exception {
+        File archiveFile = newArchiveFile();
+        ArchiveLogSerializer serializer = new ArchiveLogSerializer();
+        writeArchive(archiveFile, serializer, NUM_FRAMES, NUM_FRAMES / 2);
+        assertEquals(archiveFile.length(), serializer.getArchiveLength());
+        assertTrue(serializer.getCompressedBytes() < serializer.getRawBytes());
+
+        CaptureArchive archive = new CaptureArchive(archiveFile);
+        try {
+            assertEquals(serializer.getBlockCount(), archive.getBlockCount());
+            Random rnd = new Random(5);
+            for(int lookup = 0; lookup < 100; lookup++) {
+                int recordId = 1 + rnd.nextInt(NUM_FRAMES);
+                assertEquals(recordId, archive.getRecord(recordId).getRecordId());
+            }
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void archive_abortReleasesCompressor() throws Exception {
+        OutputStream failingOut = new OutputStream() {
+            private int numBytes = 0;
+            @Override
+            public void write(int b) throws IOException {
+                if(++numBytes > CaptureArchive.FILE_HEADER_SIZE)
+                    throw new IOException("No space left on device");
+            }
+        };
+        ArchiveLogSerializer serializer = new ArchiveLogSerializer(16, 64 * 1024, 6);
+        serializer.writeHeader(failingOut);
+        Random rnd = new Random(7);
+        boolean exportFailed = false;
+        for(int recordId = 1; recordId <= NUM_FRAMES && !exportFailed; recordId++) {
+            try {
+                serializer.writeLogRecord(failingOut, recordId, LOG_DECODER.decodePayload(0x40, 1, nextPayload(rnd)));
+            } catch(IOException ioe) {
+                exportFailed = true;
+            }
+        }
+        assertTrue(exportFailed);
+        serializer.abort();
+        serializer.abort();
+        for(Thread thread : Thread.getAllStackTraces().keySet()) {
+            if(thread.getName().equals("ArchiveLogSerializer")) {
+                thread.join(2000);
+                assertFalse(thread.isAlive());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,186 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * The host side of the serial protocol against the simulated Chameleon Mini: every LIVE log
+ * frame sent at a high rate is parsed by the frame reassembler, commands are answered with and
+ * without LIVE traffic on the line, and the XModem DOWNLOAD / UPLOAD transfers carry the card
+ * data intact. The rates and latencies are measured by the JMH SimulatorBenchmark.
+ */
+public class ChameleonDeviceSimulatorTest {
+
+    private static final int NUM_LIVE_FRAMES = 5000;
+    private static final int NUM_COMMANDS = 200;
+    private static final int RESPONSE_TIMEOUT = 2000;
+
+    private ChameleonDeviceSimulator simDevice;
+    private LogFrameReassembler frameReassembler;
+    private final ConcurrentLinkedQueue<ChameleonCommandResult> pendingCommands = new ConcurrentLinkedQueue<>();
+    private final AtomicLong numLogFrames = new AtomicLong(0);
+
+    @Before
+    public void setUp() {
+        simDevice = new ChameleonDeviceSimulator(0x5eedL);
+        simDevice.setResponseLatencyMicros(200);
+        frameReassembler = new LogFrameReassembler(new LogFrameReassembler.FrameListener() {
+            @Override
+            public void onLogFrame(byte[] frameData) {
+                numLogFrames.incrementAndGet();
+            }
+            @Override
+            public void onCommandResponse(byte[] respData) {
+                ChameleonCommandResult cmdResult = pendingCommands.poll();
+                if(cmdResult != null)
+                    cmdResult.complete(respData);
+            }
+        });
+        simDevice.read(new ChameleonSerialPort.ReadCallback() {
+            @Override
+            public void onReceivedData(byte[] data) {
+                frameReassembler.append(data);
+            }
+        });
+        simDevice.open();
+    }
+
+    @After
+    public void tearDown() {
+        simDevice.close();
+    }
+
+    private ChameleonCommandResult sendCommand(String cmd) {
+        ChameleonCommandResult cmdResult = new ChameleonCommandResult(cmd, false, null);
+        pendingCommands.add(cmdResult);
+        simDevice.write((cmd + "\n\r").getBytes());
+        return cmdResult;
+    }
+
+    @Test
+    public void simulator_answersStatusQueries() throws Exception {
+        ChameleonCommandResult cmdResult = sendCommand("CONFIG?");
+        assertTrue(cmdResult.await(RESPONSE_TIMEOUT));
+        assertEquals("101", cmdResult.getResponseCode().substring(0, 3));
+        assertEquals("ISO14443A_SNIFF", cmdResult.getResponse(""));
+        cmdResult = sendCommand("UID=04AABBCCDDEEFF");
+        assertTrue(cmdResult.await(RESPONSE_TIMEOUT));
+        cmdResult = sendCommand("UID?");
+        assertTrue(cmdResult.await(RESPONSE_TIMEOUT));
+        assertEquals("04AABBCCDDEEFF", cmdResult.getResponse(""));
+        cmdResult = sendCommand("NOT_A_COMMAND");
+        assertTrue(cmdResult.await(RESPONSE_TIMEOUT));
+        assertEquals("200", cmdResult.getResponseCode().substring(0, 3));
+    }
+
+    @Test
+    public void liveIngestion_allFramesParsed() throws Exception {
+        simDevice.setLiveBurstSize(32);
+        simDevice.setLiveFramesPerSecond(50000);
+        long deadline = System.currentTimeMillis() + RESPONSE_TIMEOUT;
+        while(simDevice.getLiveFrameCount() < NUM_LIVE_FRAMES && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertTrue(sendCommand("LOGMODE=OFF").await(RESPONSE_TIMEOUT));
+        long framesSent = simDevice.getLiveFrameCount();
+        assertTrue(framesSent >= NUM_LIVE_FRAMES);
+        assertEquals(0, frameReassembler.getDiscardedByteCount());
+        assertEquals(framesSent, frameReassembler.getLogFrameCount());
+    }
+
+    @Test
+    public void command_responsesUnderLiveLoad() throws Exception {
+        assertTrue(sendCommand("LOGMODE=OFF").await(RESPONSE_TIMEOUT));
+        sendSystickQueries();
+        assertTrue(sendCommand("LOGMODE=LIVE").await(RESPONSE_TIMEOUT));
+        simDevice.setLiveBurstSize(8);
+        simDevice.setLiveFramesPerSecond(5000);
+        sendSystickQueries();
+        assertTrue(numLogFrames.get() > 0);
+        assertEquals(0, frameReassembler.getDiscardedByteCount());
+    }
+
+    private void sendSystickQueries() {
+        for(int c = 0; c < NUM_COMMANDS; c++) {
+            ChameleonCommandResult cmdResult = sendCommand("SYSTICK?");
+            assertTrue(cmdResult.await(RESPONSE_TIMEOUT));
+            assertEquals("101", cmdResult.getResponseCode().substring(0, 3));
+            assertEquals(4, cmdResult.getResponse("").length());
+        }
+    }
+
+    @Test
+    public void xmodem_downloadAndUpload() throws Exception {
+        assertTrue(sendCommand("LOGMODE=OFF").await(RESPONSE_TIMEOUT));
+        simDevice.setResponseLatencyMicros(0);
+
+        // DOWNLOAD: the host NAKs to start and ACKs each intact frame:
+        final ByteArrayOutputStream downloadData = new ByteArrayOutputStream();
+        final CountDownLatch downloadDone = new CountDownLatch(1);
+        // assertions fail silently on the device thread, so the framing errors are checked below:
+        final AtomicReference<String> downloadError = new AtomicReference<String>();
+        simDevice.read(new ChameleonSerialPort.ReadCallback() {
+            private final ByteArrayOutputStream frameBuffer = new ByteArrayOutputStream();
+            private byte frameNumber = XModemFraming.FIRST_FRAME_NUMBER;
+            @Override
+            public void onReceivedData(byte[] data) {
+                if(frameBuffer.size() == 0 && data[0] == XModemFraming.BYTE_EOT) {
+                    simDevice.write(new byte[] { XModemFraming.BYTE_ACK });
+                    downloadDone.countDown();
+                    return;
+                }
+                else if(frameBuffer.size() == 0 && data[0] != XModemFraming.BYTE_SOH)
+                    return; // the 110 response
+                frameBuffer.write(data, 0, data.length);
+                if(frameBuffer.size() < XModemFraming.XMODEM_FRAME_SIZE)
+                    return;
+                byte[] frameData = frameBuffer.toByteArray();
+                frameBuffer.reset();
+                if(!XModemFraming.isValidFrame(frameData, 0, frameNumber++))
+                    downloadError.compareAndSet(null, "Invalid DOWNLOAD frame #" + (frameNumber - 1));
+                downloadData.write(frameData, 3, XModemFraming.XMODEM_BLOCK_SIZE);
+                simDevice.write(new byte[] { XModemFraming.BYTE_ACK });
+            }
+        });
+        simDevice.write("DOWNLOAD\r\n".getBytes());
+        simDevice.write(new byte[] { XModemFraming.BYTE_NAK });
+        assertTrue(downloadDone.await(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(downloadError.get());
+        assertArrayEquals(simDevice.getCardMemory(), downloadData.toByteArray());
+
+        // UPLOAD: the host sends the next frame on each ACK and EOT at the end:
+        final byte[] uploadData = new byte[ChameleonDeviceSimulator.DEFAULT_MEMORY_SIZE];
+        new java.util.Random(1).nextBytes(uploadData);
+        final CountDownLatch uploadDone = new CountDownLatch(1);
+        simDevice.read(new ChameleonSerialPort.ReadCallback() {
+            private int uploadOffset = -XModemFraming.XMODEM_BLOCK_SIZE;
+            private byte frameNumber = 0;
+            @Override
+            public void onReceivedData(byte[] data) {
+                if(data[0] == '1' && uploadOffset < 0 || data[0] == XModemFraming.BYTE_ACK) {
+                    uploadOffset += XModemFraming.XMODEM_BLOCK_SIZE;
+                    frameNumber++;
+                    if(uploadOffset > uploadData.length)
+                        uploadDone.countDown();
+                    else if(uploadOffset == uploadData.length)
+                        simDevice.write(new byte[] { XModemFraming.BYTE_EOT });
+                    else
+                        simDevice.write(XModemFraming.buildFrame(frameNumber, uploadData, uploadOffset, XModemFraming.XMODEM_BLOCK_SIZE));
+                }
+            }
+        });
+        simDevice.write("UPLOAD\r\n".getBytes());
+        assertTrue(uploadDone.await(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS));
+        assertArrayEquals(uploadData, simDevice.getUploadedData());
+    }
+
+}
@@ -0,0 +1,212 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The transactions reconstructed by the ISO 14443 session decoder from a scripted sniffing
+ * session (activation with a double size UID, RATS with a CID, APDUs with wait time extensions
+ * and chained blocks, presence check, DESELECT, HLTA and unanswered polling), and the number of
+ * sessions held open over a long capture of many cards.
+ */
+public class Iso14443SessionDecoderTest {
+
+    private static final int SNIFF_READER = LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger();
+    private static final int SNIFF_CARD = LogUtils.LogCode.LOG_INFO_CODEC_SNI_CARD_DATA.toInteger();
+    private static final int NUM_SESSIONS = 2000;
+
+    private static byte[] frame(int... frameBytes) {
+        byte[] frameData = new byte[frameBytes.length];
+        for(int b = 0; b < frameBytes.length; b++)
+            frameData[b] = (byte) frameBytes[b];
+        return frameData;
+    }
+
+    private static byte[] withCrc(int... frameBytes) {
+        byte[] frameData = new byte[frameBytes.length + 2];
+        System.arraycopy(frame(frameBytes), 0, frameData, 0, frameBytes.length);
+        int crc = Iso14443SessionDecoder.computeCrcA(frameData, 0, frameBytes.length);
+        frameData[frameBytes.length] = (byte) crc;
+        frameData[frameBytes.length + 1] = (byte) (crc >> 8);
+        return frameData;
+    }
+
+    private static class TransactionCollector implements Iso14443SessionDecoder.TransactionListener {
+        final List<TransactionRecord> transactions = new ArrayList<TransactionRecord>();
+        public void onTransaction(TransactionRecord transaction) {
+            transactions.add(transaction);
+        }
+    }
+
+    /**
+     * Feeds the frames of a card session: the activation with the CID (none if negative), the
+     * APDU exchanges and the DESELECT (unless the card is left activated).
+     */
+    private static void feedSession(Iso14443SessionDecoder sessionDecoder, int cid, byte[] uid, int apduRepeats, boolean deselect, Random rnd) {
+        sessionDecoder.consumeFrame(SNIFF_READER, 40, frame(0x52));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 0, frame(0x44, 0x00));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0x93, 0x20));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 0, frame(0x88, uid[0], uid[1], uid[2], 0x88 ^ uid[0] ^ uid[1] ^ uid[2]));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, withCrc(0x93, 0x70, 0x88, uid[0], uid[1], uid[2], 0x88 ^ uid[0] ^ uid[1] ^ uid[2]));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 0, withCrc(0x04));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, withCrc(0x95, 0x70, uid[3], uid[4], uid[5], uid[6], uid[3] ^ uid[4] ^ uid[5] ^ uid[6]));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 0, withCrc(0x20));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, withCrc(0xe0, 0x80 | Math.max(0, cid)));
+        if(cid >= 0)
+            sessionDecoder.consumeFrame(SNIFF_CARD, 1, withCrc(0x06, 0x77, 0x77, 0x81, 0x02, 0x80));
+        else
+            sessionDecoder.consumeFrame(SNIFF_CARD, 1, withCrc(0x05, 0x78, 0x77, 0x81, 0x00));
+        int cidPcb = cid >= 0 ? 0x08 : 0x00;
+        for(int repeat = 0; repeat < apduRepeats; repeat++) {
+            int blockNumber = repeat & 0x01;
+            byte[] command = cid >= 0 ? withCrc(0x02 | cidPcb | blockNumber, cid, 0x90, 0x6a, 0x00, 0x00, 0x00) :
+                                        withCrc(0x02 | blockNumber, 0x90, 0x6a, 0x00, 0x00, 0x00);
+            sessionDecoder.consumeFrame(SNIFF_READER, 2, command);
+            byte[] response = new byte[cid >= 0 ? 5 + rnd.nextInt(20) : 4 + rnd.nextInt(20)];
+            rnd.nextBytes(response);
+            response[0] = (byte) (0x02 | cidPcb | blockNumber);
+            if(cid >= 0)
+                response[1] = (byte) cid;
+            response[response.length - 2] = (byte) 0x91;
+            response[response.length - 1] = 0x00;
+            int crc = Iso14443SessionDecoder.computeCrcA(response, 0, response.length);
+            byte[] responseWithCrc = new byte[response.length + 2];
+            System.arraycopy(response, 0, responseWithCrc, 0, response.length);
+            responseWithCrc[response.length] = (byte) crc;
+            responseWithCrc[response.length + 1] = (byte) (crc >> 8);
+            sessionDecoder.consumeFrame(SNIFF_CARD, 3, responseWithCrc);
+        }
+        if(deselect) {
+            sessionDecoder.consumeFrame(SNIFF_READER, 1, cid >= 0 ? withCrc(0xca, cid) : withCrc(0xc2));
+            sessionDecoder.consumeFrame(SNIFF_CARD, 0, cid >= 0 ? withCrc(0xca, cid) : withCrc(0xc2));
+        }
+    }
+
+    @Test
+    public void sessionDecoder_scriptedSession() throws Exception {
+        assertEquals(0xcd57, Iso14443SessionDecoder.computeCrcA(frame(0x50, 0x00), 0, 2));
+        assertEquals(0xa5bc, Iso14443SessionDecoder.computeCrcA(frame(0xe0, 0x50), 0, 2));
+
+        TransactionCollector collector = new TransactionCollector();
+        Iso14443SessionDecoder sessionDecoder = new Iso14443SessionDecoder(collector);
+        sessionDecoder.consumeFrame(SNIFF_READER, 5, frame(0x26));   // nothing in the field yet
+        feedSession(sessionDecoder, 1, frame(0x04, 0xa1, 0xb2, 0xc3, 0xd4, 0xe5, 0x80), 2, true, new Random(1));
+        List<TransactionRecord> transactions = collector.transactions;
+        assertEquals(9, transactions.size());
+        TransactionRecord.TransactionType[] expectedTypes = {
+                TransactionRecord.TransactionType.WAKEUP, TransactionRecord.TransactionType.WAKEUP,
+                TransactionRecord.TransactionType.ANTICOLLISION, TransactionRecord.TransactionType.SELECT,
+                TransactionRecord.TransactionType.SELECT, TransactionRecord.TransactionType.RATS,
+                TransactionRecord.TransactionType.APDU, TransactionRecord.TransactionType.APDU,
+                TransactionRecord.TransactionType.DESELECT,
+        };
+        for(int t = 0; t < expectedTypes.length; t++)
+            assertEquals(expectedTypes[t], transactions.get(t).getType());
+        assertFalse(transactions.get(0).hasResponse());
+        assertEquals(TransactionRecord.NONE, transactions.get(0).getSessionId());
+        long sessionId = transactions.get(1).getSessionId();
+        assertEquals(0x44, transactions.get(1).getResponseCode());
+        assertEquals("04A1B2C3D4E580", transactions.get(4).getSessionUid());
+        assertEquals(0x20, transactions.get(4).getResponseCode());
+        assertEquals(7, transactions.get(4).getCommandLength());
+        TransactionRecord selectApdu = transactions.get(6);
+        assertEquals(sessionId, selectApdu.getSessionId());
+        assertEquals(1, selectApdu.getSessionCid());
+        assertEquals(0x90, selectApdu.getApduCla());
+        assertEquals(0x6a, selectApdu.getApduIns());
+        assertEquals(0x9100, selectApdu.getStatusWord());
+        assertEquals(3, selectApdu.getLatencyMs());
+        assertTrue(selectApdu.isComplete());
+        assertEquals(sessionId, transactions.get(8).getSessionId());
+        assertTrue(transactions.get(8).isComplete());
+        assertEquals(0, sessionDecoder.getOpenSessions());
+
+        // chaining, wait time extensions and a presence check without a CID (frames without the CRC):
+        collector.transactions.clear();
+        sessionDecoder.consumeFrame(SNIFF_READER, 10, frame(0x26));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 0, frame(0x04, 0x00));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0x93, 0x70, 0x11, 0x22, 0x33, 0x44, 0x44));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 0, frame(0x20));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0xe0, 0x80));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 1, frame(0x05, 0x78, 0x80, 0x70, 0x00));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0x12, 0x00, 0xd6, 0x00, 0x00, 0x10, 0x01, 0x02));   // chained
+        sessionDecoder.consumeFrame(SNIFF_CARD, 1, frame(0xa2));
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0x03, 0x03, 0x04, 0x05));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 4, frame(0xf2, 0x01));   // WTX
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0xf2, 0x01));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 30, frame(0x13, 0xaa, 0xbb));  // chained response
+        sessionDecoder.consumeFrame(SNIFF_READER, 1, frame(0xa2));
+        sessionDecoder.consumeFrame(SNIFF_CARD, 2, frame(0x02, 0xcc, 0x90, 0x00));
+        sessionDecoder.consumeFrame(SNIFF_READER, 50, frame(0xb3));   // presence check
+        sessionDecoder.consumeFrame(SNIFF_CARD, 1, frame(0xa3));
+        sessionDecoder.consumeFrame(SNIFF_READER, 5, withCrc(0x50, 0x00));
+        assertEquals(0, sessionDecoder.getOpenSessions());   // the card is no longer addressed after the HLTA
+        sessionDecoder.flush();
+        transactions = collector.transactions;
+        assertEquals(6, transactions.size());
+        assertEquals("11223344", transactions.get(1).getSessionUid());
+        assertEquals(Iso14443SessionDecoder.NO_CID, transactions.get(2).getSessionCid());
+        TransactionRecord updateBinary = transactions.get(3);
+        assertEquals(TransactionRecord.TransactionType.APDU, updateBinary.getType());
+        assertEquals(0xd6, updateBinary.getApduIns());
+        assertEquals(4, updateBinary.getReaderFrames());
+        assertEquals(4, updateBinary.getCardFrames());
+        assertEquals(10, updateBinary.getCommandLength());
+        assertEquals(5, updateBinary.getResponseLength());
+        assertEquals(0x9000, updateBinary.getStatusWord());
+        assertEquals(1, updateBinary.getWaitExtensions());
+        assertEquals(4, updateBinary.getLatencyMs());
+        assertEquals(40, updateBinary.getDurationMs());
+        assertEquals(TransactionRecord.TransactionType.PRESENCE_CHECK, transactions.get(4).getType());
+        assertEquals(0xa3, transactions.get(4).getResponseCode());
+        assertEquals(TransactionRecord.TransactionType.HALT, transactions.get(5).getType());
+        assertTrue(transactions.get(5).isComplete());
+
+        // a capture starting in the middle of an ISO 14443-4 session, then the field is reset:
+        collector.transactions.clear();
+        Iso14443SessionDecoder midSessionDecoder = new Iso14443SessionDecoder(collector);
+        midSessionDecoder.consumeFrame(LogUtils.LogCode.LOG_INFO_CODEC_RX_DATA.toInteger(), 0, withCrc(0x0b, 0x02, 0x00, 0xb0, 0x00, 0x00, 0x04));
+        midSessionDecoder.consumeFrame(LogUtils.LogCode.LOG_INFO_CODEC_TX_DATA.toInteger(), 2, withCrc(0x0b, 0x02, 0x01, 0x02, 0x03, 0x04, 0x90, 0x00));
+        assertEquals(1, midSessionDecoder.getOpenSessions());
+        midSessionDecoder.consumeFrame(LogUtils.LogCode.LOG_INFO_RESET_APP.toInteger(), 1, new byte[0]);
+        assertEquals(0, midSessionDecoder.getOpenSessions());
+        assertEquals(1, collector.transactions.size());
+        assertEquals(2, collector.transactions.get(0).getSessionCid());
+        assertEquals(0x9000, collector.transactions.get(0).getStatusWord());
+        assertEquals(2, collector.transactions.get(0).getLatencyMs());
+    }
+
+    @Test
+    public void sessionDecoder_longCaptureKeepsSessionsBounded() throws Exception {
+        final long[] transactionCount = new long[1];
+        Iso14443SessionDecoder sessionDecoder = new Iso14443SessionDecoder(new Iso14443SessionDecoder.TransactionListener() {
+            public void onTransaction(TransactionRecord transaction) {
+                transactionCount[0]++;
+            }
+        });
+        Random rnd = new Random(7);
+        int maxOpenSessions = 0;
+        byte[] uid = new byte[7];
+        for(int session = 0; session < NUM_SESSIONS; session++) {
+            rnd.nextBytes(uid);
+            // a few cards stay activated with their CIDs, the others are deselected:
+            feedSession(sessionDecoder, session % 4 == 0 ? -1 : rnd.nextInt(Iso14443SessionDecoder.MAX_CID + 1), uid, 1 + rnd.nextInt(8), session % 3 != 0, rnd);
+            if(session % 16 == 0) {
+                byte[] noise = new byte[1 + rnd.nextInt(16)];
+                rnd.nextBytes(noise);
+                sessionDecoder.consumeFrame(rnd.nextBoolean() ? SNIFF_READER : SNIFF_CARD, 1, noise);
+            }
+            maxOpenSessions = Math.max(maxOpenSessions, sessionDecoder.getOpenSessions());
+        }
+        sessionDecoder.flush();
+        assertEquals(transactionCount[0], sessionDecoder.getTransactions());
+        assertTrue(sessionDecoder.getTransactions(TransactionRecord.TransactionType.APDU) >= NUM_SESSIONS);
+        assertTrue(maxOpenSessions <= Iso14443SessionDecoder.MAX_CID + 2);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the LogFrameReassembler carves the serial data into the same LIVE log frames and
+ * command responses regardless of how the USB reads split or coalesce them, and that reads
+ * longer than the ring buffer keep their tail.
+ */
+public class LogFrameReassemblerTest {
+
+    private static final int BUFFER_SIZE = 1024;
+    private static final byte FILLER_BYTE = 0x7e; // neither a log code, a digit nor a line ending
+
+    private final List<byte[]> logFrames = new ArrayList<byte[]>();
+    private final List<String> cmdResponses = new ArrayList<String>();
+    private LogFrameReassembler frameReassembler;
+
+    @Before
+    public void setUp() {
+        logFrames.clear();
+        cmdResponses.clear();
+        frameReassembler = new LogFrameReassembler(BUFFER_SIZE, new LogFrameReassembler.FrameListener() {
+            @Override
+            public void onLogFrame(byte[] frameData) {
+                logFrames.add(frameData);
+            }
+            @Override
+            public void onCommandResponse(byte[] respData) {
+                cmdResponses.add(new String(respData).trim()); // late line endings are skipped separately
+            }
+        });
+    }
+
+    private static byte[] logFrame(int logCode, int timestamp, int... payload) {
+        byte[] frameData = new byte[LogFrameReassembler.LOG_HEADER_SIZE + payload.length];
+        frameData[0] = (byte) logCode;
+        frameData[1] = (byte) payload.length;
+        frameData[2] = (byte) (timestamp >> 8);
+        frameData[3] = (byte) timestamp;
+        for(int b = 0; b < payload.length; b++)
+            frameData[LogFrameReassembler.LOG_HEADER_SIZE + b] = (byte) payload[b];
+        return frameData;
+    }
+
+    private static byte[] concat(byte[]... chunks) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        for(byte[] chunk : chunks)
+            byteStream.write(chunk, 0, chunk.length);
+        return byteStream.toByteArray();
+    }
+
+    @Test
+    public void reassembler_frameSplitAcrossReads() {
+        byte[] frameData = logFrame(0x44, 0x1234, 0x93, 0x70, 0x01, 0x02, 0x03, 0x04, 0x04);
+        frameReassembler.append(frameData, 0, 2);
+        frameReassembler.append(frameData, 2, 3);
+        assertEquals(0, logFrames.size());
+        assertEquals(5, frameReassembler.getBufferedByteCount());
+        frameReassembler.append(frameData, 5, frameData.length - 5);
+        assertEquals(1, logFrames.size());
+        assertArrayEquals(frameData, logFrames.get(0));
+        assertEquals(0, frameReassembler.getBufferedByteCount());
+
+        // a response split in the middle of its status line and before the text line:
+        byte[] respData = "101:OK WITH TEXT\r\nISO14443A_SNIFF\r\n".getBytes();
+        frameReassembler.append(respData, 0, 7);
+        frameReassembler.append(respData, 7, 11);
+        assertEquals(0, cmdResponses.size());
+        frameReassembler.append(respData, 18, respData.length - 18);
+        assertEquals(Arrays.asList("101:OK WITH TEXT\r\nISO14443A_SNIFF"), cmdResponses);
+        assertEquals(0, frameReassembler.getDiscardedByteCount());
+    }
+
+    @Test
+    public void reassembler_coalescedFrames() {
+        byte[][] frames = {
+                logFrame(0x44, 0x0100, 0x26),
+                logFrame(0x46, 0x0101, 0x44, 0x00),
+                logFrame(0x44, 0x0102, 0x93, 0x20),
+                logFrame(0x46, 0x0103, 0x04, 0xa1, 0xb2, 0xc3, 0xd4),
+                logFrame(0x10, 0x0104),
+        };
+        frameReassembler.append(concat(frames));
+        assertEquals(frames.length, logFrames.size());
+        for(int f = 0; f < frames.length; f++)
+            assertArrayEquals(frames[f], logFrames.get(f));
+        assertEquals(frames.length, frameReassembler.getLogFrameCount());
+        assertEquals(0, frameReassembler.getBufferedByteCount());
+    }
+
+    @Test
+    public void reassembler_liveFramesMixedWithResponses() {
+        byte[] firstFrame = logFrame(0x40, 0x2000, 0x30, 0x04);
+        byte[] secondFrame = logFrame(0x41, 0x2001, 0x01, 0x02, 0x03, 0x04);
+        byte[] streamData = concat(firstFrame, "100:OK\r\n".getBytes(), secondFrame,
+                                   "101:OK WITH TEXT\r\nMF_ULTRALIGHT\r\n".getBytes(), "120:FALSE\r\n".getBytes());
+        // feed the stream in reads which never line up with the frame boundaries:
+        for(int pos = 0; pos < streamData.length; pos += 5)
+            frameReassembler.append(streamData, pos, Math.min(5, streamData.length - pos));
+        assertEquals(2, logFrames.size());
+        assertArrayEquals(firstFrame, logFrames.get(0));
+        assertArrayEquals(secondFrame, logFrames.get(1));
+        assertEquals(Arrays.asList("100:OK", "101:OK WITH TEXT\r\nMF_ULTRALIGHT", "120:FALSE"), cmdResponses);
+        assertEquals(3, frameReassembler.getResponseCount());
+        assertEquals(0, frameReassembler.getDiscardedByteCount());
+    }
+
+    @Test
+    public void reassembler_oversizedReadKeepsTail() {
+        byte[] lastFrame = logFrame(0x46, 0x3000, 0x90, 0x00);
+        byte[] fillerData = new byte[3 * BUFFER_SIZE];
+        Arrays.fill(fillerData, FILLER_BYTE);
+        byte[] readData = concat(fillerData, lastFrame);
+        frameReassembler.append(readData);
+        assertEquals(1, logFrames.size());
+        assertArrayEquals(lastFrame, logFrames.get(0));
+        assertEquals(fillerData.length, frameReassembler.getDiscardedByteCount());
+        assertEquals(0, frameReassembler.getBufferedByteCount());
+
+        // the reassembler keeps working after the oversized read:
+        frameReassembler.append("100:OK\r\n".getBytes());
+        assertEquals(Arrays.asList("100:OK"), cmdResponses);
+    }
+
+    @Test
+    public void frameHeader_longPayloadLength() {
+        byte[] rawLogBytes = new byte[LogFrameDecoder.LOG_HEADER_SIZE + 200];
+        rawLogBytes[0] = 0x41;
+        rawLogBytes[1] = (byte) 200;
+        assertEquals(200, LogFrameDecoder.getPayloadLength(rawLogBytes));
+        assertTrue(LogFrameDecoder.hasCompletePayload(rawLogBytes));
+        assertFalse(LogFrameDecoder.hasCompletePayload(new byte[] { 0x41, (byte) 200, 0x00, 0x10, 0x01 }));
+
+        // a frame with a payload of 128 bytes or more is reassembled whole:
+        byte[] longFrame = new byte[LogFrameReassembler.LOG_HEADER_SIZE + 160];
+        longFrame[0] = 0x44;
+        longFrame[1] = (byte) 160;
+        frameReassembler.append(longFrame, 0, 100);
+        assertEquals(0, logFrames.size());
+        frameReassembler.append(longFrame, 100, longFrame.length - 100);
+        assertEquals(1, logFrames.size());
+        assertArrayEquals(longFrame, logFrames.get(0));
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the record access, flags and payload arena of the columnar LogRecordStore, and that
+ * its footprint stays well below the one-object-per-frame representation it replaced. The append
+ * and access costs are measured by LogRecordStoreBenchmark in the benchmarks module.
+ */
+public class LogRecordStoreTest {
+
+    private static final int NUM_FRAMES = 200000;
+    private static final int[] SNIFF_PAYLOAD_SIZES = { 1, 2, 2, 5, 7, 9, 16, 18 };
+
+    private static byte[] nextPayload(Random rnd) {
+        byte[] payload = new byte[SNIFF_PAYLOAD_SIZES[rnd.nextInt(SNIFF_PAYLOAD_SIZES.length)]];
+        rnd.nextBytes(payload);
+        return payload;
+    }
+
+    @Test
+    public void store_randomAccessAcrossChunks() throws Exception {
+        LogRecordStore logStore = new LogRecordStore();
+        Random rnd = new Random(42);
+        List<byte[]> payloads = new ArrayList<byte[]>();
+        int numFrames = 3 * LogRecordStore.CHUNK_SIZE + 17;
+        for(int f = 1; f <= numFrames; f++) {
+            byte[] payload = nextPayload(rnd);
+            payloads.add(payload);
+            logStore.appendLogFrame(f, 0x40 + (f % 4), LogUtils.DATADIR_OUTGOING, f % 1000, payload);
+            if(f % 1000 == 0)
+                logStore.appendMetadataRecord("STATUS", "Record " + f, "12:00:00");
+        }
+        assertEquals(numFrames + numFrames / 1000, logStore.size());
+        for(int f = 1; f <= numFrames; f += 97) {
+            int row = logStore.findRowByRecordId(f);
+            assertTrue(logStore.isLogFrame(row));
+            assertEquals(f, logStore.getRecordId(row));
+            assertEquals(0x40 + (f % 4), logStore.getLogCode(row));
+            assertEquals(f % 1000, logStore.getDiffTimeMillis(row));
+            assertArrayEquals(payloads.get(f - 1), logStore.getPayload(row));
+        }
+        int metadataRow = logStore.findRowByRecordId(2000) + 1;
+        assertFalse(logStore.isLogFrame(metadataRow));
+        assertEquals("Record 2000", logStore.getMetadataText(metadataRow));
+        assertEquals(-1, logStore.findRowByRecordId(numFrames + 1));
+        logStore.setRecordFlag(5, LogRecordStore.FLAG_SELECTED, true);
+        logStore.setRecordFlag(5, LogRecordStore.FLAG_HIDDEN, true);
+        logStore.setRecordFlag(numFrames, LogRecordStore.FLAG_SELECTED, true);
+        logStore.clearRecordFlag(LogRecordStore.FLAG_SELECTED);
+        assertFalse(logStore.hasRecordFlag(5, LogRecordStore.FLAG_SELECTED));
+        assertFalse(logStore.hasRecordFlag(numFrames, LogRecordStore.FLAG_SELECTED));
+        assertTrue(logStore.hasRecordFlag(5, LogRecordStore.FLAG_HIDDEN));
+        logStore.clear();
+        assertEquals(0, logStore.size());
+    }
+
+    @Test
+    public void store_payloadEqualsAndArenaBoundaries() throws Exception {
+        LogRecordStore logStore = new LogRecordStore();
+        byte[] largePayload = new byte[255];
+        for(int b = 0; b < largePayload.length; b++)
+            largePayload[b] = (byte) b;
+        int numFrames = 2 * LogRecordStore.ARENA_CHUNK_SIZE / largePayload.length + 3;
+        for(int f = 1; f <= numFrames; f++)
+            logStore.appendLogFrame(f, 0x41, LogUtils.DATADIR_OUTGOING, 0, largePayload);
+        logStore.appendLogFrame(numFrames + 1, 0x41, LogUtils.DATADIR_OUTGOING, 0, new byte[0]);
+        for(int row = 0; row < numFrames; row++)
+            assertTrue(logStore.payloadEquals(0, row));
+        assertFalse(logStore.payloadEquals(0, numFrames));
+        assertArrayEquals(largePayload, logStore.getPayload(numFrames - 1));
+    }
+
+    @Test
+    public void store_bytesPerEntryIsCompact() throws Exception {
+        Random rnd = new Random(7);
+        LogRecordStore logStore = new LogRecordStore();
+        for(int f = 0; f < NUM_FRAMES; f++)
+            logStore.appendLogFrame(f + 1, 0x40, LogUtils.DATADIR_OUTGOING, f % 1000, nextPayload(rnd));
+        assertEquals(NUM_FRAMES, logStore.size());
+        // a DecodedLogFrame with its payload copy and derived strings takes over 200 bytes:
+        assertTrue(logStore.getBytesPerEntry() < 48.0);
+    }
+
+}
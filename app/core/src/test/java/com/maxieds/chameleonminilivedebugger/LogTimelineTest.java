@@ -0,0 +1,118 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the log timeline reconstructed from the 16-bit systick timestamps across the
+ * wraparounds (including the idle periods longer than a wrap period), and the sparse log time
+ * index of the LogRecordStore against a linear scan of the offsets (with collapsed repeats,
+ * evicted records and a session snapshot restore). The seek times are compared by
+ * LogTimelineBenchmark in the benchmarks module.
+ */
+public class LogTimelineTest {
+
+    @Test
+    public void timeline_systickWraparounds() throws Exception {
+        SystickTimeline systickTimeline = new SystickTimeline();
+        Random rnd = new Random(13);
+        long deviceMillis = 1234, hostMillis = 1000000;
+        assertEquals(1234, systickTimeline.nextDiffTime((int) deviceMillis, hostMillis));
+        for(int frame = 0; frame < 5000; frame++) {
+            long diffMillis;
+            if(frame % 1000 == 999)
+                diffMillis = 3 * SystickTimeline.WRAP_PERIOD_MILLIS + rnd.nextInt(60000); // the reader sat idle
+            else
+                diffMillis = rnd.nextInt(frame % 7 == 0 ? 40000 : 50);
+            deviceMillis += diffMillis;
+            hostMillis += diffMillis + rnd.nextInt(200) - 100; // delivery jitter
+            assertEquals(diffMillis, systickTimeline.nextDiffTime((int) (deviceMillis & 0xffff), hostMillis));
+        }
+        assertEquals(deviceMillis, systickTimeline.getTimelineMillis());
+        assertTrue(systickTimeline.getMissedWraps() >= 12);
+
+        // frames decoded in a burst (e.g., a downloaded device log) only advance by the systick offsets:
+        systickTimeline.reset();
+        systickTimeline.nextDiffTime(65000, hostMillis);
+        assertEquals(1036, systickTimeline.nextDiffTime(500, hostMillis));
+        assertEquals(66036, systickTimeline.getTimelineMillis());
+        assertEquals(0x1234, LogFrameDecoder.getTimestamp(new byte[] { 0x40, 0, 0x12, 0x34 }));
+        assertEquals(0xfedc, LogFrameDecoder.getTimestamp(new byte[] { 0x40, 0, (byte) 0xfe, (byte) 0xdc }));
+    }
+
+    /**
+     * Appends frames with random offsets (runs of identical frames are collapsed) and some
+     * metadata records, and returns the log time of each record id computed by summing the
+     * offsets (a metadata record is logged at the time of the frame whose id it shares).
+     */
+    private static Map<Integer, Long> fillStore(LogRecordStore logStore, int numFrames, Random rnd) {
+        Map<Integer, Long> logTimes = new HashMap<Integer, Long>();
+        long logTimeMillis = 0;
+        byte[] payload = new byte[] { 0x26 };
+        for(int recordId = 1; recordId <= numFrames; recordId++) {
+            int diffTimeMs = rnd.nextInt(10) == 0 ? rnd.nextInt(100000) : rnd.nextInt(20);
+            if(rnd.nextInt(3) == 0)
+                payload = new byte[] { (byte) rnd.nextInt(4), 0x20 };
+            logTimeMillis += diffTimeMs;
+            logStore.appendLogFrame(recordId, 0x40, LogUtils.DATADIR_OUTGOING, diffTimeMs, payload);
+            logTimes.put(recordId, logTimeMillis);
+            if(recordId % 500 == 0)
+                logStore.appendMetadataRecord("STATUS", "Record " + recordId, "12:00:00");
+        }
+        return logTimes;
+    }
+
+    private static void assertIndexMatchesScan(LogRecordStore logStore, Map<Integer, Long> logTimes) {
+        long[] rowLogTimes = new long[logStore.size()];
+        for(int row = 0; row < logStore.size(); row++) {
+            rowLogTimes[row] = logTimes.get(logStore.getRecordId(row));
+            assertEquals(rowLogTimes[row], logStore.getLogTimeMillis(row));
+        }
+        Random rnd = new Random(3);
+        for(int seek = 0; seek < 2000; seek++) {
+            long seekMillis = (long) (rnd.nextDouble() * (logStore.getTimelineMillis() + 10));
+            int expectedRow = 0;
+            while(expectedRow < rowLogTimes.length && rowLogTimes[expectedRow] < seekMillis)
+                expectedRow++;
+            assertEquals(expectedRow, logStore.findRowAtLogTime(seekMillis));
+        }
+        int lastRow = logStore.size() - 1;
+        assertEquals(logStore.getTimelineMillis() - rowLogTimes[0], logStore.getLogTimeSpanMillis(0, lastRow));
+    }
+
+    @Test
+    public void timeline_sparseIndexMatchesScan() throws Exception {
+        LogRecordStore logStore = new LogRecordStore();
+        logStore.setCollapseRepeatedFrames(true);
+        Random rnd = new Random(5);
+        Map<Integer, Long> logTimes = fillStore(logStore, 30000, rnd);
+        assertTrue(logStore.getCollapsedFrames() > 0);
+        assertIndexMatchesScan(logStore, logTimes);
+
+        // the records after the evicted ones (and the pinned ones between them) keep their log times:
+        for(int row = 100; row < 5000; row += 97)
+            logStore.setRecordFlag(row, LogRecordStore.FLAG_SELECTED, true);
+        logStore.setRetentionPolicy(new LogRetentionPolicy(logStore.size() / 2, 0, 0, true));
+        assertTrue(logStore.applyRetentionPolicy() > 0);
+        assertIndexMatchesScan(logStore, logTimes);
+
+        // and so do the records restored from a session snapshot:
+        File snapshotFile = File.createTempFile("timeline", ".snap");
+        snapshotFile.deleteOnExit();
+        new File(snapshotFile.getPath() + SessionSnapshot.STATE_FILE_EXT).deleteOnExit();
+        SessionSnapshot snapshot = new SessionSnapshot(snapshotFile);
+        snapshot.update(logStore);
+        assertTrue(snapshot.flush(5000));
+        LogRecordStore restoredStore = new LogRecordStore();
+        new SessionSnapshot(snapshotFile).restore(restoredStore);
+        assertIndexMatchesScan(restoredStore, logTimes);
+        assertEquals(logStore.getTimelineMillis(), restoredStore.getTimelineMillis());
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the byte-level SerialResponseClassifier against the original String splitting
+ * implementation of ChameleonIO.isCommandResponse (reproduced below without its Log.i call).
+ * The timings of the two are compared by SerialProtocolBenchmark in the benchmarks module.
+ */
+public class SerialResponseClassifierTest {
+
+    private static final String[] RESPONSE_CODES = {
+            "100:OK", "101:OK WITH TEXT", "110:WAITING FOR MODEM", "120:FALSE", "121:TRUE",
+            "200:UNKNOWN COMMAND", "201:INVALID COMMAND USAGE", "202:INVALID PARAMETER", "203:TIMEOUT",
+    };
+
+    private static final Map<String, Boolean> LEGACY_TEXT_MAP = new HashMap<>();
+    private static final Map<String, Boolean> LEGACY_CODE_MAP = new HashMap<>();
+    static {
+        for(String rcode : RESPONSE_CODES) {
+            LEGACY_TEXT_MAP.put(rcode, Boolean.TRUE);
+            LEGACY_CODE_MAP.put(rcode.substring(0, 3), Boolean.TRUE);
+        }
+    }
+
+    private static boolean legacyIsCommandResponse(byte[] liveLogData) {
+        String respText = new String(liveLogData).split("[\n\r]+")[0];
+        String[] respText2 = new String(liveLogData).split("=");
+        if(LEGACY_TEXT_MAP.get(respText) != null)
+            return true;
+        respText = new String(liveLogData).split(":")[0];
+        if(respText.length() >= 3 && LEGACY_CODE_MAP.get(respText.substring(respText.length() - 3)) != null)
+            return true;
+        return false;
+    }
+
+    private static byte[][] sampleBuffers() {
+        return new byte[][] {
+                "100:OK\r\n".getBytes(),
+                "101:OK WITH TEXT\r\nISO14443A_SNIFF\r\n".getBytes(),
+                "110:WAITING FOR XMODEM\r\n".getBytes(),
+                "201:INVALID COMMAND USAGE\r\n".getBytes(),
+                "999:NOT A CODE\r\n".getBytes(),
+                new byte[] { 0x40, 0x07, 0x12, 0x34, 0x26, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00 },
+                new byte[] { 0x44, 0x02, 0x00, 0x10, (byte) 0x93, 0x20 },
+                new byte[] { (byte) 0xC1, 0x04, 0x3A, 0x3A, 0x31, 0x30, 0x30, 0x3A },
+        };
+    }
+
+    @Test
+    public void classifier_matchesLegacyImplementation() throws Exception {
+        for(byte[] buf : sampleBuffers())
+            assertEquals(new String(buf), legacyIsCommandResponse(buf), SerialResponseClassifier.isCommandResponse(buf));
+        assertEquals(101, SerialResponseClassifier.classifyResponse("101:OK WITH TEXT\r\n".getBytes()));
+        assertEquals(SerialResponseClassifier.NOT_A_RESPONSE, SerialResponseClassifier.parseResponseCode("10".getBytes(), 0, 2));
+    }
+
+}
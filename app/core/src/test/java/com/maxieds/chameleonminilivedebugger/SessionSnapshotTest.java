@@ -0,0 +1,164 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the SessionSnapshot restores the log store as it was captured (rows, flags,
+ * repeat runs, highlights and session properties) across incremental updates, compactions and
+ * a torn write. The restore time is measured by SessionSnapshotBenchmark in the benchmarks module.
+ */
+public class SessionSnapshotTest {
+
+    private static final int NUM_FRAMES = 20000;
+    private static final int[] SNIFF_PAYLOAD_SIZES = { 1, 2, 2, 5, 7, 9, 16, 18 };
+
+    private static byte[] nextPayload(Random rnd) {
+        byte[] payload = new byte[SNIFF_PAYLOAD_SIZES[rnd.nextInt(SNIFF_PAYLOAD_SIZES.length)]];
+        rnd.nextBytes(payload);
+        return payload;
+    }
+
+    private static File newSnapshotFile() throws Exception {
+        File snapshotFile = File.createTempFile("session", ".snap");
+        snapshotFile.deleteOnExit();
+        new File(snapshotFile.getPath() + SessionSnapshot.STATE_FILE_EXT).deleteOnExit();
+        return snapshotFile;
+    }
+
+    private static void assertStoresEqual(LogRecordStore expected, LogRecordStore actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.getEpochMillis(), actual.getEpochMillis());
+        assertEquals(expected.getLastRecordId(), actual.getLastRecordId());
+        assertEquals(expected.getSimilarFrames(), actual.getSimilarFrames());
+        for(int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getRecordKind(row), actual.getRecordKind(row));
+            assertEquals(expected.getRecordId(row), actual.getRecordId(row));
+            assertEquals(expected.getRecordFlags(row), actual.getRecordFlags(row));
+            assertEquals(expected.getAppendTimeMillis(row), actual.getAppendTimeMillis(row));
+            if(expected.isLogFrame(row)) {
+                assertEquals(expected.getLogCode(row), actual.getLogCode(row));
+                assertEquals(expected.getDataDirection(row), actual.getDataDirection(row));
+                assertEquals(expected.getDiffTimeMillis(row), actual.getDiffTimeMillis(row));
+                assertArrayEquals(expected.getPayload(row), actual.getPayload(row));
+                assertEquals(expected.getRepeatCount(row), actual.getRepeatCount(row));
+                assertEquals(expected.getRepeatSpanMillis(row), actual.getRepeatSpanMillis(row));
+            }
+            else {
+                assertEquals(expected.getMetadataTitle(row), actual.getMetadataTitle(row));
+                assertEquals(expected.getMetadataText(row), actual.getMetadataText(row));
+            }
+        }
+    }
+
+    @Test
+    public void snapshot_roundTripWithIncrementalUpdates() throws Exception {
+        File snapshotFile = newSnapshotFile();
+        LogRecordStore logStore = new LogRecordStore();
+        logStore.setCollapseRepeatedFrames(true);
+        SessionSnapshot snapshot = new SessionSnapshot(snapshotFile);
+        Random rnd = new Random(11);
+        int recordId = 0;
+        byte[] reqa = new byte[] { 0x26 };
+        for(int round = 0; round < 4; round++) {
+            for(int f = 0; f < 1000; f++) {
+                byte[] payload = f % 10 < 3 ? reqa : nextPayload(rnd);
+                logStore.appendLogFrame(++recordId, 0x40 + (f % 2), LogUtils.DATADIR_OUTGOING, f % 100, payload);
+            }
+            logStore.appendMetadataRecord("STATUS", "Round \u00e9 " + round, "12:00:0" + round);
+            logStore.setRecordFlag(round * 3, LogRecordStore.FLAG_SELECTED, true);
+            assertTrue(snapshot.update(logStore));
+        }
+        assertFalse(snapshot.update(logStore));
+        logStore.setRecordFlag(7, LogRecordStore.FLAG_HIGHLIGHTED, true);
+        snapshot.setHighlightColors(new int[] { logStore.getRecordId(7) }, new int[] { 0xff00ff00 });
+        snapshot.setSessionProperty("UID", "04A1B2C3D4E5F6");
+        assertTrue(snapshot.update(logStore));
+        assertTrue(snapshot.flush(5000));
+        assertEquals(1, snapshot.getFullRewrites());
+
+        SessionSnapshot restoredSnapshot = new SessionSnapshot(snapshotFile);
+        LogRecordStore restoredStore = new LogRecordStore();
+        assertEquals(logStore.size(), restoredSnapshot.restore(restoredStore));
+        assertStoresEqual(logStore, restoredStore);
+        assertEquals("04A1B2C3D4E5F6", restoredSnapshot.getSessionProperty("UID"));
+        assertArrayEquals(new int[] { 0xff00ff00 }, restoredSnapshot.getHighlightColors());
+
+        // the restored session keeps being snapshotted incrementally:
+        restoredStore.appendLogFrame(++recordId, 0x41, LogUtils.DATADIR_OUTGOING, 5, nextPayload(rnd));
+        assertTrue(restoredSnapshot.update(restoredStore));
+        assertTrue(restoredSnapshot.flush(5000));
+        assertEquals(0, restoredSnapshot.getFullRewrites());
+        LogRecordStore reopenedStore = new LogRecordStore();
+        new SessionSnapshot(snapshotFile).restore(reopenedStore);
+        assertStoresEqual(restoredStore, reopenedStore);
+
+        // evicting records rewrites the snapshot:
+        restoredStore.setRetentionPolicy(new LogRetentionPolicy(1000, 0, 0, true));
+        assertTrue(restoredStore.applyRetentionPolicy() > 0);
+        assertTrue(restoredSnapshot.update(restoredStore));
+        assertTrue(restoredSnapshot.flush(5000));
+        assertEquals(1, restoredSnapshot.getFullRewrites());
+        reopenedStore = new LogRecordStore();
+        new SessionSnapshot(snapshotFile).restore(reopenedStore);
+        assertStoresEqual(restoredStore, reopenedStore);
+    }
+
+    @Test
+    public void snapshot_tornRecordsBlockIsDropped() throws Exception {
+        File snapshotFile = newSnapshotFile();
+        LogRecordStore logStore = new LogRecordStore();
+        SessionSnapshot snapshot = new SessionSnapshot(snapshotFile);
+        Random rnd = new Random(3);
+        for(int f = 1; f <= 500; f++)
+            logStore.appendLogFrame(f, 0x40, LogUtils.DATADIR_OUTGOING, f, nextPayload(rnd));
+        snapshot.update(logStore);
+        assertTrue(snapshot.flush(5000));
+        long completeLength = snapshotFile.length();
+        // a block appended without its state (the process died before the state was replaced):
+        RandomAccessFile raFile = new RandomAccessFile(snapshotFile, "rw");
+        raFile.seek(completeLength);
+        raFile.write(new byte[] { 0, 0, 1, 0, 0, 0, 0, 9, 1, 2, 3 });
+        raFile.close();
+        LogRecordStore restoredStore = new LogRecordStore();
+        SessionSnapshot restoredSnapshot = new SessionSnapshot(snapshotFile);
+        assertEquals(500, restoredSnapshot.restore(restoredStore));
+        assertStoresEqual(logStore, restoredStore);
+        // the next update starts the records file over instead of appending past the torn block:
+        restoredStore.appendLogFrame(501, 0x40, LogUtils.DATADIR_OUTGOING, 1, nextPayload(rnd));
+        restoredSnapshot.update(restoredStore);
+        assertTrue(restoredSnapshot.flush(5000));
+        assertEquals(1, restoredSnapshot.getFullRewrites());
+        LogRecordStore reopenedStore = new LogRecordStore();
+        new SessionSnapshot(snapshotFile).restore(reopenedStore);
+        assertStoresEqual(restoredStore, reopenedStore);
+    }
+
+    @Test
+    public void snapshot_largeSessionRoundTrip() throws Exception {
+        File snapshotFile = newSnapshotFile();
+        LogRecordStore logStore = new LogRecordStore();
+        SessionSnapshot snapshot = new SessionSnapshot(snapshotFile);
+        Random rnd = new Random(7);
+        for(int f = 1; f <= NUM_FRAMES; f++) {
+            logStore.appendLogFrame(f, 0x40, LogUtils.DATADIR_OUTGOING, f % 1000, nextPayload(rnd));
+            if(f % 1000 == 0)
+                logStore.appendMetadataRecord("STATUS", "Record " + f, "12:00:00");
+            if(f % 5000 == 0) {
+                logStore.setRecordFlag(f - 1, LogRecordStore.FLAG_SELECTED, true);
+                assertTrue(snapshot.update(logStore));
+            }
+        }
+        assertTrue(snapshot.flush(30000));
+        assertEquals(1, snapshot.getFullRewrites()); // only the first update writes the whole store
+        LogRecordStore restoredStore = new LogRecordStore();
+        assertEquals(logStore.size(), new SessionSnapshot(snapshotFile).restore(restoredStore));
+        assertStoresEqual(logStore, restoredStore);
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the mapping of the VisibleRowIndex between the store rows and the rows shown in the
+ * Log tab against a linear scan of the display flags, as rows are appended, hidden and evicted.
+ */
+public class VisibleRowIndexTest {
+
+    private static void assertMatchesScan(LogRecordStore logStore, VisibleRowIndex rowIndex, int excludedFlags) {
+        int visiblePosition = 0;
+        for(int row = 0; row < logStore.size(); row++) {
+            boolean visible = !logStore.hasRecordFlag(row, excludedFlags);
+            assertEquals(visible, rowIndex.isVisible(row));
+            assertEquals(visiblePosition, rowIndex.getVisiblePosition(row));
+            if(visible)
+                assertEquals(row, rowIndex.getRow(visiblePosition++));
+        }
+        assertEquals(visiblePosition, rowIndex.size());
+        assertEquals(-1, rowIndex.getRow(visiblePosition));
+    }
+
+    @Test
+    public void visibleRows_matchFlagScan() {
+        LogRecordStore logStore = new LogRecordStore();
+        int collapsedFlags = LogRecordStore.FLAG_HIDDEN | LogRecordStore.FLAG_SIMILAR;
+        VisibleRowIndex shownRows = new VisibleRowIndex(logStore, LogRecordStore.FLAG_HIDDEN);
+        VisibleRowIndex collapsedRows = new VisibleRowIndex(logStore, collapsedFlags);
+        Random rnd = new Random(42);
+        int numFrames = 3 * LogRecordStore.CHUNK_SIZE + 123;
+        for(int f = 1; f <= numFrames; f++) {
+            byte[] payload = new byte[] { (byte) 0x30, (byte) (rnd.nextInt(8) == 0 ? f : 0) };
+            logStore.appendLogFrame(f, 0x40, LogUtils.DATADIR_OUTGOING, 1, payload);
+            if(f % 500 == 0)
+                logStore.appendMetadataRecord("STATUS", "Record " + f, "12:00:00");
+            shownRows.onRowsAppended();
+            collapsedRows.onRowsAppended();
+        }
+        assertTrue(logStore.getSimilarFrames() > 0);
+        assertMatchesScan(logStore, shownRows, LogRecordStore.FLAG_HIDDEN);
+        assertMatchesScan(logStore, collapsedRows, collapsedFlags);
+
+        for(int h = 0; h < 300; h++) {
+            int row = rnd.nextInt(logStore.size());
+            boolean wasShown = shownRows.isVisible(row);
+            logStore.setRecordFlag(row, LogRecordStore.FLAG_HIDDEN, true);
+            assertEquals(wasShown, shownRows.onRowChanged(row));
+            collapsedRows.onRowChanged(row);
+        }
+        assertMatchesScan(logStore, shownRows, LogRecordStore.FLAG_HIDDEN);
+        assertMatchesScan(logStore, collapsedRows, collapsedFlags);
+        logStore.setRecordFlag(0, LogRecordStore.FLAG_HIDDEN, false);
+        shownRows.onRowChanged(0);
+        assertMatchesScan(logStore, shownRows, LogRecordStore.FLAG_HIDDEN);
+    }
+
+    @Test
+    public void visibleRows_rebuiltAfterEviction() {
+        LogRecordStore logStore = new LogRecordStore();
+        VisibleRowIndex shownRows = new VisibleRowIndex(logStore, LogRecordStore.FLAG_HIDDEN);
+        int numFrames = 2 * LogRecordStore.CHUNK_SIZE + 7;
+        for(int f = 1; f <= numFrames; f++) {
+            logStore.appendLogFrame(f, 0x40, LogUtils.DATADIR_OUTGOING, 1, new byte[] { (byte) f });
+            if(f % 3 == 0)
+                logStore.setRecordFlag(logStore.size() - 1, LogRecordStore.FLAG_HIDDEN, true);
+            shownRows.onRowsAppended();
+        }
+        assertEquals(numFrames - numFrames / 3, shownRows.size());
+        logStore.setRetentionPolicy(new LogRetentionPolicy(LogRecordStore.CHUNK_SIZE, LogRetentionPolicy.UNLIMITED,
+                                                           LogRetentionPolicy.UNLIMITED, false));
+        assertTrue(logStore.applyRetentionPolicy(0) > 0);
+        shownRows.rebuild();
+        assertMatchesScan(logStore, shownRows, LogRecordStore.FLAG_HIDDEN);
+        logStore.clear();
+        shownRows.rebuild();
+        assertEquals(0, shownRows.size());
+        assertEquals(-1, shownRows.getRow(0));
+    }
+
+}
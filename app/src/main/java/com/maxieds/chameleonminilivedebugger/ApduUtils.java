@@ -1,9 +1,12 @@
 package com.maxieds.chameleonminilivedebugger;
 
+import android.content.res.Resources;
+import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,6 +20,8 @@ import java.util.List;
  */
 public class ApduUtils {
 
+    private static final String TAG = ApduUtils.class.getSimpleName();
+
     /**
      * Constants for the respective indices of the CLS and INS entries in a standard APDU command.
      */
@@ -30,22 +35,7 @@ public class ApduUtils {
      * @see res/raw/desfire_ins
      */
     public static List<String> parseDesfireInstructions(byte[] dataBytes) {
-        List<String> insList = new ArrayList<String>();
-        List<String[]> csvLines;
-        try {
-            csvLines = Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.desfire_ins));
-        } catch(IOException ioe) {
-            return insList;
-        }
-        for(int i = 0; i < csvLines.size(); i++) {
-            String[] csvLine = csvLines.get(i);
-            byte cls = Utils.hexString2Byte(csvLine[0]);
-            byte ins = Utils.hexString2Byte(csvLine[1]);
-            String apduLabel = csvLine[2];
-            if(dataBytes.length >= 2 && dataBytes[CLSIDX] == cls && dataBytes[INSIDX] == ins)
-                insList.add(apduLabel);
-        }
-        return insList;
+        return getApduClassifier().matchDesfireInstructions(dataBytes);
     }
 
     /**
@@ -55,24 +45,7 @@ public class ApduUtils {
      * @see res/raw/desfire_status
      */
     public static List<String> parseDesfireStatusCodes(byte[] dataBytes) {
-         List<String> insList = new ArrayList<String>();
-        List<String[]> csvLines;
-        try {
-            csvLines = Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.desfire_status));
-        } catch(IOException ioe) {
-            return insList;
-        }
-        for(int i = 0; i < csvLines.size(); i++) {
-            String[] csvLine = csvLines.get(i);
-            byte sw1 = Utils.hexString2Byte(csvLine[0]);
-            byte sw2 = Utils.hexString2Byte(csvLine[1]);
-            String apduLabel = csvLine[2];
-            int SW1 = dataBytes.length - 2;
-            int SW2 = dataBytes.length - 1;
-            if(dataBytes.length >= 2 && dataBytes[SW1] == sw1 && dataBytes[SW2] == sw2)
-                insList.add(apduLabel);
-        }
-        return insList;
+        return getApduClassifier().matchDesfireStatusCodes(dataBytes);
     }
 
     /**
@@ -82,21 +55,7 @@ public class ApduUtils {
      * @see res/raw/common_ins
      */
     public static List<String> parseCommonInstructions(byte[] dataBytes) {
-        List<String> insList = new ArrayList<String>();
-        List<String[]> csvLines;
-        try {
-            csvLines = Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.common_ins));
-        } catch(IOException ioe) {
-            return insList;
-        }
-        for(int i = 0; i < csvLines.size(); i++) {
-            String[] csvLine = csvLines.get(i);
-            byte ins = Utils.hexString2Byte(csvLine[0]);
-            String apduLabel = csvLine[1];
-            if(dataBytes.length >= 2 && dataBytes[INSIDX] == ins || ((dataBytes.length == 1 || dataBytes.length == 2) && dataBytes[CLSIDX] == ins))
-                insList.add(apduLabel);
-        }
-        return insList;
+        return getApduClassifier().matchCommonInstructions(dataBytes);
     }
 
     /**
@@ -106,32 +65,7 @@ public class ApduUtils {
      * @see res/raw/detailed_common_ins
      */
     public static List<String> parseDetailedInstructions(byte[] dataBytes) {
-        List<String> insList = new ArrayList<String>();
-        List<String[]> csvLines;
-        try {
-            csvLines = Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.detailed_common_ins));
-        } catch(IOException ioe) {
-            return insList;
-        }
-        for(int i = 0; i < csvLines.size(); i++) {
-            String[] csvLine = csvLines.get(i);
-            int checkNumBytes = csvLine.length - 1;
-            String apduLabel = csvLine[checkNumBytes];
-            if(dataBytes.length < checkNumBytes) {
-                continue;
-            }
-            boolean tagApplies = true;
-            for(int b = 0; b < checkNumBytes; b++) {
-                if(!csvLine[b].equals("xx") && dataBytes[b] != Utils.hexString2Byte(csvLine[b])) {
-                    tagApplies = false;
-                    break;
-                }
-            }
-            if(tagApplies)
-                insList.add(apduLabel);
-        }
-        return insList;
-
+        return getApduClassifier().matchDetailedInstructions(dataBytes);
     }
 
     /**
@@ -141,24 +75,7 @@ public class ApduUtils {
      * @see res/raw/response_codes_status
      */
     public static List<String> parseStatusCodes(byte[] dataBytes) {
-        List<String> insList = new ArrayList<String>();
-        List<String[]> csvLines;
-        try {
-            csvLines = Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.response_codes_status));
-        } catch(IOException ioe) {
-            return insList;
-        }
-        for(int i = 0; i < csvLines.size(); i++) {
-            String[] csvLine = csvLines.get(i);
-            byte sw1 = Utils.hexString2Byte(csvLine[0]);
-            byte sw2 = Utils.hexString2Byte(csvLine[1]);
-            String apduLabel = csvLine[2];
-            int SW1 = dataBytes.length - 2;
-            int SW2 = dataBytes.length - 1;
-            if(dataBytes.length >= 2 && dataBytes[SW1] == sw1 && dataBytes[SW2] == sw2)
-                insList.add(apduLabel);
-        }
-        return insList;
+        return getApduClassifier().matchStatusCodes(dataBytes);
     }
 
     /**
@@ -173,21 +90,75 @@ public class ApduUtils {
      * @ref https://www.dropbox.com/s/bqrd6jzemwo4ux0/isoiec7816-4%7Bed2.0%7Den.pdf?dl=0
      */
     public static String classifyApdu(byte[] dataBytes) {
-        List<String> apduClassifications = parseDesfireInstructions(dataBytes);
-        apduClassifications.addAll(parseDesfireStatusCodes(dataBytes));
-        apduClassifications.addAll(parseCommonInstructions(dataBytes));
-        apduClassifications.addAll(parseStatusCodes(dataBytes));
-        apduClassifications.addAll(parseDetailedInstructions(dataBytes));
-        StringBuilder sbApduList = new StringBuilder();
-        for(String apdu : apduClassifications){
-            sbApduList.append(apdu);
-            sbApduList.append(", ");
+        return getApduClassifier().classifyPayload(dataBytes);
+    }
+
+    private static ApduRulePack apduRulePack;
+
+    /**
+     * The APDU tables compiled into the rule pack asset at build time (loaded in one read on
+     * first use).
+     * @return ApduRulePack
+     * @throws IOException if the pack is missing or corrupted
+     * @ref ApduRulePack
+     */
+    public static synchronized ApduRulePack getApduRulePack() throws IOException {
+        if(apduRulePack == null)
+            apduRulePack = ApduRulePack.readPack(LiveLoggerActivity.defaultContext.getAssets().open(ApduRulePack.PACK_ASSET_NAME));
+        return apduRulePack;
+    }
+
+    private static volatile ApduTableClassifier apduClassifier;
+
+    /**
+     * The APDU classifier used for the log entries (the tables come from the rule pack, or are
+     * compiled from the raw resources with the same parser if it cannot be loaded, and are
+     * compiled into lookup tables on first use). If neither can be loaded, the classifier
+     * recognizes nothing and the tables are not read again. Once loaded, the classifier is
+     * returned without locking (it is called for every LIVE log frame). The classification cache
+     * lives in the classifier, so a new rule set always starts with an empty cache.
+     * @return ApduTableClassifier
+     * @ref ApduTableClassifier
+     */
+    public static ApduTableClassifier getApduClassifier() {
+        ApduTableClassifier classifier = apduClassifier;
+        return classifier != null ? classifier : loadApduClassifier();
+    }
+
+    private static synchronized ApduTableClassifier loadApduClassifier() {
+        if(apduClassifier == null) {
+            try {
+                apduClassifier = getApduTables().newClassifier();
+            } catch(IOException ioe) {
+                Log.e(TAG, "Unable to compile the APDU tables, APDUs will not be classified: " + ioe.getMessage());
+                apduClassifier = ApduTableClassifier.newEmptyClassifier();
+            }
+        }
+        return apduClassifier;
+    }
+
+    /**
+     * The APDU tables from the rule pack, or compiled from the raw resources with the same
+     * parser when the pack cannot be loaded (so the classifier and the APDU tab always see the
+     * same rules).
+     * @return ApduRulePack
+     * @throws IOException if neither can be loaded
+     * @ref ApduRulePack.compileTables
+     */
+    private static ApduRulePack getApduTables() throws IOException {
+        try {
+            return getApduRulePack();
+        } catch(IOException ioe) {
+            Log.e(TAG, "Unable to load the APDU rule pack: " + ioe.getMessage());
         }
-        String apduList = sbApduList.toString();
-        if(apduList.length() >= 2)
-             return apduList.substring(0, apduList.length() - 2);
-        else
-            return "NONE";
+        Resources appResources = LiveLoggerActivity.defaultContext.getResources();
+        return ApduRulePack.compileTables(new InputStream[] {
+                appResources.openRawResource(R.raw.desfire_ins),
+                appResources.openRawResource(R.raw.desfire_status),
+                appResources.openRawResource(R.raw.common_ins),
+                appResources.openRawResource(R.raw.response_codes_status),
+                appResources.openRawResource(R.raw.detailed_common_ins),
+        });
     }
 
     public static class APDUCommandData implements Comparable<APDUCommandData> {
@@ -304,11 +275,12 @@ public class ApduUtils {
     public static View tabView;
 
     public static void buildFullInstructionsList() {
-        List<String[]> apduStringFormattedSpecs = new ArrayList();
+        List<String[]> apduStringFormattedSpecs = new ArrayList<String[]>();
         try {
-            apduStringFormattedSpecs = Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.desfire_ins));
-            apduStringFormattedSpecs.addAll(Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.common_ins)));
-            apduStringFormattedSpecs.addAll(Utils.readCSVFile(LiveLoggerActivity.defaultContext.getResources().openRawResource(R.raw.detailed_common_ins)));
+            ApduRulePack rulePack = getApduTables();
+            apduStringFormattedSpecs.addAll(rulePack.getTable(ApduRulePack.DESFIRE_INS));
+            apduStringFormattedSpecs.addAll(rulePack.getTable(ApduRulePack.COMMON_INS));
+            apduStringFormattedSpecs.addAll(rulePack.getTable(ApduRulePack.DETAILED_INS));
         }
         catch(IOException ioe) {
             LiveLoggerActivity.appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("ERROR", ioe.getMessage()));
@@ -6,13 +6,12 @@ import android.util.Log;
 import android.widget.SeekBar;
 import android.widget.TextView;
 
-import com.felhr.usbserial.UsbSerialDevice;
 import com.shawnlin.numberpicker.NumberPicker;
 
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 import static com.maxieds.chameleonminilivedebugger.ChameleonIO.SerialRespCode.FALSE;
@@ -46,28 +45,40 @@ public class ChameleonIO {
     public static int TIMEOUT = 3000;
     public static final int LOCK_TIMEOUT = 350;
 
+    /**
+     * Maximum number of query commands written to the device back to back before waiting
+     * on the oldest outstanding response.
+     *
+     * @ref ChameleonIO.executeCommandPipeline
+     */
+    public static int PIPELINE_DEPTH = 6;
+
     /**
      * Static constants for storing state of the device.
      */
     public static boolean PAUSED = true;
-    public static boolean WAITING_FOR_RESPONSE = false;
     public static boolean WAITING_FOR_XMODEM = false;
     public static boolean DOWNLOAD = false;
     public static boolean UPLOAD = false;
-    public static boolean EXPECTING_BINARY_DATA = false;
     public static String LASTCMD = "";
     public static boolean USB_CONFIGURED = false;
 
     /**
-     * Static storage for command return values.
-     * Used to avoid overhead of passing messages for the command responses.
+     * Commands written to the device whose response a caller is waiting for.
+     * The device answers commands in the order they are received, but the responses carry no
+     * tag, so every command written (fire-and-forget ones included) is numbered and the responses
+     * are counted as they arrive: the n-th response belongs to the n-th command. A pending result
+     * is only completed by the response carrying its own number, so a late answer to a request
+     * which timed out is never handed to the next one.
      *
-     * @ref LiveLoggerActivity.getSettingFromDevice
+     * @ref ChameleonIO.sendCommand
      * @ref LiveLoggerActivity.usbReaderCallback
      */
-    public static String DEVICE_RESPONSE_CODE;
-    public static String[] DEVICE_RESPONSE;
-    public static byte[] DEVICE_RESPONSE_BINARY;
+    private static final ConcurrentLinkedQueue<ChameleonCommandResult> pendingCommands = new ConcurrentLinkedQueue<>();
+    private static final Object commandWriteLock = new Object();
+    private static volatile long numCommandsSent = 0;
+    private static volatile long numResponsesReceived = 0;
+    private static volatile long lastResponseDeadlineNanos = 0;
 
     /**
      * <h1>Serial Response Code</h1>
@@ -105,33 +116,14 @@ public class ChameleonIO {
         }
 
         /**
-         * Stores a map of integer-valued response codes to their corresponding enum value.
+         * Stores a table indexed by the integer-valued (three digit) response codes of their
+         * corresponding enum values (avoids boxing the lookup keys).
          */
-        private static final Map<Integer, SerialRespCode> RESP_CODE_MAP = new HashMap<>();
+        private static final SerialRespCode[] RESP_CODE_TABLE = new SerialRespCode[1000];
 
         static {
-            for (SerialRespCode respCode : values()) {
-                int rcode = respCode.toInteger();
-                Integer aRespCode = Integer.valueOf(rcode);
-                RESP_CODE_MAP.put(aRespCode, respCode);
-            }
-        }
-
-        /**
-         * Lookup table of String response codes prefixing command return data sent by the device.
-         *
-         * @ref ChameleonIO.isCommandResponse
-         */
-        public static final Map<String, SerialRespCode> RESP_CODE_TEXT_MAP = new HashMap<>();
-        public static final Map<String, SerialRespCode> RESP_CODE_TEXT_MAP2 = new HashMap<>();
-
-        static {
-            for (SerialRespCode respCode : values()) {
-                String rcode = String.valueOf(respCode.toInteger());
-                String rcodeText = respCode.name().replace("_", " ");
-                RESP_CODE_TEXT_MAP.put(rcode + ":" + rcodeText, respCode);
-                RESP_CODE_TEXT_MAP2.put(rcode, respCode);
-            }
+            for (SerialRespCode respCode : values())
+                RESP_CODE_TABLE[respCode.toInteger()] = respCode;
         }
 
         /**
@@ -150,7 +142,9 @@ public class ChameleonIO {
          * @return SerialRespCode enum value associated with the integer code
          */
         public static SerialRespCode lookupByResponseCode(int rcode) {
-            return RESP_CODE_MAP.get(rcode);
+            if (rcode < 0 || rcode >= RESP_CODE_TABLE.length)
+                return null;
+            return RESP_CODE_TABLE[rcode];
         }
 
     }
@@ -164,17 +158,7 @@ public class ChameleonIO {
      * @ref LiveLoggerActivity.usbReaderCallback
      */
     public static boolean isCommandResponse(byte[] liveLogData) {
-        Log.i(TAG, "liveLogData: " + new String(liveLogData));
-        String respText = new String(liveLogData).split("[\n\r]+")[0];
-        String[] respText2 = new String(liveLogData).split("=");
-        if(SerialRespCode.RESP_CODE_TEXT_MAP.get(respText) != null)
-            return true;
-        respText = new String(liveLogData).split(":")[0];
-        if(respText.length() >= 3 && SerialRespCode.RESP_CODE_TEXT_MAP2.get(respText.substring(respText.length() - 3)) != null)
-            return true;
-        //else if (respText2.length >= 2 && SerialRespCode.RESP_CODE_TEXT_MAP.get(LASTCMD.replace(respText2[1].substring(0, min(respText2[1].length(), LiveLoggerActivity.USB_DATA_BITS)), "")) != null)
-        //    return false;
-        return false;
+        return SerialResponseClassifier.isCommandResponse(liveLogData);
     }
 
     /**
@@ -201,60 +185,134 @@ public class ChameleonIO {
         public String TIMEOUT;
 
         /**
-         * How often do we update / refresh the stats at the top of the window?
+         * How often do we update / refresh the stats at the top of the window? The interval is
+         * doubled (up to STATS_MAX_BACKOFF_INTERVAL) while LIVE log traffic is flowing or the
+         * serial port is busy with other commands, and falls back once the bus is quiet again.
+         * Only the fields which change on their own (log memory, field, charging) are polled on
+         * every cycle; the configuration fields are refreshed every STATS_FULL_REFRESH_CYCLES
+         * cycles (the device buttons can change them), or shortly after a command which alters them.
          */
         public final int STATS_UPDATE_INTERVAL = 8000; // 8 seconds
+        public final int STATS_MAX_BACKOFF_INTERVAL = 64000;
+        public final int STATS_FULL_REFRESH_CYCLES = 4;
+        public final int STATS_EAGER_UPDATE_DELAY = 250;
         public Handler statsUpdateHandler = new Handler();
         public Runnable statsUpdateRunnable = new Runnable() {
             public void run() {
-                updateAllStatusAndPost(true);
+                pollStatusAdaptively();
             }
         };
+        public Runnable statsEagerUpdateRunnable = new Runnable() {
+            public void run() {
+                if (staticFieldsStale) {
+                    numEagerPolls++;
+                    updateAllStatusAndPost(false);
+                }
+            }
+        };
+
+        /**
+         * Adaptive polling state and the bus time consumed by the status queries.
+         */
+        private volatile boolean staticFieldsStale = true;
+        private int currentPollInterval = STATS_UPDATE_INTERVAL;
+        private int pollCycle = 0;
+        private long lastLiveFrameCount = 0;
+        private long numPolls = 0, numFullPolls = 0, numQueriesSent = 0;
+        private long numBackoffPolls = 0, numBusyPolls = 0, numEagerPolls = 0;
+        private long totalPollNanos = 0, maxPollNanos = 0;
+        private final long startTimeNanos = System.nanoTime();
 
         /**
          * Queries the live device for its status settings.
+         *
+         * @param fullRefresh whether to query the configuration fields as well as the volatile ones
+         * @return boolean whether the serial port was available for the queries
          */
-        private boolean updateAllStatus(boolean resetTimer) {
+        private boolean updateAllStatus(boolean fullRefresh) {
             try {
-                if (!LiveLoggerActivity.serialPortLock.tryAcquire(ChameleonIO.LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
-                    if (resetTimer)
-                        statsUpdateHandler.postDelayed(statsUpdateRunnable, STATS_UPDATE_INTERVAL / 4);
+                if (!LiveLoggerActivity.serialPortLock.tryAcquire(ChameleonIO.LOCK_TIMEOUT, TimeUnit.MILLISECONDS))
                     return false;
-                }
             } catch (InterruptedException ie) {
-                if (resetTimer)
-                    statsUpdateHandler.postDelayed(statsUpdateRunnable, STATS_UPDATE_INTERVAL / 4);
                 return false;
             }
-            if (!ChameleonIO.REVE_BOARD) {
-                CONFIG = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "CONFIG?", CONFIG);
-                UID = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "UID?", UID);
-                UIDSIZE = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "UIDSIZE?", String.format("%d", UIDSIZE)));
-                MEMSIZE = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "MEMSIZE?", String.format("%d", MEMSIZE)));
-                LOGMODE = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "LOGMODE?", String.format("%d", LOGSIZE)).replaceAll(" \\(.*\\)", "");
-                LOGSIZE = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "LOGMEM?", String.format("%d", LOGSIZE)).replaceAll(" \\(.*\\)", ""));
-                DIP_SETTING = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "SETTING?", String.format("%d", DIP_SETTING)));
-                READONLY = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "READONLY?", String.format("%d", READONLY ? 1 : 0)).equals("1");
-                FIELD = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "FIELD?", String.format("%d", FIELD ? 1 : 0)).equals("1");
-                CHARGING = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "CHARGING?", String.format("%d", CHARGING ? 1 : 0)).equals("TRUE");
-                THRESHOLD = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "THRESHOLD?", String.format("%d", THRESHOLD)));
-                TIMEOUT = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "TIMEOUT?", TIMEOUT);
+            long pollStartNanos = System.nanoTime();
+            int numQueries = 0;
+            if (!ChameleonIO.REVE_BOARD && fullRefresh) {
+                String[] statusQueries = {
+                        "CONFIG?", "UID?", "UIDSIZE?", "MEMSIZE?", "LOGMODE?", "LOGMEM?",
+                        "SETTING?", "READONLY?", "FIELD?", "CHARGING?", "THRESHOLD?", "TIMEOUT?",
+                };
+                String[] statusHints = {
+                        CONFIG, UID, String.format("%d", UIDSIZE), String.format("%d", MEMSIZE),
+                        String.format("%d", LOGSIZE), String.format("%d", LOGSIZE),
+                        String.format("%d", DIP_SETTING), String.format("%d", READONLY ? 1 : 0),
+                        String.format("%d", FIELD ? 1 : 0), String.format("%d", CHARGING ? 1 : 0),
+                        String.format("%d", THRESHOLD), TIMEOUT,
+                };
+                String[] statusResp = LiveLoggerActivity.getSettingsFromDevice(LiveLoggerActivity.serialPort, statusQueries, statusHints);
+                numQueries = statusQueries.length;
+                CONFIG = statusResp[0];
+                UID = statusResp[1];
+                UIDSIZE = Utils.parseInt(statusResp[2]);
+                MEMSIZE = Utils.parseInt(statusResp[3]);
+                LOGMODE = statusResp[4].replaceAll(" \\(.*\\)", "");
+                LOGSIZE = Utils.parseInt(statusResp[5].replaceAll(" \\(.*\\)", ""));
+                DIP_SETTING = Utils.parseInt(statusResp[6]);
+                READONLY = statusResp[7].equals("1");
+                FIELD = statusResp[8].equals("1");
+                CHARGING = statusResp[9].equals("TRUE");
+                THRESHOLD = Utils.parseInt(statusResp[10]);
+                TIMEOUT = statusResp[11];
+            }
+            else if (!ChameleonIO.REVE_BOARD) {
+                String[] statusQueries = {
+                        "LOGMEM?", "FIELD?", "CHARGING?",
+                };
+                String[] statusHints = {
+                        String.format("%d", LOGSIZE), String.format("%d", FIELD ? 1 : 0), String.format("%d", CHARGING ? 1 : 0),
+                };
+                String[] statusResp = LiveLoggerActivity.getSettingsFromDevice(LiveLoggerActivity.serialPort, statusQueries, statusHints);
+                numQueries = statusQueries.length;
+                LOGSIZE = Utils.parseInt(statusResp[0].replaceAll(" \\(.*\\)", ""));
+                FIELD = statusResp[1].equals("1");
+                CHARGING = statusResp[2].equals("TRUE");
             }
-            else {
-                CONFIG = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "configmy?", CONFIG);
-                UID = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "uidmy?", UID);
-                UIDSIZE = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "uidsizemy?", String.format("%d",UIDSIZE)));
-                MEMSIZE = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "memsizemy?", String.format("%d",MEMSIZE)));
+            else if (fullRefresh) {
+                String[] statusQueries = {
+                        "configmy?", "uidmy?", "uidsizemy?", "memsizemy?", "settingmy?", "readonlymy?",
+                };
+                String[] statusHints = {
+                        CONFIG, UID, String.format("%d", UIDSIZE), String.format("%d", MEMSIZE),
+                        String.format("%d", DIP_SETTING), String.format("%d", READONLY ? 1 : 0),
+                };
+                String[] statusResp = LiveLoggerActivity.getSettingsFromDevice(LiveLoggerActivity.serialPort, statusQueries, statusHints);
+                numQueries = statusQueries.length;
+                CONFIG = statusResp[0];
+                UID = statusResp[1];
+                UIDSIZE = Utils.parseInt(statusResp[2]);
+                MEMSIZE = Utils.parseInt(statusResp[3]);
                 LOGMODE = "NONE";
                 LOGSIZE = 0;
-                DIP_SETTING = Utils.parseInt(LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "settingmy?", String.format("%d", DIP_SETTING)));
-                READONLY = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "readonlymy?", String.format("%d", READONLY ? 1 : 0)).equals("1");
+                DIP_SETTING = Utils.parseInt(statusResp[4]);
+                READONLY = statusResp[5].equals("1");
                 FIELD = false;
                 CHARGING = false;
                 THRESHOLD = 0;
                 TIMEOUT = "NA";
             }
             LiveLoggerActivity.serialPortLock.release();
+            if (numQueries > 0) {
+                long pollNanos = System.nanoTime() - pollStartNanos;
+                totalPollNanos += pollNanos;
+                maxPollNanos = Math.max(maxPollNanos, pollNanos);
+                numQueriesSent += numQueries;
+                numPolls++;
+            }
+            if (fullRefresh) {
+                staticFieldsStale = false;
+                numFullPolls++;
+            }
 
             // setup threshold signal bars:
             LiveLoggerActivity.setSignalStrengthIndicator(THRESHOLD);
@@ -262,20 +320,121 @@ public class ChameleonIO {
             return true;
         }
 
+        /**
+         * Determines whether LIVE log frames have arrived since the last time this was called.
+         * @return boolean
+         * @ref LiveLogIngestionThread.getFramesReceived
+         */
+        private boolean isLiveTrafficFlowing() {
+            LiveLogIngestionThread ingestionThread = LiveLoggerActivity.logIngestionThread;
+            if (ingestionThread == null)
+                return false;
+            long liveFrameCount = ingestionThread.getFramesReceived();
+            boolean trafficFlowing = liveFrameCount != lastLiveFrameCount;
+            lastLiveFrameCount = liveFrameCount;
+            return trafficFlowing;
+        }
+
+        /**
+         * (Re)schedules the periodic status update, replacing any pending one.
+         * @param delay milliseconds
+         */
+        private void scheduleNextPoll(int delay) {
+            statsUpdateHandler.removeCallbacks(statsUpdateRunnable);
+            statsUpdateHandler.postDelayed(statsUpdateRunnable, delay);
+        }
+
+        /**
+         * The periodic status update: skips the poll and backs off while LIVE traffic is flowing
+         * (polling anyway once the maximum interval is reached), backs off when the serial port
+         * is busy, and otherwise queries the fields which are due for a refresh.
+         */
+        private void pollStatusAdaptively() {
+            if (LiveLoggerActivity.serialPort == null)
+                return;
+            boolean liveTraffic = isLiveTrafficFlowing();
+            if (liveTraffic && currentPollInterval < STATS_MAX_BACKOFF_INTERVAL) {
+                currentPollInterval = Math.min(2 * currentPollInterval, STATS_MAX_BACKOFF_INTERVAL);
+                numBackoffPolls++;
+                scheduleNextPoll(currentPollInterval);
+                return;
+            }
+            boolean fullRefresh = staticFieldsStale || (++pollCycle % STATS_FULL_REFRESH_CYCLES) == 0;
+            if (!postStatusUpdates(fullRefresh)) {
+                currentPollInterval = Math.min(2 * currentPollInterval, STATS_MAX_BACKOFF_INTERVAL);
+                numBusyPolls++;
+            }
+            else if (!liveTraffic) {
+                currentPollInterval = STATS_UPDATE_INTERVAL;
+            }
+            scheduleNextPoll(currentPollInterval);
+        }
+
+        /**
+         * Notes that a command which may alter the configuration fields was sent to the device,
+         * and schedules an update of all fields shortly afterwards (unless the caller refreshes
+         * the status itself in the meantime).
+         *
+         * @param rawCmd
+         * @ref ChameleonIO.sendCommand
+         */
+        public void notifyCommandSent(String rawCmd) {
+            if (!isStatusChangingCommand(rawCmd))
+                return;
+            staticFieldsStale = true;
+            statsUpdateHandler.removeCallbacks(statsEagerUpdateRunnable);
+            statsUpdateHandler.postDelayed(statsEagerUpdateRunnable, STATS_EAGER_UPDATE_DELAY);
+        }
+
+        /**
+         * Determines whether the command can change the fields displayed in the status bar
+         * (e.g., CONFIG=, UID=, SETTING=, RESET, CLEAR).
+         * @param rawCmd
+         * @return boolean
+         */
+        public static boolean isStatusChangingCommand(String rawCmd) {
+            String cmd = rawCmd.trim().toUpperCase(Locale.ENGLISH);
+            if (!isStateChangingCommand(cmd))
+                return false;
+            return cmd.contains("=") || cmd.startsWith("RESET") || cmd.startsWith("CLEAR");
+        }
+
         /**
          * Updates all status settings and posts the results to the live activity window.
          *
-         * @param resetTimer whether to have this execute again in STATS_UPDATE_INTERVAL milliseconds
+         * @param resetTimer whether to restart the periodic updates (at STATS_UPDATE_INTERVAL milliseconds)
          * @ref DeviceStatusSettings.STATS_UPDATE_INTERVAL
          * @ref DeviceStatusSettings.updateAllStatus
          */
         public void updateAllStatusAndPost(boolean resetTimer) {
             if (LiveLoggerActivity.serialPort == null)
                 return;
-            boolean haveUpdates = updateAllStatus(resetTimer);
+            boolean haveUpdates = postStatusUpdates(true);
+            if (resetTimer) {
+                currentPollInterval = STATS_UPDATE_INTERVAL;
+                scheduleNextPoll(haveUpdates ? STATS_UPDATE_INTERVAL : STATS_UPDATE_INTERVAL / 4);
+            }
+        }
+
+        /**
+         * Queries the device and posts the status settings to the live activity window.
+         * @param fullRefresh
+         * @return boolean whether the serial port was available for the queries
+         */
+        private boolean postStatusUpdates(boolean fullRefresh) {
+            boolean haveUpdates = updateAllStatus(fullRefresh);
             //if (!haveUpdates)
             //    return;
-            ChameleonIO.WAITING_FOR_RESPONSE = true;
+            displayStatusSettings();
+            return haveUpdates;
+        }
+
+        /**
+         * Posts the cached status settings to the live activity window.
+         */
+        public void displayStatusSettings() {
+            if (CONFIG == null || UID == null)
+                return;
             ((TextView) LiveLoggerActivity.runningActivity.findViewById(R.id.deviceConfigText)).setText(CONFIG);
             String formattedUID = UID;
             if (!UID.equals("NO UID."))
@@ -296,8 +455,84 @@ public class ChameleonIO {
             if (settingsNumberPicker != null) {
                 settingsNumberPicker.setValue(DIP_SETTING);
             }
-            if (resetTimer)
-                statsUpdateHandler.postDelayed(statsUpdateRunnable, STATS_UPDATE_INTERVAL);
+        }
+
+        /**
+         * Stores the cached status settings in the session snapshot, so the status bar can be
+         * filled in before the device is queried again when the session is restored.
+         * @param snapshot
+         * @ref LiveLoggerActivity.updateSessionSnapshot
+         */
+        public void saveToSnapshot(SessionSnapshot snapshot) {
+            snapshot.setSessionProperty("CONFIG", CONFIG);
+            snapshot.setSessionProperty("UID", UID);
+            snapshot.setSessionProperty("LASTUID", LASTUID);
+            snapshot.setSessionProperty("LOGMODE", LOGMODE);
+            snapshot.setSessionProperty("UIDSIZE", String.valueOf(UIDSIZE));
+            snapshot.setSessionProperty("MEMSIZE", String.valueOf(MEMSIZE));
+            snapshot.setSessionProperty("LOGSIZE", String.valueOf(LOGSIZE));
+            snapshot.setSessionProperty("SETTING", String.valueOf(DIP_SETTING));
+            snapshot.setSessionProperty("FIELD", String.valueOf(FIELD));
+            snapshot.setSessionProperty("READONLY", String.valueOf(READONLY));
+            snapshot.setSessionProperty("CHARGING", String.valueOf(CHARGING));
+            snapshot.setSessionProperty("THRESHOLD", String.valueOf(THRESHOLD));
+            snapshot.setSessionProperty("TIMEOUT", TIMEOUT);
+        }
+
+        /**
+         * Restores the cached status settings from the session snapshot (they are marked stale,
+         * so the next poll refreshes all of them from the device).
+         * @param snapshot
+         * @return boolean whether the snapshot held the status settings
+         */
+        public boolean restoreFromSnapshot(SessionSnapshot snapshot) {
+            if (snapshot.getSessionProperty("CONFIG") == null || snapshot.getSessionProperty("UID") == null)
+                return false;
+            CONFIG = snapshot.getSessionProperty("CONFIG");
+            UID = snapshot.getSessionProperty("UID");
+            if (snapshot.getSessionProperty("LASTUID") != null)
+                LASTUID = snapshot.getSessionProperty("LASTUID");
+            if (snapshot.getSessionProperty("LOGMODE") != null)
+                LOGMODE = snapshot.getSessionProperty("LOGMODE");
+            UIDSIZE = Utils.parseInt(snapshot.getSessionProperty("UIDSIZE"));
+            MEMSIZE = Utils.parseInt(snapshot.getSessionProperty("MEMSIZE"));
+            LOGSIZE = Utils.parseInt(snapshot.getSessionProperty("LOGSIZE"));
+            DIP_SETTING = Utils.parseInt(snapshot.getSessionProperty("SETTING"));
+            FIELD = Boolean.parseBoolean(snapshot.getSessionProperty("FIELD"));
+            READONLY = Boolean.parseBoolean(snapshot.getSessionProperty("READONLY"));
+            CHARGING = Boolean.parseBoolean(snapshot.getSessionProperty("CHARGING"));
+            THRESHOLD = Utils.parseInt(snapshot.getSessionProperty("THRESHOLD"));
+            TIMEOUT = snapshot.getSessionProperty("TIMEOUT");
+            staticFieldsStale = true;
+            return true;
+        }
+
+        /**
+         * Average fraction of the serial bus time spent on status polling since startup.
+         * @return double in [0, 1]
+         */
+        public double getPollingBusUtilization() {
+            long elapsedNanos = System.nanoTime() - startTimeNanos;
+            return elapsedNanos <= 0 ? 0.0 : (double) totalPollNanos / elapsedNanos;
+        }
+
+        public long getPollCount() { return numPolls; }
+        public long getFullPollCount() { return numFullPolls; }
+        public long getQueriesSent() { return numQueriesSent; }
+        public long getTotalPollTimeMillis() { return TimeUnit.NANOSECONDS.toMillis(totalPollNanos); }
+        public long getMaxPollTimeMillis() { return TimeUnit.NANOSECONDS.toMillis(maxPollNanos); }
+        public int getCurrentPollInterval() { return currentPollInterval; }
+
+        /**
+         * Summary of the status polling counters suitable for display in the log.
+         * @return String
+         */
+        public String getStatsSummary() {
+            return String.format(Locale.ENGLISH, "Status polls: %d (%d full), queries: %d, bus time: %d ms (max %d ms, %.2f%%)\n" +
+                                 "Poll interval: %d ms, LIVE traffic backoffs: %d, port busy: %d, eager polls: %d",
+                                 getPollCount(), getFullPollCount(), getQueriesSent(), getTotalPollTimeMillis(),
+                                 getMaxPollTimeMillis(), 100.0 * getPollingBusUtilization(),
+                                 getCurrentPollInterval(), numBackoffPolls, numBusyPolls, numEagerPolls);
         }
     }
 
@@ -310,7 +545,7 @@ public class ChameleonIO {
      * @param timeout
      * @return SerialRespCode status code (OK)
      */
-    public static SerialRespCode setLoggerConfigMode(UsbSerialDevice cmPort, int timeout) {
+    public static SerialRespCode setLoggerConfigMode(ChameleonSerialPort cmPort, int timeout) {
         if(!REVE_BOARD)
              return executeChameleonMiniCommand(cmPort, "CONFIG=ISO14443A_SNIFF", timeout);
         else
@@ -324,7 +559,7 @@ public class ChameleonIO {
      * @param timeout
      * @return SerialRespCode status code (OK)
      */
-    public static SerialRespCode setReaderConfigMode(UsbSerialDevice cmPort, int timeout) {
+    public static SerialRespCode setReaderConfigMode(ChameleonSerialPort cmPort, int timeout) {
         if(!REVE_BOARD)
              return executeChameleonMiniCommand(cmPort, "CONFIG=ISO14443A_READER", timeout);
         else
@@ -338,7 +573,7 @@ public class ChameleonIO {
      * @param timeout
      * @return SerialRespCode status code (OK)
      */
-    public static SerialRespCode enableLiveDebugging(UsbSerialDevice cmPort, int timeout) {
+    public static SerialRespCode enableLiveDebugging(ChameleonSerialPort cmPort, int timeout) {
         return executeChameleonMiniCommand(cmPort, "LOGMODE=LIVE", timeout);
     }
 
@@ -352,9 +587,52 @@ public class ChameleonIO {
      * @return SerialRespCode status code (OK)
      * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_CommandLine.html
      */
-    public static SerialRespCode executeChameleonMiniCommand(UsbSerialDevice cmPort, String rawCmd, int timeout) {
+    public static SerialRespCode executeChameleonMiniCommand(ChameleonSerialPort cmPort, String rawCmd, int timeout) {
         if (cmPort == null || PAUSED)
             return FALSE;
+        writeCommand(cmPort, rawCmd, timeout, false, null, false);
+        return OK;
+    }
+
+    /**
+     * Sends the command to the device and registers a result object which is completed
+     * (by the USB reader callback) once the corresponding response arrives.
+     * Callers which wait on the result should go through awaitResponse so that the request
+     * is dropped from the pending queue when the wait times out.
+     *
+     * @param cmPort
+     * @param rawCmd
+     * @param timeout (negative values sleep before sending the command)
+     * @param expectBinary
+     * @param listener (may be null)
+     * @return ChameleonCommandResult pending result, or null if the command could not be sent
+     * @ref LiveLoggerActivity.getResponseFromDevice
+     * @ref ChameleonIO.awaitResponse
+     */
+    public static ChameleonCommandResult sendCommand(ChameleonSerialPort cmPort, String rawCmd, int timeout,
+                                                     boolean expectBinary, ChameleonCommandResult.OnResultListener listener) {
+        if (cmPort == null || PAUSED)
+            return null;
+        return writeCommand(cmPort, rawCmd, timeout, expectBinary, listener, true);
+    }
+
+    /**
+     * Numbers the command and writes it to the device. The number is assigned and the result
+     * registered under a lock held across the write so that the numbering follows the order in
+     * which the commands reach the device (and a fast response cannot be missed).
+     * If the deadline of every command still awaiting a response has passed, the missing
+     * responses are considered lost and the response count is resynchronized first.
+     *
+     * @param cmPort
+     * @param rawCmd
+     * @param timeout (negative values sleep before sending the command)
+     * @param expectBinary
+     * @param listener (may be null)
+     * @param registerResult whether a caller is going to wait on (or listen for) the response
+     * @return ChameleonCommandResult pending result, or null if registerResult is false
+     */
+    private static ChameleonCommandResult writeCommand(ChameleonSerialPort cmPort, String rawCmd, int timeout, boolean expectBinary,
+                                                       ChameleonCommandResult.OnResultListener listener, boolean registerResult) {
         if (timeout < 0) {
             timeout *= -1;
             SystemClock.sleep(timeout);
@@ -363,8 +641,189 @@ public class ChameleonIO {
         //    setTimeout(cmPort, timeout);
         String deviceConfigCmd = rawCmd + (REVE_BOARD ? "\r\n" : "\n\r");
         byte[] sendBuf = deviceConfigCmd.getBytes(StandardCharsets.UTF_8);
-        cmPort.write(sendBuf);
-        return OK;
+        int respTimeout = Math.max(timeout, TIMEOUT);
+        ChameleonCommandResult cmdResult = null;
+        synchronized(commandWriteLock) {
+            long nowNanos = System.nanoTime();
+            if(numResponsesReceived < numCommandsSent && nowNanos - lastResponseDeadlineNanos > 0) {
+                Log.w(TAG, String.format(Locale.ENGLISH, "Lost %d command responses, resynchronizing", numCommandsSent - numResponsesReceived));
+                numResponsesReceived = numCommandsSent;
+                discardPendingCommands(numCommandsSent + 1);
+            }
+            long seqNum = ++numCommandsSent;
+            lastResponseDeadlineNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(respTimeout);
+            if(registerResult) {
+                cmdResult = new ChameleonCommandResult(rawCmd, seqNum, expectBinary, listener);
+                pendingCommands.add(cmdResult);
+            }
+            cmPort.write(sendBuf);
+        }
+        deviceStatus.notifyCommandSent(rawCmd);
+        return cmdResult;
+    }
+
+    /**
+     * Waits for the response to a command returned by sendCommand. If the wait times out, the
+     * request is removed from the pending queue right away, so its late response (if it ever
+     * arrives) is counted and dropped instead of being matched to a later request.
+     *
+     * @param cmdResult
+     * @param timeout milliseconds
+     * @return boolean whether the response was received
+     */
+    public static boolean awaitResponse(ChameleonCommandResult cmdResult, int timeout) {
+        if(cmdResult.await(timeout))
+            return true;
+        if(pendingCommands.remove(cmdResult))
+            cmdResult.cancel();
+        return cmdResult.isComplete();
+    }
+
+    /**
+     * Determines whether any commands sent to the device are still awaiting a response.
+     * @return boolean
+     */
+    public static boolean hasPendingCommands() {
+        return !pendingCommands.isEmpty();
+    }
+
+    /**
+     * Determines whether the command may alter the state of the device (configuration changes,
+     * resets, transfers, etc.). Such commands are never pipelined behind other requests.
+     * Plain queries are recognized by the trailing '?' character (e.g., CONFIG?, uidmy?).
+     *
+     * @param rawCmd
+     * @return boolean
+     */
+    public static boolean isStateChangingCommand(String rawCmd) {
+        return !rawCmd.trim().endsWith("?");
+    }
+
+    /**
+     * Writes the commands to the device back to back, keeping at most PIPELINE_DEPTH requests
+     * in flight at once, and waits for all of the responses. The device answers in the order the
+     * commands are received, so the responses are matched to the requests in FIFO order.
+     * Commands which change the state of the device are executed serially: the pipeline is
+     * drained before they are written and their response is awaited before continuing.
+     *
+     * @param cmPort
+     * @param rawCmds
+     * @param timeout
+     * @return ChameleonCommandResult[] results in the same order as the commands
+     * @ref ChameleonIO.PIPELINE_DEPTH
+     * @ref ChameleonIO.isStateChangingCommand
+     */
+    public static ChameleonCommandResult[] executeCommandPipeline(ChameleonSerialPort cmPort, String[] rawCmds, int timeout) {
+        ChameleonCommandResult[] cmdResults = new ChameleonCommandResult[rawCmds.length];
+        int nextAwaitIdx = 0;
+        for(int c = 0; c < rawCmds.length; c++) {
+            boolean serialCmd = isStateChangingCommand(rawCmds[c]);
+            int maxInFlight = serialCmd ? 0 : Math.max(1, PIPELINE_DEPTH) - 1;
+            while(c - nextAwaitIdx > maxInFlight)
+                awaitResponse(cmdResults[nextAwaitIdx++], timeout);
+            cmdResults[c] = sendCommand(cmPort, rawCmds[c], timeout, false, null);
+            if(cmdResults[c] == null)
+                cmdResults[c] = ChameleonCommandResult.newCancelledResult(rawCmds[c], false);
+            if(serialCmd)
+                awaitResponse(cmdResults[nextAwaitIdx++], timeout);
+        }
+        while(nextAwaitIdx < rawCmds.length)
+            awaitResponse(cmdResults[nextAwaitIdx++], timeout);
+        return cmdResults;
+    }
+
+    /**
+     * Counts one response read from the device and completes the pending command it answers.
+     * Requests with a lower number never got their response (it was lost or could not be told
+     * apart) and are discarded. Responses to fire-and-forget commands are only counted.
+     *
+     * @param respData
+     * @return boolean whether a pending command consumed the response
+     */
+    public static boolean completePendingCommand(byte[] respData) {
+        long respSeqNum;
+        synchronized(commandWriteLock) {
+            if(numResponsesReceived >= numCommandsSent) {
+                Log.w(TAG, "Unsolicited response from the device: " + new String(respData, StandardCharsets.UTF_8).trim());
+                return false;
+            }
+            respSeqNum = ++numResponsesReceived;
+        }
+        discardPendingCommands(respSeqNum);
+        ChameleonCommandResult cmdResult = pendingCommands.peek();
+        if(cmdResult != null && cmdResult.getSequenceNumber() == respSeqNum && pendingCommands.remove(cmdResult)) {
+            cmdResult.complete(respData);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Cancels the pending requests numbered below the passed sequence number.
+     * @param seqNum
+     */
+    private static void discardPendingCommands(long seqNum) {
+        ChameleonCommandResult cmdResult;
+        while((cmdResult = pendingCommands.peek()) != null && cmdResult.getSequenceNumber() < seqNum) {
+            if(pendingCommands.remove(cmdResult)) {
+                Log.w(TAG, "Discarding command without response: " + cmdResult.getCommand());
+                cmdResult.cancel();
+            }
+        }
+    }
+
+    /**
+     * Splits the serial data into the individual command responses it contains (pipelined
+     * commands often have their responses coalesced into a single USB read) and completes the
+     * corresponding pending commands in order. A new response starts at each line beginning with
+     * a status code (e.g., "100:OK"); any text lines which follow are attached to that response.
+     *
+     * @param respData
+     * @return int number of pending commands completed
+     * @ref LiveLoggerActivity.usbReaderCallback
+     */
+    public static int completePendingCommands(byte[] respData) {
+        if(isAwaitingBinaryResponse())
+            return completePendingCommand(respData) ? 1 : 0;
+        int numCompleted = 0;
+        int respStart = 0, lineStart = 0;
+        while(lineStart < respData.length) {
+            int lineEnd = lineStart;
+            while(lineEnd < respData.length && respData[lineEnd] != '\n' && respData[lineEnd] != '\r')
+                lineEnd++;
+            while(lineEnd < respData.length && (respData[lineEnd] == '\n' || respData[lineEnd] == '\r'))
+                lineEnd++;
+            if(lineStart > respStart && SerialResponseClassifier.parseResponseCode(respData, lineStart, respData.length) != SerialResponseClassifier.NOT_A_RESPONSE) {
+                if(completePendingCommand(Arrays.copyOfRange(respData, respStart, lineStart)))
+                    numCompleted++;
+                respStart = lineStart;
+            }
+            lineStart = lineEnd;
+        }
+        if(respStart < respData.length && completePendingCommand(Arrays.copyOfRange(respData, respStart, respData.length)))
+            numCompleted++;
+        return numCompleted;
+    }
+
+    /**
+     * Determines whether the next expected response carries trailing binary data.
+     * @return boolean
+     */
+    public static boolean isAwaitingBinaryResponse() {
+        ChameleonCommandResult nextCmd = pendingCommands.peek();
+        return nextCmd != null && nextCmd.getSequenceNumber() == numResponsesReceived + 1 && nextCmd.isExpectingBinaryData();
+    }
+
+    /**
+     * Releases all threads waiting on command responses (e.g., when the device is detached).
+     */
+    public static void cancelPendingCommands() {
+        synchronized(commandWriteLock) {
+            numResponsesReceived = numCommandsSent;
+        }
+        ChameleonCommandResult cmdResult;
+        while((cmdResult = pendingCommands.poll()) != null)
+            cmdResult.cancel();
     }
 
 }
\ No newline at end of file
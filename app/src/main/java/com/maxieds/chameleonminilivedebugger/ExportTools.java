@@ -3,15 +3,12 @@ package com.maxieds.chameleonminilivedebugger;
 import android.app.DownloadManager;
 import android.os.Handler;
 import android.util.Log;
-import android.view.View;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Locale;
 
 import static android.content.ContentValues.TAG;
 import static android.content.Context.DOWNLOAD_SERVICE;
@@ -37,20 +34,20 @@ public class ExportTools {
     /**
      * Named XModem connection status bytes.
      */
-    public static final byte BYTE_NAK = (byte) 0x15;
-    public static final byte BYTE_SOH = (byte) 0x01;
-    public static final byte BYTE_ACK = (byte) 0x06;
-    public static final byte BYTE_CAN = (byte) 0x18;
-    public static final byte BYTE_EOF = (byte) 0x1A;
-    public static final byte BYTE_EOT = (byte) 0x04;
-    public static final byte BYTE_ESC = (byte) 0x1B;
+    public static final byte BYTE_NAK = XModemFraming.BYTE_NAK;
+    public static final byte BYTE_SOH = XModemFraming.BYTE_SOH;
+    public static final byte BYTE_ACK = XModemFraming.BYTE_ACK;
+    public static final byte BYTE_CAN = XModemFraming.BYTE_CAN;
+    public static final byte BYTE_EOF = XModemFraming.BYTE_EOF;
+    public static final byte BYTE_EOT = XModemFraming.BYTE_EOT;
+    public static final byte BYTE_ESC = XModemFraming.BYTE_ESC;
 
     /**
      * XModem connection configuration.
      */
-    public static final short XMODEM_BLOCK_SIZE = 128;
-    public static final byte FIRST_FRAME_NUMBER = (byte) 1;
-    public static final byte CHECKSUM_INIT_VALUE = 0;
+    public static final short XMODEM_BLOCK_SIZE = XModemFraming.XMODEM_BLOCK_SIZE;
+    public static final byte FIRST_FRAME_NUMBER = XModemFraming.FIRST_FRAME_NUMBER;
+    public static final byte CHECKSUM_INIT_VALUE = XModemFraming.CHECKSUM_INIT_VALUE;
     public static int MAX_NAK_COUNT = 20; // to match the Chameleon device standard
 
     /**
@@ -139,12 +136,7 @@ public class ExportTools {
      * @return byte checksum value
      */
     public static byte CalcChecksum(byte[] buffer, short byteCount) {
-        byte checksum = CHECKSUM_INIT_VALUE;
-        int bufPos = 0;
-        while(byteCount-- != 0) {
-            checksum += buffer[bufPos++];
-        }
-        return checksum;
+        return XModemFraming.calcChecksum(buffer, 0, byteCount);
     }
 
     /**
@@ -285,9 +277,10 @@ public class ExportTools {
                 System.arraycopy(headerBytes, 0, payloadBytes, 0, 4);
                 fin.read(payloadBytes, 4, dlen);
                 LogEntryUI nextLogEntry = LogEntryUI.newInstance(payloadBytes, "");
-                // highlight the entries so it's clear they're from the device's logs:
-                nextLogEntry.getMainEntryContainer().setBackgroundColor(LiveLoggerActivity.runningActivity.getThemeColorVariant(R.attr.deviceMemoryLogHighlight));
                 LiveLoggerActivity.appendNewLog(nextLogEntry);
+                // highlight the entries so it's clear they're from the device's logs:
+                LiveLoggerActivity.logDataFeedAdapter.setHighlightColor(LiveLoggerActivity.logDataEntries.size() - 1,
+                        LiveLoggerActivity.runningActivity.getThemeColorVariant(R.attr.deviceMemoryLogHighlight));
             }
             fin.close();
         } catch(Exception ioe) {
@@ -423,24 +416,10 @@ public class ExportTools {
      * @return boolean success of the operation
      * @throws Exception (IOException)
      * @ref LiveLoggerActivity.actionButtonWriteFile
+     * @ref TextLogSerializer
      */
     public static boolean writeFormattedLogFile(File fd) throws Exception {
-        Log.i(TAG, String.valueOf("00".getBytes(StandardCharsets.US_ASCII)));
-
-        FileOutputStream fout = new FileOutputStream(fd);
-        for (int vi = 0; vi < LiveLoggerActivity.logDataFeed.getChildCount(); vi++) {
-            View logEntryView = LiveLoggerActivity.logDataFeed.getChildAt(vi);
-            if (LiveLoggerActivity.logDataEntries.get(vi) instanceof LogEntryUI) {
-                String dataLine = ((LogEntryUI) LiveLoggerActivity.logDataEntries.get(vi)).toString() + "\n";
-                fout.write(dataLine.getBytes(StandardCharsets.US_ASCII));
-            }
-            else {
-                String lineStr = "\n## " + ((LogEntryMetadataRecord) LiveLoggerActivity.logDataEntries.get(vi)).toString() + "\n";
-                fout.write(lineStr.getBytes(StandardCharsets.US_ASCII));
-            }
-        }
-        fout.close();
-        return true;
+        return writeLogFile(fd, new TextLogSerializer());
     }
 
     /**
@@ -450,53 +429,83 @@ public class ExportTools {
      * @return boolean success of the operation
      * @throws Exception (IOException)
      * @ref LiveLoggerActivity.actionButtonWriteFile
+     * @ref HTMLLogSerializer
      */
     public static boolean writeHTMLLogFile(File fd) throws Exception {
-        FileOutputStream fout = new FileOutputStream(fd);
-        String htmlHeader = "<html><head><title>Chameleon Mini Live Debugger -- Logging Output</title></head><body>\n\n";
-        fout.write(htmlHeader.getBytes(StandardCharsets.US_ASCII));
-        String defaultBgColor = String.format(Locale.ENGLISH, "#%06X", (0xFFFFFF & LiveLoggerActivity.runningActivity.getThemeColorVariant(R.attr.colorPrimaryDarkLog)));
-        for (int vi = 0; vi < LiveLoggerActivity.logDataFeed.getChildCount(); vi++) {
-            View logEntryView = LiveLoggerActivity.logDataFeed.getChildAt(vi);
-            if (LiveLoggerActivity.logDataEntries.get(vi) instanceof LogEntryUI) {
-                String bgColor = String.format(Locale.ENGLISH, "#%06X", (0xFFFFFF & logEntryView.getDrawingCacheBackgroundColor()));
-                if(bgColor.equals(defaultBgColor))
-                    bgColor = "#ffffff";
-                String lineData = "<code bgcolor='" + bgColor + "'>" + ((LogEntryUI) LiveLoggerActivity.logDataEntries.get(vi)).toString() + "</code><br/>\n";
-                fout.write(lineData.getBytes(StandardCharsets.US_ASCII));
-            }
-            else {
-                String lineData = "<b><code>" + ((LogEntryMetadataRecord) LiveLoggerActivity.logDataEntries.get(vi)).toString() + "</code></b><br/>\n";
-                fout.write(lineData.getBytes(StandardCharsets.US_ASCII));
-            }
-        }
-        String htmlFooter = "</body></html>";
-        fout.write(htmlFooter.getBytes(StandardCharsets.US_ASCII));
-        fout.close();
-        return true;
+        return writeLogFile(fd, new HTMLLogSerializer());
     }
 
     /**
      * Writes the logged data to the binary format returned by the LOGDOWNLOAD command.
+     * The capture journal already holds the LIVE log frames in this format, so when it is
+     * complete the journal file is copied instead.
      * @param fd
      * @return boolean success of the operation
      * @throws Exception (IOException)
      * @ref LiveLoggerActivity.actionButtonWriteFile
+     * @ref BinaryLogSerializer
+     * @ref CaptureJournal.copyTo
      * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
      */
     public static boolean writeBinaryLogFile(File fd) throws Exception {
+        if(LiveLoggerActivity.logDataEntries.isJournalComplete()) {
+            LiveLoggerActivity.logDataEntries.getJournal().copyTo(fd);
+            return true;
+        }
+        return writeLogFile(fd, new BinaryLogSerializer());
+    }
+
+    /**
+     * Writes the logged data to the block-compressed, seekable capture archive format
+     * (the blocks are compressed on a background thread while the records are encoded).
+     * @param fd
+     * @return boolean success of the operation
+     * @throws Exception (IOException)
+     * @ref LiveLoggerActivity.actionButtonWriteFile
+     * @ref ArchiveLogSerializer
+     * @ref CaptureArchive
+     */
+    public static boolean writeArchiveLogFile(File fd) throws Exception {
+        return writeLogFile(fd, new ArchiveLogSerializer());
+    }
+
+    /**
+     * Writes the logged data (in the order displayed in the log tab) with the serializer.
+     * For the HTML format each record is written with its highlight color in the Log tab.
+     * When the export fails before the footer, the archive serializer is aborted so that its
+     * compressor thread and Deflater do not outlive the file.
+     * @param fd
+     * @param logSerializer
+     * @return boolean success of the operation
+     * @throws IOException
+     */
+    private static boolean writeLogFile(File fd, LogSerializer logSerializer) throws IOException {
         FileOutputStream fout = new FileOutputStream(fd);
-        short localTicks = 0;
-        for (int vi = 0; vi < LiveLoggerActivity.logDataFeed.getChildCount(); vi++) {
-            View logEntryView = LiveLoggerActivity.logDataFeed.getChildAt(vi);
-            if (LiveLoggerActivity.logDataEntries.get(vi) instanceof LogEntryUI) {
-                LogEntryUI logEntry = (LogEntryUI) LiveLoggerActivity.logDataEntries.get(vi);
-                byte[] entryBytes = logEntry.packageBinaryLogData(localTicks);
-                localTicks = logEntry.getNextOffsetTime(localTicks);
-                fout.write(entryBytes);
+        boolean footerWritten = false;
+        try {
+            logSerializer.writeHeader(fout);
+            LogRecordStore logStore = LiveLoggerActivity.logDataEntries;
+            for (int vi = 0; vi < logStore.size(); vi++) {
+                if (logStore.isLogFrame(vi)) {
+                    int highlightColor = LiveLoggerActivity.logDataFeedAdapter.getHighlightColor(vi);
+                    if (logSerializer instanceof HTMLLogSerializer && highlightColor != LogFeedAdapter.NO_HIGHLIGHT)
+                        ((HTMLLogSerializer) logSerializer).setRecordBackgroundColor(LogExportFormatter.formatHTMLColor(highlightColor));
+                    DecodedLogFrame logFrame = LogEntryUI.getDecodedLogFrame(logStore, vi);
+                    for(int repeat = 0; repeat < logStore.getRepeatCount(vi); repeat++) // expand the collapsed repeat runs
+                        logSerializer.writeLogRecord(fout, logStore.getRecordId(vi) + repeat, logFrame.withDiffTime(logStore.getRepeatDiffTimeMillis(vi, repeat)));
+                }
+                else {
+                    logSerializer.writeMetadataRecord(fout, LogExportFormatter.formatMetadataRecord(logStore.getMetadataTitle(vi),
+                            logStore.getMetadataText(vi), logStore.getMetadataTimestamp(vi)));
+                }
             }
+            logSerializer.writeFooter(fout);
+            footerWritten = true;
+        } finally {
+            if(!footerWritten && logSerializer instanceof ArchiveLogSerializer)
+                ((ArchiveLogSerializer) logSerializer).abort();
+            fout.close();
         }
-        fout.close();
         return true;
     }
 
@@ -527,9 +536,10 @@ public class ExportTools {
         try {
             outfile.createNewFile();
             FileOutputStream fout = new FileOutputStream(outfile);
-            ChameleonIO.EXPECTING_BINARY_DATA = true;
-            LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, "DUMP_MFU");
-            fout.write(ChameleonIO.DEVICE_RESPONSE_BINARY);
+            ChameleonCommandResult dumpResult = LiveLoggerActivity.getResponseFromDevice(LiveLoggerActivity.serialPort, "DUMP_MFU", true);
+            if(!dumpResult.isComplete())
+                throw new IOException("No response received from the DUMP_MFU command.");
+            fout.write(dumpResult.getResponseBinary());
             fout.flush();
             fout.close();
         } catch(Exception ioe) {
@@ -0,0 +1,371 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <h1>Live Log Ingestion Thread</h1>
+ * Decodes the LIVE log frames received from the device off of the UI thread. The USB reader
+ * callback hands the raw frames to this thread through a lock-free single-producer /
+ * single-consumer ring buffer. The thread decodes the frames (header parsing, entropy,
+ * hex / ascii strings, APDU classification) and posts them to the UI in batches, so the main
+ * looper sees one Runnable per batch rather than one per frame. The decoded frames also go
+ * through the Iso14443SessionDecoder in capture order, which pairs the commands with the
+ * responses and keeps the most recent transactions for the capture statistics.
+ *
+ * When the decoder or the UI cannot keep up with the device, the configured OverloadPolicy
+ * determines how load is shed: block the reader, drop the oldest undecoded frames, or fall
+ * back to raw-only capture (frames are kept undecoded and rendered once the load subsides).
+ *
+ * @ref LiveLoggerActivity.serialFrameReassembler
+ * @ref LogEntryUI.decodeLogFrame
+ * @ref Iso14443SessionDecoder
+ */
+public class LiveLogIngestionThread extends Thread {
+
+    private static final String TAG = LiveLogIngestionThread.class.getSimpleName();
+
+    /**
+     * Sizing of the frame queue and the decoded batches.
+     */
+    public static final int FRAME_QUEUE_CAPACITY = 4096;
+    public static final int MAX_DECODE_BATCH_SIZE = 128;
+    public static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    public static final long FULL_QUEUE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    public static final int MAX_PENDING_UI_FRAMES = 512;
+    public static final int MAX_UI_FRAMES_PER_POST = 64;
+    public static final int MAX_DEFERRED_FRAMES = 65536;
+    public static final int MAX_RECENT_TRANSACTIONS = 16;
+
+    /**
+     * <h1>Overload Policy</h1>
+     * How to shed load when the frames arrive faster than they can be decoded and displayed.
+     */
+    public enum OverloadPolicy {
+        /** Stall the USB reader until the decoder and the UI catch up (no frames are lost). */
+        BLOCK,
+        /** Discard the oldest undecoded frames to keep up with the most recent traffic. */
+        DROP_OLDEST,
+        /** Keep capturing the raw frames but skip decoding and rendering until the load subsides. */
+        RAW_ONLY;
+
+        /**
+         * Looks up the policy by name, falling back to the default.
+         * @param policyName
+         * @return OverloadPolicy
+         */
+        public static OverloadPolicy lookupByName(String policyName) {
+            for(OverloadPolicy policy : values()) {
+                if(policy.name().equals(policyName))
+                    return policy;
+            }
+            return DEFAULT_OVERLOAD_POLICY;
+        }
+    }
+    public static final OverloadPolicy DEFAULT_OVERLOAD_POLICY = OverloadPolicy.DROP_OLDEST;
+
+    /**
+     * Raw frames waiting to be decoded, and decoded frames waiting to be displayed.
+     */
+    private final SpscRingBuffer<byte[]> frameQueue = new SpscRingBuffer<>(FRAME_QUEUE_CAPACITY);
+    private final List<DecodedLogFrame> pendingUiFrames = new ArrayList<>();
+    private final ArrayDeque<byte[]> deferredFrames = new ArrayDeque<>();
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private boolean uiUpdatePosted = false;
+    private volatile boolean isRunning = true;
+    private volatile OverloadPolicy overloadPolicy = DEFAULT_OVERLOAD_POLICY;
+    private volatile boolean isOverloaded = false;
+
+    /**
+     * Pairs the decoded frames into card transactions (only fed from this thread).
+     */
+    private final ArrayDeque<TransactionRecord> recentTransactions = new ArrayDeque<>();
+    private final Iso14443SessionDecoder sessionDecoder = new Iso14443SessionDecoder(new Iso14443SessionDecoder.TransactionListener() {
+        public void onTransaction(TransactionRecord transaction) {
+            synchronized(recentTransactions) {
+                if(recentTransactions.size() >= MAX_RECENT_TRANSACTIONS)
+                    recentTransactions.poll();
+                recentTransactions.add(transaction);
+            }
+        }
+    });
+
+    /**
+     * Queue depth and throughput counters. Each counter has a single writer thread.
+     */
+    private volatile long numFramesReceived = 0;
+    private volatile long numFramesDecoded = 0;
+    private volatile long numInvalidFrames = 0;
+    private volatile long numBatchesPosted = 0;
+    private volatile int maxQueueDepth = 0;
+    private volatile long numFramesRejected = 0;
+    private volatile long numFramesDropped = 0;
+    private volatile long numFramesDeferred = 0;
+    private volatile long numOverloadEvents = 0;
+    private volatile int deferredBacklog = 0;
+    private final long startTimeNanos = System.nanoTime();
+
+    /**
+     * Constructor.
+     */
+    public LiveLogIngestionThread() {
+        super("LiveLogIngestion");
+        setDaemon(true);
+    }
+
+    /**
+     * Hands a complete raw LIVE log frame to the ingestion thread (called only from the USB
+     * reader thread). Waits for space if the decoder has fallen a full queue behind.
+     * @param rawFrame
+     */
+    public void enqueueFrame(byte[] rawFrame) {
+        numFramesReceived++;
+        while(!frameQueue.offer(rawFrame)) {
+            if(!isRunning || overloadPolicy != OverloadPolicy.BLOCK) {
+                // only the consumer may remove the oldest frames, so the newest one is lost here:
+                numFramesRejected++;
+                LockSupport.unpark(this);
+                return;
+            }
+            LockSupport.unpark(this);
+            LockSupport.parkNanos(FULL_QUEUE_PARK_NANOS);
+        }
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Sets how load is shed when the decoder or the UI falls behind.
+     * @param policy
+     */
+    public void setOverloadPolicy(OverloadPolicy policy) {
+        overloadPolicy = policy;
+        synchronized(pendingUiFrames) {
+            pendingUiFrames.notifyAll();
+        }
+        LockSupport.unpark(this);
+    }
+
+    public OverloadPolicy getOverloadPolicy() { return overloadPolicy; }
+
+    /**
+     * Stops the thread (any frames still in the queue are discarded).
+     */
+    public void shutdown() {
+        isRunning = false;
+        LockSupport.unpark(this);
+    }
+
+    /**
+     * Main decoding loop.
+     */
+    @Override
+    public void run() {
+        List<byte[]> rawFrames = new ArrayList<>(MAX_DECODE_BATCH_SIZE);
+        List<DecodedLogFrame> decodedFrames = new ArrayList<>(MAX_DECODE_BATCH_SIZE);
+        while(isRunning) {
+            int queueDepth = frameQueue.size();
+            if(queueDepth > maxQueueDepth)
+                maxQueueDepth = queueDepth;
+            OverloadPolicy policy = overloadPolicy;
+            updateOverloadState(queueDepth);
+            if(isOverloaded && policy == OverloadPolicy.DROP_OLDEST) {
+                // shed the oldest frames until the queue is back down to the low watermark:
+                while(frameQueue.size() > FRAME_QUEUE_CAPACITY / 4 && frameQueue.poll() != null)
+                    numFramesDropped++;
+            }
+            if(frameQueue.drainTo(rawFrames, MAX_DECODE_BATCH_SIZE) == 0 && deferredFrames.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            if(policy == OverloadPolicy.RAW_ONLY && (isOverloaded || !deferredFrames.isEmpty())) {
+                deferRawFrames(rawFrames);
+                if(isOverloaded)
+                    continue;
+                // the load has subsided, so work through the backlog oldest first:
+                for(int f = 0; f < MAX_DECODE_BATCH_SIZE && !deferredFrames.isEmpty(); f++)
+                    rawFrames.add(deferredFrames.poll());
+                deferredBacklog = deferredFrames.size();
+            }
+            else if(!deferredFrames.isEmpty()) { // the policy changed while frames were deferred
+                deferRawFrames(rawFrames);
+                for(int f = 0; f < MAX_DECODE_BATCH_SIZE && !deferredFrames.isEmpty(); f++)
+                    rawFrames.add(deferredFrames.poll());
+                deferredBacklog = deferredFrames.size();
+            }
+            for(byte[] rawFrame : rawFrames) {
+                try {
+                    DecodedLogFrame decodedFrame = LogEntryUI.decodeLogFrame(rawFrame);
+                    if(decodedFrame != null) {
+                        sessionDecoder.consumeFrame(decodedFrame);
+                        decodedFrames.add(decodedFrame);
+                    }
+                    else
+                        numInvalidFrames++;
+                } catch(Exception ex) {
+                    Log.w(TAG, "Unable to decode log frame: " + ex.getMessage());
+                    numInvalidFrames++;
+                }
+            }
+            rawFrames.clear();
+            numFramesDecoded += decodedFrames.size();
+            postDecodedFrames(decodedFrames);
+            decodedFrames.clear();
+        }
+    }
+
+    /**
+     * Determines whether the ingestion path is overloaded, using a high / low watermark on the
+     * frame queue and the backlog of frames waiting to be displayed.
+     * @param queueDepth
+     */
+    private void updateOverloadState(int queueDepth) {
+        int pendingUiCount;
+        synchronized(pendingUiFrames) {
+            pendingUiCount = pendingUiFrames.size();
+        }
+        boolean nowOverloaded;
+        if(!isOverloaded)
+            nowOverloaded = queueDepth >= 3 * FRAME_QUEUE_CAPACITY / 4 || pendingUiCount >= MAX_PENDING_UI_FRAMES;
+        else
+            nowOverloaded = queueDepth > FRAME_QUEUE_CAPACITY / 4 || pendingUiCount > MAX_PENDING_UI_FRAMES / 4;
+        if(nowOverloaded && !isOverloaded) {
+            numOverloadEvents++;
+            Log.w(TAG, "Live capture overloaded (" + overloadPolicy.name() + "): queue depth " + queueDepth + ", pending UI frames " + pendingUiCount);
+        }
+        isOverloaded = nowOverloaded;
+    }
+
+    /**
+     * Stores the raw frames without decoding them (RAW_ONLY policy). The deferred backlog is
+     * bounded, past which the oldest deferred frames are dropped.
+     * @param rawFrames
+     */
+    private void deferRawFrames(List<byte[]> rawFrames) {
+        for(byte[] rawFrame : rawFrames) {
+            if(deferredFrames.size() >= MAX_DEFERRED_FRAMES) {
+                deferredFrames.poll();
+                numFramesDropped++;
+            }
+            deferredFrames.add(rawFrame);
+            numFramesDeferred++;
+        }
+        rawFrames.clear();
+        deferredBacklog = deferredFrames.size();
+    }
+
+    /**
+     * Adds the decoded frames to the pending UI delta and schedules a UI update unless
+     * one is already waiting to run (in which case these frames are picked up by that one).
+     * Under the BLOCK policy this waits while the UI has a full backlog of frames to display;
+     * under DROP_OLDEST the oldest frames waiting to be displayed are discarded instead.
+     * @param decodedFrames
+     */
+    private void postDecodedFrames(List<DecodedLogFrame> decodedFrames) {
+        if(decodedFrames.isEmpty() || LiveLoggerActivity.runningActivity == null)
+            return;
+        synchronized(pendingUiFrames) {
+            while(isRunning && overloadPolicy == OverloadPolicy.BLOCK && pendingUiFrames.size() >= MAX_PENDING_UI_FRAMES) {
+                try {
+                    pendingUiFrames.wait(50);
+                } catch(InterruptedException ie) {
+                    break;
+                }
+            }
+            pendingUiFrames.addAll(decodedFrames);
+            if(overloadPolicy == OverloadPolicy.DROP_OLDEST && pendingUiFrames.size() > MAX_PENDING_UI_FRAMES) {
+                int numDropped = pendingUiFrames.size() - MAX_PENDING_UI_FRAMES;
+                pendingUiFrames.subList(0, numDropped).clear();
+                numFramesDropped += numDropped;
+            }
+            if(uiUpdatePosted)
+                return;
+            uiUpdatePosted = true;
+        }
+        numBatchesPosted++;
+        uiHandler.post(uiUpdateRunnable);
+    }
+
+    /**
+     * Appends the pending batch of decoded frames to the log (runs on the UI thread).
+     */
+    private final Runnable uiUpdateRunnable = new Runnable() {
+        public void run() {
+            List<DecodedLogFrame> uiFrames;
+            boolean haveMoreFrames;
+            synchronized(pendingUiFrames) {
+                // only take a bounded slice per message so the main looper stays responsive:
+                List<DecodedLogFrame> uiSlice = pendingUiFrames.subList(0, Math.min(pendingUiFrames.size(), MAX_UI_FRAMES_PER_POST));
+                uiFrames = new ArrayList<>(uiSlice);
+                uiSlice.clear();
+                haveMoreFrames = !pendingUiFrames.isEmpty();
+                uiUpdatePosted = haveMoreFrames;
+                pendingUiFrames.notifyAll();
+            }
+            for(DecodedLogFrame decodedFrame : uiFrames)
+                LiveLoggerActivity.appendNewLog(LogEntryUI.newInstance(decodedFrame, ""));
+            if(haveMoreFrames) {
+                numBatchesPosted++;
+                uiHandler.post(this);
+            }
+        }
+    };
+
+    /**
+     * Get methods for the ingestion statistics.
+     * @return
+     */
+    public int getQueueDepth() { return frameQueue.size(); }
+    public int getMaxQueueDepth() { return maxQueueDepth; }
+    public long getFramesReceived() { return numFramesReceived; }
+    public long getFramesDecoded() { return numFramesDecoded; }
+    public long getInvalidFrames() { return numInvalidFrames; }
+    public long getBatchesPosted() { return numBatchesPosted; }
+    public long getFramesRejected() { return numFramesRejected; }
+    public long getFramesDropped() { return numFramesDropped + numFramesRejected; }
+    public long getFramesDeferred() { return numFramesDeferred; }
+    public int getDeferredBacklog() { return deferredBacklog; }
+    public long getOverloadEvents() { return numOverloadEvents; }
+    public boolean isOverloaded() { return isOverloaded; }
+    public Iso14443SessionDecoder getSessionDecoder() { return sessionDecoder; }
+
+    /**
+     * The last transactions reconstructed by the session decoder (oldest first).
+     * @return List<TransactionRecord>
+     */
+    public List<TransactionRecord> getRecentTransactions() {
+        synchronized(recentTransactions) {
+            return new ArrayList<>(recentTransactions);
+        }
+    }
+
+    /**
+     * Average number of frames decoded per second since the thread was created.
+     * @return double frames / second
+     */
+    public double getDecodeThroughput() {
+        double elapsedSecs = (System.nanoTime() - startTimeNanos) / 1.0e9;
+        return elapsedSecs <= 0 ? 0.0 : numFramesDecoded / elapsedSecs;
+    }
+
+    /**
+     * Summary of the ingestion counters suitable for display in the log.
+     * @return String
+     */
+    public String getStatsSummary() {
+        return String.format(Locale.ENGLISH, "Frames received: %d, decoded: %d (%.1f/s), invalid: %d\nQueue depth: %d (max %d of %d), UI batches: %d\n" +
+                             "Overload policy: %s%s (%d episodes), dropped: %d, deferred: %d (backlog %d)",
+                             getFramesReceived(), getFramesDecoded(), getDecodeThroughput(), getInvalidFrames(),
+                             getQueueDepth(), getMaxQueueDepth(), frameQueue.capacity(), getBatchesPosted(),
+                             overloadPolicy.name(), isOverloaded ? " [OVERLOADED]" : "", getOverloadEvents(),
+                             getFramesDropped(), getFramesDeferred(), getDeferredBacklog());
+    }
+
+}
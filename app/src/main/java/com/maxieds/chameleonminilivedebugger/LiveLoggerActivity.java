@@ -28,6 +28,7 @@ import android.support.design.widget.TabLayout;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.RecyclerView;
 import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -57,10 +58,9 @@ import com.felhr.usbserial.UsbSerialDevice;
 import com.felhr.usbserial.UsbSerialInterface;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
@@ -94,11 +94,11 @@ public class LiveLoggerActivity extends AppCompatActivity {
      */
     public static LayoutInflater defaultInflater;
     public static Context defaultContext;
-    public static LinearLayout logDataFeed;
-    public static List<LogEntryBase> logDataEntries = new ArrayList<LogEntryBase>();
+    public static RecyclerView logDataFeed;
+    public static LogRecordStore logDataEntries = new LogRecordStore();
+    public static LogFeedAdapter logDataFeedAdapter = new LogFeedAdapter(logDataEntries);
     public static int RECORDID = 0;
     public static boolean logDataFeedConfigured = false;
-    public static ScrollView logScrollView;
     public static SpinnerAdapter spinnerRButtonAdapter;
     public static SpinnerAdapter spinnerRButtonLongAdapter;
     public static SpinnerAdapter spinnerLButtonAdapter;
@@ -116,11 +116,23 @@ public class LiveLoggerActivity extends AppCompatActivity {
     /**
      * Configuration of the USB serial port.
      */
-    public static UsbSerialDevice serialPort;
+    public static ChameleonSerialPort serialPort;
     public static final Semaphore serialPortLock = new Semaphore(1, true);
     boolean usbReceiversRegistered = false;
     public static final int USB_DATA_BITS = 16;
 
+    /**
+     * Decodes the received LIVE log frames off of the UI thread.
+     */
+    public static LiveLogIngestionThread logIngestionThread;
+
+    /**
+     * Set while the code iterates over the rows of the log store and appends to it, so that the
+     * retention policy does not shift the rows under it.
+     * @ref LogRecordStore.applyRetentionPolicy
+     */
+    private static boolean logRetentionDeferred = false;
+
     /**
      * Appends a new log to the logging interface tab.
      * @param logEntry
@@ -134,28 +146,22 @@ public class LiveLoggerActivity extends AppCompatActivity {
             else
                 runningActivity.setStatusIcon(R.id.statusIconNewMsg, R.drawable.statusnewmsg16);
         }
-        logDataFeed.addView(logEntry.getLayoutContainer());
-        logDataEntries.add(logEntry);
+        if(!logRetentionDeferred) {
+            int numEvicted = logDataEntries.applyRetentionPolicy();
+            if(numEvicted > 0)
+                logDataFeedAdapter.onRecordsEvicted(numEvicted);
+        }
+        int numRecords = logDataEntries.size();
+        int row = logEntry.appendToLogStore(logDataEntries);
+        if(logDataEntries.size() == numRecords) { // collapsed into the repeat run of the last record
+            logDataFeedAdapter.onRecordRepeated(row);
+            return;
+        }
         if(logEntry instanceof LogEntryMetadataRecord) { // switch to the log tab to display the results:
-            Log.i(TAG, String.format("LogEntryMetaData record height: %d", logEntry.getLayoutContainer().getHeight()));
             TabLayout tabLayout = (TabLayout) LiveLoggerActivity.runningActivity.findViewById(R.id.tab_layout);
             tabLayout.getTabAt(TAB_LOG).select();
-            if(logScrollView != null) {
-                logScrollView.postDelayed(new Runnable() {
-                    @Override
-                    public void run() {
-                        ScrollView logScroller = (ScrollView) LiveLoggerActivity.runningActivity.findViewById(R.id.log_scroll_view);
-                        //int bottomEltHeight = LiveLoggerActivity.logDataFeed.getChildAt(LiveLoggerActivity.logDataFeed.getChildCount() - 1).getHeight();
-                        LinearLayout lastLogElt = (LinearLayout) logDataFeed.getChildAt(logDataFeed.getChildCount() - 1);
-                        lastLogElt.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
-                        int bottomEltHeight = lastLogElt.getMeasuredHeight();
-                        Log.i(TAG, String.format("ScrollView bottom element height = %d + getBottom() = %d", bottomEltHeight, logScroller.getBottom()));
-                        logScroller.scrollTo(0, logScroller.getBottom() + bottomEltHeight);
-                        //logScroller.fullScroll(View.FOCUS_DOWN);
-                    }
-                }, 100);
-            }
         }
+        logDataFeedAdapter.onRecordAppended(row, logEntry instanceof LogEntryMetadataRecord);
     }
 
     /**
@@ -281,6 +287,14 @@ public class LiveLoggerActivity extends AppCompatActivity {
         getWindow().setNavigationBarColor(getThemeColorVariant(R.attr.colorPrimaryDark));
 
         configureTabViewPager();
+        if(logDataEntries.getJournal() == null)
+            openCaptureJournal();
+        SharedPreferences retentionPrefs = getSharedPreferences(LiveLoggerActivity.TAG, Context.MODE_PRIVATE);
+        LogRetentionPolicy.Preset retentionPreset = LogRetentionPolicy.Preset.lookupByName(retentionPrefs.getString("LogRetentionPreset", LogRetentionPolicy.DEFAULT_PRESET.name()));
+        logDataEntries.setRetentionPolicy(retentionPreset.newPolicy(retentionPrefs.getBoolean("LogRetentionPinMarked", true)));
+        logDataEntries.setCollapseRepeatedFrames(retentionPrefs.getBoolean("CollapseRepeatedFrames", true));
+        logDataFeedAdapter.setCollapseSimilar(retentionPrefs.getBoolean("CollapseSimilarFrames", false));
+        int numRestoredRecords = restoreSessionSnapshot();
 
         if(completeRestart) {
             String[] permissions = {
@@ -295,6 +309,14 @@ public class LiveLoggerActivity extends AppCompatActivity {
             setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_NOSENSOR); // keep app from crashing when the screen rotates
         }
 
+        if(logIngestionThread == null || !logIngestionThread.isAlive()) {
+            logIngestionThread = new LiveLogIngestionThread();
+            SharedPreferences preferences = getSharedPreferences(LiveLoggerActivity.TAG, Context.MODE_PRIVATE);
+            String overloadPolicy = preferences.getString("CaptureOverloadPolicy", LiveLogIngestionThread.DEFAULT_OVERLOAD_POLICY.name());
+            logIngestionThread.setOverloadPolicy(LiveLogIngestionThread.OverloadPolicy.lookupByName(overloadPolicy));
+            logIngestionThread.start();
+        }
+
         if(!usbReceiversRegistered) {
             serialPort = configureSerialPort(null, usbReaderCallback);
             if (serialPort != null)
@@ -318,7 +340,13 @@ public class LiveLoggerActivity extends AppCompatActivity {
                 " on untested devices using Crashlytics. While this will eventually fix most unforseen errors that slip through testing, *PLEASE* " +
                 "if you consistently get a runtime error using a feature notify the developer at maxieds@gmail.com so it can be fixed quickly for all users.\n\n" +
                 "Enjoy the app and using your Chameleon Mini device!";
-        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", userGreeting));
+        if(numRestoredRecords == 0)
+            appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", userGreeting));
+        else
+            appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", String.format(Locale.ENGLISH, "Restored %d log records from the session snapshot in %d ms.",
+                         numRestoredRecords, sessionSnapshot.getLastRestoreMillis())));
+        sessionSnapshotHandler.removeCallbacks(sessionSnapshotRunner);
+        sessionSnapshotHandler.postDelayed(sessionSnapshotRunner, SESSION_SNAPSHOT_INTERVAL);
 
         clearStatusIcon(R.id.statusIconNewMsg);
         clearStatusIcon(R.id.statusIconNewXFer);
@@ -326,6 +354,110 @@ public class LiveLoggerActivity extends AppCompatActivity {
 
     }
 
+    /**
+     * Location of the capture journals (in the app's private storage) and the number of the
+     * most recent session journals that are kept.
+     */
+    public static final String CAPTURE_JOURNAL_DIR = "journal";
+    public static final String CAPTURE_JOURNAL_EXT = ".bin";
+    public static final int MAX_SESSION_JOURNALS = 3;
+
+    /**
+     * Opens a new memory-mapped capture journal for the session and attaches it to the log store
+     * (the oldest session journals are removed). The log is kept in memory only when the journal
+     * cannot be created.
+     * @ref CaptureJournal
+     * @ref LogRecordStore.attachJournal
+     */
+    protected void openCaptureJournal() {
+        File journalDir = new File(getFilesDir(), CAPTURE_JOURNAL_DIR);
+        if(!journalDir.exists() && !journalDir.mkdirs()) {
+            Log.w(TAG, "Unable to create the capture journal directory " + journalDir.getAbsolutePath());
+            return;
+        }
+        File[] journalFiles = journalDir.listFiles();
+        if(journalFiles != null) {
+            Arrays.sort(journalFiles); // the timestamped names sort by their creation time
+            int numJournals = 0;
+            for(File journalFile : journalFiles) {
+                if(journalFile.getName().endsWith(CAPTURE_JOURNAL_EXT))
+                    numJournals++;
+            }
+            for(int jf = 0; jf < journalFiles.length && numJournals >= MAX_SESSION_JOURNALS; jf++) {
+                if(journalFiles[jf].getName().endsWith(CAPTURE_JOURNAL_EXT)) {
+                    journalFiles[jf].delete();
+                    new File(journalFiles[jf].getPath() + CaptureJournal.INDEX_FILE_EXT).delete();
+                    numJournals--;
+                }
+            }
+        }
+        String journalName = "capture-" + Utils.getTimestamp().replace(":", "") + CAPTURE_JOURNAL_EXT;
+        try {
+            logDataEntries.attachJournal(new CaptureJournal(new File(journalDir, journalName)));
+        } catch(IOException ioe) {
+            Log.w(TAG, "Unable to open the capture journal: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Location of the session snapshot (in the app's private storage) and how often it is
+     * updated while the app is running (it is also updated when the activity is paused).
+     */
+    public static final String SESSION_SNAPSHOT_FILE = "session.snap";
+    public static final int SESSION_SNAPSHOT_INTERVAL = 5000;
+    public static final int SESSION_SNAPSHOT_FLUSH_TIMEOUT = 2000;
+    public static SessionSnapshot sessionSnapshot = null;
+    Handler sessionSnapshotHandler = new Handler();
+    Runnable sessionSnapshotRunner = new Runnable() {
+        @Override
+        public void run() {
+            updateSessionSnapshot();
+            sessionSnapshotHandler.postDelayed(sessionSnapshotRunner, SESSION_SNAPSHOT_INTERVAL);
+        }
+    };
+
+    /**
+     * Updates the session snapshot with the records appended to the Log tab since the last
+     * update, the selection and highlight state and the cached device status (the files are
+     * written in the background).
+     * @ref SessionSnapshot.update
+     */
+    protected void updateSessionSnapshot() {
+        if(sessionSnapshot == null)
+            return;
+        logDataFeedAdapter.saveHighlightColors(sessionSnapshot);
+        ChameleonIO.deviceStatus.saveToSnapshot(sessionSnapshot);
+        sessionSnapshot.update(logDataEntries);
+    }
+
+    /**
+     * Restores the Log tab (and the cached device status) from the session snapshot left by the
+     * previous instance of the activity, e.g., after the process was killed in the background or
+     * the theme was changed. The log store must be empty.
+     * @return int number of records restored
+     * @ref SessionSnapshot.restore
+     */
+    protected int restoreSessionSnapshot() {
+        if(sessionSnapshot == null)
+            sessionSnapshot = new SessionSnapshot(new File(getFilesDir(), SESSION_SNAPSHOT_FILE));
+        if(!sessionSnapshot.exists() || logDataEntries.size() > 0)
+            return 0;
+        int numRestored;
+        try {
+            numRestored = sessionSnapshot.restore(logDataEntries);
+        } catch(IOException ioe) {
+            Log.w(TAG, "Unable to restore the session snapshot: " + ioe.getMessage());
+            logDataEntries.clear();
+            logDataFeedAdapter.onRecordsCleared();
+            return 0;
+        }
+        RECORDID = Math.max(RECORDID, logDataEntries.getLastRecordId());
+        logDataFeedAdapter.onRecordsRestored(sessionSnapshot);
+        if(ChameleonIO.deviceStatus.restoreFromSnapshot(sessionSnapshot))
+            ChameleonIO.deviceStatus.displayStatusSettings();
+        return numRestored;
+    }
+
     private static ViewPager.OnPageChangeListener tabChangeListener = null;
 
     /**
@@ -336,9 +468,8 @@ public class LiveLoggerActivity extends AppCompatActivity {
     protected void configureTabViewPager() {
 
         logDataFeedConfigured = false;
-        logDataFeed = new LinearLayout(getApplicationContext());
-        if(logDataEntries != null)
-            logDataEntries.clear();
+        logDataEntries.clear();
+        logDataFeedAdapter.onRecordsCleared();
 
         viewPager = (ViewPager) findViewById(R.id.tab_pager);
         TabFragmentPagerAdapter tfPagerAdapter = new TabFragmentPagerAdapter(getSupportFragmentManager(), LiveLoggerActivity.this);
@@ -479,9 +610,8 @@ public class LiveLoggerActivity extends AppCompatActivity {
         Log.w(TAG, String.valueOf(themeID));
         setTheme(themeID);
         if(canResetBackgroundData && resetBackground) {
-            ((ScrollView) findViewById(R.id.log_scroll_view)).setBackgroundColor(getResources().getColor(R.color.transparent, getTheme()));
-            ((ScrollView) findViewById(R.id.log_scroll_view)).setBackground(getResources().getDrawable(bgResID, getTheme()));
-            LiveLoggerActivity.logDataFeed.setBackgroundColor(getResources().getColor(R.color.transparent, getTheme()));
+            ((RecyclerView) findViewById(R.id.log_data_feed)).setBackgroundColor(getResources().getColor(R.color.transparent, getTheme()));
+            ((RecyclerView) findViewById(R.id.log_data_feed)).setBackground(getResources().getDrawable(bgResID, getTheme()));
         }
     }
 
@@ -518,6 +648,11 @@ public class LiveLoggerActivity extends AppCompatActivity {
                 spEditor.putString("ThemeUI", themeDesc);
                 spEditor.commit();
 
+                // the log is restored from the session snapshot when the activity UI is rebuilt:
+                updateSessionSnapshot();
+                if(sessionSnapshot != null)
+                    sessionSnapshot.flush(SESSION_SNAPSHOT_FLUSH_TIMEOUT);
+
                 // finally, apply the theme settings by (essentially) restarting the activity UI:
                 onCreate(localSavedInstanceState);
                 if(selectedThemeMenuItem != null) {
@@ -558,8 +693,7 @@ public class LiveLoggerActivity extends AppCompatActivity {
         }
         else if(intent.getAction().equals(UsbManager.ACTION_USB_DEVICE_DETACHED)) {
             ChameleonIO.deviceStatus.statsUpdateHandler.removeCallbacks(ChameleonIO.deviceStatus.statsUpdateRunnable);
-            if(ChameleonIO.WAITING_FOR_RESPONSE)
-                ChameleonIO.WAITING_FOR_RESPONSE = false;
+            ChameleonIO.cancelPendingCommands();
             closeSerialPort(serialPort);
             ChameleonIO.USB_CONFIGURED = false;
         }
@@ -572,6 +706,7 @@ public class LiveLoggerActivity extends AppCompatActivity {
     @Override
     public void onPause() {
         super.onPause();
+        updateSessionSnapshot();
         // clear the status icon before the application is abruptly terminated:
         ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).cancel(1);
     }
@@ -605,11 +740,9 @@ public class LiveLoggerActivity extends AppCompatActivity {
      * @param cmPort
      * @param query
      * @return String device response
-     * @ref ChameleonIO.DEVICE_RESPONSE
-     * @ref ChameleonIO.DEVICE_RESPONSE_CODE
-     * @ref LiveLoggerActivity.usbReaderCallback
+     * @ref LiveLoggerActivity.getResponseFromDevice
      */
-    public static String getSettingFromDevice(UsbSerialDevice cmPort, String query) {
+    public static String getSettingFromDevice(ChameleonSerialPort cmPort, String query) {
         return getSettingFromDevice(cmPort, query, null);
     }
 
@@ -618,43 +751,72 @@ public class LiveLoggerActivity extends AppCompatActivity {
      * (sans the preceeding ascii status code).
      * @param cmPort
      * @param query
+     * @param hint value returned if the device does not respond
      * @return String device response
-     * @ref ChameleonIO.DEVICE_RESPONSE
-     * @ref ChameleonIO.DEVICE_RESPONSE_CODE
-     * @ref LiveLoggerActivity.usbReaderCallback
+     * @ref LiveLoggerActivity.getResponseFromDevice
      */
-    public static String getSettingFromDevice(UsbSerialDevice cmPort, String query, String hint) {
-        ChameleonIO.DEVICE_RESPONSE = new String[1];
-        ChameleonIO.DEVICE_RESPONSE[0] = (hint == null) ? "TIMEOUT" : hint;
-        ChameleonIO.LASTCMD = query;
-        if(cmPort == null)
-            return ChameleonIO.DEVICE_RESPONSE[0];
-        ChameleonIO.WAITING_FOR_RESPONSE = true;
-        ChameleonIO.SerialRespCode rcode = ChameleonIO.executeChameleonMiniCommand(cmPort, query, ChameleonIO.TIMEOUT);
-        for(int i = 0; i < ChameleonIO.TIMEOUT / 50; i++) {
-            if(!ChameleonIO.WAITING_FOR_RESPONSE)
-                break;
-            try {
-                Thread.sleep(50);
-            } catch(InterruptedException ie) {
-                ChameleonIO.WAITING_FOR_RESPONSE = false;
-                break;
-            }
-        }
-        String retValue = ChameleonIO.DEVICE_RESPONSE[0];
+    public static String getSettingFromDevice(ChameleonSerialPort cmPort, String query, String hint) {
+        ChameleonCommandResult cmdResult = getResponseFromDevice(cmPort, query, false);
+        return formatSettingResponse(cmdResult, hint);
+    }
+
+    /**
+     * Queries the Chameleon device with several commands at once, which are pipelined to the
+     * device so that the whole batch costs about a single round trip.
+     * @param cmPort
+     * @param queries
+     * @param hints values returned for each query if the device does not respond (may be null)
+     * @return String[] device responses in the order of the queries
+     * @ref ChameleonIO.executeCommandPipeline
+     */
+    public static String[] getSettingsFromDevice(ChameleonSerialPort cmPort, String[] queries, String[] hints) {
+        ChameleonCommandResult[] cmdResults = ChameleonIO.executeCommandPipeline(cmPort, queries, ChameleonIO.TIMEOUT);
+        String[] settings = new String[queries.length];
+        for(int q = 0; q < queries.length; q++)
+            settings[q] = formatSettingResponse(cmdResults[q], hints == null ? null : hints[q]);
+        return settings;
+    }
+
+    /**
+     * Extracts the text returned in response to a query (or the hint if no response was received).
+     * @param cmdResult
+     * @param hint
+     * @return String device response
+     */
+    private static String formatSettingResponse(ChameleonCommandResult cmdResult, String hint) {
+        String retValue = cmdResult.getResponse((hint == null) ? "TIMEOUT" : hint);
         if(retValue.equals("201:INVALID COMMAND USAGE")) {
             retValue += " (Are you in READER mode?)";
         }
         return retValue;
     }
 
+    /**
+     * Sends the command to the Chameleon device and blocks until its response is received
+     * (the waiting thread is woken by the usbReaderCallback as soon as the data arrives).
+     * @param cmPort
+     * @param query
+     * @param expectBinary whether the response is followed by raw binary data
+     * @return ChameleonCommandResult completed result (check isComplete() for timeouts)
+     * @ref ChameleonIO.sendCommand
+     * @ref LiveLoggerActivity.usbReaderCallback
+     */
+    public static ChameleonCommandResult getResponseFromDevice(ChameleonSerialPort cmPort, String query, boolean expectBinary) {
+        ChameleonIO.LASTCMD = query;
+        ChameleonCommandResult cmdResult = ChameleonIO.sendCommand(cmPort, query, ChameleonIO.TIMEOUT, expectBinary, null);
+        if(cmdResult == null)
+            return ChameleonCommandResult.newCancelledResult(query, expectBinary);
+        ChameleonIO.awaitResponse(cmdResult, ChameleonIO.TIMEOUT);
+        return cmdResult;
+    }
+
     /**
      * Establishes the connection between the application and the Chameleon device.
      * @param serialPort
      * @param readerCallback
      * @return the configured serial port (or null on error)
      */
-    public UsbSerialDevice configureSerialPort(UsbSerialDevice serialPort, UsbSerialInterface.UsbReadCallback readerCallback) {
+    public ChameleonSerialPort configureSerialPort(ChameleonSerialPort serialPort, ChameleonSerialPort.ReadCallback readerCallback) {
 
         if(serialPort != null)
             closeSerialPort(serialPort);
@@ -688,15 +850,16 @@ public class LiveLoggerActivity extends AppCompatActivity {
             setStatusIcon(R.id.statusIconUSB, R.drawable.usbdisconnected16);
             return serialPort;
         }
-        serialPort = UsbSerialDevice.createUsbSerialDevice(device, connection);
+        UsbSerialDevice usbSerialDevice = UsbSerialDevice.createUsbSerialDevice(device, connection);
+        serialPort = (usbSerialDevice == null) ? null : new UsbSerialPortAdapter(usbSerialDevice);
         if(serialPort != null && serialPort.open()) {
-            //serialPort.setBaudRate(115200);
-            serialPort.setBaudRate(256000);
-            //serialPort.setDataBits(UsbSerialInterface.DATA_BITS_8);
-            serialPort.setDataBits(USB_DATA_BITS); // slight optimization? ... yes, better
-            serialPort.setStopBits(UsbSerialInterface.STOP_BITS_1);
-            serialPort.setParity(UsbSerialInterface.PARITY_NONE);
-            serialPort.setFlowControl(UsbSerialInterface.FLOW_CONTROL_OFF);
+            //usbSerialDevice.setBaudRate(115200);
+            usbSerialDevice.setBaudRate(256000);
+            //usbSerialDevice.setDataBits(UsbSerialInterface.DATA_BITS_8);
+            usbSerialDevice.setDataBits(USB_DATA_BITS); // slight optimization? ... yes, better
+            usbSerialDevice.setStopBits(UsbSerialInterface.STOP_BITS_1);
+            usbSerialDevice.setParity(UsbSerialInterface.PARITY_NONE);
+            usbSerialDevice.setFlowControl(UsbSerialInterface.FLOW_CONTROL_OFF);
             serialPort.read(readerCallback);
         }
         else {
@@ -723,7 +886,7 @@ public class LiveLoggerActivity extends AppCompatActivity {
      * @param serialPort
      * @return boolean success of operation (true)
      */
-    public boolean closeSerialPort(UsbSerialDevice serialPort) {
+    public boolean closeSerialPort(ChameleonSerialPort serialPort) {
         if(serialPort != null)
             serialPort.close();
         ChameleonIO.PAUSED = true;
@@ -732,18 +895,36 @@ public class LiveLoggerActivity extends AppCompatActivity {
         ChameleonIO.DOWNLOAD = false;
         ChameleonIO.UPLOAD = false;
         ChameleonIO.WAITING_FOR_XMODEM = false;
-        ChameleonIO.WAITING_FOR_RESPONSE = false;
-        ChameleonIO.EXPECTING_BINARY_DATA = false;
+        ChameleonIO.cancelPendingCommands();
         ChameleonIO.LASTCMD = "";
+        serialFrameReassembler.reset();
         setStatusIcon(R.id.statusIconUSB, R.drawable.usbdisconnected16);
         return true;
     }
 
+    /**
+     * Dispatches the complete LIVE log frames and command responses carved out of the
+     * serial data stream.
+     */
+    public LogFrameReassembler serialFrameReassembler = new LogFrameReassembler(new LogFrameReassembler.FrameListener() {
+        @Override
+        public void onLogFrame(byte[] frameData) {
+            logIngestionThread.enqueueFrame(frameData);
+        }
+        @Override
+        public void onCommandResponse(byte[] respData) {
+            if(ChameleonIO.WAITING_FOR_XMODEM && respData.length >= 11 && (new String(respData, 0, 11)).equals("110:WAITING"))
+                ChameleonIO.WAITING_FOR_XMODEM = false;
+            // every response is counted (fire-and-forget commands included) to keep them matched to the requests:
+            ChameleonIO.completePendingCommands(respData);
+        }
+    });
+
     /**
      * Sets up the handling of the serial data responses received from the device
      * (command responses and spontaneous LIVE log data).
      */
-    public UsbSerialInterface.UsbReadCallback usbReaderCallback = new UsbSerialInterface.UsbReadCallback() {
+    public ChameleonSerialPort.ReadCallback usbReaderCallback = new ChameleonSerialPort.ReadCallback() {
         // this is what's going to get called when the LIVE config spontaneously prints its log data to console:
         @Override
         public void onReceivedData(byte[] liveLogData) {
@@ -754,47 +935,23 @@ public class LiveLoggerActivity extends AppCompatActivity {
             }
             else if(ChameleonIO.DOWNLOAD) {
                 //Log.i(TAG, "USBReaderCallback / DOWNLOAD");
+                serialFrameReassembler.reset();
                 ExportTools.performXModemSerialDownload(liveLogData);
                 return;
             }
             else if(ChameleonIO.UPLOAD) {
                 //Log.i(TAG, "USBReaderCallback / UPLOAD");
+                serialFrameReassembler.reset();
                 ExportTools.performXModemSerialUpload(liveLogData);
                 return;
             }
-            else if(ChameleonIO.WAITING_FOR_XMODEM) {
-                //Log.i(TAG, "USBReaderCallback / WAITING_FOR_XMODEM");
-                String strLogData = new String(liveLogData);
-                if(strLogData.length() >= 11 && strLogData.substring(0, 11).equals("110:WAITING")) {
-                    ChameleonIO.WAITING_FOR_XMODEM = false;
-                    return;
-                }
-            }
-            else if(ChameleonIO.WAITING_FOR_RESPONSE && ChameleonIO.isCommandResponse(liveLogData)) {
-                String[] strLogData = (new String(liveLogData)).split("[\n\r]+");
-                //Log.i(TAG, strLogData);
-                ChameleonIO.DEVICE_RESPONSE_CODE = strLogData[0];
-                if(strLogData.length >= 2)
-                     ChameleonIO.DEVICE_RESPONSE = Arrays.copyOfRange(strLogData, 1, strLogData.length);
-                else
-                    ChameleonIO.DEVICE_RESPONSE[0] = strLogData[0];
-                if(ChameleonIO.EXPECTING_BINARY_DATA) {
-                    int binaryBufSize = liveLogData.length - ChameleonIO.DEVICE_RESPONSE_CODE.length() - 2;
-                    ChameleonIO.DEVICE_RESPONSE_BINARY = new byte[binaryBufSize];
-                    System.arraycopy(liveLogData, liveLogData.length - binaryBufSize, ChameleonIO.DEVICE_RESPONSE_BINARY, 0, binaryBufSize);
-                    ChameleonIO.EXPECTING_BINARY_DATA = false;
-                }
-                ChameleonIO.WAITING_FOR_RESPONSE = false;
+            else if(ChameleonIO.isAwaitingBinaryResponse()) {
+                // raw binary data follows the status line (e.g., DUMP_MFU), so it cannot be framed:
+                serialFrameReassembler.reset();
+                ChameleonIO.completePendingCommands(liveLogData);
                 return;
             }
-            final LogEntryUI nextLogEntry = LogEntryUI.newInstance(liveLogData, "");
-            if(nextLogEntry != null) {
-                runOnUiThread(new Runnable() {
-                    public void run() {
-                        appendNewLog(nextLogEntry);
-                    }
-                });
-            }
+            serialFrameReassembler.append(liveLogData);
         }
     };
 
@@ -805,7 +962,19 @@ public class LiveLoggerActivity extends AppCompatActivity {
      */
     public void actionButtonExit(View view) {
         ChameleonIO.deviceStatus.statsUpdateHandler.removeCallbacks(ChameleonIO.deviceStatus.statsUpdateRunnable);
+        ChameleonIO.deviceStatus.statsUpdateHandler.removeCallbacks(ChameleonIO.deviceStatus.statsEagerUpdateRunnable);
         closeSerialPort(serialPort);
+        sessionSnapshotHandler.removeCallbacks(sessionSnapshotRunner);
+        if(sessionSnapshot != null) { // the session ends when the user exits the app
+            sessionSnapshot.discard();
+            sessionSnapshot.close();
+            sessionSnapshot = null;
+        }
+        try {
+            logDataEntries.closeJournal();
+        } catch(IOException ioe) {
+            Log.w(TAG, "Unable to close the capture journal: " + ioe.getMessage());
+        }
         ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).cancel(1);
         finish();
     }
@@ -882,40 +1051,125 @@ public class LiveLoggerActivity extends AppCompatActivity {
         if(RECORDID > 0) {
             logDataEntries.clear();
             RECORDID = 0;
-            logDataFeed.removeAllViewsInLayout();
+            logDataFeedAdapter.onRecordsCleared();
         }
     }
 
     /**
-     * Removes repeated log entries in sequential order in the logging tab.
+     * Sets how the live capture sheds load when the log frames arrive faster than they can
+     * be decoded and displayed (the choice is stored for when the app reopens).
+     * @param view pressed Button
+     * @ref LiveLogIngestionThread.OverloadPolicy
+     */
+    public void actionButtonSetOverloadPolicy(View view) {
+        LiveLogIngestionThread.OverloadPolicy overloadPolicy = LiveLogIngestionThread.OverloadPolicy.lookupByName(((Button) view).getTag().toString());
+        logIngestionThread.setOverloadPolicy(overloadPolicy);
+        SharedPreferences sharedPrefs = getSharedPreferences(LiveLoggerActivity.TAG, Context.MODE_PRIVATE);
+        SharedPreferences.Editor spEditor = sharedPrefs.edit();
+        spEditor.putString("CaptureOverloadPolicy", overloadPolicy.name());
+        spEditor.commit();
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", "Live capture overload policy set to " + overloadPolicy.name() + "."));
+    }
+
+    /**
+     * Sets the bounds of the retention policy of the Log tab records, or toggles whether the
+     * checked and highlighted records are exempt from eviction (the choices are stored for when
+     * the app reopens).
+     * @param view pressed Button
+     * @ref LogRetentionPolicy.Preset
+     */
+    public void actionButtonSetRetentionPolicy(View view) {
+        String retentionAction = ((Button) view).getTag().toString();
+        SharedPreferences sharedPrefs = getSharedPreferences(LiveLoggerActivity.TAG, Context.MODE_PRIVATE);
+        LogRetentionPolicy.Preset retentionPreset = LogRetentionPolicy.Preset.lookupByName(sharedPrefs.getString("LogRetentionPreset", LogRetentionPolicy.DEFAULT_PRESET.name()));
+        boolean pinMarkedRecords = sharedPrefs.getBoolean("LogRetentionPinMarked", true);
+        if(retentionAction.equals("PIN_MARKED"))
+            pinMarkedRecords = !pinMarkedRecords;
+        else
+            retentionPreset = LogRetentionPolicy.Preset.lookupByName(retentionAction);
+        SharedPreferences.Editor spEditor = sharedPrefs.edit();
+        spEditor.putString("LogRetentionPreset", retentionPreset.name());
+        spEditor.putBoolean("LogRetentionPinMarked", pinMarkedRecords);
+        spEditor.commit();
+        LogRetentionPolicy retentionPolicy = retentionPreset.newPolicy(pinMarkedRecords);
+        logDataEntries.setRetentionPolicy(retentionPolicy);
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", "Log retention policy set to " + retentionPolicy.toString() + "."));
+    }
+
+    /**
+     * Toggles the run-length collapsing of the repeated frames as they are captured (the choice
+     * is stored for when the app reopens). The collapsed runs are expanded by tapping them in
+     * the Log tab.
+     * @param view pressed Button
+     * @ref LogRecordStore.setCollapseRepeatedFrames
+     */
+    public void actionButtonToggleCollapseRepeats(View view) {
+        boolean collapseRepeats = !logDataEntries.isCollapsingRepeatedFrames();
+        logDataEntries.setCollapseRepeatedFrames(collapseRepeats);
+        SharedPreferences sharedPrefs = getSharedPreferences(LiveLoggerActivity.TAG, Context.MODE_PRIVATE);
+        SharedPreferences.Editor spEditor = sharedPrefs.edit();
+        spEditor.putBoolean("CollapseRepeatedFrames", collapseRepeats);
+        spEditor.commit();
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", "Repeated frames are " + (collapseRepeats ? "collapsed into runs as they are captured." : "no longer collapsed.")));
+    }
+
+    /**
+     * Appends the live capture ingestion counters (throughput, queue depth, dropped and
+     * deferred frames), the serial bus time used by the device status polling, the size of
+     * the Log tab feed and of the capture journal, the APDU classification cache hit rate, the
+     * card sessions and transaction latencies with the most recent transactions, the
+     * reconstructed log timeline, the records evicted by the retention policy and the session
+     * snapshot writes to the log.
+     * @param view pressed Button
+     */
+    public void actionButtonCaptureStats(View view) {
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", logIngestionThread.getStatsSummary()));
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", ChameleonIO.deviceStatus.getStatsSummary()));
+        DerivedFieldCache derivedFieldCache = LogEntryUI.getDerivedFieldCache();
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", String.format(Locale.ENGLISH, "Log feed: %d records (%.1f bytes/record), %d repeated frames collapsed, %d similar frames, %d row views created\n" +
+                     "Derived field cache: %d entries (%d / %d KB), hits: %d, misses: %d, evictions: %d",
+                     logDataEntries.size(), logDataEntries.getBytesPerEntry(), logDataEntries.getCollapsedFrames(), logDataEntries.getSimilarFrames(), logDataFeedAdapter.getViewsCreated(),
+                     derivedFieldCache.size(), derivedFieldCache.getCacheBytes() / 1024, derivedFieldCache.getMaxCacheBytes() / 1024,
+                     derivedFieldCache.getHits(), derivedFieldCache.getMisses(), derivedFieldCache.getEvictions())));
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", ApduUtils.getApduClassifier().getCacheStatsSummary()));
+        StringBuilder sessionSummary = new StringBuilder(logIngestionThread.getSessionDecoder().getStatsSummary());
+        for(TransactionRecord transaction : logIngestionThread.getRecentTransactions())
+            sessionSummary.append("\n").append(transaction.getSummary());
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", sessionSummary.toString()));
+        SystickTimeline systickTimeline = ((LiveLogDecoder) LogEntryUI.getLogDecoder()).getSystickTimeline();
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", String.format(Locale.ENGLISH, "Log timeline: %.3f seconds (%d systick wraparounds recovered from the host clock)",
+                     logDataEntries.getTimelineMillis() / 1000.0, systickTimeline.getMissedWraps())));
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", logDataEntries.getRetentionSummary()));
+        if(sessionSnapshot != null)
+            appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", sessionSnapshot.getStatsSummary()));
+        CaptureJournal captureJournal = logDataEntries.getJournal();
+        if(captureJournal != null) {
+            String journalError = logDataEntries.getJournalError();
+            appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", String.format(Locale.ENGLISH, "%s\nPayloads spilled to the journal: %d KB%s",
+                         captureJournal.getStatsSummary(), logDataEntries.getSpilledPayloadBytes() / 1024,
+                         journalError == null ? "" : "\nJournaling stopped: " + journalError)));
+        }
+    }
+
+    /**
+     * Toggles hiding the repeated log entries in sequential order in the logging tab.
      * Useful for pretty-fying / cleaning up the log entries when a device posts repeated
-     * APDU command requests, or zero bits.
+     * APDU command requests, or zero bits. The entries are marked by the log store as they
+     * arrive, so the view stays collapsed while the capture runs (the setting is stored for
+     * when the app reopens).
      * @param view
+     * @ref LogRecordStore.FLAG_SIMILAR
      */
     public void actionButtonCollapseSimilar(View view) {
-        if(RECORDID == 0)
-            return;
-        byte[] curBits = null;
-        boolean newBits = true;
-        for(int v = 0; v < logDataEntries.size(); v++) {
-            LogEntryBase lde = logDataEntries.get(v);
-            if(lde instanceof LogEntryMetadataRecord) {
-                newBits = true;
-                continue;
-            }
-            else if(lde instanceof LogEntryUI && newBits) {
-                byte[] nextDataPattern = ((LogEntryUI) lde).getEntryData();
-                curBits = new byte[nextDataPattern.length];
-                System.arraycopy(nextDataPattern, 0, curBits, 0, nextDataPattern.length);
-                newBits = false;
-            }
-            else if(Arrays.equals(curBits, ((LogEntryUI) lde).getEntryData())) {
-                logDataFeed.getChildAt(v).setVisibility(LinearLayout.GONE);
-            }
-            else {
-                newBits = true;
-            }
-        }
+        boolean collapseSimilar = !logDataFeedAdapter.isCollapsingSimilar();
+        logDataFeedAdapter.setCollapseSimilar(collapseSimilar);
+        SharedPreferences sharedPrefs = getSharedPreferences(LiveLoggerActivity.TAG, Context.MODE_PRIVATE);
+        SharedPreferences.Editor spEditor = sharedPrefs.edit();
+        spEditor.putBoolean("CollapseSimilarFrames", collapseSimilar);
+        spEditor.commit();
+        appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("STATUS", collapseSimilar ?
+                     String.format(Locale.ENGLISH, "Similar frames are hidden as they are captured (%d hidden so far).", logDataEntries.getSimilarFrames()) :
+                     "Similar frames are shown again."));
     }
 
     /**
@@ -1082,13 +1336,9 @@ public class LiveLoggerActivity extends AppCompatActivity {
      */
     public void actionButtonSelectedHighlight(View view) {
         int highlightColor = Color.parseColor(((Button) view).getTag().toString());
-        for (int vi = 0; vi < logDataFeed.getChildCount(); vi++) {
-            View logEntryView = logDataFeed.getChildAt(vi);
-            if (logDataEntries.get(vi) instanceof LogEntryUI) {
-                boolean isChecked = ((CheckBox) logEntryView.findViewById(R.id.entrySelect)).isChecked();
-                if (isChecked)
-                    logEntryView.setBackgroundColor(highlightColor);
-            }
+        for (int vi = 0; vi < logDataEntries.size(); vi++) {
+            if (logDataEntries.isLogFrame(vi) && logDataEntries.hasRecordFlag(vi, LogRecordStore.FLAG_SELECTED))
+                logDataFeedAdapter.setHighlightColor(vi, highlightColor);
         }
     }
 
@@ -1097,12 +1347,8 @@ public class LiveLoggerActivity extends AppCompatActivity {
      * @param view
      */
     public void actionButtonUncheckAll(View view) {
-        for (int vi = 0; vi < logDataFeed.getChildCount(); vi++) {
-            View logEntryView = logDataFeed.getChildAt(vi);
-            if (logDataEntries.get(vi) instanceof LogEntryUI) {
-                ((CheckBox) logEntryView.findViewById(R.id.entrySelect)).setChecked(false);
-            }
-        }
+        logDataEntries.clearRecordFlag(LogRecordStore.FLAG_SELECTED);
+        logDataFeedAdapter.notifyDataSetChanged();
     }
 
     /**
@@ -1114,20 +1360,16 @@ public class LiveLoggerActivity extends AppCompatActivity {
     public void actionButtonSetSelectedXFer(View view) {
 
         int directionFlag = Integer.parseInt(((Button) view).getTag().toString());
-        Drawable dirArrowIcon = getResources().getDrawable(R.drawable.xfer16);
+        int dataDirection = LogUtils.DATADIR_BIDIRECTIONAL;
         if(directionFlag == 1)
-            dirArrowIcon = getResources().getDrawable(R.drawable.incoming16v2);
+            dataDirection = LogUtils.DATADIR_INCOMING;
         else if(directionFlag == 2)
-            dirArrowIcon = getResources().getDrawable(R.drawable.outgoing16v2);
-
-        for (int vi = 0; vi < logDataFeed.getChildCount(); vi++) {
-            View logEntryView = logDataFeed.getChildAt(vi);
-            if (logDataEntries.get(vi) instanceof LogEntryUI) {
-                boolean isChecked = ((CheckBox) logEntryView.findViewById(R.id.entrySelect)).isChecked();
-                if (isChecked) {
-                    ImageView xferMarker = (ImageView) logEntryView.findViewById(R.id.inputDirIndicatorImg);
-                    xferMarker.setImageDrawable(dirArrowIcon);
-                }
+            dataDirection = LogUtils.DATADIR_OUTGOING;
+
+        for (int vi = 0; vi < logDataEntries.size(); vi++) {
+            if (logDataEntries.isLogFrame(vi) && logDataEntries.hasRecordFlag(vi, LogRecordStore.FLAG_SELECTED)) {
+                logDataEntries.setDataDirection(vi, dataDirection);
+                logDataFeedAdapter.onRecordChanged(vi);
             }
         }
 
@@ -1139,23 +1381,32 @@ public class LiveLoggerActivity extends AppCompatActivity {
      */
     public void actionButtonProcessBatch(View view) {
         String actionFlag = ((Button) view).getTag().toString();
-        for (int vi = 0; vi < logDataFeed.getChildCount(); vi++) {
-            View logEntryView = logDataFeed.getChildAt(vi);
-            if (logDataEntries.get(vi) instanceof LogEntryUI) {
-                boolean isChecked = ((CheckBox) logEntryView.findViewById(R.id.entrySelect)).isChecked();
-                int recordIdx = ((LogEntryUI) logDataEntries.get(vi)).getRecordIndex();
+        int numRecords = logDataEntries.size();
+        logRetentionDeferred = true;
+        try {
+            processBatch(actionFlag, numRecords);
+        } finally {
+            logRetentionDeferred = false;
+        }
+    }
+
+    private void processBatch(String actionFlag, int numRecords) {
+        for (int vi = 0; vi < numRecords; vi++) {
+            if (logDataEntries.isLogFrame(vi)) {
+                boolean isChecked = logDataEntries.hasRecordFlag(vi, LogRecordStore.FLAG_SELECTED);
+                int recordIdx = logDataEntries.getRecordId(vi);
                 if (serialPort != null && isChecked && actionFlag.equals("SEND")) {
-                    String byteString = ((LogEntryUI) logDataEntries.get(vi)).getPayloadData();
+                    String byteString = LogEntryUI.getPayloadData(logDataEntries, vi);
                     appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("CARD INFO", "Sending: " + byteString + "..."));
                     ChameleonIO.executeChameleonMiniCommand(serialPort, "SEND " + byteString, ChameleonIO.TIMEOUT);
                 }
                 else if(serialPort != null && isChecked && actionFlag.equals("SEND_RAW")) {
-                    String byteString = ((LogEntryUI) logDataEntries.get(vi)).getPayloadData();
+                    String byteString = LogEntryUI.getPayloadData(logDataEntries, vi);
                     appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("CARD INFO", "Sending: " + byteString + "..."));
                     ChameleonIO.executeChameleonMiniCommand(serialPort, "SEND_RAW " + byteString, ChameleonIO.TIMEOUT);
                 }
                 else if(serialPort != null && isChecked && actionFlag.equals("CLONE_UID")) {
-                    String uid = ((LogEntryUI) logDataEntries.get(vi)).getPayloadData();
+                    String uid = LogEntryUI.getPayloadData(logDataEntries, vi);
                     if(uid.length() != 2 * ChameleonIO.deviceStatus.UIDSIZE) {
                         appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("ERROR", String.format("Number of bytes for record #%d != the required %d bytes!", recordIdx, ChameleonIO.deviceStatus.UIDSIZE)));
                     }
@@ -1164,15 +1415,16 @@ public class LiveLoggerActivity extends AppCompatActivity {
                     }
                 }
                 else if(isChecked && actionFlag.equals("PRINT")) {
-                    byte[] rawBytes = ((LogEntryUI) logDataEntries.get(vi)).getEntryData();
+                    byte[] rawBytes = logDataEntries.getPayload(vi);
                     appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("PRINT", Utils.bytes2Hex(rawBytes) + "\n------\n" + Utils.bytes2Ascii(rawBytes)));
                 }
                 else if(isChecked && actionFlag.equals("HIDE")) {
-                    logEntryView.setVisibility(View.GONE);
+                    logDataEntries.setRecordFlag(vi, LogRecordStore.FLAG_HIDDEN, true);
+                    logDataFeedAdapter.onRecordChanged(vi);
                 }
                 else if(isChecked && actionFlag.equals("COPY")) {
                     EditText etUserBytes = (EditText) findViewById(R.id.userInputFormattedBytes);
-                    String appendBytes = Utils.bytes2Hex(((LogEntryUI) logDataEntries.get(vi)).getEntryData());
+                    String appendBytes = Utils.bytes2Hex(logDataEntries.getPayload(vi));
                     etUserBytes.append(appendBytes);
                 }
             }
@@ -1266,8 +1518,6 @@ public class LiveLoggerActivity extends AppCompatActivity {
             ChameleonIO.TIMEOUT = 5000; // extend the timeout on these long commands
             String mfuBytes = getSettingFromDevice(serialPort, cmCmd);
             ChameleonIO.TIMEOUT = oldTimeout;
-            ChameleonIO.DEVICE_RESPONSE[0] = Arrays.toString(ChameleonIO.DEVICE_RESPONSE);
-            ChameleonIO.DEVICE_RESPONSE[0] = ChameleonIO.DEVICE_RESPONSE[0].substring(1, ChameleonIO.DEVICE_RESPONSE[0].length() - 1);
             mfuBytes = mfuBytes.replace(",", "");
             mfuBytes = mfuBytes.replace("\n", "");
             mfuBytes = mfuBytes.replace("\r", "");
@@ -1285,8 +1535,8 @@ public class LiveLoggerActivity extends AppCompatActivity {
     }
 
     /**
-     * Wrapper around the first three buttons at the top of the Export tab for writing the
-     * logs to Plaintext / HTML / native binary files formats.
+     * Wrapper around the first four buttons at the top of the Export tab for writing the
+     * logs to Plaintext / HTML / native binary / capture archive files formats.
      * @param view pressed Button
      */
     public void actionButtonWriteFile(View view) {
@@ -1321,6 +1571,10 @@ public class LiveLoggerActivity extends AppCompatActivity {
                 mimeType = "application/octet-stream";
                 ExportTools.writeBinaryLogFile(outfile);
             }
+            else if (fileType.equals("cmla")) {
+                mimeType = "application/octet-stream";
+                ExportTools.writeArchiveLogFile(outfile);
+            }
         } catch(Exception ioe) {
             appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("ERROR", ioe.getMessage()));
             LiveLoggerActivity.runningActivity.setStatusIcon(R.id.statusIconUlDl, R.drawable.statusxferfailed16);
@@ -1370,9 +1624,12 @@ public class LiveLoggerActivity extends AppCompatActivity {
         ExportTools.cloneBinaryDumpMFU(Utils.hexString2Bytes(mfuBytes));*/
         String dumpMFUOutput = getSettingFromDevice(serialPort, "DUMP_MFU");
         appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("DUMP_MFU", dumpMFUOutput));
-        ChameleonIO.executeChameleonMiniCommand(serialPort, "CLONE", ChameleonIO.TIMEOUT);
-        String cloneCmdOutput = ChameleonIO.DEVICE_RESPONSE_CODE;
-        cloneCmdOutput += Arrays.asList(ChameleonIO.DEVICE_RESPONSE).toString().replaceAll("(^\\[|\\]$)", "").replace(", ", "\n");
+        ChameleonCommandResult cloneResult = getResponseFromDevice(serialPort, "CLONE", false);
+        String cloneCmdOutput = "TIMEOUT";
+        if(cloneResult.isComplete()) {
+            cloneCmdOutput = cloneResult.getResponseCode();
+            cloneCmdOutput += Arrays.asList(cloneResult.getResponseData()).toString().replaceAll("(^\\[|\\]$)", "").replace(", ", "\n");
+        }
         appendNewLog(LogEntryMetadataRecord.createDefaultEventRecord("CLONE", cloneCmdOutput));
     }
 
@@ -1578,25 +1835,44 @@ public class LiveLoggerActivity extends AppCompatActivity {
             searchString = searchString.replace("[\n\t\r]+", "").replaceAll("..(?!$)", "$0 ");
         }
 
+        // restrict the search to the records logged in the time range (seconds on the log timeline):
+        int fromRow = 0, toRow = logDataEntries.size();
+        String searchTimeRange = ((TextView) findViewById(R.id.userInputSearchTimeRange)).getText().toString().trim();
+        if(!searchTimeRange.equals("")) {
+            String[] rangeBounds = searchTimeRange.split("-", -1);
+            try {
+                if(rangeBounds.length != 2)
+                    throw new NumberFormatException();
+                if(!rangeBounds[0].trim().equals(""))
+                    fromRow = logDataEntries.findRowAtLogTime((long) (1000 * Double.parseDouble(rangeBounds[0].trim())));
+                if(!rangeBounds[1].trim().equals(""))
+                    toRow = logDataEntries.findRowAtLogTime((long) (1000 * Double.parseDouble(rangeBounds[1].trim())) + 1);
+            } catch(NumberFormatException nfe) {
+                searchResultsContainer.addView(LogEntryMetadataRecord.createDefaultEventRecord("ERROR", "The time range must be given in seconds, e.g., 10-25.5").getLayoutContainer());
+                return;
+            }
+        }
+
         boolean searchStatus = ((CheckBox) findViewById(R.id.entrySearchIncludeStatus)).isChecked();
         boolean searchAPDU = ((CheckBox) findViewById(R.id.entrySearchAPDU)).isChecked();
         boolean searchLogPayload = ((CheckBox) findViewById(R.id.entrySearchRawLogData)).isChecked();
         boolean searchLogHeaders = ((CheckBox) findViewById(R.id.entrySearchLogHeaders)).isChecked();
         int matchCount = 0;
         Log.i(TAG, "Searching for: " + searchString);
-        for(int vi = 0; vi < logDataEntries.size(); vi++) {
-            if (logDataEntries.get(vi) instanceof LogEntryMetadataRecord) {
-                if (searchStatus && logDataEntries.get(vi).toString().contains(searchString)) {
-                    searchResultsContainer.addView(logDataEntries.get(vi).cloneLayoutContainer());
+        for(int vi = fromRow; vi < toRow; vi++) {
+            if (!logDataEntries.isLogFrame(vi)) {
+                String metadataRecord = LogExportFormatter.formatMetadataRecord(logDataEntries.getMetadataTitle(vi),
+                        logDataEntries.getMetadataText(vi), logDataEntries.getMetadataTimestamp(vi));
+                if (searchStatus && metadataRecord.contains(searchString)) {
+                    searchResultsContainer.addView(LogEntryMetadataRecord.newInstance(logDataEntries, vi).getLayoutContainer());
                     matchCount++;
                 }
                 continue;
             }
-            Log.i(TAG, ((LogEntryUI) logDataEntries.get(vi)).getPayloadDataString(selectedBytes));
-            if (searchAPDU && ((LogEntryUI) logDataEntries.get(vi)).getAPDUString().contains(searchString) ||
-                    searchLogHeaders && ((LogEntryUI) logDataEntries.get(vi)).getLogCodeName().contains(searchString) ||
-                    searchLogPayload && ((LogEntryUI) logDataEntries.get(vi)).getPayloadDataString(selectedBytes).contains(searchString)) {
-                LinearLayout searchResult = (LinearLayout) logDataEntries.get(vi).cloneLayoutContainer();
+            if (searchAPDU && LogEntryUI.getAPDUString(logDataEntries, vi).contains(searchString) ||
+                    searchLogHeaders && LogEntryUI.getLogCodeName(logDataEntries, vi).contains(searchString) ||
+                    searchLogPayload && LogEntryUI.getPayloadDataString(logDataEntries, vi, selectedBytes).contains(searchString)) {
+                LinearLayout searchResult = (LinearLayout) LogEntryUI.newInstance(logDataEntries, vi).getLayoutContainer();
                 searchResult.setVisibility(LinearLayout.VISIBLE);
                 searchResult.setEnabled(true);
                 searchResult.setMinimumWidth(350);
@@ -1609,7 +1885,7 @@ public class LiveLoggerActivity extends AppCompatActivity {
         }
         double diffSeconds = (double) (System.currentTimeMillis() - startTime) / 1000.0;
         String resultStr = String.format(Locale.ENGLISH, "Explored #%d logs in %4g seconds for a total of #%d matching records.",
-                logDataEntries.size(), diffSeconds, matchCount);
+                toRow - fromRow, diffSeconds, matchCount);
         searchResultsContainer.addView(LogEntryMetadataRecord.createDefaultEventRecord("SEARCH", resultStr).getLayoutContainer());
     }
 
@@ -21,4 +21,5 @@ public abstract class LogEntryBase {
     public abstract String toString();
     public abstract View getLayoutContainer();
     public abstract View cloneLayoutContainer();
+    public abstract int appendToLogStore(LogRecordStore logStore);
 }
@@ -36,9 +36,20 @@ public class LogEntryMetadataRecord extends LogEntryBase {
      * @ref LogEntryMetadataRecord.createDefaultEventRecord
      */
     public LogEntryMetadataRecord(LayoutInflater inflater, String title, String text) {
+        this(inflater, title, text, Utils.getTimestamp());
+    }
+
+    /**
+     * Constructor.
+     * @param inflater
+     * @param title Main summary title of the status message / annotation entry.
+     * @param text Lower specific subtitle text stored with the entry.
+     * @param timestamp Time the entry was originally recorded.
+     */
+    public LogEntryMetadataRecord(LayoutInflater inflater, String title, String text, String timestamp) {
         recordTitle = title;
         recordText = text;
-        recordTimestamp = Utils.getTimestamp();
+        recordTimestamp = timestamp;
         recordContainer = (LinearLayout) inflater.inflate(R.layout.log_metadata_record, null);
         recordContainer.setAlpha(LOGENTRY_GUI_ALPHA);
         tvRecTitle = (TextView) recordContainer.findViewById(R.id.record_title_text);
@@ -53,6 +64,27 @@ public class LogEntryMetadataRecord extends LogEntryBase {
         }
     }
 
+    /**
+     * Fills a (possibly recycled) record layout with a metadata record from the columnar log store.
+     * @param recordContainer inflated log_metadata_record layout
+     * @param logStore
+     * @param row
+     * @ref LogFeedAdapter.onBindViewHolder
+     */
+    public static void bindLayout(LinearLayout recordContainer, LogRecordStore logStore, int row) {
+        String title = logStore.getMetadataTitle(row);
+        String text = logStore.getMetadataText(row);
+        recordContainer.setAlpha(LOGENTRY_GUI_ALPHA);
+        TextView tvTitle = (TextView) recordContainer.findViewById(R.id.record_title_text);
+        tvTitle.setText(title + " -- " + logStore.getMetadataTimestamp(row));
+        Integer iconResIDInt = prefixIconMap.get(title);
+        tvTitle.setCompoundDrawablesWithIntrinsicBounds(iconResIDInt == null ? R.drawable.phonebubble24 : iconResIDInt.intValue(), 0, 0, 0);
+        TextView tvData = (TextView) recordContainer.findViewById(R.id.record_data_text);
+        tvData.setText(text);
+        tvData.setAlpha(LOGENTRY_GUI_ALPHA);
+        tvData.setVisibility(text.equals("") ? TextView.GONE : TextView.VISIBLE);
+    }
+
     // TODO: javadoc
     public View cloneLayoutContainer() {
         LinearLayout recordContainerClone = (LinearLayout) LiveLoggerActivity.defaultInflater.inflate(R.layout.log_metadata_record, null);
@@ -83,7 +115,33 @@ public class LogEntryMetadataRecord extends LogEntryBase {
      * @return String representation of the object
      */
     public String toString() {
-        return recordTitle + ": " + recordText + " (@" + recordTimestamp + ")";
+        return LogExportFormatter.formatMetadataRecord(recordTitle, recordText, recordTimestamp);
+    }
+
+    /**
+     * Stores the record in the columnar log store.
+     * @param logStore
+     * @return int row of the record in the store
+     */
+    public int appendToLogStore(LogRecordStore logStore) {
+        return logStore.appendMetadataRecord(recordTitle, recordText, recordTimestamp);
+    }
+
+    /**
+     * Recreates the entry (and its layout) from a record in the columnar log store.
+     * @param logStore
+     * @param row
+     * @return LogEntryMetadataRecord record
+     * @ref LiveLoggerActivity.logDataEntries
+     */
+    public static LogEntryMetadataRecord newInstance(LogRecordStore logStore, int row) {
+        String title = logStore.getMetadataTitle(row);
+        LogEntryMetadataRecord eventRecord = new LogEntryMetadataRecord(LiveLoggerActivity.defaultInflater, title,
+                                                                        logStore.getMetadataText(row), logStore.getMetadataTimestamp(row));
+        Integer iconResIDInt = prefixIconMap.get(title);
+        if(iconResIDInt != null)
+            eventRecord.tvRecTitle.setCompoundDrawablesWithIntrinsicBounds(iconResIDInt.intValue(), 0, 0, 0);
+        return eventRecord;
     }
 
     /**
@@ -16,22 +16,18 @@ import static java.lang.Math.abs;
 
 /**
  * <h1>Log Entry UI Record</h1>
- * Implements a live log data entry.
+ * Implements a live log data entry. The layout is only inflated on demand: the entries in the
+ * Log tab are bound to recycled views by the LogFeedAdapter.
  *
  * @author  Maxie D. Schmidt
  * @since   12/31/17
  * @ref LiveLoggerActivity.logDataEntries
+ * @ref LogFeedAdapter
  */
 public class LogEntryUI extends LogEntryBase {
 
     private static final String TAG = LiveLoggerActivity.class.getSimpleName();
 
-    /**
-     * Timing information for the log.
-     */
-    public static int curSystickTimestamp = -1; // milliseconds
-    public static long lastSystemMillis = System.currentTimeMillis();
-
     /**
      * GUI display widgets associated with the log entry.
      */
@@ -51,40 +47,168 @@ public class LogEntryUI extends LogEntryBase {
     private String logLabel;
     private byte[] entryData;
     private int dataDirection;
+    private DecodedLogFrame decodedData;
+
+    /**
+     * Repeat run the entry stands for (see LogRecordStore.setCollapseRepeatedFrames): the number
+     * of frames and the time spanned by the run, and which of the repeats the entry shows when
+     * the run is expanded in the Log tab (0 for the run itself).
+     */
+    private int repeatCount = 1;
+    private int repeatSpanMillis = 0;
+    private int repeatIndex = 0;
 
     /**
      * Effective constructor for the class.
      * @param rawLogBytes
      * @param logLabel
      * @return LogEntryUI new log entry
-     * @ref LiveLoggerActivity.usbReaderCallback
+     * @ref LogEntryUI.decodeLogFrame
      */
     public static LogEntryUI newInstance(byte[] rawLogBytes, String logLabel) {
-        if(rawLogBytes.length < 4) {
-            Log.w(TAG, "Invalid log tag data sent.");
+        DecodedLogFrame decodedFrame = decodeLogFrame(rawLogBytes);
+        if(decodedFrame == null)
             return null;
+        return newInstance(decodedFrame, logLabel);
+    }
+
+    /**
+     * Effective constructor for the class from a frame already decoded by the ingestion thread
+     * (must be called on the UI thread).
+     * @param decodedFrame
+     * @param logLabel
+     * @return LogEntryUI new log entry
+     * @ref LiveLogIngestionThread
+     */
+    public static LogEntryUI newInstance(DecodedLogFrame decodedFrame, String logLabel) {
+        LogEntryUI newLogDataEntry = new LogEntryUI();
+        return newLogDataEntry.configureLogEntry(LiveLoggerActivity.defaultContext, logLabel, decodedFrame);
+    }
+
+    /**
+     * Recreates the entry from a LIVE log frame in the columnar log store.
+     * @param logStore
+     * @param row
+     * @return LogEntryUI log entry with the stored record id
+     * @ref LiveLoggerActivity.logDataEntries
+     */
+    public static LogEntryUI newInstance(LogRecordStore logStore, int row) {
+        LogEntryUI logDataEntry = new LogEntryUI();
+        logDataEntry.loadFromLogStore(logStore, row);
+        return logDataEntry;
+    }
+
+    /**
+     * Resets the entry to the frame stored in the columnar log store (the decoded frame and its
+     * derived display data come from the derived field cache).
+     * @param logStore
+     * @param row
+     * @ref LogFeedAdapter.onBindViewHolder
+     */
+    public void loadFromLogStore(LogRecordStore logStore, int row) {
+        recordID = logStore.getRecordId(row);
+        logLabel = "";
+        diffTimeMillis = logStore.getDiffTimeMillis(row);
+        dataDirection = logStore.getDataDirection(row);
+        logType = logStore.getLogCode(row);
+        decodedData = getDecodedLogFrame(logStore, row);
+        entryData = decodedData.getPayloadData();
+        numBytes = entryData.length;
+        repeatCount = logStore.getRepeatCount(row);
+        repeatSpanMillis = logStore.getRepeatSpanMillis(row);
+        repeatIndex = 0;
+    }
+
+    /**
+     * Resets the entry to one of the repeats of a collapsed repeat run in the log store (the
+     * repeats are numbered after the record id of the run).
+     * @param logStore
+     * @param row
+     * @param repeat index of the repeat in the run (0 for the first frame)
+     * @ref LogFeedAdapter.onBindViewHolder
+     */
+    public void loadRepeatFromLogStore(LogRecordStore logStore, int row, int repeat) {
+        loadFromLogStore(logStore, row);
+        repeatIndex = repeat;
+        if(repeat > 0) {
+            recordID += repeat;
+            diffTimeMillis = logStore.getRepeatDiffTimeMillis(row, repeat);
+            decodedData = decodedData.withDiffTime(diffTimeMillis);
         }
-        int logCode = (int) rawLogBytes[0];
-        int payloadNumBytes = (int) rawLogBytes[1];
-        int timestamp = (((int) rawLogBytes[2]) << 8) | ((int) rawLogBytes[3]);
-        int diffTimeMs = curSystickTimestamp == -1 ? timestamp : timestamp - curSystickTimestamp;
-        long systemTimeMillis = System.currentTimeMillis();
-        if(diffTimeMs < 0) {
-            diffTimeMs = (int) (lastSystemMillis - systemTimeMillis);
+    }
+
+    /**
+     * Returns the decoded frame for a record in the columnar log store. The derived display data
+     * of the recently used records is kept in a memory-bounded cache and is otherwise recomputed
+     * from the stored payload.
+     * @param logStore
+     * @param row
+     * @return DecodedLogFrame
+     * @ref LogEntryUI.getDerivedFieldCache
+     */
+    public static DecodedLogFrame getDecodedLogFrame(LogRecordStore logStore, int row) {
+        return derivedFieldCache.getDecodedLogFrame(logStore, row, getLogDecoder());
+    }
+
+    /**
+     * The cache of the derived display data of the records in LiveLoggerActivity.logDataEntries
+     * (must be cleared along with the records since the record ids are reused).
+     * @return DerivedFieldCache
+     */
+    public static DerivedFieldCache getDerivedFieldCache() {
+        return derivedFieldCache;
+    }
+    private static final DerivedFieldCache derivedFieldCache = new DerivedFieldCache();
+
+    /**
+     * Parses the raw LIVE log frame and computes the derived display data for the entry.
+     * This does not touch any views, so it can be run off of the UI thread.
+     * @param rawLogBytes
+     * @return DecodedLogFrame decoded frame (or null if the frame is invalid)
+     * @ref LiveLogIngestionThread
+     * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
+     */
+    public static DecodedLogFrame decodeLogFrame(byte[] rawLogBytes) {
+        if(!LogFrameDecoder.hasValidHeader(rawLogBytes)) {
+            Log.w(TAG, "Invalid log tag data sent.");
+            return null;
         }
-        curSystickTimestamp = timestamp;
-        lastSystemMillis = systemTimeMillis;
-        byte[] payloadBytes = new byte[rawLogBytes.length - 4];
-        if(payloadBytes.length < payloadNumBytes) {
+        int logCode = LogFrameDecoder.getLogCode(rawLogBytes);
+        int diffTimeMs = logDecoder.getSystickTimeline().nextDiffTime(LogFrameDecoder.getTimestamp(rawLogBytes), System.currentTimeMillis());
+        if(!LogFrameDecoder.hasCompletePayload(rawLogBytes)) {
             Log.w(TAG, "Invalid payload bytes sent.");
-            //System.arraycopy(rawLogBytes, 4, payloadBytes, 0, payloadBytes.length);
         }
-        else
-            System.arraycopy(rawLogBytes, 4, payloadBytes, 0, payloadBytes.length);
-        LogEntryUI newLogDataEntry = new LogEntryUI();
-        return newLogDataEntry.configureLogEntry(LiveLoggerActivity.defaultContext, logLabel, diffTimeMs, LogUtils.getDataDirection(logCode), logCode, payloadBytes);
+        byte[] payloadBytes = LogFrameDecoder.extractPayload(rawLogBytes);
+        return decodePayload(logCode, diffTimeMs, payloadBytes);
+    }
+
+    /**
+     * Decodes the log payload (the derived display data, i.e., the entropy, hex / ascii strings
+     * and APDU classification, is computed when it is first requested).
+     * @param ltype
+     * @param diffTimeMs
+     * @param edata
+     * @return DecodedLogFrame
+     */
+    public static DecodedLogFrame decodePayload(int ltype, int diffTimeMs, byte[] edata) {
+        return getLogDecoder().decodePayload(ltype, diffTimeMs, edata);
     }
 
+    /**
+     * The decoder for the LIVE log frames (classifies the payloads with the APDU tables).
+     * @return LogDecoder
+     * @ref ApduUtils.getApduClassifier
+     */
+    public static LogDecoder getLogDecoder() {
+        return logDecoder;
+    }
+    private static final LiveLogDecoder logDecoder = new LiveLogDecoder(new PayloadClassifier() {
+        @Override
+        public String classifyPayload(byte[] payloadBytes) {
+            return ApduUtils.getApduClassifier().classifyPayload(payloadBytes);
+        }
+    });
+
     /**
      * Configures / sets parameters based on the parsed native LIVE logging data.
      * @param context
@@ -96,29 +220,49 @@ public class LogEntryUI extends LogEntryBase {
      * @url http://rawgit.com/emsec/ChameleonMini/master/Doc/Doxygen/html/Page_Log.html
      */
     public LogEntryUI configureLogEntry(Context context, String label, int diffTimeMs, int dataDir, int ltype, byte[] edata) {
-        numBytes = edata.length;
-        diffTimeMillis = diffTimeMs;
+        return configureLogEntry(context, label, dataDir, decodePayload(ltype, diffTimeMs, edata));
+    }
+
+    /**
+     * Configures / sets parameters based on the decoded LIVE logging data.
+     * @param context
+     * @param label
+     * @param decodedFrame
+     * @return LogEntryUI the configured log entry
+     */
+    public LogEntryUI configureLogEntry(Context context, String label, DecodedLogFrame decodedFrame) {
+        return configureLogEntry(context, label, decodedFrame.getDataDirection(), decodedFrame);
+    }
+
+    private LogEntryUI configureLogEntry(Context context, String label, int dataDir, DecodedLogFrame decodedFrame) {
+        numBytes = decodedFrame.getPayloadData().length;
+        diffTimeMillis = decodedFrame.getDiffTimeMillis();
         dataDirection = dataDir;
-        logType = ltype;
+        logType = decodedFrame.getLogCode();
         logLabel = label;
-        entryData = edata;
-        LayoutInflater inflater = LiveLoggerActivity.defaultInflater;
-        mainEntryContainer = (LinearLayout) inflater.inflate(R.layout.log_entry_ui, null);
-        configureLayout(mainEntryContainer);
+        entryData = decodedFrame.getPayloadData();
+        decodedData = decodedFrame;
+        if(recordID == 0)
+            recordID = ++LiveLoggerActivity.RECORDID;
         return this;
     }
 
     /**
-     * The GUI container for the log entry layout.
+     * The GUI container for the log entry layout (inflated on first use).
      * @return LinearLayout widget container
      * @see res/layout/log_entry_ui.xml
      */
     public LinearLayout getMainEntryContainer() {
+        if(mainEntryContainer == null) {
+            LayoutInflater inflater = LiveLoggerActivity.defaultInflater;
+            configureLayout((LinearLayout) inflater.inflate(R.layout.log_entry_ui, null));
+        }
         return mainEntryContainer;
     }
 
     // TODO: javadoc
     public View cloneLayoutContainer() {
+        getMainEntryContainer();
         LinearLayout mainEntryContainerClone = (LinearLayout) LiveLoggerActivity.defaultInflater.inflate(R.layout.log_entry_ui, null);
         ImageView inoutDirIndicatorClone = (ImageView) mainEntryContainerClone.findViewById(R.id.inputDirIndicatorImg);
         inoutDirIndicatorClone.setImageDrawable(inoutDirIndicator.getDrawable());
@@ -151,6 +295,8 @@ public class LogEntryUI extends LogEntryBase {
      * @param mainContainerRef
      */
     public void configureLayout(LinearLayout mainContainerRef) {
+        if(decodedData == null)
+            decodedData = decodePayload(logType, diffTimeMillis, entryData);
         mainEntryContainer = mainContainerRef;
         mainEntryContainer.setAlpha(LOGENTRY_GUI_ALPHA);
         entrySelect = (CheckBox) mainContainerRef.findViewById(R.id.entrySelect);
@@ -158,28 +304,36 @@ public class LogEntryUI extends LogEntryBase {
         inoutDirIndicator.setImageDrawable(LiveLoggerActivity.runningActivity.getResources().getDrawable(getDataDirectionMarker()));
         apduParseStatus = (ImageView) mainContainerRef.findViewById(R.id.apduParseStatusImg);
         tvLabel = (TextView) mainContainerRef.findViewById(R.id.text_label);
-        recordID = ++LiveLoggerActivity.RECORDID;
-        tvLabel.setText(logLabel + String.format(Locale.ENGLISH, "%06d", LiveLoggerActivity.RECORDID));
+        if(repeatIndex > 0)
+            tvLabel.setText(logLabel + String.format(Locale.ENGLISH, "%06d (%d/%d)", recordID, repeatIndex + 1, repeatCount));
+        else if(repeatCount > 1)
+            tvLabel.setText(logLabel + String.format(Locale.ENGLISH, "%06d x%d", recordID, repeatCount));
+        else
+            tvLabel.setText(logLabel + String.format(Locale.ENGLISH, "%06d", recordID));
         tvNumBytes = (TextView) mainContainerRef.findViewById(R.id.text_data_num_bytes);
         tvNumBytes.setText(String.valueOf(numBytes) + "B");
         tvNumMillis = (TextView) mainContainerRef.findViewById(R.id.text_offset_millis);
-        tvNumMillis.setText((diffTimeMillis >=0 ? "+" : "~") + String.valueOf(abs(diffTimeMillis)) + "ms");
+        tvNumMillis.setText((diffTimeMillis >=0 ? "+" : "~") + String.valueOf(abs(diffTimeMillis)) + "ms" +
+                            (repeatIndex == 0 && repeatCount > 1 ? "..+" + String.valueOf(repeatSpanMillis) + "ms" : ""));
         tvLogType = (TextView) mainContainerRef.findViewById(R.id.text_log_type);
         tvLogType.setText(LogUtils.LogCode.lookupByLogCode(logType).getShortCodeName(logType));
         tvEntropy = (TextView) mainContainerRef.findViewById(R.id.text_entropy_compression_ratio);
-        tvEntropy.setText(String.format(Locale.ENGLISH, "CPR/ENT: %1.4g", Utils.computeByteArrayEntropy(entryData)));
+        tvEntropy.setText(String.format(Locale.ENGLISH, "CPR/ENT: %1.4g", decodedData.getEntropy()));
         tvDataHexBytes = (TextView) mainContainerRef.findViewById(R.id.text_logdata_hex);
-        tvDataHexBytes.setText(Utils.bytes2Hex(entryData));
+        tvDataHexBytes.setText(decodedData.getHexString());
         tvDataAscii = (TextView) mainContainerRef.findViewById(R.id.text_logdata_ascii);
-        tvDataAscii.setText(Utils.bytes2Ascii(entryData));
+        tvDataAscii.setText(decodedData.getAsciiString());
         tvApdu = (TextView) mainContainerRef.findViewById(R.id.text_apdu);
-        tvApdu.setText(ApduUtils.classifyApdu(entryData));
+        tvApdu.setText(decodedData.getApduDesc());
         if(tvApdu.getText().toString().equals("NONE")) {
             tvApdu.setText("APDU: NONE RECOGNIZED");
             tvApdu.setVisibility(TextView.GONE);
+            apduParseStatus.setImageDrawable(LiveLoggerActivity.defaultContext.getResources().getDrawable(R.drawable.question16));
         }
-        else
+        else {
+            tvApdu.setVisibility(TextView.VISIBLE);
             apduParseStatus.setImageDrawable(LiveLoggerActivity.defaultContext.getResources().getDrawable(R.drawable.known16));
+        }
     }
 
     /**
@@ -191,6 +345,26 @@ public class LogEntryUI extends LogEntryBase {
         return entryData;
     }
 
+    /**
+     * Returns the decoded log data (header fields and derived display data) of the entry.
+     * @return DecodedLogFrame
+     */
+    public DecodedLogFrame getDecodedLogFrame() {
+        if(decodedData == null)
+            decodedData = decodePayload(logType, diffTimeMillis, entryData);
+        return decodedData;
+    }
+
+    /**
+     * Stores the frame in the columnar log store.
+     * @param logStore
+     * @return int row of the record in the store
+     */
+    @Override
+    public int appendToLogStore(LogRecordStore logStore) {
+        return logStore.appendLogFrame(recordID, logType, dataDirection, diffTimeMillis, entryData);
+    }
+
     /**
      * Returns a String representation of the log payload data bytes.
      * @return String payload data
@@ -214,7 +388,7 @@ public class LogEntryUI extends LogEntryBase {
      * @ref ExportTools.writeBinaryLogFile
      */
     public short getNextOffsetTime(short offsetTimeMillis) {
-        return (short) (offsetTimeMillis + abs(diffTimeMillis));
+        return LogExportFormatter.getNextOffsetTime(offsetTimeMillis, diffTimeMillis);
     }
 
     /**
@@ -226,16 +400,7 @@ public class LogEntryUI extends LogEntryBase {
      * @ref ExportTools.writeBinaryLogFile
      */
     public byte[] packageBinaryLogData(short offsetTimeMillis) {
-        byte[] headerBytes = {
-                (byte) LogUtils.LogCode.lookupByLogCode(logType).toInteger(),
-                (byte) entryData.length,
-                (byte) ((offsetTimeMillis & 0x0000ff00) >>> 8),
-                (byte) (offsetTimeMillis & 0x000000ff),
-        };
-        byte[] fullBytes = new byte[entryData.length + 4];
-        System.arraycopy(headerBytes, 0, fullBytes, 0, 4);
-        System.arraycopy(entryData, 0, fullBytes, 4, entryData.length);
-        return fullBytes;
+        return LogExportFormatter.packageBinaryLogData(logType, entryData, offsetTimeMillis);
     }
 
     /**
@@ -254,11 +419,50 @@ public class LogEntryUI extends LogEntryBase {
      */
     @Override
     public String toString() {
-        LogUtils.LogCode logCode = LogUtils.LogCode.lookupByLogCode(logType);
-        String recordFmt = String.format(Locale.ENGLISH, "%06d -- %-32s [%-3s bytes] (%s%-6s ms) [%s] {%s}", recordID, logCode.name(),
-                String.valueOf(entryData.length), diffTimeMillis >= 0 ? "+" : "~", String.valueOf(abs(diffTimeMillis)),
-                Utils.bytes2Hex(entryData), tvApdu.getText().toString());
-        return recordFmt;
+        return LogExportFormatter.formatLogRecord(recordID, getDecodedLogFrame());
+    }
+
+    /**
+     * Returns the payload bytes of a stored frame as a compact hex string (e.g., for SEND).
+     * @param logStore
+     * @param row
+     * @return String payload data
+     */
+    public static String getPayloadData(LogRecordStore logStore, int row) {
+        return Utils.bytes2Hex(logStore.getPayload(row)).replace(" ", "");
+    }
+
+    /**
+     * Returns the log code name of a stored frame (searched in the log headers).
+     * @param logStore
+     * @param row
+     * @return String
+     */
+    public static String getLogCodeName(LogRecordStore logStore, int row) {
+        return LogUtils.LogCode.lookupByLogCode(logStore.getLogCode(row)).name();
+    }
+
+    /**
+     * Returns the APDU classification of a stored frame as displayed in the Log tab.
+     * @param logStore
+     * @param row
+     * @return String
+     */
+    public static String getAPDUString(LogRecordStore logStore, int row) {
+        String apduDesc = getDecodedLogFrame(logStore, row).getApduDesc();
+        return apduDesc.equals(PayloadClassifier.NONE_RECOGNIZED) ? LogExportFormatter.NO_APDU_RECOGNIZED : apduDesc;
+    }
+
+    /**
+     * Returns the payload of a stored frame as displayed in the Log tab.
+     * @param logStore
+     * @param row
+     * @param byteString hex bytes (true) or ascii (false)
+     * @return String
+     */
+    public static String getPayloadDataString(LogRecordStore logStore, int row, boolean byteString) {
+        DecodedLogFrame decodedFrame = getDecodedLogFrame(logStore, row);
+        return byteString ? decodedFrame.getHexString() : decodedFrame.getAsciiString();
     }
 
     // TODO: javadoc
@@ -268,19 +472,16 @@ public class LogEntryUI extends LogEntryBase {
 
     // TODO: javadoc
     public String getAPDUString() {
-        return tvApdu.getText().toString();
+        String apduDesc = getDecodedLogFrame().getApduDesc();
+        return apduDesc.equals(PayloadClassifier.NONE_RECOGNIZED) ? LogExportFormatter.NO_APDU_RECOGNIZED : apduDesc;
     }
 
     // TODO: javadoc
     public String getPayloadDataString(boolean byteString) {
-        if(byteString) {
-            Log.i(TAG, "Returning bytes: " + tvDataHexBytes.getText().toString());
-            return tvDataHexBytes.getText().toString();
-        }
-        else {
-            Log.i(TAG, "Returning ascii: " + tvDataAscii.getText().toString());
-            return tvDataAscii.getText().toString();
-        }
+        if(byteString)
+            return getDecodedLogFrame().getHexString();
+        else
+            return getDecodedLogFrame().getAsciiString();
     }
 
     public int getDataDirectionMarker() {
@@ -298,7 +499,7 @@ public class LogEntryUI extends LogEntryBase {
      */
     @Override
     public View getLayoutContainer() {
-        return mainEntryContainer;
+        return getMainEntryContainer();
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,448 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import android.graphics.drawable.Drawable;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseIntArray;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.CompoundButton;
+import android.widget.LinearLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>Log Feed Adapter</h1>
+ * Binds the records of the columnar log store to the recycled rows of the Log tab. Only the rows
+ * on screen (plus a few cached by the RecyclerView) ever have views, so the size of the view
+ * hierarchy and the layout / scrolling cost do not depend on the size of the capture. The
+ * per-row display state (checkmarks, hidden rows, highlight colors) lives with the records
+ * rather than in the views (the highlight colors are keyed by record id, since the rows shift
+ * when the retention policy evicts older records).
+ *
+ * The hidden records (and the similar LIVE log frames in the collapse-similar view) are not
+ * items of the feed at all: the adapter positions go through a VisibleRowIndex of the store
+ * rows that are shown, so the feed never binds or lays out rows it does not display.
+ *
+ * Tapping a collapsed repeat run expands it in place: the repeats are shown as extra rows
+ * after the run (they are not records in the store), so the adapter positions are the visible
+ * positions of the store rows shifted by the repeats of the expanded runs before them.
+ *
+ * @ref LiveLoggerActivity.logDataEntries
+ * @ref LiveLoggerActivity.logDataFeed
+ * @ref VisibleRowIndex
+ */
+public class LogFeedAdapter extends RecyclerView.Adapter<LogFeedAdapter.LogRecordViewHolder> {
+
+    private static final int VIEW_TYPE_LOG_FRAME = 0;
+    private static final int VIEW_TYPE_METADATA = 1;
+
+    /**
+     * No highlight color has been set for the record.
+     */
+    public static final int NO_HIGHLIGHT = 0;
+
+    private final LogRecordStore logStore;
+    private final VisibleRowIndex shownRows;
+    private final VisibleRowIndex collapsedRows;
+    private VisibleRowIndex visibleRows;
+    private final SparseIntArray highlightColors = new SparseIntArray();
+    private RecyclerView attachedFeed;
+    private boolean followTail = true;
+    private boolean collapseSimilar = false;
+    private int numViewsCreated = 0;
+
+    /**
+     * Record ids of the expanded repeat runs (in increasing order, i.e., in the order of their
+     * rows) and the total number of repeat rows they add to the feed.
+     */
+    private final List<Integer> expandedRuns = new ArrayList<Integer>();
+    private int numExpandedRows = 0;
+
+    /**
+     * Holds the views of one recycled row: the LogEntryUI binder for the LIVE log frames, or the
+     * record layout for the metadata records.
+     */
+    public static class LogRecordViewHolder extends RecyclerView.ViewHolder {
+
+        private final LogEntryUI logEntryBinder;
+        private final CheckBox entrySelect;
+        private final Drawable defaultBackground;
+
+        public LogRecordViewHolder(View itemView, boolean logFrameView) {
+            super(itemView);
+            logEntryBinder = logFrameView ? new LogEntryUI() : null;
+            entrySelect = logFrameView ? (CheckBox) itemView.findViewById(R.id.entrySelect) : null;
+            defaultBackground = itemView.getBackground();
+        }
+
+    }
+
+    /**
+     * Constructor.
+     * @param store
+     */
+    public LogFeedAdapter(LogRecordStore store) {
+        logStore = store;
+        shownRows = new VisibleRowIndex(store, LogRecordStore.FLAG_HIDDEN);
+        collapsedRows = new VisibleRowIndex(store, LogRecordStore.FLAG_HIDDEN | LogRecordStore.FLAG_SIMILAR);
+        visibleRows = shownRows;
+    }
+
+    /**
+     * Watches the scrolling of the feed: the feed follows newly appended records while the
+     * user is at the bottom of the list and stops following once they scroll up.
+     */
+    private final RecyclerView.OnScrollListener followTailListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+            if(newState == RecyclerView.SCROLL_STATE_IDLE)
+                followTail = !recyclerView.canScrollVertically(1);
+            LiveLoggerActivity.userIsScrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
+        }
+    };
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        attachedFeed = recyclerView;
+        recyclerView.addOnScrollListener(followTailListener);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(followTailListener);
+        if(attachedFeed == recyclerView)
+            attachedFeed = null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return visibleRows.size() + numExpandedRows;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return logStore.isLogFrame(getRecordRow(position)) ? VIEW_TYPE_LOG_FRAME : VIEW_TYPE_METADATA;
+    }
+
+    /**
+     * Row in the log store displayed at the adapter position (the run itself for the rows of
+     * the repeats of an expanded run).
+     * @param position
+     * @return int row
+     */
+    public int getRecordRow(int position) {
+        return (int) (resolvePosition(position) >>> 32);
+    }
+
+    private int getRepeatIndex(int position) {
+        return (int) resolvePosition(position);
+    }
+
+    /**
+     * Maps the adapter position to the row in the store and the repeat index in the run.
+     * @param position
+     * @return long row in the high and repeat index in the low 32 bits
+     */
+    private long resolvePosition(int position) {
+        int extraRows = 0;
+        for(Integer runRecordId : expandedRuns) {
+            int runRow = logStore.findRowByRecordId(runRecordId);
+            if(runRow < 0 || !visibleRows.isVisible(runRow))
+                continue;
+            int runPosition = visibleRows.getVisiblePosition(runRow);
+            if(position <= runPosition + extraRows)
+                break;
+            int runRepeats = logStore.getRepeatCount(runRow) - 1;
+            if(position <= runPosition + extraRows + runRepeats)
+                return ((long) runRow << 32) | (position - runPosition - extraRows);
+            extraRows += runRepeats;
+        }
+        return (long) visibleRows.getRow(position - extraRows) << 32;
+    }
+
+    /**
+     * Adapter position at which the record in the store is displayed (or would be displayed,
+     * when the record is not visible).
+     * @param row
+     * @return int position
+     */
+    public int getAdapterPosition(int row) {
+        int extraRows = 0;
+        for(Integer runRecordId : expandedRuns) {
+            int runRow = logStore.findRowByRecordId(runRecordId);
+            if(runRow < 0 || !visibleRows.isVisible(runRow))
+                continue;
+            else if(runRow >= row)
+                break;
+            extraRows += logStore.getRepeatCount(runRow) - 1;
+        }
+        return visibleRows.getVisiblePosition(row) + extraRows;
+    }
+
+    /**
+     * Expands the repeat run into one row per repeat, or collapses it again.
+     * @param row
+     */
+    public void toggleRepeatRun(int row) {
+        if(logStore.getRepeatCount(row) <= 1)
+            return;
+        Integer runRecordId = Integer.valueOf(logStore.getRecordId(row));
+        int runIndex = expandedRuns.indexOf(runRecordId);
+        int position = getAdapterPosition(row), runRepeats = logStore.getRepeatCount(row) - 1;
+        if(runIndex >= 0) {
+            expandedRuns.remove(runIndex);
+            numExpandedRows -= runRepeats;
+            notifyItemRangeRemoved(position + 1, runRepeats);
+        }
+        else {
+            int insertIndex = 0;
+            while(insertIndex < expandedRuns.size() && expandedRuns.get(insertIndex) < runRecordId)
+                insertIndex++;
+            expandedRuns.add(insertIndex, runRecordId);
+            numExpandedRows += runRepeats;
+            notifyItemRangeInserted(position + 1, runRepeats);
+        }
+        notifyItemChanged(position);
+    }
+
+    public boolean isRepeatRunExpanded(int row) {
+        return expandedRuns.contains(Integer.valueOf(logStore.getRecordId(row)));
+    }
+
+    private void recountExpandedRows() {
+        numExpandedRows = 0;
+        for(int er = expandedRuns.size() - 1; er >= 0; er--) {
+            int runRow = logStore.findRowByRecordId(expandedRuns.get(er));
+            if(runRow < 0)
+                expandedRuns.remove(er);
+            else if(visibleRows.isVisible(runRow))
+                numExpandedRows += logStore.getRepeatCount(runRow) - 1;
+        }
+    }
+
+    @Override
+    public LogRecordViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        numViewsCreated++;
+        boolean logFrameView = viewType == VIEW_TYPE_LOG_FRAME;
+        int layoutResID = logFrameView ? R.layout.log_entry_ui : R.layout.log_metadata_record;
+        View itemView = LiveLoggerActivity.defaultInflater.inflate(layoutResID, parent, false);
+        return new LogRecordViewHolder(itemView, logFrameView);
+    }
+
+    @Override
+    public void onBindViewHolder(final LogRecordViewHolder holder, int position) {
+        long recordPosition = resolvePosition(position);
+        final int row = (int) (recordPosition >>> 32);
+        int repeatIndex = (int) recordPosition;
+        if(holder.logEntryBinder != null) {
+            holder.logEntryBinder.loadRepeatFromLogStore(logStore, row, repeatIndex);
+            holder.logEntryBinder.configureLayout((LinearLayout) holder.itemView);
+            holder.entrySelect.setOnCheckedChangeListener(null);
+            holder.entrySelect.setChecked(logStore.hasRecordFlag(row, LogRecordStore.FLAG_SELECTED));
+            holder.entrySelect.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+                public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                    int position = holder.getAdapterPosition();
+                    if(position >= 0 && position < getItemCount())
+                        logStore.setRecordFlag(getRecordRow(position), LogRecordStore.FLAG_SELECTED, isChecked);
+                }
+            });
+            if(repeatIndex == 0 && logStore.getRepeatCount(row) > 1) {
+                holder.itemView.setOnClickListener(new View.OnClickListener() {
+                    public void onClick(View view) {
+                        int position = holder.getAdapterPosition();
+                        if(position >= 0 && position < getItemCount())
+                            toggleRepeatRun(getRecordRow(position));
+                    }
+                });
+            }
+            else {
+                holder.itemView.setOnClickListener(null);
+                holder.itemView.setClickable(false);
+            }
+        }
+        else {
+            LogEntryMetadataRecord.bindLayout((LinearLayout) holder.itemView, logStore, row);
+        }
+        int highlightColor = getHighlightColor(row);
+        if(highlightColor != NO_HIGHLIGHT)
+            holder.itemView.setBackgroundColor(highlightColor);
+        else
+            holder.itemView.setBackground(holder.defaultBackground);
+    }
+
+    /**
+     * Hides the LIVE log frames the store marked as similar to the first frame of their run.
+     * Both row mappings are kept up to date as the frames are appended, so toggling the view
+     * only swaps the mapping the feed goes through.
+     * @param collapse
+     * @ref LogRecordStore.FLAG_SIMILAR
+     */
+    public void setCollapseSimilar(boolean collapse) {
+        if(collapseSimilar != collapse) {
+            collapseSimilar = collapse;
+            visibleRows = collapse ? collapsedRows : shownRows;
+            recountExpandedRows();
+            notifyDataSetChanged();
+        }
+    }
+
+    public boolean isCollapsingSimilar() {
+        return collapseSimilar;
+    }
+
+    /**
+     * Notifies the feed that a record was appended to the store, and scrolls to it when the
+     * feed is following the tail of the log (or when the scroll is forced).
+     * @param row
+     * @param forceScroll
+     */
+    public void onRecordAppended(int row, boolean forceScroll) {
+        shownRows.onRowsAppended();
+        collapsedRows.onRowsAppended();
+        if(forceScroll)
+            followTail = true;
+        if(!visibleRows.isVisible(row))
+            return;
+        notifyItemInserted(getAdapterPosition(row));
+        if(followTail && attachedFeed != null)
+            attachedFeed.scrollToPosition(getItemCount() - 1);
+    }
+
+    /**
+     * Notifies the feed that an appended frame was collapsed into the repeat run of the record
+     * (a row is added for it when the run is expanded).
+     * @param row
+     */
+    public void onRecordRepeated(int row) {
+        if(!visibleRows.isVisible(row))
+            return;
+        int position = getAdapterPosition(row);
+        if(isRepeatRunExpanded(row)) {
+            numExpandedRows++;
+            notifyItemInserted(position + logStore.getRepeatCount(row) - 1);
+        }
+        notifyItemChanged(position);
+        if(followTail && attachedFeed != null)
+            attachedFeed.scrollToPosition(getItemCount() - 1);
+    }
+
+    /**
+     * Notifies the feed that the display state of the record changed.
+     * @param row
+     */
+    public void onRecordChanged(int row) {
+        boolean wasVisible = visibleRows.isVisible(row);
+        int position = getAdapterPosition(row);
+        int numRows = 1 + (isRepeatRunExpanded(row) ? logStore.getRepeatCount(row) - 1 : 0);
+        shownRows.onRowChanged(row);
+        collapsedRows.onRowChanged(row);
+        boolean isVisible = visibleRows.isVisible(row);
+        if(wasVisible && !isVisible) {
+            numExpandedRows -= numRows - 1;
+            notifyItemRangeRemoved(position, numRows);
+        }
+        else if(!wasVisible && isVisible) {
+            numExpandedRows += numRows - 1;
+            notifyItemRangeInserted(position, numRows);
+        }
+        else if(isVisible)
+            notifyItemRangeChanged(position, numRows);
+    }
+
+    private void rebuildVisibleRows() {
+        shownRows.rebuild();
+        collapsedRows.rebuild();
+    }
+
+    /**
+     * Notifies the feed that all of the records were removed from the store.
+     */
+    public void onRecordsCleared() {
+        LogEntryUI.getDerivedFieldCache().clear();
+        highlightColors.clear();
+        expandedRuns.clear();
+        numExpandedRows = 0;
+        rebuildVisibleRows();
+        followTail = true;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Notifies the feed that the retention policy evicted older records from the store (the
+     * highlight colors of the evicted records are dropped).
+     * @param numEvicted
+     */
+    public void onRecordsEvicted(int numEvicted) {
+        for(int hc = highlightColors.size() - 1; hc >= 0; hc--) {
+            if(logStore.findRowByRecordId(highlightColors.keyAt(hc)) < 0)
+                highlightColors.removeAt(hc);
+        }
+        rebuildVisibleRows();
+        recountExpandedRows();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Highlights the LIVE log frame in the Log tab (and in the HTML export).
+     * @param row
+     * @param color
+     */
+    public void setHighlightColor(int row, int color) {
+        highlightColors.put(logStore.getRecordId(row), color);
+        logStore.setRecordFlag(row, LogRecordStore.FLAG_HIGHLIGHTED, true);
+        onRecordChanged(row);
+    }
+
+    /**
+     * @param row
+     * @return int highlight color of the record, or NO_HIGHLIGHT
+     */
+    public int getHighlightColor(int row) {
+        if(!logStore.hasRecordFlag(row, LogRecordStore.FLAG_HIGHLIGHTED))
+            return NO_HIGHLIGHT;
+        return highlightColors.get(logStore.getRecordId(row), NO_HIGHLIGHT);
+    }
+
+    /**
+     * Stores the highlight colors (by record id) in the session snapshot.
+     * @param snapshot
+     */
+    public void saveHighlightColors(SessionSnapshot snapshot) {
+        int[] recordIds = new int[highlightColors.size()], colors = new int[highlightColors.size()];
+        for(int hc = 0; hc < recordIds.length; hc++) {
+            recordIds[hc] = highlightColors.keyAt(hc);
+            colors[hc] = highlightColors.valueAt(hc);
+        }
+        snapshot.setHighlightColors(recordIds, colors);
+    }
+
+    /**
+     * Notifies the feed that the records were restored from the session snapshot (along with
+     * their highlight colors).
+     * @param snapshot
+     */
+    public void onRecordsRestored(SessionSnapshot snapshot) {
+        int[] recordIds = snapshot.getHighlightRecordIds(), colors = snapshot.getHighlightColors();
+        highlightColors.clear();
+        for(int hc = 0; hc < recordIds.length; hc++)
+            highlightColors.put(recordIds[hc], colors[hc]);
+        expandedRuns.clear();
+        numExpandedRows = 0;
+        rebuildVisibleRows();
+        followTail = true;
+        notifyDataSetChanged();
+        if(attachedFeed != null)
+            attachedFeed.scrollToPosition(Math.max(0, getItemCount() - 1));
+    }
+
+    /**
+     * Number of row views inflated so far (stays bounded by the number of visible rows).
+     * @return int
+     */
+    public int getViewsCreated() {
+        return numViewsCreated;
+    }
+
+}
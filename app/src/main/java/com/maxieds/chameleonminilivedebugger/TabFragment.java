@@ -5,6 +5,8 @@ import android.graphics.Typeface;
 import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v4.widget.CompoundButtonCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -181,8 +183,8 @@ public class TabFragment extends Fragment {
                         resetStatus = true;
                     }
                     if(!errorFlag) {
-                        String deviceSetting = LiveLoggerActivity.getSettingFromDevice(LiveLoggerActivity.serialPort, setCmd);
-                        LiveLoggerActivity.appendNewLog(new LogEntryMetadataRecord(LiveLoggerActivity.defaultInflater, "INFO: Shell command of " + setCmd + " returned status " + ChameleonIO.DEVICE_RESPONSE_CODE, ChameleonIO.DEVICE_RESPONSE[0]));
+                        ChameleonCommandResult cmdResult = LiveLoggerActivity.getResponseFromDevice(LiveLoggerActivity.serialPort, setCmd, false);
+                        LiveLoggerActivity.appendNewLog(new LogEntryMetadataRecord(LiveLoggerActivity.defaultInflater, "INFO: Shell command of " + setCmd + " returned status " + cmdResult.getResponseCode(), cmdResult.getResponse("TIMEOUT")));
                         if(resetStatus)
                             ChameleonIO.deviceStatus.updateAllStatusAndPost(false);
                     }
@@ -212,12 +214,9 @@ public class TabFragment extends Fragment {
         inflatedView = view;
         LiveLoggerActivity.defaultInflater = inflater;
         if(tabNumber == TAB_LOG && !LiveLoggerActivity.logDataFeedConfigured) {
-            ScrollView logScroller = (ScrollView) view.findViewById(R.id.log_scroll_view);
-            LinearLayout logDataFeed = LiveLoggerActivity.logDataFeed;
-            logDataFeed.setOrientation(LinearLayout.VERTICAL);
-            logScroller.addView(logDataFeed);
-            logScroller.setFillViewport(true);
-            LiveLoggerActivity.logScrollView = logScroller;
+            RecyclerView logDataFeed = (RecyclerView) view.findViewById(R.id.log_data_feed);
+            logDataFeed.setLayoutManager(new LinearLayoutManager(view.getContext()));
+            logDataFeed.setAdapter(LiveLoggerActivity.logDataFeedAdapter);
             LiveLoggerActivity.logDataFeed = logDataFeed;
             LiveLoggerActivity.logDataFeedConfigured = true;
         }
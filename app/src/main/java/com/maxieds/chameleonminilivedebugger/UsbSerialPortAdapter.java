@@ -0,0 +1,58 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import com.felhr.usbserial.UsbSerialDevice;
+import com.felhr.usbserial.UsbSerialInterface;
+
+/**
+ * <h1>USB Serial Port Adapter</h1>
+ * Connects the ChameleonSerialPort contract to an attached device through the
+ * felHR85 UsbSerial library.
+ *
+ * @ref LiveLoggerActivity.configureSerialPort
+ */
+public class UsbSerialPortAdapter implements ChameleonSerialPort {
+
+    private final UsbSerialDevice usbSerialDevice;
+
+    /**
+     * Constructor.
+     * @param usbDevice
+     */
+    public UsbSerialPortAdapter(UsbSerialDevice usbDevice) {
+        usbSerialDevice = usbDevice;
+    }
+
+    /**
+     * The wrapped USB serial device (for the connection settings: baud rate, parity, etc.).
+     * @return UsbSerialDevice
+     */
+    public UsbSerialDevice getUsbSerialDevice() {
+        return usbSerialDevice;
+    }
+
+    @Override
+    public boolean open() {
+        return usbSerialDevice.open();
+    }
+
+    @Override
+    public void write(byte[] data) {
+        usbSerialDevice.write(data);
+    }
+
+    @Override
+    public void read(final ReadCallback readCallback) {
+        usbSerialDevice.read(new UsbSerialInterface.UsbReadCallback() {
+            @Override
+            public void onReceivedData(byte[] data) {
+                readCallback.onReceivedData(data);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        usbSerialDevice.close();
+    }
+
+}
@@ -3,15 +3,11 @@ package com.maxieds.chameleonminilivedebugger;
 import android.text.format.Time;
 import android.util.Log;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
-import java.util.zip.Deflater;
 
 /**
  * <h1>Utils</h1>
@@ -34,9 +30,7 @@ public class Utils {
             Log.e(TAG, "Invalid Byte String: " + byteStr);
             return 0x00;
         }
-        int lsb = Character.digit(byteStr.charAt(1), 16);
-        int msb = Character.digit(byteStr.charAt(0), 16);
-        return (byte) (lsb | msb << 4);
+        return ByteUtils.hexString2Byte(byteStr);
     }
 
     // TODO: javadoc
@@ -56,13 +50,7 @@ public class Utils {
      * @return char print character (or '.')
      */
     public static char byte2Ascii(byte b) {
-        int decAsciiCode = (int) b;
-        if (b >= 32 && b <= 127) {
-            char ch = (char) b;
-            return ch;
-        }
-        else
-            return '.';
+        return ByteUtils.byte2Ascii(b);
     }
 
     /**
@@ -71,10 +59,7 @@ public class Utils {
      * @return String ascii representation of the byte array
      */
     public static String bytes2Ascii(byte[] bytes) {
-        StringBuilder byteStr = new StringBuilder();
-        for(int b = 0; b < bytes.length; b++)
-            byteStr.append(String.valueOf(byte2Ascii(bytes[b])));
-        return byteStr.toString();
+        return ByteUtils.bytes2Ascii(bytes);
     }
 
     /**
@@ -84,15 +69,7 @@ public class Utils {
      * @return String hex string representation
      */
     public static String bytes2Hex(byte[] bytes) {
-        if(bytes == null)
-            return "<NULL>";
-        else if(bytes.length == 0)
-            return "";
-        StringBuilder hstr = new StringBuilder();
-        hstr.append(String.format(Locale.ENGLISH, "%02x", bytes[0]));
-        for(int b = 1; b < bytes.length; b++)
-            hstr.append(" " + String.format(Locale.ENGLISH, "%02x", bytes[b]));
-        return hstr.toString();
+        return ByteUtils.bytes2Hex(bytes);
     }
 
     /**
@@ -175,15 +152,7 @@ public class Utils {
      * @see res/raw/*
      */
     public static List<String[]> readCSVFile(InputStream fdStream) throws IOException {
-        List<String[]> csvLines = new ArrayList<String[]>();
-        BufferedReader br = new BufferedReader(new InputStreamReader(fdStream));
-        String csvLine;
-        while((csvLine = br.readLine()) != null) {
-            String[] parsedRow = csvLine.split(",");
-            csvLines.add(parsedRow);
-        }
-        fdStream.close();
-        return csvLines;
+        return ByteUtils.readCSVFile(fdStream);
     }
 
     /**
@@ -231,16 +200,8 @@ public class Utils {
      * @return entropy rating
      */
     public static double computeByteArrayEntropy(byte[] inputBytes) {
-        Deflater cmpr = new Deflater();
-        cmpr.setLevel(Deflater.BEST_COMPRESSION);
-        cmpr.setInput(inputBytes);
-        cmpr.finish();
-        int cmprByteCount = 0;
-        while(!cmpr.finished()) {
-            cmprByteCount += cmpr.deflate(new byte[1024]);
-        }
-        double entropyRatio = (double) cmprByteCount / inputBytes.length;
-        Log.i(TAG, String.format(Locale.ENGLISH, "Compressed #%d bytes to #%d bytes ... Entropy ratio = %1.4g", inputBytes.length, cmprByteCount, entropyRatio));
+        double entropyRatio = ByteUtils.computeByteArrayEntropy(inputBytes);
+        Log.i(TAG, String.format(Locale.ENGLISH, "Compressed #%d bytes ... Entropy ratio = %1.4g", inputBytes.length, entropyRatio));
         return entropyRatio;
     }
 
@@ -0,0 +1,76 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <h1>APDU Classifier Benchmark</h1>
+ * Per-payload cost of ApduUtils.classifyApdu. The classifyApdu_reloadTables benchmark re-reads
+ * and re-parses the five APDU tables from the raw resources on each call, and
+ * classifyApdu_loadedTables matches the payload against every row of the parsed tables. The
+ * app now classifies against the tables compiled into byte-indexed lookups by the
+ * ApduTableClassifier, which returns the cached classification strings of the frames it has
+ * seen (classifyApdu_compiledTables, against classifyApdu_compiledTablesUncached).
+ *
+ * @ref ApduUtils.classifyApdu
+ * @ref ApduClassifier
+ * @ref ApduTableClassifier
+ */
+@State(Scope.Thread)
+public class ApduClassifierBenchmark {
+
+    @Param({ BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.PROFILE_ANTICOLLISION, BenchmarkPayloads.PROFILE_APDU })
+    public String payloadProfile;
+
+    private byte[][] payloads;
+    private int payloadIndex = 0;
+    private List<String[]> desfireIns, desfireStatus, commonIns, statusCodes, detailedIns;
+    private ApduTableClassifier apduClassifier;
+
+    @Setup
+    public void setup() throws IOException {
+        payloads = BenchmarkPayloads.generatePayloads(payloadProfile, BenchmarkPayloads.NUM_FRAMES);
+        desfireIns = BenchmarkPayloads.loadApduTable("desfire_ins");
+        desfireStatus = BenchmarkPayloads.loadApduTable("desfire_status");
+        commonIns = BenchmarkPayloads.loadApduTable("common_ins");
+        statusCodes = BenchmarkPayloads.loadApduTable("response_codes_status");
+        detailedIns = BenchmarkPayloads.loadApduTable("detailed_common_ins");
+        apduClassifier = BenchmarkPayloads.loadApduClassifier();
+    }
+
+    private byte[] nextPayload() {
+        return payloads[payloadIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK];
+    }
+
+    @Benchmark
+    public String classifyApdu_reloadTables() throws IOException {
+        return ApduClassifier.classifyApdu(nextPayload(),
+                BenchmarkPayloads.loadApduTable("desfire_ins"),
+                BenchmarkPayloads.loadApduTable("desfire_status"),
+                BenchmarkPayloads.loadApduTable("common_ins"),
+                BenchmarkPayloads.loadApduTable("response_codes_status"),
+                BenchmarkPayloads.loadApduTable("detailed_common_ins"));
+    }
+
+    @Benchmark
+    public String classifyApdu_loadedTables() {
+        return ApduClassifier.classifyApdu(nextPayload(), desfireIns, desfireStatus, commonIns, statusCodes, detailedIns);
+    }
+
+    @Benchmark
+    public String classifyApdu_compiledTables() {
+        return apduClassifier.classifyPayload(nextPayload());
+    }
+
+    @Benchmark
+    public String classifyApdu_compiledTablesUncached() {
+        return apduClassifier.classifyPayloadUncached(nextPayload());
+    }
+
+}
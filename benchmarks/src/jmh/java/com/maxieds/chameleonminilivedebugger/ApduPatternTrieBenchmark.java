@@ -0,0 +1,56 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * <h1>APDU Pattern Trie Benchmark</h1>
+ * How the per-payload cost of matching the detailed instruction rules grows with the size of
+ * the rule catalog: the ApduPatternTrie walk against testing every row
+ * (ApduClassifier.matchDetailedInstructions), and the time to compile the catalog into the trie.
+ *
+ * @ref ApduPatternTrie
+ */
+@State(Scope.Thread)
+public class ApduPatternTrieBenchmark {
+
+    @Param({ "1000", "10000", "50000" })
+    public int catalogSize;
+
+    private List<String[]> vendorCatalog;
+    private ApduPatternTrie patternTrie;
+    private byte[][] payloads;
+    private int payloadIndex = 0;
+
+    @Setup
+    public void setup() {
+        vendorCatalog = BenchmarkPayloads.generateRuleCatalog(catalogSize);
+        patternTrie = new ApduPatternTrie(vendorCatalog);
+        payloads = BenchmarkPayloads.generateRulePayloads(vendorCatalog, BenchmarkPayloads.NUM_FRAMES);
+    }
+
+    private byte[] nextPayload() {
+        return payloads[payloadIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK];
+    }
+
+    @Benchmark
+    public int[] matchTrie() {
+        return patternTrie.findMatchingRows(nextPayload());
+    }
+
+    @Benchmark
+    public List<String> matchRowScan() {
+        return ApduClassifier.matchDetailedInstructions(nextPayload(), vendorCatalog);
+    }
+
+    @Benchmark
+    public ApduPatternTrie compileCatalog() {
+        return new ApduPatternTrie(vendorCatalog);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h1>APDU Rule Pack Benchmark</h1>
+ * Time to load the APDU tables when the app starts, from the rule pack compiled at build time
+ * against compiling the CSV tables from res/raw (the fallback when the pack cannot be loaded).
+ *
+ * @ref ApduRulePack
+ */
+@State(Scope.Thread)
+public class ApduRulePackBenchmark {
+
+    private byte[] packBytes;
+    private byte[][] csvTables;
+
+    @Setup
+    public void setup() throws IOException {
+        csvTables = new byte[ApduRulePack.TABLE_NAMES.length][];
+        Map<String, List<String[]>> tables = new LinkedHashMap<String, List<String[]>>();
+        List<String> errors = new ArrayList<String>();
+        for(int t = 0; t < csvTables.length; t++) {
+            InputStream tableStream = BenchmarkPayloads.openApduTable(ApduRulePack.TABLE_NAMES[t]);
+            ByteArrayOutputStream tableBuf = new ByteArrayOutputStream();
+            byte[] readBuf = new byte[4096];
+            int numRead;
+            while((numRead = tableStream.read(readBuf)) > 0)
+                tableBuf.write(readBuf, 0, numRead);
+            tableStream.close();
+            csvTables[t] = tableBuf.toByteArray();
+            tables.put(ApduRulePack.TABLE_NAMES[t], ApduRulePack.compileTable(ApduRulePack.TABLE_NAMES[t],
+                                                                              new ByteArrayInputStream(csvTables[t]), errors));
+        }
+        if(!errors.isEmpty())
+            throw new IOException("Malformed APDU table rows: " + errors);
+        ByteArrayOutputStream packBuf = new ByteArrayOutputStream();
+        ApduRulePack.writePack(packBuf, tables);
+        packBytes = packBuf.toByteArray();
+    }
+
+    @Benchmark
+    public ApduRulePack readPack() throws IOException {
+        return ApduRulePack.readPack(packBytes);
+    }
+
+    @Benchmark
+    public ApduRulePack compileCsvTables() throws IOException {
+        InputStream[] csvStreams = new InputStream[csvTables.length];
+        for(int t = 0; t < csvTables.length; t++)
+            csvStreams[t] = new ByteArrayInputStream(csvTables[t]);
+        return ApduRulePack.compileTables(csvStreams);
+    }
+
+}
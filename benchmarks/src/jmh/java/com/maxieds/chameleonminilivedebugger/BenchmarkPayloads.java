@@ -0,0 +1,229 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * <h1>Benchmark Payloads</h1>
+ * Generates the LIVE log frames used by the benchmarks. The payload sizes and contents follow
+ * the distribution seen when sniffing ISO 14443-A sessions: mostly short anticollision frames
+ * (REQA / ATQA / SELECT / SAK), some 16-byte block reads, and a tail of ISO 14443-4 APDUs.
+ */
+public class BenchmarkPayloads {
+
+    /**
+     * The frames are cycled through by index (a power of two, so the index can be masked).
+     */
+    public static final int NUM_FRAMES = 1024;
+    public static final int FRAME_INDEX_MASK = NUM_FRAMES - 1;
+    public static final long RANDOM_SEED = 0x43484D4CL;
+
+    /**
+     * Payload profiles: the full sniffing mix, only the short anticollision frames, or only APDUs.
+     */
+    public static final String PROFILE_SNIFF_MIX = "sniffMix";
+    public static final String PROFILE_ANTICOLLISION = "anticollision";
+    public static final String PROFILE_APDU = "apdu";
+
+    /**
+     * (payload size, percentage weight) pairs of the sniffing mix; size 0 marks an APDU frame.
+     */
+    private static final int[][] SNIFF_MIX_WEIGHTS = {
+            { 1, 20 },  // REQA / WUPA, ACK / NAK nibbles
+            { 2, 20 },  // ATQA, SELECT (NVB=0x20), HLTA
+            { 3, 10 },  // SAK + CRC
+            { 4, 5 },   // READ + CRC
+            { 5, 10 },  // UID CLn + BCC
+            { 9, 10 },  // SELECT (NVB=0x70) + UID + BCC + CRC
+            { 18, 10 }, // READ response (16 bytes + CRC)
+            { 0, 15 },  // ISO 14443-4 I-block APDUs
+    };
+    private static final int[] ANTICOLLISION_SIZES = { 1, 2, 2, 3, 5, 9 };
+
+    private static final byte[] APDU_INS = {
+            (byte) 0xA4, (byte) 0xB0, (byte) 0xD6, (byte) 0x84, (byte) 0xCA, (byte) 0xB2,
+            (byte) 0x5A, (byte) 0x6F, (byte) 0xAF, (byte) 0x60, (byte) 0xBD, (byte) 0x3D,
+    };
+    private static final byte[][] APDU_STATUS_WORDS = {
+            { (byte) 0x90, 0x00 }, { (byte) 0x91, 0x00 }, { (byte) 0x91, (byte) 0xAF },
+            { 0x6A, (byte) 0x82 }, { 0x69, (byte) 0x82 }, { 0x67, 0x00 },
+    };
+
+    /**
+     * Generates the payload bytes for the profile.
+     * @param profile
+     * @param numPayloads
+     * @return byte[][] payloads
+     */
+    public static byte[][] generatePayloads(String profile, int numPayloads) {
+        Random random = new Random(RANDOM_SEED);
+        byte[][] payloads = new byte[numPayloads][];
+        for(int p = 0; p < numPayloads; p++) {
+            if(PROFILE_APDU.equals(profile))
+                payloads[p] = generateApdu(random);
+            else if(PROFILE_ANTICOLLISION.equals(profile))
+                payloads[p] = randomBytes(random, ANTICOLLISION_SIZES[random.nextInt(ANTICOLLISION_SIZES.length)]);
+            else {
+                int payloadSize = pickSniffMixSize(random);
+                payloads[p] = (payloadSize == 0) ? generateApdu(random) : randomBytes(random, payloadSize);
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * Generates the raw LIVE log frames (header and payload) for the profile.
+     * @param profile
+     * @param numFrames
+     * @return byte[][] frames
+     */
+    public static byte[][] generateFrames(String profile, int numFrames) {
+        byte[][] payloads = generatePayloads(profile, numFrames);
+        byte[][] frames = new byte[numFrames][];
+        int sysTick = 0;
+        for(int f = 0; f < numFrames; f++) {
+            int logCode = (f % 2 == 0) ? LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger() :
+                                         LogUtils.LogCode.LOG_INFO_CODEC_SNI_CARD_DATA.toInteger();
+            sysTick = (sysTick + 1 + (f % 7)) & 0xffff;
+            frames[f] = new byte[LogFrameDecoder.LOG_HEADER_SIZE + payloads[f].length];
+            frames[f][0] = (byte) logCode;
+            frames[f][1] = (byte) payloads[f].length;
+            frames[f][2] = (byte) (sysTick >> 8);
+            frames[f][3] = (byte) sysTick;
+            System.arraycopy(payloads[f], 0, frames[f], LogFrameDecoder.LOG_HEADER_SIZE, payloads[f].length);
+        }
+        return frames;
+    }
+
+    private static int pickSniffMixSize(Random random) {
+        int weightPos = random.nextInt(100);
+        for(int[] sizeWeight : SNIFF_MIX_WEIGHTS) {
+            weightPos -= sizeWeight[1];
+            if(weightPos < 0)
+                return sizeWeight[0];
+        }
+        return 1;
+    }
+
+    /**
+     * Generates an ISO 14443-4 I-block carrying either a command APDU (PCB, CLA, INS, P1, P2, Lc,
+     * data, CRC) or a response APDU (PCB, data, SW1, SW2, CRC).
+     * @param random
+     * @return byte[]
+     */
+    private static byte[] generateApdu(Random random) {
+        byte pcb = (byte) (0x02 | random.nextInt(2));
+        if(random.nextBoolean()) {
+            int dataLength = random.nextInt(24);
+            byte[] apduBytes = randomBytes(random, 8 + dataLength);
+            apduBytes[0] = pcb;
+            apduBytes[1] = random.nextBoolean() ? (byte) 0x00 : (byte) 0x90;
+            apduBytes[2] = APDU_INS[random.nextInt(APDU_INS.length)];
+            apduBytes[5] = (byte) dataLength;
+            return apduBytes;
+        }
+        byte[] apduBytes = randomBytes(random, 5 + random.nextInt(48));
+        byte[] statusWord = APDU_STATUS_WORDS[random.nextInt(APDU_STATUS_WORDS.length)];
+        apduBytes[0] = pcb;
+        apduBytes[apduBytes.length - 4] = statusWord[0];
+        apduBytes[apduBytes.length - 3] = statusWord[1];
+        return apduBytes;
+    }
+
+    private static byte[] randomBytes(Random random, int numBytes) {
+        byte[] bytes = new byte[numBytes];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    /**
+     * Generates a synthetic vendor catalog of detailed instruction rules of the form
+     * CLA,INS[,P1[,P2[,Lc...]]],LABEL over a few vendor CLA bytes, with some wildcard bytes
+     * (also in the leading position) and duplicate patterns.
+     * @param numRules
+     * @return List<String[]> rules in the format of the detailed_common_ins table
+     */
+    public static List<String[]> generateRuleCatalog(int numRules) {
+        Random random = new Random(RANDOM_SEED + numRules);
+        List<String[]> csvLines = new ArrayList<String[]>(numRules);
+        byte[] vendorClaBytes = { 0x00, (byte) 0x80, (byte) 0x84, (byte) 0x90, (byte) 0xA0, (byte) 0xB0 };
+        for(int rule = 0; rule < numRules; rule++) {
+            if(rule > 0 && random.nextInt(50) == 0) {
+                String[] duplicate = csvLines.get(random.nextInt(rule)).clone();
+                duplicate[duplicate.length - 1] = "DUPLICATE_" + rule;
+                csvLines.add(duplicate);
+                continue;
+            }
+            String[] csvLine = new String[2 + random.nextInt(7)];
+            for(int b = 0; b < csvLine.length - 1; b++) {
+                int patternByte = b == 0 ? vendorClaBytes[random.nextInt(vendorClaBytes.length)] & 0xff : random.nextInt(b == 1 ? 256 : 16);
+                csvLine[b] = random.nextInt(b == 0 ? 200 : 8) == 0 ? ApduPatternTrie.WILDCARD_BYTE : String.format(Locale.ENGLISH, "%02X", patternByte);
+            }
+            csvLine[csvLine.length - 1] = "VENDOR_INS_" + rule;
+            csvLines.add(csvLine);
+        }
+        return csvLines;
+    }
+
+    /**
+     * Generates payloads starting with the bytes of a rule of the catalog (wildcards filled in
+     * randomly) for two thirds of the payloads, and random bytes for the rest.
+     * @param csvLines
+     * @param numPayloads
+     * @return byte[][] payloads
+     */
+    public static byte[][] generateRulePayloads(List<String[]> csvLines, int numPayloads) {
+        Random random = new Random(RANDOM_SEED);
+        byte[][] payloads = new byte[numPayloads][];
+        for(int p = 0; p < numPayloads; p++) {
+            payloads[p] = randomBytes(random, random.nextInt(20));
+            if(random.nextInt(3) != 0) {
+                String[] csvLine = csvLines.get(random.nextInt(csvLines.size()));
+                for(int b = 0; b < csvLine.length - 1 && b < payloads[p].length; b++) {
+                    if(!csvLine[b].equals(ApduPatternTrie.WILDCARD_BYTE))
+                        payloads[p][b] = ByteUtils.hexString2Byte(csvLine[b]);
+                }
+            }
+        }
+        return payloads;
+    }
+
+    /**
+     * Opens the raw APDU table resource (copied from res/raw onto the benchmark classpath).
+     * @param tableName
+     * @return InputStream
+     * @throws IOException
+     */
+    public static InputStream openApduTable(String tableName) throws IOException {
+        InputStream tableStream = BenchmarkPayloads.class.getResourceAsStream("/" + tableName);
+        if(tableStream == null)
+            throw new IOException("Missing APDU table resource: " + tableName);
+        return tableStream;
+    }
+
+    /**
+     * Loads the parsed APDU table.
+     * @param tableName
+     * @return List<String[]>
+     * @throws IOException
+     */
+    public static List<String[]> loadApduTable(String tableName) throws IOException {
+        return ByteUtils.readCSVFile(openApduTable(tableName));
+    }
+
+    /**
+     * Loads the APDU classifier used by the app (with all of the tables).
+     * @return ApduTableClassifier
+     * @throws IOException
+     */
+    public static ApduTableClassifier loadApduClassifier() throws IOException {
+        return ApduTableClassifier.loadFromStreams(openApduTable("desfire_ins"), openApduTable("desfire_status"),
+                                                   openApduTable("common_ins"), openApduTable("response_codes_status"),
+                                                   openApduTable("detailed_common_ins"));
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <h1>Byte Codec Benchmark</h1>
+ * Per-payload cost of the display codecs computed for every log entry:
+ * Utils.bytes2Hex, Utils.bytes2Ascii and Utils.computeByteArrayEntropy.
+ *
+ * @ref ByteUtils
+ */
+@State(Scope.Thread)
+public class ByteCodecBenchmark {
+
+    @Param({ BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.PROFILE_ANTICOLLISION, BenchmarkPayloads.PROFILE_APDU })
+    public String payloadProfile;
+
+    private byte[][] payloads;
+    private int payloadIndex = 0;
+
+    @Setup
+    public void setup() {
+        payloads = BenchmarkPayloads.generatePayloads(payloadProfile, BenchmarkPayloads.NUM_FRAMES);
+    }
+
+    private byte[] nextPayload() {
+        return payloads[payloadIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK];
+    }
+
+    @Benchmark
+    public String bytes2Hex() {
+        return ByteUtils.bytes2Hex(nextPayload());
+    }
+
+    @Benchmark
+    public String bytes2Ascii() {
+        return ByteUtils.bytes2Ascii(nextPayload());
+    }
+
+    @Benchmark
+    public double computeByteArrayEntropy() {
+        return ByteUtils.computeByteArrayEntropy(nextPayload());
+    }
+
+}
@@ -0,0 +1,63 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * <h1>Capture Archive Benchmark</h1>
+ * Cost of the random access to a record of a 100k record capture archive (the block index
+ * lookup, and the read and inflation of the single block holding the record).
+ *
+ * @ref CaptureArchive.getRecord
+ */
+@State(Scope.Thread)
+public class CaptureArchiveBenchmark {
+
+    private static final int NUM_RECORDS = 100000;
+
+    private File archiveFile;
+    private CaptureArchive captureArchive;
+    private int lookupIndex = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        archiveFile = File.createTempFile("capture", ".cmla");
+        byte[][] payloads = BenchmarkPayloads.generatePayloads(BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.NUM_FRAMES);
+        LogDecoder logDecoder = new LiveLogDecoder(BenchmarkPayloads.loadApduClassifier());
+        ArchiveLogSerializer archiveSerializer = new ArchiveLogSerializer();
+        FileOutputStream fout = new FileOutputStream(archiveFile);
+        try {
+            archiveSerializer.writeHeader(fout);
+            for(int recordId = 1; recordId <= NUM_RECORDS; recordId++) {
+                int logCode = (recordId % 2 == 0) ? LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger() :
+                                                    LogUtils.LogCode.LOG_INFO_CODEC_SNI_CARD_DATA.toInteger();
+                archiveSerializer.writeLogRecord(fout, recordId, logDecoder.decodePayload(logCode, 1 + recordId % 7,
+                                                 payloads[recordId & BenchmarkPayloads.FRAME_INDEX_MASK]));
+            }
+            archiveSerializer.writeFooter(fout);
+        } finally {
+            fout.close();
+        }
+        captureArchive = new CaptureArchive(archiveFile);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        captureArchive.close();
+        archiveFile.delete();
+    }
+
+    @Benchmark
+    public CaptureArchive.ArchiveRecord getRecord() throws IOException {
+        lookupIndex = (lookupIndex + 7919) % NUM_RECORDS;
+        return captureArchive.getRecord(1 + lookupIndex);
+    }
+
+}
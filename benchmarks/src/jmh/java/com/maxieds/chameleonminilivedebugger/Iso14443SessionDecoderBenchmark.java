@@ -0,0 +1,117 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * <h1>ISO 14443 Session Decoder Benchmark</h1>
+ * Per-frame cost of reconstructing the card sessions and transactions from a sniffed capture:
+ * the activation of a card (with a double size UID), RATS with or without a CID, a few APDU
+ * exchanges and, for most cards, the DESELECT, with some noise frames in between.
+ *
+ * @ref Iso14443SessionDecoder.consumeFrame
+ */
+@State(Scope.Thread)
+public class Iso14443SessionDecoderBenchmark {
+
+    private static final int SNIFF_READER = LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger();
+    private static final int SNIFF_CARD = LogUtils.LogCode.LOG_INFO_CODEC_SNI_CARD_DATA.toInteger();
+    private static final int NUM_SESSIONS = 1000;
+
+    private final List<Integer> logCodeList = new ArrayList<Integer>();
+    private final List<byte[]> frameList = new ArrayList<byte[]>();
+    private int[] logCodes;
+    private byte[][] frames;
+    private int frameIndex = 0;
+    private Iso14443SessionDecoder sessionDecoder;
+
+    private void addFrame(int logCode, byte[] frameData) {
+        logCodeList.add(logCode);
+        frameList.add(frameData);
+    }
+
+    private static byte[] withCrc(byte[] frameData) {
+        byte[] crcFrame = new byte[frameData.length + 2];
+        System.arraycopy(frameData, 0, crcFrame, 0, frameData.length);
+        int crc = Iso14443SessionDecoder.computeCrcA(frameData, 0, frameData.length);
+        crcFrame[frameData.length] = (byte) crc;
+        crcFrame[frameData.length + 1] = (byte) (crc >> 8);
+        return crcFrame;
+    }
+
+    private static byte[] withCrc(int... frameBytes) {
+        byte[] frameData = new byte[frameBytes.length];
+        for(int b = 0; b < frameBytes.length; b++)
+            frameData[b] = (byte) frameBytes[b];
+        return withCrc(frameData);
+    }
+
+    private void addSession(Random random, int cid, boolean deselect) {
+        byte[] uid = new byte[7];
+        random.nextBytes(uid);
+        int bcc1 = 0x88 ^ uid[0] ^ uid[1] ^ uid[2], bcc2 = uid[3] ^ uid[4] ^ uid[5] ^ uid[6];
+        addFrame(SNIFF_READER, new byte[] { 0x52 });
+        addFrame(SNIFF_CARD, new byte[] { 0x44, 0x00 });
+        addFrame(SNIFF_READER, new byte[] { (byte) 0x93, 0x20 });
+        addFrame(SNIFF_CARD, new byte[] { (byte) 0x88, uid[0], uid[1], uid[2], (byte) bcc1 });
+        addFrame(SNIFF_READER, withCrc(0x93, 0x70, 0x88, uid[0], uid[1], uid[2], bcc1));
+        addFrame(SNIFF_CARD, withCrc(0x04));
+        addFrame(SNIFF_READER, withCrc(0x95, 0x70, uid[3], uid[4], uid[5], uid[6], bcc2));
+        addFrame(SNIFF_CARD, withCrc(0x20));
+        addFrame(SNIFF_READER, withCrc(0xe0, 0x80 | Math.max(0, cid)));
+        addFrame(SNIFF_CARD, cid >= 0 ? withCrc(0x06, 0x77, 0x77, 0x81, 0x02, 0x80) : withCrc(0x05, 0x78, 0x77, 0x81, 0x00));
+        int cidPcb = cid >= 0 ? 0x08 : 0x00, numApdus = 1 + random.nextInt(8);
+        for(int apdu = 0; apdu < numApdus; apdu++) {
+            int pcb = 0x02 | cidPcb | (apdu & 0x01);
+            addFrame(SNIFF_READER, cid >= 0 ? withCrc(pcb, cid, 0x90, 0x6a, 0x00, 0x00, 0x00) : withCrc(pcb, 0x90, 0x6a, 0x00, 0x00, 0x00));
+            byte[] response = new byte[(cid >= 0 ? 5 : 4) + random.nextInt(20)];
+            random.nextBytes(response);
+            response[0] = (byte) pcb;
+            if(cid >= 0)
+                response[1] = (byte) cid;
+            response[response.length - 2] = (byte) 0x91;
+            response[response.length - 1] = 0x00;
+            addFrame(SNIFF_CARD, withCrc(response));
+        }
+        if(deselect) {
+            addFrame(SNIFF_READER, cid >= 0 ? withCrc(0xca, cid) : withCrc(0xc2));
+            addFrame(SNIFF_CARD, cid >= 0 ? withCrc(0xca, cid) : withCrc(0xc2));
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(BenchmarkPayloads.RANDOM_SEED);
+        for(int session = 0; session < NUM_SESSIONS; session++) {
+            addSession(random, session % 4 == 0 ? -1 : random.nextInt(Iso14443SessionDecoder.MAX_CID + 1), session % 3 != 0);
+            if(session % 16 == 0) {
+                byte[] noise = new byte[1 + random.nextInt(16)];
+                random.nextBytes(noise);
+                addFrame(random.nextBoolean() ? SNIFF_READER : SNIFF_CARD, noise);
+            }
+        }
+        logCodes = new int[logCodeList.size()];
+        for(int f = 0; f < logCodes.length; f++)
+            logCodes[f] = logCodeList.get(f);
+        frames = frameList.toArray(new byte[frameList.size()][]);
+        sessionDecoder = new Iso14443SessionDecoder(new Iso14443SessionDecoder.TransactionListener() {
+            public void onTransaction(TransactionRecord transaction) {}
+        });
+    }
+
+    @Benchmark
+    public long consumeFrame() {
+        if(frameIndex == frames.length)
+            frameIndex = 0;
+        sessionDecoder.consumeFrame(logCodes[frameIndex], 1, frames[frameIndex]);
+        frameIndex++;
+        return sessionDecoder.getFramesConsumed();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * <h1>Log Export Benchmark</h1>
+ * Per-record cost of the plaintext, HTML, binary and compressed archive log writers in
+ * ExportTools (the LogSerializer implementations, written to an in-memory stream).
+ *
+ * @ref ExportTools.writeFormattedLogFile
+ * @ref ExportTools.writeHTMLLogFile
+ * @ref ExportTools.writeBinaryLogFile
+ * @ref ArchiveLogSerializer
+ */
+@State(Scope.Thread)
+public class LogExportBenchmark {
+
+    @Param({ BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.PROFILE_APDU })
+    public String payloadProfile;
+
+    private DecodedLogFrame[] logFrames;
+    private ByteArrayOutputStream fout;
+
+    @Setup
+    public void setup() {
+        byte[][] payloads = BenchmarkPayloads.generatePayloads(payloadProfile, BenchmarkPayloads.NUM_FRAMES);
+        logFrames = new DecodedLogFrame[payloads.length];
+        for(int p = 0; p < payloads.length; p++) {
+            int logCode = (p % 2 == 0) ? LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger() :
+                                         LogUtils.LogCode.LOG_INFO_CODEC_SNI_CARD_DATA.toInteger();
+            String apduDesc = (p % 4 == 0) ? "SELECT FILE" : PayloadClassifier.NONE_RECOGNIZED;
+            logFrames[p] = new DecodedLogFrame(logCode, LogUtils.getDataDirection(logCode), 1 + (p % 7), payloads[p],
+                                               ByteUtils.computeByteArrayEntropy(payloads[p]), ByteUtils.bytes2Hex(payloads[p]),
+                                               ByteUtils.bytes2Ascii(payloads[p]), apduDesc);
+        }
+        fout = new ByteArrayOutputStream(1 << 20);
+    }
+
+    private int writeLog(LogSerializer logSerializer) throws IOException {
+        fout.reset();
+        logSerializer.writeHeader(fout);
+        for(int p = 0; p < logFrames.length; p++) {
+            if(p % 64 == 0)
+                logSerializer.writeMetadataRecord(fout, "STATUS -- capture checkpoint");
+            logSerializer.writeLogRecord(fout, p + 1, logFrames[p]);
+        }
+        logSerializer.writeFooter(fout);
+        return fout.size();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPayloads.NUM_FRAMES)
+    public int writeFormattedLog() throws IOException {
+        return writeLog(new TextLogSerializer());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPayloads.NUM_FRAMES)
+    public int writeHTMLLog() throws IOException {
+        return writeLog(new HTMLLogSerializer());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPayloads.NUM_FRAMES)
+    public int writeBinaryLog() throws IOException {
+        return writeLog(new BinaryLogSerializer());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPayloads.NUM_FRAMES)
+    public int writeArchiveLog() throws IOException {
+        return writeLog(new ArchiveLogSerializer());
+    }
+
+}
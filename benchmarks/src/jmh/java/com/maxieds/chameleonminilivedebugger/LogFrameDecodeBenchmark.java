@@ -0,0 +1,71 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+
+/**
+ * <h1>Log Frame Decode Benchmark</h1>
+ * Per-frame cost of decoding the LIVE log frames: the header parsing done by
+ * LogEntryUI.newInstance (via LogFrameDecoder), the LiveLogDecoder decode on the capture path
+ * (the derived display fields are computed lazily), and the decode followed by the first access
+ * to the derived fields (entropy, hex / ascii strings and the APDU classification) as done when
+ * the entry is first displayed, searched or exported.
+ *
+ * @ref LogEntryUI.decodeLogFrame
+ */
+@State(Scope.Thread)
+public class LogFrameDecodeBenchmark {
+
+    @Param({ BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.PROFILE_ANTICOLLISION, BenchmarkPayloads.PROFILE_APDU })
+    public String payloadProfile;
+
+    private byte[][] logFrames;
+    private int frameIndex = 0;
+    private LogDecoder logDecoder;
+    private SystickTimeline systickTimeline;
+
+    @Setup
+    public void setup() throws IOException {
+        logFrames = BenchmarkPayloads.generateFrames(payloadProfile, BenchmarkPayloads.NUM_FRAMES);
+        logDecoder = new LiveLogDecoder(BenchmarkPayloads.loadApduClassifier());
+        systickTimeline = new SystickTimeline();
+    }
+
+    private byte[] nextFrame() {
+        return logFrames[frameIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK];
+    }
+
+    @Benchmark
+    public void parseHeader(Blackhole bh) {
+        byte[] rawLogBytes = nextFrame();
+        if(!LogFrameDecoder.hasValidHeader(rawLogBytes))
+            return;
+        bh.consume(LogFrameDecoder.getLogCode(rawLogBytes));
+        // a fixed host time: the frames are timed as a burst (like a downloaded device log):
+        bh.consume(systickTimeline.nextDiffTime(LogFrameDecoder.getTimestamp(rawLogBytes), 0));
+        bh.consume(LogFrameDecoder.extractPayload(rawLogBytes));
+    }
+
+    @Benchmark
+    public DecodedLogFrame decodeFrame() {
+        return logDecoder.decodeLogFrame(nextFrame());
+    }
+
+    @Benchmark
+    public void decodeFrameWithDerivedFields(Blackhole bh) {
+        DecodedLogFrame decodedFrame = logDecoder.decodeLogFrame(nextFrame());
+        if(decodedFrame == null)
+            return;
+        bh.consume(decodedFrame.getEntropy());
+        bh.consume(decodedFrame.getHexString());
+        bh.consume(decodedFrame.getAsciiString());
+        bh.consume(decodedFrame.getApduDesc());
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * <h1>Log Record Store Benchmark</h1>
+ * Per-frame cost of appending the sniffed LIVE log frames to the columnar LogRecordStore (into a
+ * fresh store, so the chunk and arena allocations are included), and of the random access to the
+ * stored records done by the log feed when scrolling.
+ *
+ * @ref LogRecordStore
+ */
+@State(Scope.Thread)
+public class LogRecordStoreBenchmark {
+
+    private byte[][] payloads;
+    private LogRecordStore filledStore;
+    private int rowIndex = 0;
+
+    @Setup
+    public void setup() {
+        payloads = BenchmarkPayloads.generatePayloads(BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.NUM_FRAMES);
+        filledStore = new LogRecordStore();
+        appendFrames(filledStore);
+    }
+
+    private void appendFrames(LogRecordStore logStore) {
+        for(int f = 0; f < payloads.length; f++)
+            logStore.appendLogFrame(f + 1, LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger(),
+                                    LogUtils.DATADIR_INCOMING, f % 7, payloads[f]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BenchmarkPayloads.NUM_FRAMES)
+    public LogRecordStore appendLogFrames() {
+        LogRecordStore logStore = new LogRecordStore();
+        appendFrames(logStore);
+        return logStore;
+    }
+
+    @Benchmark
+    public byte[] getPayload() {
+        return filledStore.getPayload((rowIndex++ * 31) & BenchmarkPayloads.FRAME_INDEX_MASK);
+    }
+
+    @Benchmark
+    public int findRowByRecordId() {
+        return filledStore.findRowByRecordId(1 + ((rowIndex++ * 31) & BenchmarkPayloads.FRAME_INDEX_MASK));
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * <h1>Log Timeline Benchmark</h1>
+ * Cost of seeking to a log time in a 200k record capture with the sparse time index of the
+ * LogRecordStore, against the linear scan of the frame offsets it replaced.
+ *
+ * @ref LogRecordStore.findRowAtLogTime
+ */
+@State(Scope.Thread)
+public class LogTimelineBenchmark {
+
+    private static final int NUM_RECORDS = 200000;
+
+    private LogRecordStore logStore;
+    private long[] seekTimes;
+    private int seekIndex = 0;
+
+    @Setup
+    public void setup() {
+        logStore = new LogRecordStore();
+        byte[][] payloads = BenchmarkPayloads.generatePayloads(BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.NUM_FRAMES);
+        Random random = new Random(BenchmarkPayloads.RANDOM_SEED);
+        for(int recordId = 1; recordId <= NUM_RECORDS; recordId++) {
+            int diffTimeMs = random.nextInt(10) == 0 ? random.nextInt(100000) : random.nextInt(20);
+            logStore.appendLogFrame(recordId, LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger(), LogUtils.DATADIR_INCOMING,
+                                    diffTimeMs, payloads[recordId & BenchmarkPayloads.FRAME_INDEX_MASK]);
+        }
+        seekTimes = new long[BenchmarkPayloads.NUM_FRAMES];
+        for(int seek = 0; seek < seekTimes.length; seek++)
+            seekTimes[seek] = (long) (random.nextDouble() * logStore.getTimelineMillis());
+    }
+
+    @Benchmark
+    public int findRowAtLogTime() {
+        return logStore.findRowAtLogTime(seekTimes[seekIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK]);
+    }
+
+    @Benchmark
+    public int linearScan() {
+        long seekMillis = seekTimes[seekIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK];
+        long logTimeMillis = 0;
+        int row = 0;
+        for(; row < logStore.size(); row++) {
+            logTimeMillis += Math.abs(logStore.getDiffTimeMillis(row));
+            if(logTimeMillis >= seekMillis)
+                break;
+        }
+        return row;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <h1>Serial Protocol Benchmark</h1>
+ * Per-read cost of ChameleonIO.isCommandResponse (over a mix of LIVE log frames and command
+ * responses, as read from the serial port while sniffing), against the String splitting
+ * implementation it replaced, and per-block cost of the XModem checksum ExportTools.CalcChecksum.
+ *
+ * @ref SerialResponseClassifier
+ * @ref XModemFraming
+ */
+@State(Scope.Thread)
+public class SerialProtocolBenchmark {
+
+    private static final String[] COMMAND_RESPONSES = {
+            "100:OK\r\n", "101:OK WITH TEXT\r\nISO14443A_SNIFF\r\n", "101:OK WITH TEXT\r\n04A1B2C3D4E5F6\r\n",
+            "110:WAITING FOR XMODEM\r\n", "121:TRUE\r\n", "202:INVALID PARAMETER\r\n",
+    };
+
+    /**
+     * The response code maps of the original implementation of ChameleonIO.isCommandResponse.
+     */
+    private static final String[] LEGACY_RESPONSE_CODES = {
+            "100:OK", "101:OK WITH TEXT", "110:WAITING FOR MODEM", "120:FALSE", "121:TRUE",
+            "200:UNKNOWN COMMAND", "201:INVALID COMMAND USAGE", "202:INVALID PARAMETER", "203:TIMEOUT",
+    };
+    private static final Map<String, Boolean> LEGACY_TEXT_MAP = new HashMap<String, Boolean>();
+    private static final Map<String, Boolean> LEGACY_CODE_MAP = new HashMap<String, Boolean>();
+    static {
+        for(String rcode : LEGACY_RESPONSE_CODES) {
+            LEGACY_TEXT_MAP.put(rcode, Boolean.TRUE);
+            LEGACY_CODE_MAP.put(rcode.substring(0, 3), Boolean.TRUE);
+        }
+    }
+
+    private byte[][] serialReads;
+    private int readIndex = 0;
+    private byte[][] xmodemBlocks;
+    private int blockIndex = 0;
+
+    @Setup
+    public void setup() {
+        // one command response for every ~8 LIVE log frames:
+        serialReads = BenchmarkPayloads.generateFrames(BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.NUM_FRAMES);
+        for(int r = 0; r < serialReads.length; r += 8)
+            serialReads[r] = COMMAND_RESPONSES[(r / 8) % COMMAND_RESPONSES.length].getBytes();
+        Random random = new Random(BenchmarkPayloads.RANDOM_SEED);
+        xmodemBlocks = new byte[BenchmarkPayloads.NUM_FRAMES][XModemFraming.XMODEM_BLOCK_SIZE];
+        for(byte[] block : xmodemBlocks)
+            random.nextBytes(block);
+    }
+
+    @Benchmark
+    public boolean isCommandResponse() {
+        return SerialResponseClassifier.isCommandResponse(serialReads[readIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK]);
+    }
+
+    @Benchmark
+    public boolean isCommandResponseLegacy() {
+        byte[] liveLogData = serialReads[readIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK];
+        String respText = new String(liveLogData).split("[\n\r]+")[0];
+        if(LEGACY_TEXT_MAP.get(respText) != null)
+            return true;
+        respText = new String(liveLogData).split(":")[0];
+        return respText.length() >= 3 && LEGACY_CODE_MAP.get(respText.substring(respText.length() - 3)) != null;
+    }
+
+    @Benchmark
+    public byte calcChecksum() {
+        return XModemFraming.calcChecksum(xmodemBlocks[blockIndex++ & BenchmarkPayloads.FRAME_INDEX_MASK], 0, XModemFraming.XMODEM_BLOCK_SIZE);
+    }
+
+}
@@ -0,0 +1,66 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <h1>Session Snapshot Benchmark</h1>
+ * Time to restore a captured session from its SessionSnapshot files when the app is restarted,
+ * for sessions of increasing size (the sniffed frames with a status record every 1000 frames
+ * and a few selected records, snapshotted incrementally during the capture).
+ *
+ * @ref SessionSnapshot.restore
+ */
+@State(Scope.Benchmark)
+public class SessionSnapshotBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int numRecords;
+
+    private File snapshotFile;
+
+    @Setup
+    public void setup() throws IOException {
+        snapshotFile = File.createTempFile("session", ".snap");
+        LogRecordStore logStore = new LogRecordStore();
+        SessionSnapshot snapshot = new SessionSnapshot(snapshotFile);
+        byte[][] payloads = BenchmarkPayloads.generatePayloads(BenchmarkPayloads.PROFILE_SNIFF_MIX, BenchmarkPayloads.NUM_FRAMES);
+        for(int f = 1; f <= numRecords; f++) {
+            logStore.appendLogFrame(f, LogUtils.LogCode.LOG_INFO_CODEC_SNI_READER_DATA.toInteger(), LogUtils.DATADIR_INCOMING,
+                                    f % 1000, payloads[f & BenchmarkPayloads.FRAME_INDEX_MASK]);
+            if(f % 1000 == 0)
+                logStore.appendMetadataRecord("STATUS", "Record " + f, "12:00:00");
+            if(f % 5000 == 0) {
+                logStore.setRecordFlag(f - 1, LogRecordStore.FLAG_SELECTED, true);
+                snapshot.update(logStore);
+            }
+        }
+        snapshot.update(logStore);
+        if(!snapshot.flush(60000))
+            throw new IOException("Unable to write the session snapshot: " + snapshot.getWriteError());
+        snapshot.close();
+    }
+
+    @TearDown
+    public void tearDown() {
+        new File(snapshotFile.getPath() + SessionSnapshot.STATE_FILE_EXT).delete();
+        snapshotFile.delete();
+    }
+
+    @Benchmark
+    public LogRecordStore restoreSession() throws IOException {
+        LogRecordStore restoredStore = new LogRecordStore();
+        SessionSnapshot snapshot = new SessionSnapshot(snapshotFile);
+        snapshot.restore(restoredStore);
+        snapshot.close();
+        return restoredStore;
+    }
+
+}
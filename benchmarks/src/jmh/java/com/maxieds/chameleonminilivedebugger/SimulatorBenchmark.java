@@ -0,0 +1,213 @@
+package com.maxieds.chameleonminilivedebugger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <h1>Simulator Benchmark</h1>
+ * End to end serial protocol timings against the simulated Chameleon Mini (without the
+ * simulated response latency): the command round trip with and without LIVE traffic on the
+ * line (sampled, for the median and tail latency), the LIVE log ingestion rate through the
+ * frame reassembler, and the XModem DOWNLOAD / UPLOAD of the card memory.
+ *
+ * @ref ChameleonDeviceSimulator
+ * @ref LogFrameReassembler
+ * @ref XModemFraming
+ */
+public class SimulatorBenchmark {
+
+    private static final int RESPONSE_TIMEOUT = 2000;
+    private static final int NUM_INGESTED_FRAMES = 1024;
+
+    /**
+     * The simulated device with the host side frame reassembler completing the commands in order.
+     */
+    public static class SimulatedLink {
+
+        protected ChameleonDeviceSimulator simDevice;
+        protected LogFrameReassembler frameReassembler;
+        private final ConcurrentLinkedQueue<ChameleonCommandResult> pendingCommands = new ConcurrentLinkedQueue<ChameleonCommandResult>();
+
+        protected void openLink() {
+            simDevice = new ChameleonDeviceSimulator(BenchmarkPayloads.RANDOM_SEED);
+            simDevice.setResponseLatencyMicros(0);
+            frameReassembler = new LogFrameReassembler(new LogFrameReassembler.FrameListener() {
+                @Override
+                public void onLogFrame(byte[] frameData) {}
+                @Override
+                public void onCommandResponse(byte[] respData) {
+                    ChameleonCommandResult cmdResult = pendingCommands.poll();
+                    if(cmdResult != null)
+                        cmdResult.complete(respData);
+                }
+            });
+            attachReassembler();
+            simDevice.open();
+        }
+
+        protected void attachReassembler() {
+            simDevice.read(new ChameleonSerialPort.ReadCallback() {
+                @Override
+                public void onReceivedData(byte[] data) {
+                    frameReassembler.append(data);
+                }
+            });
+        }
+
+        protected ChameleonCommandResult sendCommand(String cmd) throws IOException {
+            ChameleonCommandResult cmdResult = new ChameleonCommandResult(cmd, false, null);
+            pendingCommands.add(cmdResult);
+            simDevice.write((cmd + "\n\r").getBytes());
+            if(!cmdResult.await(RESPONSE_TIMEOUT))
+                throw new IOException("No response from the simulated device to " + cmd);
+            return cmdResult;
+        }
+
+        @TearDown
+        public void closeLink() {
+            simDevice.close();
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class CommandLink extends SimulatedLink {
+
+        @Param({ "0", "5000" })
+        public int liveFramesPerSecond;
+
+        @Setup
+        public void setup() throws IOException {
+            openLink();
+            if(liveFramesPerSecond == 0)
+                sendCommand("LOGMODE=OFF");
+            else {
+                simDevice.setLiveBurstSize(8);
+                simDevice.setLiveFramesPerSecond(liveFramesPerSecond);
+            }
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class IngestionLink extends SimulatedLink {
+
+        @Setup
+        public void setup() {
+            openLink();
+            simDevice.setLiveBurstSize(64);
+            simDevice.setLiveFramesPerSecond(1000000);
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class TransferLink extends SimulatedLink {
+
+        private final byte[] uploadData = new byte[ChameleonDeviceSimulator.DEFAULT_MEMORY_SIZE];
+
+        @Setup
+        public void setup() throws IOException {
+            openLink();
+            sendCommand("LOGMODE=OFF");
+            new Random(BenchmarkPayloads.RANDOM_SEED).nextBytes(uploadData);
+        }
+
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String commandRoundTrip(CommandLink link) throws IOException {
+        return link.sendCommand("SYSTICK?").getResponse("");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_INGESTED_FRAMES)
+    public long liveIngestion(IngestionLink link) {
+        long targetFrames = link.frameReassembler.getLogFrameCount() + NUM_INGESTED_FRAMES;
+        while(link.frameReassembler.getLogFrameCount() < targetFrames)
+            Thread.yield();
+        return link.frameReassembler.getLogFrameCount();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int xmodemDownload(final TransferLink link) throws Exception {
+        final ChameleonDeviceSimulator simDevice = link.simDevice;
+        final CountDownLatch downloadDone = new CountDownLatch(1);
+        final int[] numBlocks = new int[1];
+        simDevice.read(new ChameleonSerialPort.ReadCallback() {
+            private int frameBytes = 0;
+            @Override
+            public void onReceivedData(byte[] data) {
+                if(frameBytes == 0 && data[0] == XModemFraming.BYTE_EOT) {
+                    simDevice.write(new byte[] { XModemFraming.BYTE_ACK });
+                    downloadDone.countDown();
+                    return;
+                }
+                else if(frameBytes == 0 && data[0] != XModemFraming.BYTE_SOH)
+                    return; // the 110 response
+                frameBytes += data.length;
+                if(frameBytes < XModemFraming.XMODEM_FRAME_SIZE)
+                    return;
+                frameBytes = 0;
+                numBlocks[0]++;
+                simDevice.write(new byte[] { XModemFraming.BYTE_ACK });
+            }
+        });
+        simDevice.write("DOWNLOAD\r\n".getBytes());
+        simDevice.write(new byte[] { XModemFraming.BYTE_NAK });
+        if(!downloadDone.await(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS))
+            throw new IOException("The XModem DOWNLOAD did not complete.");
+        link.attachReassembler();
+        return numBlocks[0];
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int xmodemUpload(final TransferLink link) throws Exception {
+        final ChameleonDeviceSimulator simDevice = link.simDevice;
+        final byte[] uploadData = link.uploadData;
+        final CountDownLatch uploadDone = new CountDownLatch(1);
+        simDevice.read(new ChameleonSerialPort.ReadCallback() {
+            private int uploadOffset = -XModemFraming.XMODEM_BLOCK_SIZE;
+            private byte frameNumber = 0;
+            @Override
+            public void onReceivedData(byte[] data) {
+                if(data[0] == '1' && uploadOffset < 0 || data[0] == XModemFraming.BYTE_ACK) {
+                    uploadOffset += XModemFraming.XMODEM_BLOCK_SIZE;
+                    frameNumber++;
+                    if(uploadOffset > uploadData.length)
+                        uploadDone.countDown();
+                    else if(uploadOffset == uploadData.length)
+                        simDevice.write(new byte[] { XModemFraming.BYTE_EOT });
+                    else
+                        simDevice.write(XModemFraming.buildFrame(frameNumber, uploadData, uploadOffset, XModemFraming.XMODEM_BLOCK_SIZE));
+                }
+            }
+        });
+        simDevice.write("UPLOAD\r\n".getBytes());
+        if(!uploadDone.await(RESPONSE_TIMEOUT, TimeUnit.MILLISECONDS))
+            throw new IOException("The XModem UPLOAD did not complete.");
+        link.attachReassembler();
+        return uploadData.length;
+    }
+
+}